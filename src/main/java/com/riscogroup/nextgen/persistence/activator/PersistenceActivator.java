@@ -1,43 +1,109 @@
 package com.riscogroup.nextgen.persistence.activator;
 
+import java.util.Arrays;
+import java.util.List;
+
 import org.osgi.framework.BundleActivator;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Version;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.riscogroup.nextgen.home.api.device.type.ZWaveDevice;
+import com.riscogroup.nextgen.home.api.device.type.intrusion.IntrusionDevice;
+import com.riscogroup.nextgen.home.api.generic.Group;
+import com.riscogroup.nextgen.home.api.generic.User;
 import com.riscogroup.nextgen.home.api.monitor.ServiceRegistrationManager;
+import com.riscogroup.nextgen.home.api.rule.data.Rule;
 import com.riscogroup.nextgen.home.api.services.DataService;
+import com.riscogroup.nextgen.persistence.core.CacheWarmUp;
+import com.riscogroup.nextgen.persistence.core.ColumnFormatMigrator;
+import com.riscogroup.nextgen.persistence.core.DaoRegistry;
+import com.riscogroup.nextgen.persistence.core.DatabaseExecutor;
+import com.riscogroup.nextgen.persistence.repository.device.DeviceFactory;
+import com.riscogroup.nextgen.persistence.service.AsyncPersistenceServiceImpl;
 import com.riscogroup.nextgen.persistence.service.PersistenceServiceImpl;
  
 public class PersistenceActivator implements BundleActivator {
 	private static final Logger logger = LoggerFactory.getLogger(PersistenceActivator.class);
+
+	/**
+	 * Devices load their functions, properties and children themselves. Groups, users and rules
+	 * only refer to devices, so they are loaded once the devices are cached. Multi channel and keypad
+	 * devices share the cache and the query of ZWave and intrusion devices, they are loaded with them.
+	 */
+	private static final List<List<Class<?>>> PRELOAD_STAGES = Arrays.asList(
+			Arrays.<Class<?>>asList(ZWaveDevice.class, IntrusionDevice.class),
+			Arrays.<Class<?>>asList(Group.class, User.class, Rule.class));
+	
+	/**
+	 * Older API bundles do not have AsyncDataService, it is referred to by name only so that the bundle
+	 * still starts with them and registers DataService alone.
+	 */
+	private static final String ASYNC_DATA_SERVICE = "com.riscogroup.nextgen.home.api.services.AsyncDataService";
 	
 	private static BundleContext bundleContext;
 	private static ServiceRegistrationManager manager;
 	
 	private DataService dataService;
+	private Object asyncDataService;
+	private DatabaseExecutor databaseExecutor;
+	private ColumnFormatMigrator columnFormatMigrator;
+	private CacheWarmUp cacheWarmUp;
 	
 	public void start(BundleContext context) throws Exception {
 		bundleContext = context;
+		final boolean asyncAvailable = isAvailable(ASYNC_DATA_SERVICE);
 		manager = new ServiceRegistrationManager(context, 
 												"com.riscogroup.nextgen.persistence",
-												 new String[] { DataService.class.getName() });
+												 asyncAvailable ? new String[] { DataService.class.getName(), ASYNC_DATA_SERVICE }
+														 : new String[] { DataService.class.getName() });
 		try {
-			dataService = new PersistenceServiceImpl();
+			final PersistenceServiceImpl persistenceService = new PersistenceServiceImpl();
+			dataService = persistenceService;
+			if (asyncAvailable) {
+				databaseExecutor = DatabaseExecutor.start();
+				asyncDataService = new AsyncPersistenceServiceImpl(persistenceService, databaseExecutor);
+			}
+			DeviceFactory.warmUp(DaoRegistry.getInstance().getRegisteredClassNames());
+			cacheWarmUp = CacheWarmUp.start(DaoRegistry.getInstance(), PRELOAD_STAGES);
+			persistenceService.setCacheWarmUp(cacheWarmUp);
+			columnFormatMigrator = ColumnFormatMigrator.start(DaoRegistry.getInstance());
 			
 			logger.info("<com.riscogroup.nextgen.persistence> Bundle started");
 		} catch (Exception e) {
 			logger.error("Service did not initialize properly " + e.getMessage());
 		}
 		registerService(DataService.class.getName(), dataService);
+		if (asyncAvailable) {
+			registerService(ASYNC_DATA_SERVICE, asyncDataService);
+		}
 	}
 	
 	public void stop(BundleContext context) throws Exception {
+		if (cacheWarmUp != null) {
+			cacheWarmUp.stop();
+			cacheWarmUp = null;
+		}
+		if (columnFormatMigrator != null) {
+			columnFormatMigrator.stop();
+			columnFormatMigrator = null;
+		}
 		if (dataService != null) {
 			dataService = null;
 		}
+		asyncDataService = null;
 		manager.unregisterAllServices();
+		if (databaseExecutor != null) {
+			databaseExecutor.stop();
+			databaseExecutor = null;
+		}
+
+		/* Pending background writes are flushed once no new work can come in */
+		final DaoRegistry registry = DaoRegistry.getInstance();
+		for (String className : registry.getRegisteredClassNames()) {
+			registry.getDAO(className).shutdown();
+		}
 		
 		logger.info("<com.riscogroup.nextgen.persistence> Bundle stopped");
 	}
@@ -46,6 +112,16 @@ public class PersistenceActivator implements BundleActivator {
 		return bundleContext.getBundle().getVersion();
 	}
 	
+	private static boolean isAvailable(String className) {
+		try {
+			Class.forName(className, false, PersistenceActivator.class.getClassLoader());
+			return true;
+		} catch (ClassNotFoundException | LinkageError e) {
+			logger.warn("{} is not available, it is not registered", className);
+			return false;
+		}
+	}
+	
 	public static void registerService(String serviceClassName, Object service) {
 		if(bundleContext != null) {
 			manager.registerService(serviceClassName, service, null);
@@ -0,0 +1,176 @@
+package com.riscogroup.nextgen.persistence.core;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Loads whole tables into the DAO caches in the background when the bundle starts, so the first
+ * getAllObjects() after a restart is served from memory instead of paying the cold load on the
+ * caller's Thread.
+ *
+ * Classes are loaded in stages. Stages run one after the other, the classes of a stage are loaded
+ * concurrently on a bounded pool, each in its own session and therefore on its own Connection.
+ * Loading and timing of every class is reported by getStatus().
+ *
+ * Configured in etc/db.conf with DB_PRELOAD ("true" by default, "false" disables the warm-up) and
+ * DB_PRELOAD_THREADS (3 by default).
+ */
+public final class CacheWarmUp implements Runnable {
+	private static final Logger logger = LoggerFactory.getLogger(CacheWarmUp.class);
+
+	public static final String PRELOAD_KEY = "DB_PRELOAD";
+	public static final String PRELOAD_THREADS_KEY = "DB_PRELOAD_THREADS";
+	private static final int DEFAULT_THREADS = 3;
+
+	private final DaoRegistry registry;
+	private final List<List<Class<?>>> stages;
+	private final int threads;
+	private final Map<Class<?>, String> results = new ConcurrentHashMap<>();
+	private volatile String state = "running";
+	private volatile boolean stopped;
+	private volatile ExecutorService executor;
+	private Thread thread;
+
+	private CacheWarmUp(DaoRegistry registry, List<List<Class<?>>> stages, int threads) {
+		this.registry = registry;
+		this.stages = stages;
+		this.threads = threads;
+	}
+
+	/**
+	 * Starts loading the given stages, unless the warm-up is disabled in the configuration.
+	 *
+	 * @param stages classes to load, a class is loaded only after all classes of the previous stages
+	 */
+	public static CacheWarmUp start(DaoRegistry registry, List<List<Class<?>>> stages) {
+		boolean enabled = true;
+		int threads = DEFAULT_THREADS;
+		try {
+			final Properties props = ConnectionPoolFactory.loadConfiguration();
+			enabled = !"false".equalsIgnoreCase(props.getProperty(PRELOAD_KEY, "true").trim());
+			threads = Math.max(1, ConnectionPoolFactory.getIntProperty(props, PRELOAD_THREADS_KEY, DEFAULT_THREADS));
+		} catch (Exception e) {
+			logger.warn("{} Using default cache warm-up settings", e.getMessage());
+		}
+		final CacheWarmUp warmUp = new CacheWarmUp(registry, stages, threads);
+		if (enabled) {
+			warmUp.thread = new Thread(warmUp, "persistence-cache-warm-up");
+			warmUp.thread.setDaemon(true);
+			warmUp.thread.start();
+		} else {
+			logger.info("Cache warm-up disabled by {}", PRELOAD_KEY);
+			warmUp.state = "disabled";
+		}
+		return warmUp;
+	}
+
+	public void stop() {
+		stopped = true;
+		final ExecutorService pool = executor;
+		if (pool != null) {
+			pool.shutdownNow();
+		}
+		if (thread != null) {
+			thread.interrupt();
+		}
+	}
+
+	@Override
+	public void run() {
+		final long started = System.nanoTime();
+		final AtomicInteger threadCount = new AtomicInteger();
+		final ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+			final Thread worker = new Thread(runnable, "persistence-cache-warm-up-" + threadCount.incrementAndGet());
+			worker.setDaemon(true);
+			return worker;
+		});
+		executor = pool;
+		try {
+			for (List<Class<?>> stage : stages) {
+				final List<Future<?>> loads = new ArrayList<>(stage.size());
+				for (Class<?> objectClass : stage) {
+					if (stopped) {
+						state = "stopped";
+						return;
+					}
+					loads.add(pool.submit(() -> load(objectClass)));
+				}
+				for (Future<?> load : loads) {
+					load.get();
+				}
+			}
+			final long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+			state = "done in " + millis + " ms";
+			logger.info("Cache warm-up finished in {} ms", millis);
+		} catch (InterruptedException e) {
+			state = "stopped";
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			state = "failed";
+			logger.error("Cache warm-up stopped: {}", e.getCause().getMessage());
+		} finally {
+			pool.shutdownNow();
+			executor = null;
+		}
+	}
+
+	private void load(Class<?> objectClass) {
+		final DataAccessObject<?> dao = registry.getDAO(objectClass.getName());
+		if (dao == null) {
+			results.put(objectClass, "no DAO");
+			return;
+		}
+		final TransactionManager transactionManager = TransactionManager.getInstance();
+		final long started = System.nanoTime();
+		final int count;
+		transactionManager.openLazySession();
+		HydrationScope.enter();
+		try {
+			count = dao.getAll().size();
+		} catch (SQLException | RuntimeException e) {
+			HydrationScope.exit();
+			transactionManager.rollbackTransactionAndCloseSession();
+			results.put(objectClass, "failed: " + e.getMessage());
+			logger.error("Cache warm-up of {} failed: {}", objectClass.getSimpleName(), e.getMessage());
+			return;
+		}
+		HydrationScope.exit();
+		try {
+			transactionManager.commitTransactionAndCloseSession();
+		} catch (SQLException e) {
+			logger.warn("Cache warm-up of {}: {}", objectClass.getSimpleName(), e.getMessage());
+		}
+		final long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+		results.put(objectClass, count + " objects in " + millis + " ms");
+	}
+
+	/**
+	 * @return load result and time of every class loaded so far, in stage order
+	 */
+	public String getStatus() {
+		final StringBuilder sb = new StringBuilder("cache warm-up ");
+		sb.append(state);
+		for (List<Class<?>> stage : stages) {
+			for (Class<?> objectClass : stage) {
+				final String result = results.get(objectClass);
+				if (result != null) {
+					sb.append("; ").append(objectClass.getSimpleName()).append(": ").append(result);
+				}
+			}
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,104 @@
+package com.riscogroup.nextgen.persistence.core;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Format in which a DAO writes its collection valued columns. Readers understand both formats,
+ * so the format can be changed at any time; rows written before are converted in the background
+ * by the ColumnFormatMigrator.
+ *
+ * Selected in etc/db.conf with COLUMN_FORMAT.&lt;DAO class simple name&gt;, falling back to the
+ * setting of the DAO super classes and then to COLUMN_FORMAT. Values are "tostring" (default)
+ * and "compact".
+ */
+public enum ColumnFormat {
+	/**
+	 * Collection.toString() and Map.toString()
+	 */
+	TO_STRING {
+		@Override
+		public String serialize(Collection<?> elements) {
+			return elements.toString();
+		}
+
+		@Override
+		public String serialize(Object[] elements) {
+			return Arrays.asList(elements).toString();
+		}
+
+		@Override
+		public String serialize(Map<?, ?> map) {
+			return map.toString();
+		}
+	},
+	/**
+	 * Versioned length prefixed format of the CompactColumnCodec
+	 */
+	COMPACT {
+		@Override
+		public String serialize(Collection<?> elements) {
+			return CompactColumnCodec.encodeList(elements);
+		}
+
+		@Override
+		public String serialize(Object[] elements) {
+			return CompactColumnCodec.encodeArray(elements);
+		}
+
+		@Override
+		public String serialize(Map<?, ?> map) {
+			return CompactColumnCodec.encodeMap(map);
+		}
+	};
+
+	public static final String FORMAT_KEY = "COLUMN_FORMAT";
+
+	private static final Logger logger = LoggerFactory.getLogger(ColumnFormat.class);
+
+	public abstract String serialize(Collection<?> elements);
+
+	public abstract String serialize(Object[] elements);
+
+	public abstract String serialize(Map<?, ?> map);
+
+	public static ColumnFormat configuredFor(Class<?> daoClass) {
+		final Properties props = Configuration.properties;
+		for (Class<?> c = daoClass; c != null && c != Object.class; c = c.getSuperclass()) {
+			final String format = props.getProperty(FORMAT_KEY + "." + c.getSimpleName());
+			if (format != null && !format.trim().isEmpty()) {
+				return parse(format);
+			}
+		}
+		return parse(props.getProperty(FORMAT_KEY, "tostring"));
+	}
+
+	private static ColumnFormat parse(String format) {
+		final String value = format.trim();
+		if ("compact".equalsIgnoreCase(value)) {
+			return COMPACT;
+		}
+		if (!"tostring".equalsIgnoreCase(value)) {
+			logger.warn("Unknown {} value '{}'. Falling back to tostring", FORMAT_KEY, value);
+		}
+		return TO_STRING;
+	}
+
+	private static final class Configuration {
+		private static final Properties properties = load();
+
+		private static Properties load() {
+			try {
+				return ConnectionPoolFactory.loadConfiguration();
+			} catch (Exception e) {
+				logger.warn("{} Collection columns are written with toString()", e.getMessage());
+				return new Properties();
+			}
+		}
+	}
+}
@@ -0,0 +1,188 @@
+package com.riscogroup.nextgen.persistence.core;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Converts in the background the collection columns still written with toString() into the
+ * compact format, for the DAOs configured with ColumnFormat.COMPACT.
+ *
+ * Rows are converted in small batches, each in its own transaction. A row is only updated if
+ * the column still holds the value which was read, so values written meanwhile by the DAOs
+ * are never overwritten.
+ */
+public final class ColumnFormatMigrator implements Runnable {
+	private static final Logger logger = LoggerFactory.getLogger(ColumnFormatMigrator.class);
+
+	private static final int BATCH_SIZE = 200;
+	private static final long PAUSE_BETWEEN_BATCHES_MS = 50;
+
+	/**
+	 * How the toString() value of a column is parsed by the DAO reading it.
+	 */
+	public enum Kind {
+		/** read with deserializeListFromToString() or deserializeIntegerListFromToString() */
+		LIST,
+		/** read with deserializeArrayFromString() */
+		ARRAY,
+		/** read with deserializeMapFromToString() */
+		MAP
+	}
+
+	/**
+	 * Collection valued column of a DAO table.
+	 */
+	public static final class Column {
+		private final String table;
+		private final String name;
+		private final Kind kind;
+
+		public Column(String table, String name, Kind kind) {
+			this.table = table;
+			this.name = name;
+			this.kind = kind;
+		}
+
+		@Override
+		public String toString() {
+			return table + "." + name;
+		}
+	}
+
+	private final List<Column> columns;
+	private volatile boolean stopped;
+	private Thread thread;
+
+	private ColumnFormatMigrator(List<Column> columns) {
+		this.columns = columns;
+	}
+
+	/**
+	 * Starts converting the columns of all DAOs writing the compact format.
+	 */
+	public static ColumnFormatMigrator start(DaoRegistry registry) {
+		final Map<String, Column> columns = new LinkedHashMap<>();
+		for (String className : registry.getRegisteredClassNames()) {
+			final DataAccessObject<?> dao = registry.getDAO(className);
+			if (dao.getColumnFormat() == ColumnFormat.COMPACT) {
+				for (Column column : dao.getCollectionColumns()) {
+					columns.putIfAbsent(column.toString(), column);
+				}
+			}
+		}
+		final ColumnFormatMigrator migrator = new ColumnFormatMigrator(new ArrayList<>(columns.values()));
+		if (!columns.isEmpty()) {
+			migrator.thread = new Thread(migrator, "persistence-column-migrator");
+			migrator.thread.setDaemon(true);
+			migrator.thread.start();
+		}
+		return migrator;
+	}
+
+	public void stop() {
+		stopped = true;
+		if (thread != null) {
+			thread.interrupt();
+		}
+	}
+
+	@Override
+	public void run() {
+		for (Column column : columns) {
+			try {
+				int converted = 0;
+				int lastId = -1;
+				while (!stopped && lastId != Integer.MAX_VALUE) {
+					final int[] batch = migrateBatch(column, lastId);
+					converted += batch[1];
+					lastId = batch[0];
+					Thread.sleep(PAUSE_BETWEEN_BATCHES_MS);
+				}
+				logger.info("{} rows of {} converted to the compact format", converted, column);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} catch (Exception e) {
+				logger.error("Conversion of {} stopped: {}", column, e.getMessage());
+			}
+			if (stopped) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * @return id of the last row read, Integer.MAX_VALUE if there are no more rows, and the number of rows converted
+	 */
+	private int[] migrateBatch(Column column, int afterId) throws SQLException {
+		final TransactionManager transactionManager = TransactionManager.getInstance();
+		transactionManager.openSessionAndStartTransaction();
+		try {
+			final Connection connection = transactionManager.getConnection();
+			final List<Integer> ids = new ArrayList<>();
+			final List<String> values = new ArrayList<>();
+			try (PreparedStatement stmnt = connection.prepareStatement("SELECT id, " + column.name + " FROM "
+					+ column.table + " WHERE id > ? AND (" + column.name + " LIKE '[%' OR " + column.name
+					+ " LIKE '{%') ORDER BY id LIMIT " + BATCH_SIZE)) {
+				stmnt.setInt(1, afterId);
+				try (ResultSet resultSet = stmnt.executeQuery()) {
+					while (resultSet.next()) {
+						ids.add(resultSet.getInt(1));
+						values.add(resultSet.getString(2));
+					}
+				}
+			}
+
+			int converted = 0;
+			if (!ids.isEmpty()) {
+				try (PreparedStatement stmnt = connection.prepareStatement("UPDATE " + column.table + " SET "
+						+ column.name + "=? WHERE id=? AND " + column.name + "=?")) {
+					for (int i = 0; i < ids.size(); i++) {
+						final String compact = convert(column.kind, values.get(i));
+						if (compact != null) {
+							stmnt.setString(1, compact);
+							stmnt.setInt(2, ids.get(i));
+							stmnt.setString(3, values.get(i));
+							stmnt.addBatch();
+							converted++;
+						}
+					}
+					if (converted > 0) {
+						stmnt.executeBatch();
+					}
+				}
+			}
+			transactionManager.commitTransactionAndCloseSession();
+			return new int[] { ids.size() < BATCH_SIZE ? Integer.MAX_VALUE : ids.get(ids.size() - 1), converted };
+		} catch (SQLException | RuntimeException e) {
+			transactionManager.rollbackTransactionAndCloseSession();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return the value in compact format, giving the same result when read, null if it can not be converted
+	 */
+	static String convert(Kind kind, String value) {
+		switch (kind) {
+		case LIST:
+			return CompactColumnCodec.encodeList(ToStringParser.parseList(value));
+		case ARRAY:
+			final String[] array = ToStringParser.parseArray(value);
+			return array != null && array.length > 0 ? CompactColumnCodec.encodeArray(array) : null;
+		case MAP:
+			return CompactColumnCodec.encodeMap(ToStringParser.parseMap(value));
+		default:
+			return null;
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package com.riscogroup.nextgen.persistence.core;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Explicit column list of the SELECT queries of a table. The queries select the columns in
+ * the order of the list, so the ordinal of each column is known when the list is created and
+ * rows are read by index instead of by name. Reading by name makes the driver look up the
+ * label of each column of each row in its case insensitive column map.
+ *
+ * toString() returns the columns separated by commas, ready to be put into the query.
+ */
+public final class ColumnList {
+	private final String[] names;
+	private final Map<String, Integer> ordinals;
+	private final String sql;
+
+	public ColumnList(String... names) {
+		this.names = names.clone();
+		ordinals = new HashMap<>(names.length * 2);
+		for (int i = 0; i < names.length; i++) {
+			if (ordinals.put(names[i], i + 1) != null) {
+				throw new IllegalArgumentException("Column " + names[i] + " listed twice");
+			}
+		}
+		sql = String.join(", ", names);
+	}
+
+	/**
+	 * @return 1 based ordinal of the column in the result of a query selecting this list
+	 * @throws IllegalArgumentException if the column is not in the list
+	 */
+	public int index(String name) {
+		final Integer ordinal = ordinals.get(name);
+		if (ordinal == null) {
+			throw new IllegalArgumentException("Column " + name + " is not selected. Selected are: " + sql);
+		}
+		return ordinal;
+	}
+
+	/**
+	 * @return number of columns in the list
+	 */
+	int size() {
+		return names.length;
+	}
+
+	/**
+	 * @return name of the column with the given 1 based ordinal
+	 */
+	String name(int ordinal) {
+		return names[ordinal - 1];
+	}
+
+	/**
+	 * @return the columns prefixed with the given table alias, separated by commas
+	 */
+	public String qualified(String alias) {
+		final StringBuilder sb = new StringBuilder(sql.length() + names.length * (alias.length() + 1));
+		for (int i = 0; i < names.length; i++) {
+			if (i > 0) {
+				sb.append(", ");
+			}
+			sb.append(alias).append('.').append(names[i]);
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public String toString() {
+		return sql;
+	}
+}
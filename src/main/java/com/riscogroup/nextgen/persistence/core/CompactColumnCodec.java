@@ -0,0 +1,194 @@
+package com.riscogroup.nextgen.persistence.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Length prefixed text format of collection columns. Unlike toString() it is not broken by
+ * elements containing ',' or '=' and it is parsed without searching for separators.
+ *
+ * Version 1 layout, all numbers in decimal:
+ * <pre>
+ *   list: ~1L&lt;count&gt;:&lt;length&gt;:&lt;element&gt;&lt;length&gt;:&lt;element&gt;...
+ *   map:  ~1M&lt;count&gt;:&lt;length&gt;:&lt;key&gt;&lt;length&gt;:&lt;value&gt;...
+ * </pre>
+ * Elements are written with String.valueOf(), as toString() does. The '~' marker never starts
+ * a value written by toString(), which is how readers tell the two formats apart.
+ */
+final class CompactColumnCodec {
+	static final char MARKER = '~';
+	static final char VERSION = '1';
+
+	private static final char LIST = 'L';
+	private static final char MAP = 'M';
+
+	private CompactColumnCodec() {
+	}
+
+	static boolean isEncoded(String value) {
+		return value != null && value.length() > 2 && value.charAt(0) == MARKER;
+	}
+
+	static String encodeList(Collection<?> elements) {
+		final StringBuilder sb = header(LIST, elements.size());
+		for (Object element : elements) {
+			append(sb, String.valueOf(element));
+		}
+		return sb.toString();
+	}
+
+	static String encodeArray(Object[] elements) {
+		final StringBuilder sb = header(LIST, elements.length);
+		for (Object element : elements) {
+			append(sb, String.valueOf(element));
+		}
+		return sb.toString();
+	}
+
+	static String encodeMap(Map<?, ?> map) {
+		final StringBuilder sb = header(MAP, map.size());
+		for (Map.Entry<?, ?> entry : map.entrySet()) {
+			append(sb, String.valueOf(entry.getKey()));
+			append(sb, String.valueOf(entry.getValue()));
+		}
+		return sb.toString();
+	}
+
+	static List<String> decodeList(String value) {
+		final Reader reader = new Reader(value, LIST);
+		final List<String> list = new ArrayList<>(reader.count);
+		for (int i = 0; i < reader.count; i++) {
+			list.add(reader.next());
+		}
+		return list;
+	}
+
+	/**
+	 * @return null for an empty list, as the toString() parser does for "[]"
+	 */
+	static String[] decodeArray(String value) {
+		final Reader reader = new Reader(value, LIST);
+		if (reader.count == 0) {
+			return null;
+		}
+		final String[] array = new String[reader.count];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = reader.next();
+		}
+		return array;
+	}
+
+	static int[] decodeIntArray(String value) {
+		final Reader reader = new Reader(value, LIST);
+		final int[] array = new int[reader.count];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = reader.nextInt();
+		}
+		return array;
+	}
+
+	/**
+	 * @throws NumberFormatException if an element is not a byte
+	 */
+	static byte[] decodeByteArray(String value) {
+		final Reader reader = new Reader(value, LIST);
+		final byte[] array = new byte[reader.count];
+		for (int i = 0; i < array.length; i++) {
+			final int element = reader.nextInt();
+			if (element < Byte.MIN_VALUE || element > Byte.MAX_VALUE) {
+				throw new NumberFormatException("Value out of range. Value:\"" + element + "\" Radix:10");
+			}
+			array[i] = (byte) element;
+		}
+		return array;
+	}
+
+	static Map<String, String> decodeMap(String value) {
+		final Reader reader = new Reader(value, MAP);
+		final Map<String, String> map = new HashMap<>();
+		for (int i = 0; i < reader.count; i++) {
+			map.put(reader.next(), reader.next());
+		}
+		return map;
+	}
+
+	private static StringBuilder header(char type, int count) {
+		return new StringBuilder(16 + count * 8).append(MARKER).append(VERSION).append(type).append(count).append(':');
+	}
+
+	private static void append(StringBuilder sb, String element) {
+		sb.append(element.length()).append(':').append(element);
+	}
+
+	private static final class Reader {
+		private final String value;
+		private final int count;
+		private int position;
+
+		private Reader(String value, char type) {
+			if (!isEncoded(value) || value.charAt(1) != VERSION || value.charAt(2) != type) {
+				throw new IllegalArgumentException("Not a version " + VERSION + " " + type + " column value: " + value);
+			}
+			this.value = value;
+			position = 3;
+			count = readLength();
+		}
+
+		private int readLength() {
+			int length = 0;
+			for (;;) {
+				if (position >= value.length()) {
+					throw new IllegalArgumentException("Truncated column value: " + value);
+				}
+				final char c = value.charAt(position++);
+				if (c == ':') {
+					return length;
+				}
+				if (c < '0' || c > '9') {
+					throw new IllegalArgumentException("Invalid length in column value: " + value);
+				}
+				length = length * 10 + (c - '0');
+			}
+		}
+
+		private String next() {
+			final int length = readLength();
+			final int end = position + length;
+			if (end > value.length()) {
+				throw new IllegalArgumentException("Truncated column value: " + value);
+			}
+			final String element = value.substring(position, end);
+			position = end;
+			return element;
+		}
+
+		private int nextInt() {
+			final int length = readLength();
+			final int end = position + length;
+			if (length == 0 || end > value.length()) {
+				throw new NumberFormatException("Invalid integer in column value: " + value);
+			}
+			final boolean negative = value.charAt(position) == '-';
+			int i = negative || value.charAt(position) == '+' ? position + 1 : position;
+			if (i == end) {
+				throw new NumberFormatException("Invalid integer in column value: " + value);
+			}
+			long result = 0;
+			for (; i < end; i++) {
+				final char c = value.charAt(i);
+				if (c < '0' || c > '9' || (result = result * 10 + (c - '0')) > 1L + Integer.MAX_VALUE) {
+					throw new NumberFormatException("Invalid integer in column value: " + value);
+				}
+			}
+			position = end;
+			result = negative ? -result : result;
+			if (result > Integer.MAX_VALUE) {
+				throw new NumberFormatException("Invalid integer in column value: " + value);
+			}
+			return (int) result;
+		}
+	}
+}
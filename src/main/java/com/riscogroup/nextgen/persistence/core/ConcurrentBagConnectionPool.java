@@ -0,0 +1,361 @@
+package com.riscogroup.nextgen.persistence.core;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * ConnectionPool built around a concurrent bag of connections. Borrowing does not take any lock:
+ * a Thread first tries the connections it has recently returned (thread affinity), then scans the
+ * shared list claiming a free connection with a CAS, then opens a new physical connection if the
+ * pool is not full, and only then waits for a connection handed off directly by a returning Thread.
+ * A waiting Thread scans the bag and tries to open a connection again every 100 ms, so a slot
+ * freed by an evicted connection is used without waiting for a returning Thread.
+ *
+ * A connection idle for more than half a second is validated with isValid() before it is handed
+ * out, so connections broken by a Database restart are evicted instead of failing in the caller.
+ * Evicted connections are replaced in the background up to DB_MIN_IDLE_CONNECTIONS.
+ *
+ * PreparedStatements are cached per connection by a StatementCache of DB_MAX_PREPARED_STATEMENTS
+ * statements (0 disables it), and the driver prepares them on the server after DB_PREPARE_THRESHOLD
+ * executions.
+ *
+ * Configuration keys read from etc/db.conf:
+ * DB_MAX_POOL_SIZE, DB_MIN_IDLE_CONNECTIONS, DB_BORROW_TIMEOUT_MS, DB_VALIDATION_TIMEOUT_S,
+ * DB_MAX_PREPARED_STATEMENTS, DB_PREPARE_THRESHOLD
+ */
+public class ConcurrentBagConnectionPool implements ConnectionPool {
+	private static final Logger logger = LoggerFactory.getLogger(ConcurrentBagConnectionPool.class);
+
+	private static final int STATE_NOT_IN_USE = 0;
+	private static final int STATE_IN_USE = 1;
+	private static final int STATE_REMOVED = -1;
+
+	private static final int MAX_THREAD_LOCAL_CONNECTIONS = 4;
+	private static final long VALIDATION_BYPASS_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+	private static final long HANDOFF_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+	private final Driver driver;
+	private final String url;
+	private final Properties connectionProperties = new Properties();
+
+	private final int maxPoolSize;
+	private final int minIdleConnections;
+	private final long borrowTimeoutNanos;
+	private final int validationTimeoutSeconds;
+	private final int maxPreparedStatements;
+
+	private final CopyOnWriteArrayList<PooledConnection> sharedList = new CopyOnWriteArrayList<>();
+	private final ThreadLocal<List<WeakReference<PooledConnection>>> threadList = ThreadLocal
+			.withInitial(() -> new ArrayList<>(MAX_THREAD_LOCAL_CONNECTIONS));
+	private final SynchronousQueue<PooledConnection> handoffQueue = new SynchronousQueue<>(true);
+	private final AtomicInteger waiters = new AtomicInteger();
+	private final AtomicInteger totalConnections = new AtomicInteger();
+	private final AtomicBoolean replenishing = new AtomicBoolean();
+
+	public ConcurrentBagConnectionPool(Properties props) throws Exception {
+		final String conFile = ConnectionPoolFactory.CONFIGURATION_FILE;
+
+		final String driverClass = props.getProperty("DB_DRIVER_CLASS");
+		final String user = props.getProperty("DB_USER");
+		final String pass = props.getProperty("DB_PASS");
+		url = props.getProperty("DB_URL");
+
+		/* Check the most important configuration parameters */
+		if (driverClass == null || driverClass.isEmpty() || url == null || url.isEmpty() || user == null || user.isEmpty() || pass == null) {
+			throw new Exception("Missing configuration parameters in " + conFile);
+		}
+		connectionProperties.setProperty("user", user);
+		connectionProperties.setProperty("password", pass);
+
+		maxPoolSize = ConnectionPoolFactory.getIntProperty(props, "DB_MAX_POOL_SIZE", 20);
+		minIdleConnections = Math.min(ConnectionPoolFactory.getIntProperty(props, "DB_MIN_IDLE_CONNECTIONS", 5), maxPoolSize);
+		borrowTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(ConnectionPoolFactory.getIntProperty(props, "DB_BORROW_TIMEOUT_MS", 30000));
+		validationTimeoutSeconds = Math.max(1, ConnectionPoolFactory.getIntProperty(props, "DB_VALIDATION_TIMEOUT_S", 5));
+		maxPreparedStatements = ConnectionPoolFactory.getIntProperty(props, "DB_MAX_PREPARED_STATEMENTS", 20);
+		connectionProperties.setProperty("prepareThreshold",
+				String.valueOf(ConnectionPoolFactory.getIntProperty(props, "DB_PREPARE_THRESHOLD", 5)));
+
+		/* Driver is instantiated directly, DriverManager does not see drivers embedded in the bundle class path */
+		driver = (Driver) Class.forName(driverClass).newInstance();
+
+		for (int i = 0; i < minIdleConnections; i++) {
+			if (createConnection(STATE_NOT_IN_USE) == null) {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Pulls Connection object from the bag and gives it to the caller method.
+	 * Closing the returned Connection gives it back to the pool.
+	 *
+	 * @return Connection object.
+	 */
+	@Override
+	public Connection getConnection() throws SQLException {
+		return borrow().newHandle();
+	}
+
+	private PooledConnection borrow() throws SQLException {
+		final List<WeakReference<PooledConnection>> localList = threadList.get();
+		for (int i = localList.size() - 1; i >= 0; i--) {
+			final PooledConnection entry = localList.remove(i).get();
+			if (entry != null && entry.compareAndSetState(STATE_NOT_IN_USE, STATE_IN_USE) && isUsable(entry)) {
+				return entry;
+			}
+		}
+
+		waiters.incrementAndGet();
+		try {
+			for (PooledConnection entry : sharedList) {
+				if (entry.compareAndSetState(STATE_NOT_IN_USE, STATE_IN_USE) && isUsable(entry)) {
+					return entry;
+				}
+			}
+
+			final long deadline = System.nanoTime() + borrowTimeoutNanos;
+			for (;;) {
+				final PooledConnection created = createConnection(STATE_IN_USE);
+				if (created != null) {
+					return created;
+				}
+				final long remaining = deadline - System.nanoTime();
+				if (remaining <= 0) {
+					break;
+				}
+				final PooledConnection entry = handoffQueue.poll(Math.min(remaining, HANDOFF_POLL_NANOS), TimeUnit.NANOSECONDS);
+				if (entry != null && entry.compareAndSetState(STATE_NOT_IN_USE, STATE_IN_USE) && isUsable(entry)) {
+					return entry;
+				}
+				/* a connection may have been returned without a handoff, or evicted and its slot freed */
+				for (PooledConnection free : sharedList) {
+					if (free.compareAndSetState(STATE_NOT_IN_USE, STATE_IN_USE) && isUsable(free)) {
+						return free;
+					}
+				}
+			}
+
+			logger.error("Connection not available, pool size {}, waiting threads {}", totalConnections.get(), waiters.get());
+			throw new SQLException("Timeout while waiting for a Connection from the pool");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a Connection from the pool", e);
+		} finally {
+			waiters.decrementAndGet();
+		}
+	}
+
+	private void requite(PooledConnection entry) {
+		if (entry.statements != null) {
+			entry.statements.closeStatementsInUse();
+		}
+		try {
+			if (!entry.connection.getAutoCommit()) {
+				entry.connection.rollback();
+				entry.connection.setAutoCommit(true);
+			}
+		} catch (SQLException e) {
+			logger.error("Connection could not be reset and is evicted: {}", e.getMessage());
+			discard(entry);
+			return;
+		}
+
+		entry.lastUsed = System.nanoTime();
+		entry.setState(STATE_NOT_IN_USE);
+
+		for (int i = 0; waiters.get() > 0; i++) {
+			if (entry.getState() != STATE_NOT_IN_USE || handoffQueue.offer(entry)) {
+				return;
+			} else if ((i & 0xff) == 0xff) {
+				LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(10));
+			} else {
+				Thread.yield();
+			}
+		}
+
+		final List<WeakReference<PooledConnection>> localList = threadList.get();
+		if (localList.size() < MAX_THREAD_LOCAL_CONNECTIONS) {
+			localList.add(new WeakReference<>(entry));
+		}
+	}
+
+	private PooledConnection createConnection(int initialState) throws SQLException {
+		for (;;) {
+			final int total = totalConnections.get();
+			if (total >= maxPoolSize) {
+				return null;
+			}
+			if (totalConnections.compareAndSet(total, total + 1)) {
+				break;
+			}
+		}
+		try {
+			final Connection connection = driver.connect(url, connectionProperties);
+			if (connection == null) {
+				throw new SQLException("Driver does not accept URL " + url);
+			}
+			final PooledConnection entry = new PooledConnection(connection, initialState);
+			sharedList.add(entry);
+			return entry;
+		} catch (SQLException e) {
+			totalConnections.decrementAndGet();
+			throw e;
+		}
+	}
+
+	/**
+	 * Connections used within the last half second are not validated again.
+	 */
+	private boolean isUsable(PooledConnection entry) {
+		try {
+			if (!entry.connection.isClosed() && (System.nanoTime() - entry.lastUsed < VALIDATION_BYPASS_NANOS
+					|| entry.connection.isValid(validationTimeoutSeconds))) {
+				return true;
+			}
+			logger.warn("Broken connection evicted from the pool");
+		} catch (SQLException e) {
+			logger.error(e.getMessage());
+		}
+		discard(entry);
+		return false;
+	}
+
+	private void discard(PooledConnection entry) {
+		entry.setState(STATE_REMOVED);
+		if (sharedList.remove(entry)) {
+			totalConnections.decrementAndGet();
+		}
+		if (entry.statements != null) {
+			entry.statements.closeAll();
+		}
+		try {
+			entry.connection.close();
+		} catch (SQLException e) {
+			logger.error(e.getMessage());
+		}
+		replenish();
+	}
+
+	/**
+	 * Opens connections in the background until the pool has DB_MIN_IDLE_CONNECTIONS again.
+	 */
+	private void replenish() {
+		if (totalConnections.get() >= minIdleConnections || !replenishing.compareAndSet(false, true)) {
+			return;
+		}
+		final Thread thread = new Thread(() -> {
+			try {
+				while (totalConnections.get() < minIdleConnections && createConnection(STATE_NOT_IN_USE) != null) {
+					/* new connections are found by the scan of borrowing and waiting Threads */
+				}
+			} catch (SQLException e) {
+				logger.warn("Pool not replenished: {}", e.getMessage());
+			} finally {
+				replenishing.set(false);
+			}
+		}, "persistence-pool-replenish");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private final class PooledConnection {
+		private final Connection connection;
+		private final AtomicInteger state;
+		private final StatementCache statements;
+		private volatile long lastUsed = System.nanoTime();
+
+		private PooledConnection(Connection connection, int state) {
+			this.connection = connection;
+			this.state = new AtomicInteger(state);
+			statements = maxPreparedStatements > 0 ? new StatementCache(connection, maxPreparedStatements) : null;
+		}
+
+		private boolean compareAndSetState(int expect, int update) {
+			return state.compareAndSet(expect, update);
+		}
+
+		private int getState() {
+			return state.get();
+		}
+
+		private void setState(int newState) {
+			state.set(newState);
+		}
+
+		private Connection newHandle() {
+			return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+					new Class<?>[] { Connection.class }, new ConnectionHandle(this));
+		}
+	}
+
+	/**
+	 * Logical Connection given to the caller. close() returns the physical Connection to the pool
+	 * once, every other call after that fails as on a closed Connection.
+	 */
+	private final class ConnectionHandle implements InvocationHandler {
+		private final PooledConnection entry;
+		private boolean closed;
+
+		private ConnectionHandle(PooledConnection entry) {
+			this.entry = entry;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "close":
+				if (!closed) {
+					closed = true;
+					requite(entry);
+				}
+				return null;
+			case "isClosed":
+				return closed;
+			case "equals":
+				return proxy == args[0];
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "toString":
+				return "Pooled" + entry.connection;
+			default:
+				break;
+			}
+			if (closed) {
+				throw new SQLException("Connection is closed");
+			}
+			if (entry.statements != null && "prepareStatement".equals(method.getName())) {
+				final Class<?>[] types = method.getParameterTypes();
+				if (types.length == 1) {
+					return entry.statements.prepareStatement((Connection) proxy, (String) args[0], Statement.NO_GENERATED_KEYS);
+				}
+				if (types.length == 2 && types[1] == int.class) {
+					return entry.statements.prepareStatement((Connection) proxy, (String) args[0], (Integer) args[1]);
+				}
+			}
+			try {
+				return method.invoke(entry.connection, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+	}
+}
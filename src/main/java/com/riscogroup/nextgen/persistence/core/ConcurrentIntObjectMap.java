@@ -0,0 +1,359 @@
+package com.riscogroup.nextgen.persistence.core;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Concurrent open addressing map with primitive int keys. It avoids boxing the key on every lookup
+ * and does not allocate a node per entry, which matters for caches holding tens of thousands of rows.
+ *
+ * Reads are lock free. Writes are striped over a fixed number of segments, each segment guarded by
+ * its own monitor. Within one table a slot is bound to a key for good: removed entries leave a
+ * tombstone that only the same key can reuse, and tombstones are dropped when the segment rehashes.
+ * That way a reader that sees a value in a slot always sees the key it was stored with.
+ *
+ * The Map view (entrySet, iteration) is weakly consistent, like ConcurrentHashMap.
+ *
+ * @param <V> Type of the values
+ */
+public class ConcurrentIntObjectMap<V> extends AbstractMap<Integer, V> {
+
+	private static final int SEGMENTS = 16;
+	private static final int SEGMENT_SHIFT = 28;
+	private static final int MIN_SEGMENT_CAPACITY = 8;
+	private static final float LOAD_FACTOR = 0.6f;
+
+	private static final Object TOMBSTONE = new Object();
+
+	private final Segment[] segments = new Segment[SEGMENTS];
+
+	public ConcurrentIntObjectMap() {
+		this(SEGMENTS * MIN_SEGMENT_CAPACITY);
+	}
+
+	public ConcurrentIntObjectMap(int initialCapacity) {
+		final int perSegment = Math.max(MIN_SEGMENT_CAPACITY, initialCapacity / SEGMENTS);
+		for (int i = 0; i < SEGMENTS; i++) {
+			segments[i] = new Segment(tableSizeFor((int) (perSegment / LOAD_FACTOR) + 1));
+		}
+	}
+
+	private static final class Table {
+		private final int[] keys;
+		private final AtomicReferenceArray<Object> values;
+		private final int mask;
+
+		private Table(int capacity) {
+			keys = new int[capacity];
+			values = new AtomicReferenceArray<>(capacity);
+			mask = capacity - 1;
+		}
+	}
+
+	private static final class Segment {
+		private volatile Table table;
+		private volatile int size;
+		/* live entries plus tombstones of the current table */
+		private int used;
+
+		private Segment(int capacity) {
+			table = new Table(capacity);
+		}
+
+		private Object get(int key, int hash) {
+			final Table t = table;
+			int index = hash & t.mask;
+			for (;;) {
+				final Object value = t.values.get(index);
+				if (value == null) {
+					return null;
+				}
+				if (t.keys[index] == key) {
+					return value == TOMBSTONE ? null : value;
+				}
+				index = (index + 1) & t.mask;
+			}
+		}
+
+		private synchronized Object put(int key, int hash, Object value, boolean onlyIfAbsent) {
+			Table t = table;
+			int index = hash & t.mask;
+			for (;;) {
+				final Object current = t.values.get(index);
+				if (current == null) {
+					break;
+				}
+				if (t.keys[index] == key) {
+					if (current == TOMBSTONE) {
+						t.values.set(index, value);
+						size++;
+						return null;
+					}
+					if (!onlyIfAbsent) {
+						t.values.set(index, value);
+					}
+					return current;
+				}
+				index = (index + 1) & t.mask;
+			}
+
+			if (used + 1 > (int) (t.keys.length * LOAD_FACTOR)) {
+				t = rehash(t);
+				index = hash & t.mask;
+				while (t.values.get(index) != null) {
+					index = (index + 1) & t.mask;
+				}
+			}
+			/* key is written before the value is published through the volatile array store */
+			t.keys[index] = key;
+			t.values.set(index, value);
+			used++;
+			size++;
+			return null;
+		}
+
+		private synchronized Object remove(int key, int hash) {
+			final Table t = table;
+			int index = hash & t.mask;
+			for (;;) {
+				final Object current = t.values.get(index);
+				if (current == null) {
+					return null;
+				}
+				if (t.keys[index] == key) {
+					if (current == TOMBSTONE) {
+						return null;
+					}
+					t.values.set(index, TOMBSTONE);
+					size--;
+					return current;
+				}
+				index = (index + 1) & t.mask;
+			}
+		}
+
+		private Table rehash(Table old) {
+			final int capacity = tableSizeFor((int) ((size + 1) * 2 / LOAD_FACTOR));
+			final Table t = new Table(Math.max(capacity, MIN_SEGMENT_CAPACITY));
+			for (int i = 0; i < old.keys.length; i++) {
+				final Object value = old.values.get(i);
+				if (value == null || value == TOMBSTONE) {
+					continue;
+				}
+				final int key = old.keys[i];
+				int index = hash(key) & t.mask;
+				while (t.values.get(index) != null) {
+					index = (index + 1) & t.mask;
+				}
+				t.keys[index] = key;
+				t.values.set(index, value);
+			}
+			used = size;
+			table = t;
+			return t;
+		}
+	}
+
+	private static int hash(int key) {
+		int h = key;
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+
+	private static int tableSizeFor(int capacity) {
+		int n = Integer.highestOneBit(Math.max(capacity, MIN_SEGMENT_CAPACITY) - 1) << 1;
+		return n < 0 ? 1 << 30 : n;
+	}
+
+	private Segment segmentFor(int hash) {
+		return segments[hash >>> SEGMENT_SHIFT];
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(int key) {
+		final int hash = hash(key);
+		return (V) segmentFor(hash).get(key, hash);
+	}
+
+	public boolean containsKey(int key) {
+		return get(key) != null;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V put(int key, V value) {
+		if (value == null) {
+			throw new NullPointerException();
+		}
+		final int hash = hash(key);
+		return (V) segmentFor(hash).put(key, hash, value, false);
+	}
+
+	@SuppressWarnings("unchecked")
+	public V putIfAbsent(int key, V value) {
+		if (value == null) {
+			throw new NullPointerException();
+		}
+		final int hash = hash(key);
+		return (V) segmentFor(hash).put(key, hash, value, true);
+	}
+
+	@SuppressWarnings("unchecked")
+	public V remove(int key) {
+		final int hash = hash(key);
+		return (V) segmentFor(hash).remove(key, hash);
+	}
+
+	@Override
+	public V get(Object key) {
+		return key instanceof Integer ? get(((Integer) key).intValue()) : null;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return get(key) != null;
+	}
+
+	@Override
+	public V put(Integer key, V value) {
+		return put(key.intValue(), value);
+	}
+
+	@Override
+	public V putIfAbsent(Integer key, V value) {
+		return putIfAbsent(key.intValue(), value);
+	}
+
+	@Override
+	public V remove(Object key) {
+		return key instanceof Integer ? remove(((Integer) key).intValue()) : null;
+	}
+
+	@Override
+	public int size() {
+		int size = 0;
+		for (Segment segment : segments) {
+			size += segment.size;
+		}
+		return size;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		for (Segment segment : segments) {
+			if (segment.size != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public void clear() {
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				segment.table = new Table(MIN_SEGMENT_CAPACITY);
+				segment.used = 0;
+				segment.size = 0;
+			}
+		}
+	}
+
+	/**
+	 * Calls the visitor for every live key without boxing it.
+	 */
+	public void forEachKey(IntVisitor visitor) {
+		for (Segment segment : segments) {
+			final Table t = segment.table;
+			for (int i = 0; i < t.keys.length; i++) {
+				final Object value = t.values.get(i);
+				if (value != null && value != TOMBSTONE) {
+					visitor.visit(t.keys[i]);
+				}
+			}
+		}
+	}
+
+	public interface IntVisitor {
+		void visit(int key);
+	}
+
+	@Override
+	public Set<Map.Entry<Integer, V>> entrySet() {
+		return new AbstractSet<Map.Entry<Integer, V>>() {
+			@Override
+			public Iterator<Map.Entry<Integer, V>> iterator() {
+				return new EntryIterator();
+			}
+
+			@Override
+			public int size() {
+				return ConcurrentIntObjectMap.this.size();
+			}
+		};
+	}
+
+	private final class EntryIterator implements Iterator<Map.Entry<Integer, V>> {
+		private int segmentIndex = -1;
+		private Table table;
+		private int slot;
+		private Map.Entry<Integer, V> next;
+		private Map.Entry<Integer, V> last;
+
+		private EntryIterator() {
+			advance();
+		}
+
+		@SuppressWarnings("unchecked")
+		private void advance() {
+			next = null;
+			while (next == null) {
+				if (table == null || slot >= table.keys.length) {
+					if (++segmentIndex >= SEGMENTS) {
+						return;
+					}
+					table = segments[segmentIndex].table;
+					slot = 0;
+					continue;
+				}
+				final Object value = table.values.get(slot);
+				if (value != null && value != TOMBSTONE) {
+					next = new SimpleImmutableEntry<>(table.keys[slot], (V) value);
+				}
+				slot++;
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		@Override
+		public Map.Entry<Integer, V> next() {
+			if (next == null) {
+				throw new NoSuchElementException();
+			}
+			last = next;
+			advance();
+			return last;
+		}
+
+		@Override
+		public void remove() {
+			if (last == null) {
+				throw new IllegalStateException();
+			}
+			ConcurrentIntObjectMap.this.remove(last.getKey().intValue());
+			last = null;
+		}
+	}
+}
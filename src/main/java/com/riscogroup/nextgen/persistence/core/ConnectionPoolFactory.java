@@ -0,0 +1,57 @@
+package com.riscogroup.nextgen.persistence.core;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads the external Database configuration and creates the ConnectionPool implementation
+ * selected by the DB_CONNECTION_POOL key. Supported values are "dbcp" (default) and "bag".
+ */
+public final class ConnectionPoolFactory {
+	private static final Logger logger = LoggerFactory.getLogger(ConnectionPoolFactory.class);
+
+	public static final String CONFIGURATION_FILE = "etc/db.conf";
+	public static final String POOL_TYPE_KEY = "DB_CONNECTION_POOL";
+	public static final String POOL_TYPE_DBCP = "dbcp";
+	public static final String POOL_TYPE_BAG = "bag";
+
+	private ConnectionPoolFactory() {
+	}
+
+	public static ConnectionPool createConnectionPool() throws Exception {
+		final Properties props = loadConfiguration();
+		final String type = props.getProperty(POOL_TYPE_KEY, POOL_TYPE_DBCP).trim();
+
+		if (POOL_TYPE_BAG.equalsIgnoreCase(type)) {
+			logger.info("Using concurrent bag connection pool");
+			return new ConcurrentBagConnectionPool(props);
+		}
+		if (!POOL_TYPE_DBCP.equalsIgnoreCase(type) && !type.isEmpty()) {
+			logger.warn("Unknown {} value '{}'. Falling back to {}", POOL_TYPE_KEY, type, POOL_TYPE_DBCP);
+		}
+		return new ConnectionPoolImpl(props);
+	}
+
+	static Properties loadConfiguration() throws Exception {
+		final Properties props = new Properties();
+		try (FileInputStream fis = new FileInputStream(CONFIGURATION_FILE)) {
+			props.load(fis);
+		} catch (FileNotFoundException e) {
+			throw new Exception("Unable to read " + CONFIGURATION_FILE + ". Check if the file exists.");
+		}
+		return props;
+	}
+
+	static int getIntProperty(Properties props, String key, int defaultValue) {
+		final String property = props.getProperty(key);
+		if (property == null || property.trim().isEmpty()) {
+			/* If the property does not exist, put some default value */
+			return defaultValue;
+		}
+		return Integer.parseInt(property.trim());
+	}
+}
@@ -1,7 +1,5 @@
 package com.riscogroup.nextgen.persistence.core;
 
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.Properties;
@@ -19,7 +17,11 @@ public class ConnectionPoolImpl implements ConnectionPool {
 	private BasicDataSource dataSource = null;
 
 	public ConnectionPoolImpl() throws Exception {
-		final String conFile = "etc/db.conf";
+		this(ConnectionPoolFactory.loadConfiguration());
+	}
+
+	public ConnectionPoolImpl(Properties props) throws Exception {
+		final String conFile = ConnectionPoolFactory.CONFIGURATION_FILE;
 
 		String driverClass = null;
 		String url = null;
@@ -28,14 +30,7 @@ public class ConnectionPoolImpl implements ConnectionPool {
 		Integer minIdleConnections = null;
 		Integer maxIdleConnections = null;
 		Integer maxPreparedStatements = null;
-
-		Properties props = new Properties();
-
-		try(FileInputStream fis = new FileInputStream(conFile)) {
-			props.load(fis);
-		} catch (FileNotFoundException e) {
-			throw new Exception("Unable to read " + conFile + ". Check if the file exists.");
-		}
+		Integer prepareThreshold = null;
 
 		/* Load all connection pool configurations from external file */
 		driverClass = props.getProperty("DB_DRIVER_CLASS");
@@ -73,6 +68,14 @@ public class ConnectionPoolImpl implements ConnectionPool {
 			maxPreparedStatements = 20;
 		}
 
+		if(props.containsKey("DB_PREPARE_THRESHOLD") && !props.getProperty("DB_PREPARE_THRESHOLD").isEmpty()) {
+			property = props.getProperty("DB_PREPARE_THRESHOLD");
+			prepareThreshold = Integer.parseInt(property);
+		} else {
+			/* If the property does not exist, put some default value */
+			prepareThreshold = 5;
+		}
+
 		/* Load JDBC driver */
 		Class.forName(driverClass);
 
@@ -83,7 +86,10 @@ public class ConnectionPoolImpl implements ConnectionPool {
 		dataSource.setPassword(pass);
 		dataSource.setMinIdle(minIdleConnections);
 		dataSource.setMaxIdle(maxIdleConnections);
+		/* Statements are pooled per connection by SQL text, the driver prepares them on the server after prepareThreshold executions */
+		dataSource.setPoolPreparedStatements(maxPreparedStatements > 0);
 		dataSource.setMaxOpenPreparedStatements(maxPreparedStatements);
+		dataSource.addConnectionProperty("prepareThreshold", String.valueOf(prepareThreshold));
 	}
 
 	/**
@@ -91,7 +97,7 @@ public class ConnectionPoolImpl implements ConnectionPool {
 	 * 
 	 * @return Connection object.
 	 */
-	public synchronized Connection getConnection() throws SQLException {
+	public Connection getConnection() throws SQLException {
 		Connection connection;
 		connection = (Connection) dataSource.getConnection();
 		return connection;
@@ -1,7 +1,9 @@
 package com.riscogroup.nextgen.persistence.core;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 import com.riscogroup.nextgen.home.api.device.type.ZWaveDevice;
 import com.riscogroup.nextgen.home.api.device.type.ZwaveMultiChannelDevice;
@@ -89,4 +91,11 @@ public class DaoRegistry {
 	public <T> DataAccessObject<T> getDAO(String className){
 		return (DataAccessObject<T>) registry.get(className);
 	}
+
+	/**
+	 * @return names of all classes having a DAO
+	 */
+	public Set<String> getRegisteredClassNames() {
+		return Collections.unmodifiableSet(registry.keySet());
+	}
 }
\ No newline at end of file
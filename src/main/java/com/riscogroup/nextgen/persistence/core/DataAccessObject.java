@@ -1,10 +1,21 @@
 package com.riscogroup.nextgen.persistence.core;
 
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
 
 /**
  * All Database Mapper Objects (Data Access Objects) should extend this class
@@ -20,6 +31,7 @@ import java.util.Map;
 public abstract class DataAccessObject<T> {
 	private final IdentityMap<T> cache;
 	private final TransactionManager transactionManager;
+	private volatile ColumnFormat columnFormat;
 	
 	public DataAccessObject() {
 		cache = new IdentityMap<>();
@@ -41,7 +53,308 @@ public abstract class DataAccessObject<T> {
 	public abstract Map<Integer, T> getAll() throws SQLException;
 
 	public abstract void restoreObjectState(T object) throws SQLException;
+
+	/**
+	 * Persists all given objects, keeping their order. DAOs with many rows per commit
+	 * override this with a single JDBC batch, by default objects are persisted one by one.
+	 */
+	public void persistAll(List<T> objects) throws SQLException {
+		for (T object : objects) {
+			persist(object);
+		}
+	}
+
+	/**
+	 * Updates all given objects. DAOs with many rows per commit override this
+	 * with a single JDBC batch, by default objects are updated one by one.
+	 */
+	public void updateAll(List<T> objects) throws SQLException {
+		for (T object : objects) {
+			update(object);
+		}
+	}
 	
+	/**
+	 * Loads the objects belonging to all given parents. DAOs loaded as part of bigger object graphs
+	 * override this with a single "= ANY(?)" query, by default parents are queried one by one.
+	 *
+	 * @return objects grouped by parent id, parents without objects are not present
+	 */
+	public Map<Integer, List<T>> getAllForIDs(Collection<Integer> parentIds) throws SQLException {
+		final Map<Integer, List<T>> objects = new HashMap<>();
+		for (Integer parentId : parentIds) {
+			final List<T> children = getAllForID(parentId);
+			if (children != null && !children.isEmpty()) {
+				objects.put(parentId, children);
+			}
+		}
+		return objects;
+	}
+
+	/**
+	 * Gets the objects with the given UIDs, the ones not cached with a single "id = ANY(?)" query.
+	 *
+	 * @return objects by UID, UIDs without object are not present
+	 */
+	public abstract Map<Integer, T> getAll(int[] ids) throws SQLException;
+
+	/**
+	 * Puts the cached ones of the given objects into the map.
+	 *
+	 * @return UIDs of the objects not cached, without duplicates
+	 */
+	private Set<Integer> getCached(int[] ids, Map<Integer, T> objects) {
+		final Set<Integer> notCached = new LinkedHashSet<>();
+		for (int id : ids) {
+			if (objects.containsKey(id)) {
+				continue;
+			}
+			final T object = getCache().get(id);
+			if (object != null) {
+				objects.put(id, object);
+			} else {
+				notCached.add(id);
+			}
+		}
+		return notCached;
+	}
+
+	/**
+	 * Fills a newly created Domain Object from the current row of the ResultSet.
+	 */
+	protected interface RowFiller<T> {
+		void fill(T object, ResultSet resultSet) throws SQLException;
+	}
+
+	/**
+	 * Creates the Domain Object of the current row of the ResultSet, null if the row has no object.
+	 */
+	protected interface RowFactory<T> {
+		T create(int objectId, ResultSet resultSet) throws SQLException;
+	}
+
+	/**
+	 * Is called for every row of a batch query, whether its object is loaded, cached or loaded by another Thread.
+	 */
+	protected interface RowListener {
+		void row(int objectId, ResultSet resultSet) throws SQLException;
+	}
+
+	/**
+	 * Loads the relations of objects filled by a batch query, before they are put into the cache.
+	 */
+	protected interface RelationsLoader<T> {
+		void load(List<T> objects) throws SQLException;
+	}
+
+	/**
+	 * Runs the given "parent_column = ANY(?)" query selecting the given columns and groups the objects by parent id.
+	 * The objects are loaded as by loadBatch().
+	 */
+	protected Map<Integer, List<T>> getAllForIDs(String query, ColumnList columns, String parentColumn,
+			Collection<Integer> parentIds, IntFunction<T> factory, RowFiller<T> filler) throws SQLException {
+		return getAllForIDs(query, columns, parentColumn, parentIds, (objectId, resultSet) -> factory.apply(objectId), filler, null);
+	}
+
+	protected Map<Integer, List<T>> getAllForIDs(String query, ColumnList columns, String parentColumn,
+			Collection<Integer> parentIds, RowFactory<T> factory, RowFiller<T> filler, RelationsLoader<T> relations) throws SQLException {
+		final Map<Integer, List<T>> objects = new HashMap<>();
+		if (parentIds.isEmpty()) {
+			return objects;
+		}
+		final int parentIndex = columns.index(parentColumn);
+		final Map<Integer, Integer> parents = new LinkedHashMap<>();
+		final Map<Integer, T> loaded = loadBatch(query, createIdsArray(transactionManager.getConnection(), parentIds),
+				columns.index("id"), factory, filler, relations, (objectId, resultSet) -> parents.put(objectId, resultSet.getInt(parentIndex)));
+
+		for (Map.Entry<Integer, Integer> row : parents.entrySet()) {
+			final T object = loaded.get(row.getKey());
+			if (object != null) {
+				objects.computeIfAbsent(row.getValue(), k -> new ArrayList<>()).add(object);
+			}
+		}
+		return objects;
+	}
+
+	/**
+	 * Takes the cached ones of the given objects from the cache and loads the others with the given
+	 * "id = ANY(?)" query selecting the given columns, as by loadBatch().
+	 *
+	 * @return objects by UID, UIDs without object are not present
+	 */
+	protected Map<Integer, T> getAll(int[] ids, String query, ColumnList columns, IntFunction<T> factory,
+			RowFiller<T> filler) throws SQLException {
+		return getAll(ids, query, columns, (objectId, resultSet) -> factory.apply(objectId), filler, null);
+	}
+
+	protected Map<Integer, T> getAll(int[] ids, String query, ColumnList columns, RowFactory<T> factory,
+			RowFiller<T> filler, RelationsLoader<T> relations) throws SQLException {
+		final Map<Integer, T> objects = new LinkedHashMap<>();
+		final Set<Integer> notCached = getCached(ids, objects);
+		if (notCached.isEmpty()) {
+			return objects;
+		}
+		objects.putAll(loadBatch(query, createIdsArray(transactionManager.getConnection(), notCached),
+				columns.index("id"), factory, filler, relations, null));
+		return objects;
+	}
+
+	/**
+	 * Runs the given query, with the array bound to its only parameter, and returns the objects of its rows.
+	 * Objects already in the cache are taken from it. The others are claimed in an IdentityMap.BatchLoad,
+	 * created, filled and given their relations, and only then put into the cache, so other Threads never
+	 * see them half filled and wait for them meanwhile. If another Thread put the same UID into the cache
+	 * first, its object is returned and the one loaded here dropped. UIDs loaded by another Thread are got
+	 * once the query is done.
+	 *
+	 * @param relations null if the objects have no relations to load
+	 * @param listener null if the rows are not needed
+	 * @return objects by UID, in row order for the rows cached or loaded here
+	 */
+	protected Map<Integer, T> loadBatch(String query, Array parameter, int idIndex, RowFactory<T> factory,
+			RowFiller<T> filler, RelationsLoader<T> relations, RowListener listener) throws SQLException {
+		final Map<Integer, T> objects = new LinkedHashMap<>();
+		final List<Integer> loadedElsewhere = new ArrayList<>();
+
+		try (IdentityMap.BatchLoad<T> batch = getCache().beginBatchLoad()) {
+			final List<T> filled = new ArrayList<>();
+			try (PreparedStatement preparedStatement = transactionManager.getConnection().prepareStatement(query)) {
+				preparedStatement.setArray(1, parameter);
+				try (ResultSet resultSet = preparedStatement.executeQuery()) {
+					while (resultSet.next()) {
+						final int objectId = resultSet.getInt(idIndex);
+						if (listener != null) {
+							listener.row(objectId, resultSet);
+						}
+						final T cached = getCache().get(objectId);
+						if (cached != null) {
+							objects.put(objectId, cached);
+							continue;
+						}
+						if (!batch.claim(objectId)) {
+							loadedElsewhere.add(objectId);
+							continue;
+						}
+						final T object = factory.create(objectId, resultSet);
+						if (object == null) {
+							continue;
+						}
+						/* kept aside by the BatchLoad until complete() */
+						getCache().addIfAbsent(objectId, object);
+						filler.fill(object, resultSet);
+						filled.add(object);
+					}
+				}
+			} catch (SQLException e) {
+				throw new SQLException(e);
+			}
+			if (relations != null && !filled.isEmpty()) {
+				relations.load(filled);
+			}
+			objects.putAll(batch.complete());
+		}
+		for (Integer objectId : loadedElsewhere) {
+			final T object = get(objectId);
+			if (object != null) {
+				objects.put(objectId, object);
+			}
+		}
+		return objects;
+	}
+
+	/**
+	 * Hands all objects to the consumer. DAOs of large tables override this with a RowCursor over
+	 * the table, by default the objects are taken from getAll().
+	 */
+	public void streamAll(Consumer<? super T> consumer) throws SQLException {
+		final Map<Integer, T> objects;
+		HydrationScope.enter();
+		try {
+			objects = getAll();
+		} finally {
+			HydrationScope.exit();
+		}
+		if (objects != null) {
+			objects.values().forEach(consumer);
+		}
+	}
+
+	/**
+	 * Hands the objects of the rows of the given query to the consumer, one row at a time. Cached objects
+	 * are taken from the cache, the others are filled and handed out without being cached, so memory
+	 * stays bounded by the fetch size. The filler resolves the objects referenced by the rows with getReference()
+	 * of their DAOs, loading them could load and cache the streamed table through them. Only the filling is in
+	 * the HydrationScope, setters called by the consumer are registered.
+	 */
+	protected void streamAll(String query, ColumnList columns, IntFunction<T> factory, RowFiller<T> filler,
+			Consumer<? super T> consumer) throws SQLException {
+		final int idIndex = columns.index("id");
+		try (RowCursor<T> cursor = RowCursor.open(transactionManager.getConnection(), query, resultSet -> {
+			final int objectId = resultSet.getInt(idIndex);
+			final T cached = getCache().get(objectId);
+			if (cached != null) {
+				return cached;
+			}
+			final T object;
+			HydrationScope.enter();
+			try {
+				object = factory.apply(objectId);
+				filler.fill(object, resultSet);
+			} finally {
+				HydrationScope.exit();
+			}
+			/* resolving the references may have cached the object of this row */
+			final T loaded = getCache().get(objectId);
+			return loaded != null ? loaded : object;
+		})) {
+			cursor.forEachRemaining(consumer);
+		} catch (RuntimeException e) {
+			if (e.getCause() instanceof SQLException) {
+				throw (SQLException) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Object referred to by a streamed row, without reading the Database.
+	 *
+	 * @return the cached object, or null if it is not cached. DAOs whose objects can stand in for
+	 *         their row by the UID alone return a new, not cached, object holding it instead.
+	 */
+	public T getReference(int objectId) {
+		return getCache().get(objectId);
+	}
+
+	/**
+	 * Called when the bundle stops. DAOs doing work in the background finish it here.
+	 */
+	public void shutdown() {
+	}
+
+	/**
+	 * Restores the columns of a rolled back object from the row image the tracker keeps of its last committed row,
+	 * filling it with the same filler that reads the row from the Database. DAOs try this first in restoreObjectState()
+	 * and read the row back if it returns false: no image is kept, the filler reads a column the image does not
+	 * hold, or DB_ROLLBACK_RESTORE=reload is configured.
+	 */
+	protected boolean restoreFromRowImage(int objectId, T object, DirtyColumnTracker<T> tracker, ColumnList columns,
+			RowFiller<T> filler) {
+		if (!UnitOfWork.isRowImageRestoreEnabled()) {
+			return false;
+		}
+		final ResultSet row = tracker.getCommittedRow(objectId, columns);
+		if (row == null) {
+			return false;
+		}
+		try {
+			filler.fill(object, row);
+			return true;
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
 	protected IdentityMap<T> getCache() {
 		return cache;
 	}
@@ -50,41 +363,121 @@ public abstract class DataAccessObject<T> {
 		return transactionManager;
 	}
 
+	/**
+	 * DAOs caching a whole table call this whenever they insert a new row, so the next getAll()
+	 * queries the table again. The cache is invalidated once more after commit, when the new row
+	 * becomes visible to the other transactions.
+	 */
+	protected void invalidateFullyLoaded() {
+		final IdentityMap<T> identityMap = getCache();
+		identityMap.invalidateFullyLoaded();
+		transactionManager.runAfterCommit(identityMap::invalidateFullyLoaded);
+	}
+
+	/**
+	 * @return UIDs of the cached objects as SQL int array, to be bound to "id <> ALL(?)"
+	 */
+	protected Array createCachedIdsArray(Connection connection) throws SQLException {
+		return connection.createArrayOf("integer", getCache().getExistingIndexes());
+	}
+
+	/**
+	 * @return given ids as SQL int array, to be bound to "= ANY(?)"
+	 */
+	protected static Array createIdsArray(Connection connection, Collection<Integer> ids) throws SQLException {
+		return connection.createArrayOf("integer", ids.toArray(new Integer[ids.size()]));
+	}
+
+	/**
+	 * @return format in which collection valued columns are written, configured per DAO
+	 */
+	protected ColumnFormat getColumnFormat() {
+		ColumnFormat format = columnFormat;
+		if (format == null) {
+			format = ColumnFormat.configuredFor(getClass());
+			columnFormat = format;
+		}
+		return format;
+	}
+
+	/**
+	 * @return collection valued columns written with getColumnFormat(), converted by the ColumnFormatMigrator
+	 */
+	protected List<ColumnFormatMigrator.Column> getCollectionColumns() {
+		return Collections.emptyList();
+	}
+
+	/*
+	 * The deserialize methods read both the toString() and the compact format.
+	 */
+
 	protected Map<String, String> deserializeMapFromToString(final String mapString)   {
-		final Map<String, String> newMap = new HashMap<>();
-		if(mapString != null && mapString.length() > 2) {
-			final String[] mapArr = mapString.replaceAll("[\\{\\}]", "").split(",");
-			for(String line : mapArr) {
-				final String[] lineArr = line.split("=");
-				final String value = lineArr.length > 1 ? lineArr[1].trim() : "";
-				newMap.put(lineArr[0].trim(), value);
-			}
+		if (CompactColumnCodec.isEncoded(mapString)) {
+			return CompactColumnCodec.decodeMap(mapString);
 		}
-		return newMap;
+		return ToStringParser.parseMap(mapString);
 	} 
 	
-	protected List<String> deserializeListFromToString(final String listString)   {
-		final List<String> newList = new ArrayList<>();
-		if(listString != null && listString.length() > 2) {
-			final String[] listArr = listString.replaceAll("[\\[\\]]", "").split(",");
-			for(String line : listArr) {
-				String tmp = line.trim(); 
-				if(tmp.length() > 0) {
-					newList.add(tmp);
-				}
+	protected Map<String, Integer> deserializeIntegerMapFromToString(final String mapString) {
+		if (CompactColumnCodec.isEncoded(mapString)) {
+			final Map<String, Integer> map = new HashMap<>();
+			for (Map.Entry<String, String> entry : CompactColumnCodec.decodeMap(mapString).entrySet()) {
+				map.put(entry.getKey(), Integer.valueOf(entry.getValue()));
 			}
+			return map;
+		}
+		return ToStringParser.parseIntValueMap(mapString);
+	}
+
+	protected List<String> deserializeListFromToString(final String listString)   {
+		if (CompactColumnCodec.isEncoded(listString)) {
+			return CompactColumnCodec.decodeList(listString);
 		}
-		return newList;
+		return ToStringParser.parseList(listString);
 	} 
 
+	/**
+	 * Boxed deserializeIntArrayFromToString(), for the Domain Objects taking their integer lists as List.
+	 */
+	protected List<Integer> deserializeIntegerListFromToString(final String listString) {
+		final int[] values = deserializeIntArrayFromToString(listString);
+		final List<Integer> list = new ArrayList<>(values.length);
+		for (int value : values) {
+			list.add(value);
+		}
+		return list;
+	}
+
+	protected int[] deserializeIntArrayFromToString(final String listString) {
+		if (CompactColumnCodec.isEncoded(listString)) {
+			return CompactColumnCodec.decodeIntArray(listString);
+		}
+		return ToStringParser.parseIntArray(listString);
+	}
+
 	protected String[] deserializeArrayFromString(final String listString)   {
-		String[] listArr = null;
-		if(listString != null && listString.length() > 2) {
-			listArr = listString.replaceAll("[\\[\\]]", "").split(",");
-			for(int i = 0; i < listArr.length; i++) {
-				listArr[i] = listArr[i].trim();
-			}
+		if (CompactColumnCodec.isEncoded(listString)) {
+			return CompactColumnCodec.decodeArray(listString);
 		}
-		return listArr;
+		return ToStringParser.parseArray(listString);
 	} 
+
+	/**
+	 * Boxed deserializeBytesFromToString(), for the Domain Objects taking their byte lists as Byte[].
+	 */
+	protected Byte[] deserializeByteArrayFromToString(final String listString) {
+		final byte[] values = deserializeBytesFromToString(listString);
+		final Byte[] array = new Byte[values.length];
+		for (int i = 0; i < values.length; i++) {
+			array[i] = values[i];
+		}
+		return array;
+	}
+
+	protected byte[] deserializeBytesFromToString(final String listString) {
+		if (CompactColumnCodec.isEncoded(listString)) {
+			return CompactColumnCodec.decodeByteArray(listString);
+		}
+		return ToStringParser.parseBytes(listString);
+	}
 }
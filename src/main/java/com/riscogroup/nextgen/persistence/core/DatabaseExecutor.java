@@ -0,0 +1,164 @@
+package com.riscogroup.nextgen.persistence.core;
+
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded pool of Threads running Database calls for asynchronous callers. One Thread per pooled
+ * Connection is enough, more Threads would only wait for a Connection.
+ *
+ * A call not finished within its timeout completes exceptionally with a TimeoutException. A call
+ * still queued then is not started, a call already running is finished and its result is dropped.
+ * Writes submitted with submitWrite() may commit once started, so their timeout applies only while
+ * they are queued: a write already running completes with its real outcome, however long it takes.
+ * A call submitted while the queue is full completes exceptionally with a RejectedExecutionException.
+ *
+ * Futures complete on the pool Thread, dependent stages doing more than a quick hand-over should be
+ * attached with the *Async methods of CompletableFuture.
+ *
+ * Configured in etc/db.conf with DB_ASYNC_THREADS (the connection pool size by default),
+ * DB_ASYNC_QUEUE_CAPACITY and DB_ASYNC_TIMEOUT_MS.
+ */
+public final class DatabaseExecutor {
+	private static final Logger logger = LoggerFactory.getLogger(DatabaseExecutor.class);
+
+	public static final String THREADS_KEY = "DB_ASYNC_THREADS";
+	public static final String QUEUE_CAPACITY_KEY = "DB_ASYNC_QUEUE_CAPACITY";
+	public static final String TIMEOUT_KEY = "DB_ASYNC_TIMEOUT_MS";
+
+	private static final int DEFAULT_QUEUE_CAPACITY = 1000;
+	private static final int DEFAULT_TIMEOUT_MS = 30000;
+	private static final long STOP_TIMEOUT_MS = 10000;
+
+	private final ThreadPoolExecutor executor;
+	private final ScheduledThreadPoolExecutor timer;
+	private final long defaultTimeoutMs;
+
+	DatabaseExecutor(int threads, int queueCapacity, long defaultTimeoutMs) {
+		final AtomicInteger threadCount = new AtomicInteger();
+		executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueCapacity),
+				runnable -> {
+					final Thread worker = new Thread(runnable, "persistence-async-" + threadCount.incrementAndGet());
+					worker.setDaemon(true);
+					return worker;
+				});
+		executor.allowCoreThreadTimeOut(true);
+		timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+			final Thread thread = new Thread(runnable, "persistence-async-timeout");
+			thread.setDaemon(true);
+			return thread;
+		});
+		/* almost every call finishes in time, its cancelled timeout must not stay in the queue */
+		timer.setRemoveOnCancelPolicy(true);
+		this.defaultTimeoutMs = defaultTimeoutMs;
+	}
+
+	public static DatabaseExecutor start() {
+		int threads = GenericObjectPoolConfig.DEFAULT_MAX_TOTAL;
+		int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+		int timeoutMs = DEFAULT_TIMEOUT_MS;
+		try {
+			final Properties props = ConnectionPoolFactory.loadConfiguration();
+			final String poolType = props.getProperty(ConnectionPoolFactory.POOL_TYPE_KEY, "").trim();
+			if (ConnectionPoolFactory.POOL_TYPE_BAG.equalsIgnoreCase(poolType)) {
+				threads = ConnectionPoolFactory.getIntProperty(props, "DB_MAX_POOL_SIZE", 20);
+			}
+			threads = Math.max(1, ConnectionPoolFactory.getIntProperty(props, THREADS_KEY, threads));
+			queueCapacity = Math.max(1, ConnectionPoolFactory.getIntProperty(props, QUEUE_CAPACITY_KEY, queueCapacity));
+			timeoutMs = Math.max(1, ConnectionPoolFactory.getIntProperty(props, TIMEOUT_KEY, timeoutMs));
+		} catch (Exception e) {
+			logger.warn("{} Using default asynchronous call settings", e.getMessage());
+		}
+		logger.info("Asynchronous Database calls on {} Threads, queue capacity {}, timeout {} ms", threads,
+				queueCapacity, timeoutMs);
+		return new DatabaseExecutor(threads, queueCapacity, timeoutMs);
+	}
+
+	public <T> CompletableFuture<T> submit(Callable<T> call) {
+		return submit(call, defaultTimeoutMs, TimeUnit.MILLISECONDS);
+	}
+
+	public <T> CompletableFuture<T> submit(Callable<T> call, long timeout, TimeUnit unit) {
+		return submit(call, timeout, unit, true);
+	}
+
+	public <T> CompletableFuture<T> submitWrite(Callable<T> call) {
+		return submitWrite(call, defaultTimeoutMs, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Submits a call which may commit, its timeout is the time allowed to wait for a pool Thread.
+	 */
+	public <T> CompletableFuture<T> submitWrite(Callable<T> call, long timeout, TimeUnit unit) {
+		return submit(call, timeout, unit, false);
+	}
+
+	/**
+	 * @param expiresWhileRunning true if the timeout also applies once the call has started
+	 */
+	private <T> CompletableFuture<T> submit(Callable<T> call, long timeout, TimeUnit unit, boolean expiresWhileRunning) {
+		final CompletableFuture<T> result = new CompletableFuture<>();
+		/* set by whichever comes first, the pool Thread starting the call or its expiry */
+		final AtomicBoolean started = new AtomicBoolean();
+		final Future<?> execution;
+		try {
+			execution = executor.submit(() -> {
+				if (!started.compareAndSet(false, true)) {
+					return;
+				}
+				/* an Error completes the future too, a write has no timeout left to complete it once started */
+				try {
+					result.complete(call.call());
+				} catch (Throwable e) {
+					result.completeExceptionally(e);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			result.completeExceptionally(e);
+			return result;
+		}
+		final ScheduledFuture<?> expiry = timer.schedule(() -> {
+			if (!started.compareAndSet(false, true) && !expiresWhileRunning) {
+				return;
+			}
+			if (result.completeExceptionally(new TimeoutException("Database call not finished in " + unit.toMillis(timeout) + " ms"))) {
+				execution.cancel(false);
+			}
+		}, timeout, unit);
+		result.whenComplete((value, e) -> expiry.cancel(false));
+		return result;
+	}
+
+	/**
+	 * Lets the calls already submitted finish, up to a timeout, and stops the Threads.
+	 */
+	public void stop() {
+		executor.shutdown();
+		try {
+			if (!executor.awaitTermination(STOP_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+				logger.warn("Asynchronous Database calls still running, interrupting them");
+				executor.shutdownNow();
+			}
+		} catch (InterruptedException e) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+		/* timeouts already scheduled still fire, so the futures of calls dropped above complete as well */
+		timer.shutdown();
+	}
+}
@@ -0,0 +1,222 @@
+package com.riscogroup.nextgen.persistence.core;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the last committed column values (row image) of every row read or written by a DAO,
+ * so update() can write only the columns whose value differs from the row image.
+ * Rows without an image (never read, or forgotten) are written with all columns.
+ *
+ * UPDATE statements are generated once per combination of changed columns and cached
+ * by the bitmask of those columns.
+ *
+ * The row images are also the committed state a rolled back object is restored from, see getCommittedRow().
+ *
+ * @param <T> Type of the Domain Object mapped to the table
+ */
+public final class DirtyColumnTracker<T> {
+
+	/**
+	 * Extracts the values of the tracked columns from a Domain Object, in the order of the column names.
+	 */
+	public interface ColumnValues<T> {
+		Object[] of(T object);
+	}
+
+	/**
+	 * @return UID of the Domain Object, the value of the id column
+	 */
+	public interface RowId<T> {
+		int of(T object);
+	}
+
+	private final String table;
+	private final String[] columns;
+	private final ColumnValues<T> columnValues;
+	private final ConcurrentIntObjectMap<Object[]> committedRows = new ConcurrentIntObjectMap<>();
+	private final Map<Long, String> statements = new ConcurrentHashMap<>();
+	private final Map<ColumnList, int[]> imageIndexes = new ConcurrentHashMap<>();
+
+	public DirtyColumnTracker(String table, String[] columns, ColumnValues<T> columnValues) {
+		if (columns.length > Long.SIZE - 1) {
+			throw new IllegalArgumentException("Too many columns for " + table);
+		}
+		this.table = table;
+		this.columns = columns.clone();
+		this.columnValues = columnValues;
+	}
+
+	/**
+	 * Records the row as it is in the Database, called once the object has been filled with data.
+	 */
+	public void remember(int id, T object) {
+		committedRows.put(id, columnValues.of(object));
+	}
+
+	public void forget(int id) {
+		committedRows.remove(id);
+	}
+
+	/**
+	 * Row image of the object as a ResultSet positioned on the row, read with the ordinals of the
+	 * given SELECT column list. Columns of the list that are not tracked can not be read from it.
+	 *
+	 * @return null if there is no row image of the object
+	 */
+	public ResultSet getCommittedRow(int id, ColumnList selectedColumns) {
+		final Object[] row = committedRows.get(id);
+		if (row == null) {
+			return null;
+		}
+		return readRow(id, row, selectedColumns);
+	}
+
+	/**
+	 * Row image taken by getRow() as a ResultSet positioned on the row, read the same way as getCommittedRow().
+	 */
+	public ResultSet readRow(int id, Object[] row, ColumnList selectedColumns) {
+		return RowImage.of(id, row, imageIndexes.computeIfAbsent(selectedColumns, this::mapColumns));
+	}
+
+	private int[] mapColumns(ColumnList selectedColumns) {
+		final int[] indexes = new int[selectedColumns.size() + 1];
+		Arrays.fill(indexes, RowImage.NOT_IN_IMAGE);
+		for (int ordinal = 1; ordinal <= selectedColumns.size(); ordinal++) {
+			final String name = selectedColumns.name(ordinal);
+			if ("id".equals(name)) {
+				indexes[ordinal] = RowImage.ID_COLUMN;
+				continue;
+			}
+			for (int i = 0; i < columns.length; i++) {
+				if (columns[i].equals(name)) {
+					indexes[ordinal] = i;
+					break;
+				}
+			}
+		}
+		return indexes;
+	}
+
+	String getTable() {
+		return table;
+	}
+
+	String[] getColumns() {
+		return columns.clone();
+	}
+
+	/**
+	 * @return values of the tracked columns of the object, in the order of the column names
+	 */
+	public Object[] getRow(T object) {
+		return columnValues.of(object);
+	}
+
+	/**
+	 * Writes the changed columns of the object. The row image is replaced after the transaction commits.
+	 *
+	 * @return false if no column has changed and no statement was executed
+	 */
+	public boolean update(Connection connection, int id, T object) throws SQLException {
+		final Object[] row = columnValues.of(object);
+		final long dirtyColumns = getDirtyColumns(id, row);
+		if (dirtyColumns == 0) {
+			return false;
+		}
+		try (PreparedStatement stmnt = connection.prepareStatement(getStatement(dirtyColumns))) {
+			bind(stmnt, dirtyColumns, row, id);
+			stmnt.executeUpdate();
+		}
+		rememberAfterCommit(id, row);
+		return true;
+	}
+
+	/**
+	 * Updates all objects in JDBC batches, one batch per combination of changed columns.
+	 */
+	public void updateAll(Connection connection, List<T> objects, RowId<T> rowId) throws SQLException {
+		final Map<Integer, Object[]> rows = new LinkedHashMap<>();
+		for (T object : objects) {
+			rows.put(rowId.of(object), columnValues.of(object));
+		}
+		updateRows(connection, rows);
+	}
+
+	/**
+	 * Writes the row images taken by getRow() in JDBC batches, one batch per combination of changed columns.
+	 * The row images replace the committed ones after the transaction commits.
+	 */
+	void updateRows(Connection connection, Map<Integer, Object[]> rows) throws SQLException {
+		final Map<Long, List<Integer>> batches = new LinkedHashMap<>();
+		for (Map.Entry<Integer, Object[]> row : rows.entrySet()) {
+			final long dirtyColumns = getDirtyColumns(row.getKey(), row.getValue());
+			if (dirtyColumns != 0) {
+				batches.computeIfAbsent(dirtyColumns, k -> new ArrayList<>()).add(row.getKey());
+			}
+		}
+		for (Map.Entry<Long, List<Integer>> batch : batches.entrySet()) {
+			try (PreparedStatement stmnt = connection.prepareStatement(getStatement(batch.getKey()))) {
+				for (Integer id : batch.getValue()) {
+					bind(stmnt, batch.getKey(), rows.get(id), id);
+					stmnt.addBatch();
+				}
+				stmnt.executeBatch();
+			}
+			for (Integer id : batch.getValue()) {
+				rememberAfterCommit(id, rows.get(id));
+			}
+		}
+	}
+
+	private long getDirtyColumns(int id, Object[] row) {
+		final Object[] committedRow = committedRows.get(id);
+		if (committedRow == null) {
+			return (1L << columns.length) - 1;
+		}
+		long dirtyColumns = 0;
+		for (int i = 0; i < row.length; i++) {
+			if (!Objects.equals(row[i], committedRow[i])) {
+				dirtyColumns |= 1L << i;
+			}
+		}
+		return dirtyColumns;
+	}
+
+	private String getStatement(long dirtyColumns) {
+		return statements.computeIfAbsent(dirtyColumns, mask -> {
+			final StringBuilder sb = new StringBuilder();
+			sb.append("UPDATE ").append(table).append(" SET ");
+			for (int i = 0; i < columns.length; i++) {
+				if ((mask & (1L << i)) != 0) {
+					sb.append(columns[i]).append("=?, ");
+				}
+			}
+			sb.setLength(sb.length() - 2);
+			return sb.append(" WHERE id=?").toString();
+		});
+	}
+
+	private void bind(PreparedStatement stmnt, long dirtyColumns, Object[] row, int id) throws SQLException {
+		int index = 1;
+		for (int i = 0; i < row.length; i++) {
+			if ((dirtyColumns & (1L << i)) != 0) {
+				stmnt.setObject(index++, row[i]);
+			}
+		}
+		stmnt.setInt(index, id);
+	}
+
+	private void rememberAfterCommit(int id, Object[] row) {
+		TransactionManager.getInstance().runAfterCommit(() -> committedRows.put(id, row));
+	}
+}
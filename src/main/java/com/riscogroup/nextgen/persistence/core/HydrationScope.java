@@ -0,0 +1,39 @@
+package com.riscogroup.nextgen.persistence.core;
+
+/**
+ * Marks that the current Thread is executing persistence code (hydrating, persisting or restoring
+ * Domain Objects). Setters of Domain Objects called while the scope is active are made by the
+ * persistence layer itself and must not be registered in the UnitOfWork.
+ *
+ * The scope is entered only around the DAO calls reading, writing or restoring objects, not around
+ * the whole session, so setters called by the application in between (a streamAll consumer) are
+ * registered as usual. Scopes can be nested, the Thread leaves the scope when every enter() has been
+ * matched by exit().
+ */
+public final class HydrationScope {
+
+	private static final ThreadLocal<int[]> depth = ThreadLocal.withInitial(() -> new int[1]);
+
+	private HydrationScope() {
+	}
+
+	public static void enter() {
+		depth.get()[0]++;
+	}
+
+	/**
+	 * @throws IllegalStateException if the Thread is not in the scope, an unmatched exit() means
+	 * setters of the caller would no longer be registered
+	 */
+	public static void exit() {
+		final int[] counter = depth.get();
+		if (counter[0] == 0) {
+			throw new IllegalStateException("HydrationScope exited without being entered");
+		}
+		counter[0]--;
+	}
+
+	public static boolean isActive() {
+		return depth.get()[0] > 0;
+	}
+}
@@ -1,25 +1,273 @@
 package com.riscogroup.nextgen.persistence.core;
 
+import java.sql.SQLException;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Cache of Domain Objects by their UID. Besides the objects it keeps track whether it holds
+ * every row of the table (fully loaded), so getAll() can be answered without a query.
+ * Any removal or new row in the table moves the version forward and drops the fully loaded state.
+ *
+ * Single objects are loaded through load(), so concurrent requests for the same not cached UID share
+ * one Database load and only fully loaded objects are put into the map. Objects read by one query are
+ * loaded the same way through a BatchLoad. A Thread that can not wait for the load of another Thread
+ * without closing a cycle of waits loads the object itself, keeping it aside until its load is done.
+ */
 public class IdentityMap<T> {
 
-	private final Map<Integer, T> cache = new ConcurrentHashMap<>();
-	
-	public T addIfAbsent(Integer key, T value) {
+	/**
+	 * Reads one object from the Database, null if it does not exist.
+	 */
+	@FunctionalInterface
+	public interface Loader<T> {
+		T load() throws SQLException;
+	}
+
+	/**
+	 * Loads of the objects read by one query, claimed one by one by the loading Thread before they are
+	 * created. Claimed objects added with addIfAbsent() are kept aside as within load(), and complete()
+	 * puts them into the map once they are filled with their data and relations. Other Threads asking
+	 * for a claimed UID meanwhile wait for complete(). Loads not completed fail when the BatchLoad is
+	 * closed, and the waiting Threads run their own load.
+	 */
+	public static final class BatchLoad<T> implements AutoCloseable {
+		private final IdentityMap<T> map;
+		private final Map<Integer, InFlightLoad<T>> claimed = new LinkedHashMap<>();
+
+		private BatchLoad(IdentityMap<T> map) {
+			this.map = map;
+		}
+
+		/**
+		 * @return true if the current Thread is to load the object, false if it is cached, already
+		 *         claimed or loaded by another Thread
+		 */
+		public boolean claim(int key) {
+			if (claimed.containsKey(key) || map.cache.containsKey(key)) {
+				return false;
+			}
+			final InFlightLoad<T> load = new InFlightLoad<>();
+			if (map.loads.putIfAbsent(key, load) != null) {
+				return false;
+			}
+			/* a load completed between the two checks has already put its object into the map */
+			if (map.cache.containsKey(key)) {
+				map.loads.remove(key, load);
+				load.complete(map.cache.get(key));
+				return false;
+			}
+			claimed.put(key, load);
+			return true;
+		}
+
+		/**
+		 * @return UIDs claimed and not completed yet
+		 */
+		public Set<Integer> getClaimed() {
+			return Collections.unmodifiableSet(claimed.keySet());
+		}
+
+		/**
+		 * Puts the claimed objects into the map and hands them to the Threads waiting for them.
+		 *
+		 * @return cached object of every claimed UID whose object was added
+		 */
+		public Map<Integer, T> complete() {
+			final Map<Integer, T> objects = new LinkedHashMap<>();
+			final Iterator<Map.Entry<Integer, InFlightLoad<T>>> it = claimed.entrySet().iterator();
+			while (it.hasNext()) {
+				final Map.Entry<Integer, InFlightLoad<T>> entry = it.next();
+				final int key = entry.getKey();
+				final InFlightLoad<T> load = entry.getValue();
+				T object = load.getPartial();
+				if (object != null) {
+					final T existing = map.cache.putIfAbsent(key, object);
+					if (existing != null) {
+						object = existing;
+					}
+					objects.put(key, object);
+				}
+				load.complete(object);
+				map.loads.remove(key, load);
+				it.remove();
+			}
+			return objects;
+		}
+
+		@Override
+		public void close() {
+			for (Map.Entry<Integer, InFlightLoad<T>> entry : claimed.entrySet()) {
+				map.loads.remove(entry.getKey(), entry.getValue());
+				entry.getValue().fail();
+			}
+			claimed.clear();
+		}
+	}
+
+	private final ConcurrentIntObjectMap<T> cache = new ConcurrentIntObjectMap<>();
+	private final AtomicLong version = new AtomicLong();
+	private volatile long loadedVersion = -1;
+	private final Map<Integer, InFlightLoad<T>> loads = new ConcurrentHashMap<>();
+	/* objects being loaded by a Thread outside of the load of another Thread, by UID, see loadInline() */
+	private final Map<Thread, Map<Integer, T>> inlineLoads = new ConcurrentHashMap<>();
+
+	/**
+	 * Returns the cached object, or runs the loader and caches its result. While the loader runs,
+	 * other Threads asking for the same UID wait for its result instead of querying the Database.
+	 * If the loader fails, the next waiting Thread runs its own load.
+	 */
+	public T load(int key, Loader<T> loader) throws SQLException {
+		for (;;) {
+			final T cached = get(key);
+			if (cached != null) {
+				return cached;
+			}
+			final InFlightLoad<T> load = new InFlightLoad<>();
+			final InFlightLoad<T> running = loads.putIfAbsent(key, load);
+			if (running == null) {
+				return runLoad(key, load, loader);
+			}
+			if (running.isOwnedByCurrentThread()) {
+				final T partial = running.getPartial();
+				return partial != null ? partial : loader.load();
+			}
+			if (running.wouldDeadlock()) {
+				final T partial = running.getPartial();
+				return partial != null ? partial : loadInline(key, loader);
+			}
+			if (running.await()) {
+				return running.getResult();
+			}
+		}
+	}
+
+	/**
+	 * @return BatchLoad to be closed once the objects are completed, or loading them has failed
+	 */
+	public BatchLoad<T> beginBatchLoad() {
+		return new BatchLoad<>(this);
+	}
+
+	/**
+	 * Loads an object the current Thread can not wait for, as its load by another Thread has not created
+	 * it yet. The object added meanwhile is seen by the current Thread only, and is put into the map once
+	 * the loader has filled it, unless the other load has put its object first.
+	 */
+	private T loadInline(int key, Loader<T> loader) throws SQLException {
+		final Thread current = Thread.currentThread();
+		final Map<Integer, T> objects = inlineLoads.computeIfAbsent(current, thread -> new HashMap<>());
+		if (objects.containsKey(key)) {
+			return loader.load();
+		}
+		objects.put(key, null);
+		try {
+			final T object = loader.load();
+			if (object == null) {
+				return null;
+			}
+			final T existing = cache.putIfAbsent(key, object);
+			return existing != null ? existing : object;
+		} finally {
+			objects.remove(key);
+			if (objects.isEmpty()) {
+				inlineLoads.remove(current);
+			}
+		}
+	}
+
+	/**
+	 * @return objects the current Thread is loading inline, null if there are none
+	 */
+	private Map<Integer, T> getInlineLoads() {
+		return inlineLoads.isEmpty() ? null : inlineLoads.get(Thread.currentThread());
+	}
+
+	private T runLoad(int key, InFlightLoad<T> load, Loader<T> loader) throws SQLException {
+		boolean completed = false;
+		try {
+			T object = loader.load();
+			if (object != null) {
+				final T existing = cache.putIfAbsent(key, object);
+				if (existing != null) {
+					object = existing;
+				}
+			}
+			load.complete(object);
+			completed = true;
+			return object;
+		} finally {
+			loads.remove(key, load);
+			if (!completed) {
+				load.fail();
+			}
+		}
+	}
+
+	/**
+	 * Objects are added right after being read and before being filled with data. Within load() or a
+	 * BatchLoad the object is kept aside for the loading Thread and put into the map once it is filled.
+	 */
+	public T addIfAbsent(int key, T value) {
+		final Map<Integer, T> inline = getInlineLoads();
+		if (inline != null && inline.containsKey(key)) {
+			final T partial = inline.get(key);
+			if (partial == null) {
+				inline.put(key, value);
+			}
+			return partial;
+		}
+		final InFlightLoad<T> load = loads.isEmpty() ? null : loads.get(key);
+		if (load != null && load.isOwnedByCurrentThread()) {
+			final T partial = load.getPartial();
+			if (partial == null) {
+				load.setPartial(value);
+			}
+			return partial;
+		}
 		return cache.putIfAbsent(key, value);
 	}
-	
-	public void replace(Integer key, T newValue) {
+
+	/**
+	 * Keeps an object whose row has just been written cached, instead of reading it back on the next get().
+	 * If the transaction rolls back the object is evicted, so the next get() reads the committed row.
+	 */
+	public void writeThrough(int key, T value) {
+		replace(key, value);
+		TransactionManager.getInstance().runAfterRollback(() -> {
+			if (cache.get(key) == value) {
+				remove(key);
+			}
+		});
+	}
+
+	public void replace(int key, T newValue) {
 		cache.put(key, newValue);
 	}
 
-	public T get(Integer objectId) {
-		return cache.get(objectId);
+	/**
+	 * @return the cached object, or the object being loaded by the current Thread
+	 */
+	public T get(int objectId) {
+		final T object = cache.get(objectId);
+		if (object != null || loads.isEmpty() && inlineLoads.isEmpty()) {
+			return object;
+		}
+		final Map<Integer, T> inline = getInlineLoads();
+		if (inline != null && inline.get(objectId) != null) {
+			return inline.get(objectId);
+		}
+		final InFlightLoad<T> load = loads.get(objectId);
+		return load != null && load.isOwnedByCurrentThread() ? load.getPartial() : null;
 	}
-	
+
 	public Map<Integer, T> getAll(){
 		return Collections.unmodifiableMap(cache);
 	}
@@ -29,21 +277,59 @@ public class IdentityMap<T> {
 	}
 
 	public void remove(int objectId) {
-		cache.remove(objectId);
-	}
-	
-	public String getExistingIndexesString() {
-		final StringBuilder sb = new StringBuilder();
-		for(Integer key : cache.keySet()) {
-			sb.append(key).append(",");
+		final Map<Integer, T> inline = getInlineLoads();
+		if (inline != null && inline.containsKey(objectId)) {
+			inline.put(objectId, null);
+		}
+		final InFlightLoad<T> load = loads.isEmpty() ? null : loads.get(objectId);
+		if (load != null && load.isOwnedByCurrentThread()) {
+			load.setPartial(null);
 		}
-		if(sb.length() == 0) {
-			return "";
+		final T removed = cache.remove(objectId);
+		if (removed != null) {
+			invalidateFullyLoaded();
 		}
-		return sb.replace(sb.length() - 1, sb.length(), "").toString();
+	}
+
+	/**
+	 * @return UIDs of all cached objects
+	 */
+	public Integer[] getExistingIndexes() {
+		final Integer[] keys = new Integer[cache.size()];
+		final int[] count = new int[1];
+		cache.forEachKey(key -> {
+			if (count[0] < keys.length) {
+				keys[count[0]++] = key;
+			}
+		});
+		return count[0] == keys.length ? keys : Arrays.copyOf(keys, count[0]);
 	}
 
 	public boolean isEmpty() {
-		return cache.size() == 0;
+		return cache.isEmpty();
+	}
+
+	public boolean isFullyLoaded() {
+		return loadedVersion == version.get();
+	}
+
+	/**
+	 * Called before the query loading all not cached rows.
+	 * 
+	 * @return version to be passed to completeFullLoad() once all rows are cached
+	 */
+	public long beginFullLoad() {
+		return version.get();
+	}
+
+	/**
+	 * Marks the cache as holding all rows, unless it was invalidated since beginFullLoad().
+	 */
+	public void completeFullLoad(long loadVersion) {
+		loadedVersion = loadVersion;
+	}
+
+	public void invalidateFullyLoaded() {
+		version.incrementAndGet();
 	}
 }
@@ -0,0 +1,91 @@
+package com.riscogroup.nextgen.persistence.core;
+
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Load of one object from the Database, run by the owner Thread and awaited by every other Thread
+ * asking for the same object meanwhile. While the load runs, the object being filled is visible
+ * only to the owner, which needs it to resolve references back to the object.
+ *
+ * Loads of related objects can wait on each other from different Threads (a device loading its
+ * functions while a function loads its device). Every waiting Thread is registered, and a Thread
+ * that would close a cycle of waits is given the object being filled instead of waiting, just as
+ * the owner is.
+ *
+ * @param <T> Type of the loaded Domain Object
+ */
+final class InFlightLoad<T> {
+	private static final int MAX_WAIT_CHAIN = 64;
+	private static final Map<Thread, InFlightLoad<?>> waiting = new ConcurrentHashMap<>();
+
+	private final Thread owner = Thread.currentThread();
+	private final CountDownLatch done = new CountDownLatch(1);
+	private volatile T partial;
+	private volatile T result;
+	private volatile boolean failed;
+
+	boolean isOwnedByCurrentThread() {
+		return owner == Thread.currentThread();
+	}
+
+	T getPartial() {
+		return partial;
+	}
+
+	void setPartial(T object) {
+		partial = object;
+	}
+
+	void complete(T object) {
+		result = object;
+		done.countDown();
+	}
+
+	void fail() {
+		failed = true;
+		done.countDown();
+	}
+
+	/**
+	 * @return true if the load completed, false if it failed and has to be run again
+	 */
+	boolean await() throws SQLException {
+		final Thread current = Thread.currentThread();
+		waiting.put(current, this);
+		try {
+			done.await();
+		} catch (InterruptedException e) {
+			current.interrupt();
+			throw new SQLException("Interrupted while waiting for an object loaded by " + owner.getName(), e);
+		} finally {
+			waiting.remove(current);
+		}
+		return !failed;
+	}
+
+	T getResult() {
+		return result;
+	}
+
+	/**
+	 * Registers the current Thread as waiting for this load and checks if the owner is, directly
+	 * or through other loads, waiting for the current Thread. Registering before checking makes
+	 * sure that of two Threads closing a cycle at the same time at least one sees it.
+	 */
+	boolean wouldDeadlock() {
+		final Thread current = Thread.currentThread();
+		waiting.put(current, this);
+		InFlightLoad<?> load = this;
+		for (int i = 0; load != null && i < MAX_WAIT_CHAIN; i++) {
+			if (load.owner == current) {
+				waiting.remove(current);
+				return true;
+			}
+			load = waiting.get(load.owner);
+		}
+		return false;
+	}
+}
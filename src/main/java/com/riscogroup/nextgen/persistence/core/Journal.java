@@ -0,0 +1,280 @@
+package com.riscogroup.nextgen.persistence.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append only journal of byte records, kept in memory mapped segment files of a directory.
+ *
+ * Segment layout:
+ * <pre>
+ *   magic "PJ01", then frames: &lt;length int&gt;&lt;crc32 int&gt;&lt;payload&gt;...
+ * </pre>
+ * Segment files are created zero filled, so a zero length ends the records of a segment. A frame
+ * whose CRC does not match, written only partly when the power was lost, ends the segment as well.
+ *
+ * Every record gets a position, growing with each append. Segments are deleted by release() once
+ * all their records are no longer needed.
+ *
+ * How often the mapped segment is forced to the storage is set by the FsyncPolicy.
+ */
+final class Journal {
+	private static final Logger logger = LoggerFactory.getLogger(Journal.class);
+
+	private static final int MAGIC = 0x504A3031;
+	private static final int HEADER_SIZE = 4;
+	private static final int FRAME_HEADER_SIZE = 8;
+	private static final String SUFFIX = ".journal";
+
+	enum FsyncPolicy {
+		/** every record is forced before append() returns */
+		RECORD,
+		/** records are forced together by a background Thread every fsync interval (group commit) */
+		INTERVAL,
+		/** records are left to the operating system */
+		NONE;
+
+		static FsyncPolicy parse(String value) {
+			for (FsyncPolicy policy : values()) {
+				if (policy.name().equalsIgnoreCase(value.trim())) {
+					return policy;
+				}
+			}
+			logger.warn("Unknown journal fsync policy '{}'. Falling back to {}", value, INTERVAL);
+			return INTERVAL;
+		}
+	}
+
+	/**
+	 * Record read back from the journal, with the position it was appended at.
+	 */
+	static final class Record {
+		final long position;
+		final byte[] payload;
+
+		private Record(long position, byte[] payload) {
+			this.position = position;
+			this.payload = payload;
+		}
+	}
+
+	private final File directory;
+	private final int segmentSize;
+	private final FsyncPolicy fsyncPolicy;
+	private final TreeMap<Long, File> segments = new TreeMap<>();
+	private long segmentNumber;
+	private MappedByteBuffer segment;
+	private boolean dirty;
+	private boolean closed;
+
+	private Journal(File directory, int segmentSize, FsyncPolicy fsyncPolicy) {
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.fsyncPolicy = fsyncPolicy;
+	}
+
+	/**
+	 * Opens the journal in the given directory. Records already in it can be read with readAll(),
+	 * new records are appended to a new segment.
+	 */
+	static Journal open(File directory, int segmentSize, FsyncPolicy fsyncPolicy, long fsyncIntervalMs) throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Can not create journal directory " + directory);
+		}
+		final Journal journal = new Journal(directory, segmentSize, fsyncPolicy);
+		final File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+		if (files != null) {
+			for (File file : files) {
+				try {
+					journal.segments.put(Long.parseLong(file.getName().substring(0, file.getName().length() - SUFFIX.length())), file);
+				} catch (NumberFormatException e) {
+					logger.warn("Ignoring unknown file {} in the journal", file);
+				}
+			}
+		}
+		journal.segmentNumber = journal.segments.isEmpty() ? 1 : journal.segments.lastKey() + 1;
+		journal.createSegment(segmentSize);
+		if (fsyncPolicy == FsyncPolicy.INTERVAL) {
+			journal.startFsyncThread(Math.max(1, fsyncIntervalMs));
+		}
+		return journal;
+	}
+
+	/**
+	 * @return position of the appended record
+	 */
+	synchronized long append(byte[] payload) throws IOException {
+		if (closed) {
+			throw new IOException("Journal " + directory + " is closed");
+		}
+		final int frameSize = FRAME_HEADER_SIZE + payload.length;
+		if (segment.remaining() < frameSize) {
+			forceSegment();
+			segmentNumber++;
+			createSegment(Math.max(segmentSize, HEADER_SIZE + frameSize));
+		}
+		final long position = position();
+		final CRC32 crc = new CRC32();
+		crc.update(payload, 0, payload.length);
+		final int start = segment.position();
+		segment.position(start + 4);
+		segment.putInt((int) crc.getValue());
+		segment.put(payload);
+		/* the length goes last, so the frame is not valid until it is written completely */
+		segment.putInt(start, payload.length);
+		if (fsyncPolicy == FsyncPolicy.RECORD) {
+			segment.force();
+		} else {
+			dirty = true;
+		}
+		return position;
+	}
+
+	/**
+	 * @return position the next record will be appended at
+	 */
+	synchronized long position() {
+		return (segmentNumber << 32) | segment.position();
+	}
+
+	/**
+	 * Deletes the segments holding only records appended before the given position. If nothing was
+	 * appended since, the current segment is replaced with an empty one as well.
+	 */
+	synchronized void release(long position) {
+		final long releasedSegment = position >>> 32;
+		while (!segments.isEmpty() && segments.firstKey() < releasedSegment) {
+			delete(segments.pollFirstEntry().getValue());
+		}
+		if (position == position() && segment.position() > HEADER_SIZE) {
+			/* the old segment is deleted before the new one exists, so a crash in between leaves no stale records */
+			delete(segments.remove(segmentNumber));
+			segmentNumber++;
+			try {
+				createSegment(segmentSize);
+			} catch (IOException e) {
+				closed = true;
+				logger.error("Journal {} closed: {}", directory, e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * @return all valid records of the segments existing when the journal was opened, in append order
+	 */
+	synchronized List<Record> readAll() throws IOException {
+		final List<Record> records = new ArrayList<>();
+		for (Long number : segments.headMap(segmentNumber).keySet()) {
+			read(number, segments.get(number), records);
+		}
+		return records;
+	}
+
+	synchronized void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		forceSegment();
+		notifyAll();
+	}
+
+	private void read(long number, File file, List<Record> records) throws IOException {
+		final byte[] content = Files.readAllBytes(file.toPath());
+		final ByteBuffer buffer = ByteBuffer.wrap(content);
+		if (content.length < HEADER_SIZE || buffer.getInt() != MAGIC) {
+			logger.warn("Journal segment {} has no valid header", file);
+			return;
+		}
+		try {
+			while (buffer.remaining() >= FRAME_HEADER_SIZE) {
+				final int start = buffer.position();
+				final int length = buffer.getInt();
+				final int crcValue = buffer.getInt();
+				if (length <= 0 || length > buffer.remaining()) {
+					return;
+				}
+				final byte[] payload = new byte[length];
+				buffer.get(payload);
+				final CRC32 crc = new CRC32();
+				crc.update(payload, 0, length);
+				if ((int) crc.getValue() != crcValue) {
+					logger.warn("Journal segment {} ends with a damaged record at {}", file, start);
+					return;
+				}
+				records.add(new Record((number << 32) | start, payload));
+			}
+		} catch (BufferUnderflowException e) {
+			logger.warn("Journal segment {} is truncated", file);
+		}
+	}
+
+	private void createSegment(int size) throws IOException {
+		final File file = new File(directory, String.format("%016d%s", segmentNumber, SUFFIX));
+		final Path path = file.toPath();
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+				StandardOpenOption.WRITE)) {
+			segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+		}
+		segment.putInt(MAGIC);
+		segment.force();
+		segments.put(segmentNumber, file);
+		forceDirectory();
+	}
+
+	private void delete(File file) {
+		if (file != null && !file.delete() && file.exists()) {
+			logger.error("Journal segment {} could not be deleted", file);
+		}
+		forceDirectory();
+	}
+
+	/**
+	 * Makes creation and deletion of segment files durable, where the platform allows it.
+	 */
+	private void forceDirectory() {
+		try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException e) {
+			logger.debug("Journal directory {} not forced: {}", directory, e.getMessage());
+		}
+	}
+
+	private void forceSegment() {
+		if (dirty) {
+			segment.force();
+			dirty = false;
+		}
+	}
+
+	private void startFsyncThread(long fsyncIntervalMs) {
+		final Thread fsyncThread = new Thread(() -> {
+			synchronized (this) {
+				while (!closed) {
+					forceSegment();
+					try {
+						wait(fsyncIntervalMs);
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+			}
+		}, "persistence-journal-fsync-" + directory.getName());
+		fsyncThread.setDaemon(true);
+		fsyncThread.start();
+	}
+}
@@ -0,0 +1,98 @@
+package com.riscogroup.nextgen.persistence.core;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Insertion ordered Set that compares its elements by reference (==) instead of equals().
+ * add, remove, contains and poll are all O(1). Domain Objects are registered by identity because
+ * their equals() is based on the UID which is not yet assigned for new objects.
+ *
+ * Not thread safe, it is meant to be used by the Thread local UnitOfWork only.
+ */
+class LinkedIdentitySet<E> {
+
+	private final Map<E, Node<E>> index = new IdentityHashMap<>();
+	private Node<E> head;
+	private Node<E> tail;
+
+	private static final class Node<E> {
+		private final E item;
+		private Node<E> prev;
+		private Node<E> next;
+
+		private Node(E item) {
+			this.item = item;
+		}
+	}
+
+	/**
+	 * Appends the element at the end of the Set if it is not already present.
+	 *
+	 * @return true if the element was added
+	 */
+	public boolean add(E element) {
+		if (index.containsKey(element)) {
+			return false;
+		}
+		final Node<E> node = new Node<>(element);
+		if (tail == null) {
+			head = node;
+		} else {
+			tail.next = node;
+			node.prev = tail;
+		}
+		tail = node;
+		index.put(element, node);
+		return true;
+	}
+
+	public boolean contains(Object element) {
+		return index.containsKey(element);
+	}
+
+	public boolean remove(Object element) {
+		final Node<E> node = index.remove(element);
+		if (node == null) {
+			return false;
+		}
+		unlink(node);
+		return true;
+	}
+
+	/**
+	 * Removes and returns the oldest element of the Set, or null if the Set is empty.
+	 */
+	public E poll() {
+		final Node<E> node = head;
+		if (node == null) {
+			return null;
+		}
+		index.remove(node.item);
+		unlink(node);
+		return node.item;
+	}
+
+	public boolean isEmpty() {
+		return head == null;
+	}
+
+	public int size() {
+		return index.size();
+	}
+
+	private void unlink(Node<E> node) {
+		if (node.prev == null) {
+			head = node.next;
+		} else {
+			node.prev.next = node.next;
+		}
+		if (node.next == null) {
+			tail = node.prev;
+		} else {
+			node.next.prev = node.prev;
+		}
+		node.prev = null;
+		node.next = null;
+	}
+}
@@ -0,0 +1,139 @@
+package com.riscogroup.nextgen.persistence.core;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Keeps a pivot (many to many) table in sync with the member ids of its owners by writing only
+ * the difference between the new members and the members last persisted, instead of deleting
+ * all rows of the owner and inserting them again.
+ *
+ * Members of an owner are remembered when they are read from the Database and replaced after the
+ * transaction writing them commits. Members of owners that are not remembered are read first.
+ * Members read never replace remembered ones, a reader that started before a commit could otherwise
+ * put back the members the commit has just replaced.
+ */
+public final class PivotTableSync {
+
+	private final String selectQuery;
+	private final String insertQuery;
+	private final String deleteQuery;
+	private final ConcurrentIntObjectMap<Set<Integer>> persistedMembers = new ConcurrentIntObjectMap<>();
+
+	/**
+	 * @param table name of the pivot table, including the schema
+	 * @param ownerColumn column holding the id of the owner
+	 * @param memberColumn column holding the id of the member
+	 */
+	public PivotTableSync(String table, String ownerColumn, String memberColumn) {
+		selectQuery = "SELECT " + memberColumn + " FROM " + table + " WHERE " + ownerColumn + "=?";
+		insertQuery = "INSERT INTO " + table + " (" + ownerColumn + ", " + memberColumn + ") VALUES (?,?)";
+		deleteQuery = "DELETE FROM " + table + " WHERE " + ownerColumn + "=? AND " + memberColumn + " = ANY(?)";
+	}
+
+	/**
+	 * Records the members of the owner as they are in the Database, unless members of the owner are already
+	 * remembered. Those were either read as well or written by a committed transaction, which is newer.
+	 */
+	public void remember(int ownerId, Collection<Integer> memberIds) {
+		persistedMembers.putIfAbsent(ownerId, toSet(memberIds));
+	}
+
+	/**
+	 * Must be called when rows of the owner are written without going through sync().
+	 */
+	public void forget(int ownerId) {
+		persistedMembers.remove(ownerId);
+	}
+
+	/**
+	 * Inserts the rows of an owner which has none yet, such as a newly persisted one.
+	 *
+	 * @param memberIds members of the owner, null for none
+	 */
+	public void insert(Connection connection, int ownerId, Collection<Integer> memberIds) throws SQLException {
+		final Set<Integer> members = toSet(memberIds);
+		if (!members.isEmpty()) {
+			insertRows(connection, ownerId, members);
+		}
+		TransactionManager.getInstance().runAfterCommit(() -> persistedMembers.put(ownerId, members));
+	}
+
+	/**
+	 * Deletes the rows of members no longer present and inserts the rows of the new members.
+	 *
+	 * @param memberIds current members of the owner, null for none
+	 */
+	public void sync(Connection connection, int ownerId, Collection<Integer> memberIds) throws SQLException {
+		final Set<Integer> members = toSet(memberIds);
+		final Set<Integer> remembered = persistedMembers.get(ownerId);
+		final Set<Integer> persisted = remembered != null ? remembered : select(connection, ownerId);
+
+		final List<Integer> removed = new ArrayList<>();
+		for (Integer memberId : persisted) {
+			if (!members.contains(memberId)) {
+				removed.add(memberId);
+			}
+		}
+		final List<Integer> added = new ArrayList<>();
+		for (Integer memberId : members) {
+			if (!persisted.contains(memberId)) {
+				added.add(memberId);
+			}
+		}
+
+		if (!removed.isEmpty()) {
+			try (PreparedStatement stmnt = connection.prepareStatement(deleteQuery)) {
+				stmnt.setInt(1, ownerId);
+				stmnt.setArray(2, DataAccessObject.createIdsArray(connection, removed));
+				stmnt.executeUpdate();
+			}
+		}
+		if (!added.isEmpty()) {
+			insertRows(connection, ownerId, added);
+		}
+
+		if (remembered == null || !removed.isEmpty() || !added.isEmpty()) {
+			TransactionManager.getInstance().runAfterCommit(() -> persistedMembers.put(ownerId, members));
+		}
+	}
+
+	private void insertRows(Connection connection, int ownerId, Collection<Integer> memberIds) throws SQLException {
+		try (PreparedStatement stmnt = connection.prepareStatement(insertQuery)) {
+			for (Integer memberId : memberIds) {
+				stmnt.setInt(1, ownerId);
+				stmnt.setInt(2, memberId);
+				stmnt.addBatch();
+			}
+			stmnt.executeBatch();
+		}
+	}
+
+	private Set<Integer> select(Connection connection, int ownerId) throws SQLException {
+		final Set<Integer> members = new HashSet<>();
+		try (PreparedStatement stmnt = connection.prepareStatement(selectQuery)) {
+			stmnt.setInt(1, ownerId);
+			try (ResultSet resultSet = stmnt.executeQuery()) {
+				while (resultSet.next()) {
+					members.add(resultSet.getInt(1));
+				}
+			}
+		}
+		return members;
+	}
+
+	private static Set<Integer> toSet(Collection<Integer> memberIds) {
+		if (memberIds == null || memberIds.isEmpty()) {
+			return Collections.emptySet();
+		}
+		return Collections.unmodifiableSet(new HashSet<>(memberIds));
+	}
+}
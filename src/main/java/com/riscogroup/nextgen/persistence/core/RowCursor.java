@@ -0,0 +1,109 @@
+package com.riscogroup.nextgen.persistence.core;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Forward only, read only cursor handing out one Domain Object per row of a query. The session
+ * Connections have autocommit off, so with a fetch size set the driver keeps the result on the
+ * server and reads it fetch size rows at a time, instead of buffering the whole result in memory.
+ *
+ * SQLExceptions thrown while iterating are wrapped in a RuntimeException. The cursor has to be
+ * closed, and used only on the Thread owning the session, while the session is open.
+ *
+ * The fetch size is configured in etc/db.conf with DB_STREAM_FETCH_SIZE (500 by default).
+ *
+ * @param <T> Type of the Domain Object read from each row
+ */
+public final class RowCursor<T> implements Iterator<T>, AutoCloseable {
+	private static final Logger logger = LoggerFactory.getLogger(RowCursor.class);
+
+	public static final String FETCH_SIZE_KEY = "DB_STREAM_FETCH_SIZE";
+	private static final int DEFAULT_FETCH_SIZE = 500;
+	private static final int fetchSize = loadFetchSize();
+
+	/**
+	 * Reads the Domain Object of the current row, null skips the row.
+	 */
+	@FunctionalInterface
+	public interface RowMapper<T> {
+		T map(ResultSet resultSet) throws SQLException;
+	}
+
+	private final PreparedStatement statement;
+	private final ResultSet resultSet;
+	private final RowMapper<T> mapper;
+	private T next;
+	private boolean done;
+
+	private RowCursor(PreparedStatement statement, ResultSet resultSet, RowMapper<T> mapper) {
+		this.statement = statement;
+		this.resultSet = resultSet;
+		this.mapper = mapper;
+	}
+
+	public static <T> RowCursor<T> open(Connection connection, String query, RowMapper<T> mapper) throws SQLException {
+		final PreparedStatement statement = connection.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY,
+				ResultSet.CONCUR_READ_ONLY);
+		try {
+			statement.setFetchSize(fetchSize);
+			return new RowCursor<>(statement, statement.executeQuery(), mapper);
+		} catch (SQLException e) {
+			statement.close();
+			throw e;
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		try {
+			while (next == null && !done) {
+				if (resultSet.next()) {
+					next = mapper.map(resultSet);
+				} else {
+					done = true;
+				}
+			}
+		} catch (SQLException e) {
+			done = true;
+			throw new RuntimeException(e);
+		}
+		return next != null;
+	}
+
+	@Override
+	public T next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		final T object = next;
+		next = null;
+		return object;
+	}
+
+	@Override
+	public void close() throws SQLException {
+		try {
+			resultSet.close();
+		} finally {
+			statement.close();
+		}
+	}
+
+	private static int loadFetchSize() {
+		try {
+			return Math.max(1, ConnectionPoolFactory.getIntProperty(ConnectionPoolFactory.loadConfiguration(),
+					FETCH_SIZE_KEY, DEFAULT_FETCH_SIZE));
+		} catch (Exception e) {
+			logger.warn(e.getMessage());
+		}
+		return DEFAULT_FETCH_SIZE;
+	}
+}
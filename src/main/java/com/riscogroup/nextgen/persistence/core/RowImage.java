@@ -0,0 +1,118 @@
+package com.riscogroup.nextgen.persistence.core;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+
+/**
+ * Read only ResultSet positioned on a row image kept by a DirtyColumnTracker, so a DAO restores an object
+ * from its image with the same method that fills it from the Database. Columns are read by the ordinals
+ * of the ColumnList the DAO selects. Only the getters of the value types the trackers hold are supported,
+ * reading a column the image does not hold throws an SQLException.
+ */
+final class RowImage implements InvocationHandler {
+	/* marks the ordinal of the id column, which is not part of the image */
+	static final int ID_COLUMN = -1;
+	static final int NOT_IN_IMAGE = -2;
+
+	private final int id;
+	private final Object[] row;
+	private final int[] imageIndexes;
+	private boolean wasNull;
+
+	private RowImage(int id, Object[] row, int[] imageIndexes) {
+		this.id = id;
+		this.row = row;
+		this.imageIndexes = imageIndexes;
+	}
+
+	/**
+	 * @param imageIndexes index into the row image by column ordinal, ID_COLUMN or NOT_IN_IMAGE
+	 */
+	static ResultSet of(int id, Object[] row, int[] imageIndexes) {
+		return (ResultSet) Proxy.newProxyInstance(RowImage.class.getClassLoader(), new Class<?>[] { ResultSet.class },
+				new RowImage(id, row, imageIndexes));
+	}
+
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		switch (method.getName()) {
+		case "getString": {
+			final Object value = value(args[0]);
+			return value != null ? value.toString() : null;
+		}
+		case "getInt":
+			return toNumber(value(args[0])).intValue();
+		case "getLong":
+			return toNumber(value(args[0])).longValue();
+		case "getDouble":
+			return toNumber(value(args[0])).doubleValue();
+		case "getBoolean":
+			return toBoolean(value(args[0]));
+		case "getObject":
+			return value(args[0]);
+		case "wasNull":
+			return wasNull;
+		case "close":
+			return null;
+		case "isClosed":
+			return false;
+		case "equals":
+			return proxy == args[0];
+		case "hashCode":
+			return System.identityHashCode(proxy);
+		case "toString":
+			return "RowImage of row " + id;
+		default:
+			throw new SQLFeatureNotSupportedException(method.getName() + " is not supported on a row image");
+		}
+	}
+
+	private Object value(Object column) throws SQLException {
+		if (!(column instanceof Integer)) {
+			throw new SQLFeatureNotSupportedException("Row images are read by column index only");
+		}
+		final int ordinal = (Integer) column;
+		final int index = ordinal > 0 && ordinal < imageIndexes.length ? imageIndexes[ordinal] : NOT_IN_IMAGE;
+		if (index == NOT_IN_IMAGE) {
+			throw new SQLException("Column " + ordinal + " is not in the row image");
+		}
+		final Object value = index == ID_COLUMN ? Integer.valueOf(id) : row[index];
+		wasNull = value == null;
+		return value;
+	}
+
+	private static Number toNumber(Object value) throws SQLException {
+		if (value == null) {
+			return 0;
+		}
+		if (value instanceof Number) {
+			return (Number) value;
+		}
+		if (value instanceof Boolean) {
+			return (Boolean) value ? 1 : 0;
+		}
+		try {
+			return Double.valueOf(value.toString().trim());
+		} catch (NumberFormatException e) {
+			throw new SQLException("Bad number in row image: " + value, e);
+		}
+	}
+
+	private static boolean toBoolean(Object value) {
+		if (value instanceof Boolean) {
+			return (Boolean) value;
+		}
+		if (value instanceof Number) {
+			return ((Number) value).intValue() != 0;
+		}
+		if (value == null) {
+			return false;
+		}
+		final String text = value.toString().trim();
+		return "t".equalsIgnoreCase(text) || "true".equalsIgnoreCase(text) || "1".equals(text);
+	}
+}
@@ -0,0 +1,207 @@
+package com.riscogroup.nextgen.persistence.core;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache of the PreparedStatements of one physical Connection, keyed by SQL text. Closing a
+ * statement taken from the cache returns it to the cache with its parameters cleared, so the
+ * next prepareStatement() of the same SQL reuses it, and the driver can switch it to a server
+ * side prepared statement once it has been executed prepareThreshold times.
+ *
+ * A statement is given to one caller at a time. If the same SQL is prepared again while its
+ * statement is in use, for example by a recursive delete, an uncached statement is returned.
+ * The least recently used statements are closed when the cache is full.
+ */
+final class StatementCache {
+	private static final Logger logger = LoggerFactory.getLogger(StatementCache.class);
+
+	private final Connection connection;
+	private final Map<Key, CachedStatement> statements;
+
+	StatementCache(Connection connection, final int capacity) {
+		this.connection = connection;
+		statements = new LinkedHashMap<Key, CachedStatement>(capacity * 2, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, CachedStatement> eldest) {
+				if (size() <= capacity) {
+					return false;
+				}
+				eldest.getValue().evict();
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * @param autoGeneratedKeys Statement.RETURN_GENERATED_KEYS or Statement.NO_GENERATED_KEYS
+	 */
+	synchronized PreparedStatement prepareStatement(Connection handle, String sql, int autoGeneratedKeys)
+			throws SQLException {
+		final Key key = new Key(sql, autoGeneratedKeys);
+		CachedStatement cached = statements.get(key);
+		if (cached != null && cached.inUse) {
+			return connection.prepareStatement(sql, autoGeneratedKeys);
+		}
+		if (cached == null) {
+			cached = new CachedStatement(connection.prepareStatement(sql, autoGeneratedKeys));
+			statements.put(key, cached);
+		}
+		cached.inUse = true;
+		return cached.newHandle(handle);
+	}
+
+	/**
+	 * Closes the statements never given back, called when the Connection returns to the pool.
+	 */
+	synchronized void closeStatementsInUse() {
+		for (Iterator<CachedStatement> it = statements.values().iterator(); it.hasNext();) {
+			final CachedStatement cached = it.next();
+			if (cached.inUse) {
+				it.remove();
+				cached.inUse = false;
+				cached.evict();
+			}
+		}
+	}
+
+	synchronized void closeAll() {
+		for (CachedStatement cached : statements.values()) {
+			cached.evict();
+		}
+		statements.clear();
+	}
+
+	private synchronized void release(CachedStatement cached) {
+		cached.inUse = false;
+		if (cached.evicted) {
+			close(cached.statement);
+			return;
+		}
+		try {
+			cached.statement.clearParameters();
+			cached.statement.clearBatch();
+		} catch (SQLException e) {
+			statements.values().remove(cached);
+			close(cached.statement);
+		}
+	}
+
+	private static void close(Statement statement) {
+		try {
+			statement.close();
+		} catch (SQLException e) {
+			logger.error(e.getMessage());
+		}
+	}
+
+	private static final class Key {
+		private final String sql;
+		private final int autoGeneratedKeys;
+
+		private Key(String sql, int autoGeneratedKeys) {
+			this.sql = sql;
+			this.autoGeneratedKeys = autoGeneratedKeys;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			final Key other = (Key) obj;
+			return autoGeneratedKeys == other.autoGeneratedKeys && sql.equals(other.sql);
+		}
+
+		@Override
+		public int hashCode() {
+			return sql.hashCode() * 31 + autoGeneratedKeys;
+		}
+	}
+
+	private final class CachedStatement {
+		private final PreparedStatement statement;
+		private boolean inUse;
+		private boolean evicted;
+
+		private CachedStatement(PreparedStatement statement) {
+			this.statement = statement;
+		}
+
+		/**
+		 * Closes the statement now, or when it is given back if it is in use.
+		 */
+		private void evict() {
+			evicted = true;
+			if (!inUse) {
+				close(statement);
+			}
+		}
+
+		private PreparedStatement newHandle(Connection connectionHandle) {
+			return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+					new Class<?>[] { PreparedStatement.class }, new StatementHandle(this, connectionHandle));
+		}
+	}
+
+	/**
+	 * PreparedStatement given to the caller. close() gives the cached statement back once,
+	 * every other call after that fails as on a closed statement.
+	 */
+	private final class StatementHandle implements InvocationHandler {
+		private final CachedStatement cached;
+		private final Connection connectionHandle;
+		private boolean closed;
+
+		private StatementHandle(CachedStatement cached, Connection connectionHandle) {
+			this.cached = cached;
+			this.connectionHandle = connectionHandle;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "close":
+				if (!closed) {
+					closed = true;
+					release(cached);
+				}
+				return null;
+			case "isClosed":
+				return closed;
+			case "getConnection":
+				return connectionHandle;
+			case "equals":
+				return proxy == args[0];
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "toString":
+				return "Cached" + cached.statement;
+			default:
+				break;
+			}
+			if (closed) {
+				throw new SQLException("Statement is closed");
+			}
+			try {
+				return method.invoke(cached.statement, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+	}
+}
@@ -0,0 +1,348 @@
+package com.riscogroup.nextgen.persistence.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Single pass parser of the collection columns written with List.toString(), Map.toString()
+ * and Arrays.asList(..).toString(). It gives the same result as removing the brackets with
+ * replaceAll() and splitting by ',' and '=', without regular expressions and without
+ * intermediate Strings: only the keys, values and elements returned are allocated.
+ *
+ * Like String.split(), trailing empty elements are dropped, and brackets are ignored
+ * wherever they appear.
+ */
+final class ToStringParser {
+
+	private ToStringParser() {
+	}
+
+	static Map<String, String> parseMap(final String mapString) {
+		final Map<String, String> map = new HashMap<>();
+		if (mapString == null || mapString.length() <= 2) {
+			return map;
+		}
+		final int last = lastElementChar(mapString, '{', '}');
+		if (last < 0) {
+			if (mapString.indexOf(',') < 0) {
+				map.put("", "");
+			}
+			return map;
+		}
+		for (int start = 0; start <= last;) {
+			final int end = nextSeparator(mapString, start);
+			final int equals = indexOf(mapString, '=', start, end);
+			if (equals < 0) {
+				map.put(token(mapString, start, end, '{', '}'), "");
+			} else {
+				final int valueEnd = indexOf(mapString, '=', equals + 1, end);
+				map.put(token(mapString, start, equals, '{', '}'),
+						token(mapString, equals + 1, valueEnd < 0 ? end : valueEnd, '{', '}'));
+			}
+			start = end + 1;
+		}
+		return map;
+	}
+
+	static Map<String, Integer> parseIntValueMap(final String mapString) {
+		final Map<String, Integer> map = new HashMap<>();
+		if (mapString == null || mapString.length() <= 2) {
+			return map;
+		}
+		final int last = lastElementChar(mapString, '{', '}');
+		if (last < 0 && mapString.indexOf(',') < 0) {
+			throw new NumberFormatException("For input string: \"\"");
+		}
+		for (int start = 0; start <= last;) {
+			final int end = nextSeparator(mapString, start);
+			final int equals = indexOf(mapString, '=', start, end);
+			if (equals < 0) {
+				throw new NumberFormatException("For input string: \"\"");
+			}
+			final int valueEnd = indexOf(mapString, '=', equals + 1, end);
+			map.put(token(mapString, start, equals, '{', '}'),
+					parseInt(mapString, equals + 1, valueEnd < 0 ? end : valueEnd, '{', '}'));
+			start = end + 1;
+		}
+		return map;
+	}
+
+	/**
+	 * @return trimmed elements, empty elements skipped
+	 */
+	static List<String> parseList(final String listString) {
+		final List<String> list = new ArrayList<>();
+		if (listString == null || listString.length() <= 2) {
+			return list;
+		}
+		final int last = lastElementChar(listString, '[', ']');
+		for (int start = 0; start <= last;) {
+			final int end = nextSeparator(listString, start);
+			final String element = token(listString, start, end, '[', ']');
+			if (element.length() > 0) {
+				list.add(element);
+			}
+			start = end + 1;
+		}
+		return list;
+	}
+
+	/**
+	 * @return trimmed elements, empty elements in the middle kept, null if there is nothing to parse
+	 */
+	static String[] parseArray(final String listString) {
+		if (listString == null || listString.length() <= 2) {
+			return null;
+		}
+		final int last = lastElementChar(listString, '[', ']');
+		if (last < 0) {
+			return listString.indexOf(',') < 0 ? new String[] { "" } : new String[0];
+		}
+		String[] array = new String[8];
+		int count = 0;
+		for (int start = 0; start <= last;) {
+			final int end = nextSeparator(listString, start);
+			if (count == array.length) {
+				array = Arrays.copyOf(array, count * 2);
+			}
+			array[count++] = token(listString, start, end, '[', ']');
+			start = end + 1;
+		}
+		return count == array.length ? array : Arrays.copyOf(array, count);
+	}
+
+	/**
+	 * Parses a list of integers, blank elements skipped, without creating a String per element.
+	 *
+	 * @throws NumberFormatException if an element is not an integer
+	 */
+	static int[] parseIntArray(final String listString) {
+		if (listString == null || listString.length() <= 2) {
+			return new int[0];
+		}
+		final int last = lastElementChar(listString, '[', ']');
+		int[] values = new int[8];
+		int count = 0;
+		for (int start = 0; start <= last;) {
+			final int end = nextSeparator(listString, start);
+			if (!isBlank(listString, start, end, '[', ']')) {
+				if (count == values.length) {
+					values = Arrays.copyOf(values, count * 2);
+				}
+				values[count++] = parseInt(listString, start, end, '[', ']');
+			}
+			start = end + 1;
+		}
+		return count == values.length ? values : Arrays.copyOf(values, count);
+	}
+
+	/**
+	 * Boxed parseIntArray(), for the callers whose API takes a List.
+	 */
+	static List<Integer> parseIntList(final String listString) {
+		final int[] values = parseIntArray(listString);
+		final List<Integer> list = new ArrayList<>(values.length);
+		for (int value : values) {
+			list.add(value);
+		}
+		return list;
+	}
+
+	/**
+	 * Elements shorter than two characters (before trimming) or containing "null" are skipped.
+	 *
+	 * @throws NumberFormatException if an element is not a byte
+	 */
+	static byte[] parseBytes(final String listString) {
+		if (listString == null || listString.length() <= 2) {
+			return new byte[0];
+		}
+		final int last = lastElementChar(listString, '[', ']');
+		byte[] values = new byte[8];
+		int count = 0;
+		for (int start = 0; start <= last;) {
+			final int end = nextSeparator(listString, start);
+			if (length(listString, start, end, '[', ']') > 1 && !containsNull(listString, start, end, '[', ']')) {
+				final int value = parseInt(listString, start, end, '[', ']');
+				if (value < Byte.MIN_VALUE || value > Byte.MAX_VALUE) {
+					throw new NumberFormatException("Value out of range. Value:\"" + value + "\" Radix:10");
+				}
+				if (count == values.length) {
+					values = Arrays.copyOf(values, count * 2);
+				}
+				values[count++] = (byte) value;
+			}
+			start = end + 1;
+		}
+		return count == values.length ? values : Arrays.copyOf(values, count);
+	}
+
+	/**
+	 * Boxed parseBytes(), for the callers whose API takes a Byte[].
+	 */
+	static Byte[] parseByteArray(final String listString) {
+		final byte[] values = parseBytes(listString);
+		final Byte[] array = new Byte[values.length];
+		for (int i = 0; i < values.length; i++) {
+			array[i] = values[i];
+		}
+		return array;
+	}
+
+	/**
+	 * @return index of the last character which is neither a separator nor a bracket, -1 if there is none
+	 */
+	private static int lastElementChar(String s, char open, char close) {
+		for (int i = s.length() - 1; i >= 0; i--) {
+			final char c = s.charAt(i);
+			if (c != ',' && c != open && c != close) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static int nextSeparator(String s, int from) {
+		final int index = s.indexOf(',', from);
+		return index < 0 ? s.length() : index;
+	}
+
+	private static int indexOf(String s, char c, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (s.charAt(i) == c) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return true if the range contains "null", brackets ignored
+	 */
+	private static boolean containsNull(String s, int from, int to, char open, char close) {
+		final String text = "null";
+		int matched = 0;
+		for (int i = from; i < to; i++) {
+			final char c = s.charAt(i);
+			if (c == open || c == close) {
+				continue;
+			}
+			matched = c == text.charAt(matched) ? matched + 1 : (c == text.charAt(0) ? 1 : 0);
+			if (matched == text.length()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return number of characters in the range which are not brackets
+	 */
+	private static int length(String s, int from, int to, char open, char close) {
+		int length = 0;
+		for (int i = from; i < to; i++) {
+			final char c = s.charAt(i);
+			if (c != open && c != close) {
+				length++;
+			}
+		}
+		return length;
+	}
+
+	private static boolean isBlank(String s, int from, int to, char open, char close) {
+		for (int i = from; i < to; i++) {
+			if (!isSkipped(s.charAt(i), open, close)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isSkipped(char c, char open, char close) {
+		return c <= ' ' || c == open || c == close;
+	}
+
+	/**
+	 * @return the range without brackets, trimmed
+	 */
+	private static String token(String s, int from, int to, char open, char close) {
+		int start = from;
+		int end = to;
+		while (start < end && isSkipped(s.charAt(start), open, close)) {
+			start++;
+		}
+		while (end > start && isSkipped(s.charAt(end - 1), open, close)) {
+			end--;
+		}
+		for (int i = start; i < end; i++) {
+			final char c = s.charAt(i);
+			if (c == open || c == close) {
+				return removeBrackets(s, start, end, open, close);
+			}
+		}
+		return s.substring(start, end);
+	}
+
+	private static String removeBrackets(String s, int from, int to, char open, char close) {
+		final StringBuilder sb = new StringBuilder(to - from);
+		for (int i = from; i < to; i++) {
+			final char c = s.charAt(i);
+			if (c != open && c != close) {
+				sb.append(c);
+			}
+		}
+		return sb.toString().trim();
+	}
+
+	/**
+	 * Integer.parseInt() of the trimmed range, brackets ignored.
+	 */
+	private static int parseInt(String s, int from, int to, char open, char close) {
+		int start = from;
+		int end = to;
+		while (start < end && isSkipped(s.charAt(start), open, close)) {
+			start++;
+		}
+		while (end > start && isSkipped(s.charAt(end - 1), open, close)) {
+			end--;
+		}
+		if (start == end) {
+			throw new NumberFormatException("For input string: \"\"");
+		}
+		int i = start;
+		final char first = s.charAt(i);
+		final boolean negative = first == '-';
+		if (first == '-' || first == '+') {
+			i++;
+		}
+		if (i == end) {
+			throw numberFormatException(s, start, end);
+		}
+		long value = 0;
+		for (; i < end; i++) {
+			final char c = s.charAt(i);
+			if (c == open || c == close) {
+				continue;
+			}
+			if (c < '0' || c > '9') {
+				throw numberFormatException(s, start, end);
+			}
+			value = value * 10 + (c - '0');
+			if (value > 1L + Integer.MAX_VALUE) {
+				throw numberFormatException(s, start, end);
+			}
+		}
+		value = negative ? -value : value;
+		if (value > Integer.MAX_VALUE) {
+			throw numberFormatException(s, start, end);
+		}
+		return (int) value;
+	}
+
+	private static NumberFormatException numberFormatException(String s, int start, int end) {
+		return new NumberFormatException("For input string: \"" + s.substring(start, end) + "\"");
+	}
+}
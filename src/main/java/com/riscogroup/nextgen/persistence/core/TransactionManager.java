@@ -2,6 +2,8 @@ package com.riscogroup.nextgen.persistence.core;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -18,17 +20,21 @@ public class TransactionManager {
 	
 	private final ConnectionPool cpool;
 
-	private static final ThreadLocal<Connection> context = new ThreadLocal<Connection>() {
-		@Override
-		public Connection initialValue() {
-			logger.error("Uninitialized Session! Can Not get a Connection! Start Session First");
-			throw new RuntimeException("Uninitialized Session! Can Not get a Connection! Start Session First");
-		}
-	};
+	private static final ThreadLocal<Session> context = new ThreadLocal<>();
+
+	/**
+	 * Per Thread session state. In lazy mode the Connection is borrowed from the pool
+	 * only when some DAO asks for it for the first time.
+	 */
+	private static class Session {
+		private Connection connection;
+		private List<Runnable> afterCommitActions;
+		private List<Runnable> afterRollbackActions;
+	}
 
 	private TransactionManager() {
 		try {
-			this.cpool = new ConnectionPoolImpl();
+			this.cpool = ConnectionPoolFactory.createConnectionPool();
 		} catch (Exception e) {
 			logger.error("Connection Pool has not been initialized");
 			throw new RuntimeException(e);
@@ -54,51 +60,153 @@ public class TransactionManager {
 	 * @throws SQLException
 	 */
 	public void openSessionAndStartTransaction() throws SQLException {
-		final Connection conn = cpool.getConnection();
-		conn.setAutoCommit(false);
-		context.set(conn);
+		final Session session = new Session();
+		session.connection = borrowConnection();
+		context.set(session);
+	}
+
+	/**
+	 * Opens a session without touching the pool. The Connection is borrowed on the first
+	 * call to getConnection(), so reads that are fully served from the IdentityMap
+	 * never acquire a Connection, never change autocommit and never commit.
+	 */
+	public void openLazySession() {
+		context.set(new Session());
 	}
 	
 	/**
 	 * Commits all issued queries after call to openSessionAndStartTransaction() method
 	 * as an Atomic action. Then it closes the Connection object and returns it to the pool.
+	 * If the session is lazy and no Connection was taken there is nothing to commit.
+	 *
+	 * The after commit actions run once the session is closed, so they can open a session of their own.
+	 * If the commit fails the transaction is rolled back and the session closed as by
+	 * rollbackTransactionAndCloseSession(), before the exception is thrown.
 	 *  
 	 * @throws SQLException
 	 */
 	public void commitTransactionAndCloseSession() throws SQLException {
-		final Connection conn = context.get();
+		final Session session = getSession();
 		try {
-			conn.commit();
-		} finally {
-			closeAndReleaseConnection(conn);
-			context.remove();
+			if (session.connection != null) {
+				session.connection.commit();
+			}
+		} catch (SQLException | RuntimeException e) {
+			logger.error("Commit failed: {}", e.getMessage());
+			rollbackAndClose(session);
+			throw e;
 		}
+		closeAndReleaseConnection(session.connection);
+		context.remove();
+		runActions(session.afterCommitActions, "After commit");
 	}
 
 	/**
 	 * If some Exception happens in some of the queries between calls to openSessionAndStartTransaction()
 	 * and commitTransactionAndCloseSession() this method will rollback all the changes made by other queries
 	 * within opened transaction, then it will close the Connection object and return it back to the pool.
+	 * Nothing is done if the session has already been closed by a failed commit.
 	 */
 	public void rollbackTransactionAndCloseSession() {
-		final Connection conn = context.get();
+		final Session session = context.get();
+		if (session == null) {
+			return;
+		}
+		rollbackAndClose(session);
+	}
+
+	private void rollbackAndClose(Session session) {
 		try {
-			conn.rollback();
+			if (session.connection != null) {
+				session.connection.rollback();
+			}
 		} catch (SQLException e) {
 			logger.error(e.getMessage());
 		} finally {
 			UnitOfWork.getCurrent().restoreRegisteredObjectsState();
-			closeAndReleaseConnection(conn);
+			runActions(session.afterRollbackActions, "After rollback");
+			closeAndReleaseConnection(session.connection);
 			context.remove();
 			logger.error("Transaction Failed! Domain objects state restored.");
 		}
 	}
 
+	/**
+	 * Registers an action to be executed once the current transaction is committed successfully.
+	 * Actions are dropped if the transaction is rolled back.
+	 */
+	public void runAfterCommit(Runnable action) {
+		final Session session = getSession();
+		if (session.afterCommitActions == null) {
+			session.afterCommitActions = new ArrayList<>();
+		}
+		session.afterCommitActions.add(action);
+	}
+
+	/**
+	 * Registers an action to be executed if the current transaction is rolled back,
+	 * after the registered objects have been restored. Actions are dropped on commit.
+	 */
+	public void runAfterRollback(Runnable action) {
+		final Session session = getSession();
+		if (session.afterRollbackActions == null) {
+			session.afterRollbackActions = new ArrayList<>();
+		}
+		session.afterRollbackActions.add(action);
+	}
+
+	/**
+	 * @return true if the calling Thread has a session open, which has not been committed or rolled back yet
+	 */
+	static boolean isSessionOpen() {
+		return context.get() != null;
+	}
+
 	public Connection getConnection() {
-		return context.get();
+		final Session session = getSession();
+		if (session.connection == null) {
+			try {
+				session.connection = borrowConnection();
+			} catch (SQLException e) {
+				logger.error("Can Not get a Connection from the pool: {}", e.getMessage());
+				throw new RuntimeException(e);
+			}
+		}
+		return session.connection;
+	}
+
+	private static Session getSession() {
+		final Session session = context.get();
+		if (session == null) {
+			logger.error("Uninitialized Session! Can Not get a Connection! Start Session First");
+			throw new RuntimeException("Uninitialized Session! Can Not get a Connection! Start Session First");
+		}
+		return session;
+	}
+
+	private void runActions(List<Runnable> actions, String kind) {
+		if (actions == null) {
+			return;
+		}
+		for (Runnable action : actions) {
+			try {
+				action.run();
+			} catch (RuntimeException e) {
+				logger.error("{} action failed: {}", kind, e.getMessage());
+			}
+		}
+	}
+
+	private Connection borrowConnection() throws SQLException {
+		final Connection conn = cpool.getConnection();
+		conn.setAutoCommit(false);
+		return conn;
 	}
 	
 	private void closeAndReleaseConnection(Connection conn) {
+		if (conn == null) {
+			return;
+		}
 		try {
 			conn.close();
 		} catch (SQLException e) {
@@ -1,8 +1,10 @@
 package com.riscogroup.nextgen.persistence.core;
 
 import java.sql.SQLException;
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -11,6 +13,10 @@ import org.slf4j.LoggerFactory;
  * and then committing all of those changes registered in objects in a single transaction atomically 
  * If something in any object screws up during this transaction, each object that has been registered 
  * for the Update will have it's state restored in memory back to what it was before and transaction rolled back
+ * 
+ * By default the columns of an object are restored from the row image of its last committed row, kept by the
+ * DirtyColumnTracker of its DAO, and only its relations are read back from the Database. Objects without row image
+ * are read back whole, as are all objects if DB_ROLLBACK_RESTORE=reload is configured.
  * @author Peter.Petkanov
  */
 public class UnitOfWork {
@@ -18,9 +24,23 @@ public class UnitOfWork {
 	
 	private static final ThreadLocal<UnitOfWork> current = new ThreadLocal<>();
 
-	private final Queue<Object> newObjects     = new LinkedList<>();
-	private final Queue<Object> updatedObjects = new LinkedList<>();
-	private final Queue<Object> deletedObjects = new LinkedList<>();
+	public static final String RESTORE_MODE_KEY = "DB_ROLLBACK_RESTORE";
+	public static final String RESTORE_MODE_ROW_IMAGE = "image";
+	public static final String RESTORE_MODE_RELOAD = "reload";
+	private static final boolean restoreFromRowImage = isRowImageRestoreConfigured();
+
+	/**
+	 * @return true if rolled back objects are restored from the row images of their DAO
+	 */
+	static boolean isRowImageRestoreEnabled() {
+		return restoreFromRowImage;
+	}
+
+	private final LinkedIdentitySet<Object> newObjects     = new LinkedIdentitySet<>();
+	private final LinkedIdentitySet<Object> updatedObjects = new LinkedIdentitySet<>();
+	private final LinkedIdentitySet<Object> deletedObjects = new LinkedIdentitySet<>();
+	/* updated objects written by commitSession() whose transaction has not committed yet */
+	private List<Object> flushedObjects = new ArrayList<>();
 
 	public static UnitOfWork getCurrent() {
 		if (current.get() == null) {
@@ -29,12 +49,32 @@ public class UnitOfWork {
 		return current.get();
 	}
 
+	/**
+	 * Hands the work registered by the calling Thread over to another Thread, which attaches it.
+	 * The calling Thread continues with a new UnitOfWork.
+	 */
+	public static UnitOfWork detachCurrent() {
+		final UnitOfWork unitOfWork = getCurrent();
+		current.remove();
+		return unitOfWork;
+	}
+
+	/**
+	 * Makes the detached UnitOfWork current on the calling Thread, null detaches it again.
+	 */
+	public static void attach(UnitOfWork unitOfWork) {
+		if (unitOfWork == null) {
+			current.remove();
+		} else {
+			current.set(unitOfWork);
+		}
+	}
+
 	public void registerForInsert(Object object) {
 		if (!isRegisterCallFromOutsidePersistence()) {
 			return;
 		}
-		if (!newObjects.contains(object)) {
-			newObjects.add(object);
+		if (newObjects.add(object)) {
 			updatedObjects.remove(object);
 		}
 	}
@@ -43,7 +83,7 @@ public class UnitOfWork {
 		if (!isRegisterCallFromOutsidePersistence()) {
 			return;
 		}
-		if (!newObjects.contains(object) && !updatedObjects.contains(object)) {
+		if (!newObjects.contains(object)) {
 			updatedObjects.add(object);
 		}
 	}
@@ -54,59 +94,134 @@ public class UnitOfWork {
 		}
 		newObjects.remove(object);
 		updatedObjects.remove(object);
-		if (!deletedObjects.contains(object)) {
-			deletedObjects.add(object);
-		}
+		deletedObjects.add(object);
 	}
 
 	public void commitSession() throws SQLException {
-		insertRegistered();
-		deleteRegistered();
-		updateRegistered();
+		final List<Object> updated;
+		HydrationScope.enter();
+		try {
+			insertRegistered();
+			deleteRegistered();
+			updated = updateRegistered();
+		} finally {
+			HydrationScope.exit();
+		}
+		flushedObjects = updated;
+		TransactionManager.getInstance().runAfterCommit(() -> releaseCommitted(updated));
 	}
 
+	/**
+	 * Restores objects registered for update, including the ones already flushed in the failed
+	 * transaction (a failed commit included), to their last committed state.
+	 */
 	public void restoreRegisteredObjectsState() {
-		while (!updatedObjects.isEmpty()) {
-			final Object obj = updatedObjects.remove();
-			try {
-				DaoRegistry.getInstance().getDAO(obj.getClass().getName()).restoreObjectState(obj);
-			} catch (SQLException e) {
-				logger.error("Object state was not restored properly. It might be in a inconsistent state\nObject: {}", obj);
+		HydrationScope.enter();
+		try {
+			for (Object obj : flushedObjects) {
+				restoreObjectState(obj);
+			}
+			flushedObjects = new ArrayList<>();
+			while (!updatedObjects.isEmpty()) {
+				restoreObjectState(updatedObjects.poll());
 			}
+		} finally {
+			HydrationScope.exit();
 		}
 	}
 	
 	public void unregisterObject(Object object) {
 		updatedObjects.remove(object);
 	}
+
+	private void restoreObjectState(Object obj) {
+		try {
+			DaoRegistry.getInstance().getDAO(obj.getClass().getName()).restoreObjectState(obj);
+		} catch (SQLException e) {
+			logger.error("Object state was not restored properly. It might be in a inconsistent state\nObject: {}", obj);
+		}
+	}
+
+	/**
+	 * Updated objects are committed, a later rollback has nothing to restore of them.
+	 */
+	private void releaseCommitted(List<Object> updated) {
+		if (flushedObjects == updated) {
+			flushedObjects = new ArrayList<>();
+		}
+	}
 	
 	private void deleteRegistered() throws SQLException {
 		while (!deletedObjects.isEmpty()) {
-			final Object obj = deletedObjects.remove();
+			final Object obj = deletedObjects.poll();
 			DaoRegistry.getInstance().getDAO(obj.getClass().getName()).delete(obj);
 		}
 	}
 
-	private void updateRegistered() throws SQLException {
+	/**
+	 * Updated objects are grouped by their DAO so each DAO can flush its whole group in one batch.
+	 * If the flush fails all objects are registered back, so their state can be restored on rollback.
+	 */
+	private List<Object> updateRegistered() throws SQLException {
+		final Map<DataAccessObject<Object>, List<Object>> batches = new LinkedHashMap<>();
 		while (!updatedObjects.isEmpty()) {
-			final Object obj = updatedObjects.remove();
-			DaoRegistry.getInstance().getDAO(obj.getClass().getName()).update(obj);
+			final Object obj = updatedObjects.poll();
+			batches.computeIfAbsent(getDAO(obj), dao -> new ArrayList<>()).add(obj);
+		}
+		try {
+			for (Map.Entry<DataAccessObject<Object>, List<Object>> batch : batches.entrySet()) {
+				batch.getKey().updateAll(batch.getValue());
+			}
+		} catch (SQLException e) {
+			for (List<Object> objects : batches.values()) {
+				objects.forEach(updatedObjects::add);
+			}
+			throw e;
 		}
+		final List<Object> updated = new ArrayList<>();
+		batches.values().forEach(updated::addAll);
+		return updated;
 	}
 
+	/**
+	 * New objects may depend on each other (a DeviceProperty needs the UID of its DeviceFunction)
+	 * so only consecutive objects of the same DAO are batched, registration order is kept.
+	 */
 	private void insertRegistered() throws SQLException {
+		DataAccessObject<Object> batchDAO = null;
+		List<Object> batch = new ArrayList<>();
 		while (!newObjects.isEmpty()) {
-			final Object obj = newObjects.remove();
-			DaoRegistry.getInstance().getDAO(obj.getClass().getName()).persist(obj);
+			final Object obj = newObjects.poll();
+			final DataAccessObject<Object> dao = getDAO(obj);
+			if (dao != batchDAO && !batch.isEmpty()) {
+				batchDAO.persistAll(batch);
+				batch = new ArrayList<>();
+			}
+			batchDAO = dao;
+			batch.add(obj);
+		}
+		if (!batch.isEmpty()) {
+			batchDAO.persistAll(batch);
 		}
 	}
+
+	private DataAccessObject<Object> getDAO(Object obj) {
+		return DaoRegistry.getInstance().getDAO(obj.getClass().getName());
+	}
 	
 	private boolean isRegisterCallFromOutsidePersistence() {
-		if (Thread.currentThread().getStackTrace()[7].toString().contains("com.riscogroup.nextgen.persistence.") ||
-			Thread.currentThread().getStackTrace()[8].toString().contains("com.riscogroup.nextgen.persistence.") ||
-			Thread.currentThread().getStackTrace()[9].toString().contains("com.riscogroup.nextgen.persistence.") ||
-		    Thread.currentThread().getStackTrace()[9].toString().contains(".newInstance")) {
-			return false;
+		return !HydrationScope.isActive();
+	}
+
+	private static boolean isRowImageRestoreConfigured() {
+		try {
+			final String mode = ConnectionPoolFactory.loadConfiguration().getProperty(RESTORE_MODE_KEY, RESTORE_MODE_ROW_IMAGE).trim();
+			if (RESTORE_MODE_RELOAD.equalsIgnoreCase(mode)) {
+				logger.info("Domain objects state is read back from the Database on rollback");
+				return false;
+			}
+		} catch (Exception e) {
+			logger.warn(e.getMessage());
 		}
 		return true;
 	}
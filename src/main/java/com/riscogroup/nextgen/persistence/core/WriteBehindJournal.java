@@ -0,0 +1,283 @@
+package com.riscogroup.nextgen.persistence.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Journal of the updates queued by a WriteBehindQueue, so they survive a power loss before the flush.
+ *
+ * Every queued update is journaled as the full row image of the tracked columns, as its transaction wrote
+ * them. Updates are queued once their transaction has committed, and the image is not taken from the object
+ * again, so neither a rolled back update nor the state a later rollback restores is journaled. Once
+ * a batch is written to the Database an acknowledge record lists its UIDs, and row images appended before
+ * it are not replayed for those UIDs. On start the row images not acknowledged are written again, the
+ * latest one per UID.
+ *
+ * Configured in etc/db.conf with WRITE_BEHIND_JOURNAL ("true" by default), WRITE_BEHIND_JOURNAL_DIR
+ * (the DAO journal is a sub directory named after the DAO class), WRITE_BEHIND_JOURNAL_FSYNC ("record",
+ * "interval" or "none"), WRITE_BEHIND_JOURNAL_FSYNC_INTERVAL_MS and WRITE_BEHIND_JOURNAL_SEGMENT_SIZE.
+ */
+final class WriteBehindJournal {
+	private static final Logger logger = LoggerFactory.getLogger(WriteBehindJournal.class);
+
+	static final String JOURNAL_KEY = "WRITE_BEHIND_JOURNAL";
+	static final String DIRECTORY_KEY = "WRITE_BEHIND_JOURNAL_DIR";
+	static final String FSYNC_KEY = "WRITE_BEHIND_JOURNAL_FSYNC";
+	static final String FSYNC_INTERVAL_KEY = "WRITE_BEHIND_JOURNAL_FSYNC_INTERVAL_MS";
+	static final String SEGMENT_SIZE_KEY = "WRITE_BEHIND_JOURNAL_SEGMENT_SIZE";
+
+	private static final byte ROW = 'R';
+	private static final byte ACKNOWLEDGE = 'A';
+
+	private static final byte NULL = 0;
+	private static final byte INT = 'I';
+	private static final byte LONG = 'J';
+	private static final byte BOOLEAN = 'Z';
+	private static final byte DOUBLE = 'D';
+	private static final byte STRING = 'S';
+
+	private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_][A-Za-z0-9_.]*");
+
+	/**
+	 * Row image read back from the journal.
+	 */
+	static final class Row {
+		final String table;
+		final String[] columns;
+		final Object[] values;
+
+		private Row(String table, String[] columns, Object[] values) {
+			this.table = table;
+			this.columns = columns;
+			this.values = values;
+		}
+	}
+
+	private final Journal journal;
+	private final String table;
+	private final String[] columns;
+
+	private WriteBehindJournal(Journal journal, String table, String[] columns) {
+		this.journal = journal;
+		this.table = table;
+		this.columns = columns;
+	}
+
+	/**
+	 * @return journal of the given DAO, null if journaling is disabled
+	 * @throws IOException if journaling is enabled but the journal can not be opened
+	 */
+	static WriteBehindJournal open(Properties props, String name, String table, String[] columns) throws IOException {
+		if ("false".equalsIgnoreCase(props.getProperty(JOURNAL_KEY, "true").trim())) {
+			return null;
+		}
+		final File directory = new File(props.getProperty(DIRECTORY_KEY, "journal").trim(), name);
+		final Journal journal = Journal.open(directory,
+				Math.max(4096, ConnectionPoolFactory.getIntProperty(props, SEGMENT_SIZE_KEY, 1 << 20)),
+				Journal.FsyncPolicy.parse(props.getProperty(FSYNC_KEY, "interval")),
+				ConnectionPoolFactory.getIntProperty(props, FSYNC_INTERVAL_KEY, 50));
+		logger.info("Write behind journal of {} in {}", name, directory);
+		return new WriteBehindJournal(journal, table, columns);
+	}
+
+	/**
+	 * @return position of the journaled row image
+	 */
+	long appendRow(int id, Object[] values) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + values.length * 16);
+		final DataOutputStream out = new DataOutputStream(bytes);
+		out.writeByte(ROW);
+		out.writeInt(id);
+		writeString(out, table);
+		out.writeShort(columns.length);
+		for (int i = 0; i < columns.length; i++) {
+			writeString(out, columns[i]);
+			writeValue(out, values[i]);
+		}
+		return journal.append(bytes.toByteArray());
+	}
+
+	/**
+	 * Records that the given rows are written up to the given position, with a state at least
+	 * as recent as their row images appended before it.
+	 */
+	void acknowledge(Collection<Integer> ids, long position) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + ids.size() * 4);
+		final DataOutputStream out = new DataOutputStream(bytes);
+		out.writeByte(ACKNOWLEDGE);
+		out.writeLong(position);
+		out.writeInt(ids.size());
+		for (Integer id : ids) {
+			out.writeInt(id);
+		}
+		journal.append(bytes.toByteArray());
+	}
+
+	long position() {
+		return journal.position();
+	}
+
+	void release(long position) {
+		journal.release(position);
+	}
+
+	void close() {
+		journal.close();
+	}
+
+	/**
+	 * @return latest not acknowledged row image of every UID, as found when the journal was opened
+	 */
+	Map<Integer, Row> readNotAcknowledged() throws IOException {
+		final List<Journal.Record> records = journal.readAll();
+		final Map<Integer, Long> acknowledged = new HashMap<>();
+		for (Journal.Record record : records) {
+			if (record.payload[0] == ACKNOWLEDGE) {
+				final DataInputStream in = new DataInputStream(new ByteArrayInputStream(record.payload, 1, record.payload.length - 1));
+				final long position = in.readLong();
+				final int count = in.readInt();
+				for (int i = 0; i < count; i++) {
+					acknowledged.merge(in.readInt(), position, Math::max);
+				}
+			}
+		}
+		final Map<Integer, Row> rows = new LinkedHashMap<>();
+		for (Journal.Record record : records) {
+			if (record.payload[0] != ROW) {
+				continue;
+			}
+			final DataInputStream in = new DataInputStream(new ByteArrayInputStream(record.payload, 1, record.payload.length - 1));
+			final int id = in.readInt();
+			final Long acknowledgedUpTo = acknowledged.get(id);
+			if (acknowledgedUpTo == null || record.position >= acknowledgedUpTo) {
+				rows.remove(id);
+				rows.put(id, readRow(in));
+			}
+		}
+		return rows;
+	}
+
+	/**
+	 * Writes the row images read back from the journal, with one batch per table and column list.
+	 */
+	static void writeRows(Connection connection, Map<Integer, Row> rows) throws SQLException {
+		final Map<String, List<Map.Entry<Integer, Row>>> batches = new LinkedHashMap<>();
+		for (Map.Entry<Integer, Row> entry : rows.entrySet()) {
+			batches.computeIfAbsent(getUpdateQuery(entry.getValue()), k -> new ArrayList<>()).add(entry);
+		}
+		for (Map.Entry<String, List<Map.Entry<Integer, Row>>> batch : batches.entrySet()) {
+			try (PreparedStatement stmnt = connection.prepareStatement(batch.getKey())) {
+				for (Map.Entry<Integer, Row> entry : batch.getValue()) {
+					final Object[] values = entry.getValue().values;
+					for (int i = 0; i < values.length; i++) {
+						stmnt.setObject(i + 1, values[i]);
+					}
+					stmnt.setInt(values.length + 1, entry.getKey());
+					stmnt.addBatch();
+				}
+				stmnt.executeBatch();
+			}
+		}
+	}
+
+	private static String getUpdateQuery(Row row) throws SQLException {
+		final StringBuilder sb = new StringBuilder("UPDATE ").append(checkIdentifier(row.table)).append(" SET ");
+		for (int i = 0; i < row.columns.length; i++) {
+			if (i > 0) {
+				sb.append(", ");
+			}
+			sb.append(checkIdentifier(row.columns[i])).append("=?");
+		}
+		return sb.append(" WHERE id=?").toString();
+	}
+
+	private static String checkIdentifier(String identifier) throws SQLException {
+		if (!IDENTIFIER.matcher(identifier).matches()) {
+			throw new SQLException("Invalid identifier in the journal: " + identifier);
+		}
+		return identifier;
+	}
+
+	private static Row readRow(DataInputStream in) throws IOException {
+		final String table = readString(in);
+		final String[] columns = new String[in.readShort()];
+		final Object[] values = new Object[columns.length];
+		for (int i = 0; i < columns.length; i++) {
+			columns[i] = readString(in);
+			values[i] = readValue(in);
+		}
+		return new Row(table, columns, values);
+	}
+
+	private static void writeValue(DataOutputStream out, Object value) throws IOException {
+		if (value == null) {
+			out.writeByte(NULL);
+		} else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+			out.writeByte(INT);
+			out.writeInt(((Number) value).intValue());
+		} else if (value instanceof Long) {
+			out.writeByte(LONG);
+			out.writeLong((Long) value);
+		} else if (value instanceof Boolean) {
+			out.writeByte(BOOLEAN);
+			out.writeBoolean((Boolean) value);
+		} else if (value instanceof Double || value instanceof Float) {
+			out.writeByte(DOUBLE);
+			out.writeDouble(((Number) value).doubleValue());
+		} else {
+			out.writeByte(STRING);
+			writeString(out, value.toString());
+		}
+	}
+
+	private static Object readValue(DataInputStream in) throws IOException {
+		final byte type = in.readByte();
+		switch (type) {
+		case NULL:
+			return null;
+		case INT:
+			return in.readInt();
+		case LONG:
+			return in.readLong();
+		case BOOLEAN:
+			return in.readBoolean();
+		case DOUBLE:
+			return in.readDouble();
+		case STRING:
+			return readString(in);
+		default:
+			throw new IOException("Unknown value type " + type + " in the journal");
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		final byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
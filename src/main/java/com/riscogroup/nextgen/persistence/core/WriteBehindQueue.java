@@ -0,0 +1,416 @@
+package com.riscogroup.nextgen.persistence.core;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Defers the update of frequently changing objects and writes them in batches from a background Thread.
+ * Updates of the same UID made before the next flush are conflated, only the latest state is written.
+ *
+ * A batch is flushed when batch size objects are pending or when the flush interval elapses. The number
+ * of pending objects is bounded by the capacity: a caller finding the queue full waits for the flush up to
+ * the offer timeout, and if there is still no room offer() returns false and the caller writes the object
+ * itself. stop() writes everything still pending before returning.
+ *
+ * The queue holds the row image of the tracked columns of each update, taken when its transaction flushed
+ * it, and writes that image rather than the object, which may have changed since. Images have to be
+ * offered from an after commit action of the transaction updating them: an update rolled back is never
+ * queued, and the Database does not get ahead of the objects restored by the rollback. Until its image is
+ * written the Database row is older than the committed state, so a DAO restoring a rolled back object
+ * reads the image still queued for it, see pendingRow().
+ *
+ * Every queued update is first appended to the WriteBehindJournal of the DAO, which happens after its
+ * transaction has committed, so only committed updates are replayed. Updates still in the journal when
+ * the queue is created, because the power was lost before they were flushed, are written before anything
+ * else.
+ *
+ * Enabled per DAO in etc/db.conf with WRITE_BEHIND.&lt;DAO class simple name&gt;=true, tuned with
+ * WRITE_BEHIND_FLUSH_INTERVAL_MS, WRITE_BEHIND_BATCH_SIZE, WRITE_BEHIND_CAPACITY and
+ * WRITE_BEHIND_OFFER_TIMEOUT_MS.
+ *
+ * @param <T> Type of the Domain Object whose rows are written
+ */
+public final class WriteBehindQueue<T> implements Runnable {
+	private static final Logger logger = LoggerFactory.getLogger(WriteBehindQueue.class);
+
+	public static final String WRITE_BEHIND_KEY = "WRITE_BEHIND";
+	public static final String FLUSH_INTERVAL_KEY = "WRITE_BEHIND_FLUSH_INTERVAL_MS";
+	public static final String BATCH_SIZE_KEY = "WRITE_BEHIND_BATCH_SIZE";
+	public static final String CAPACITY_KEY = "WRITE_BEHIND_CAPACITY";
+	public static final String OFFER_TIMEOUT_KEY = "WRITE_BEHIND_OFFER_TIMEOUT_MS";
+
+	private static final long STOP_TIMEOUT_MS = 30000;
+
+	/**
+	 * Pending row image, with the journal position of its oldest update not written yet.
+	 */
+	private static final class Entry {
+		private Object[] row;
+		private final long journalPosition;
+
+		private Entry(Object[] row, long journalPosition) {
+			this.row = row;
+			this.journalPosition = journalPosition;
+		}
+	}
+
+	private final String name;
+	private final DirtyColumnTracker<T> rows;
+	private final WriteBehindJournal journal;
+	private final long flushIntervalMs;
+	private final int batchSize;
+	private final int capacity;
+	private final long offerTimeoutMs;
+	private final Map<Integer, Entry> pending = new LinkedHashMap<>();
+	/* batch being written by the flusher, until it is committed or put back into pending */
+	private Map<Integer, Entry> flushing = Collections.emptyMap();
+	private final Thread thread;
+	private Map<Integer, WriteBehindJournal.Row> notReplayed;
+	private boolean stopped;
+
+	private WriteBehindQueue(String name, DirtyColumnTracker<T> rows, WriteBehindJournal journal, Properties props) {
+		this.name = name;
+		this.rows = rows;
+		this.journal = journal;
+		flushIntervalMs = Math.max(1, ConnectionPoolFactory.getIntProperty(props, FLUSH_INTERVAL_KEY, 500));
+		batchSize = Math.max(1, ConnectionPoolFactory.getIntProperty(props, BATCH_SIZE_KEY, 200));
+		capacity = Math.max(batchSize, ConnectionPoolFactory.getIntProperty(props, CAPACITY_KEY, 5000));
+		offerTimeoutMs = Math.max(0, ConnectionPoolFactory.getIntProperty(props, OFFER_TIMEOUT_KEY, 100));
+		thread = new Thread(this, "persistence-write-behind-" + name);
+		thread.setDaemon(true);
+	}
+
+	/**
+	 * Replays the journal of the DAO and starts the queue, if write behind is enabled for the DAO class.
+	 *
+	 * @param rows tracker of the columns written, whose row images are queued, journaled and written
+	 * @return started queue, or null if write behind is disabled or its journal can not be opened
+	 */
+	public static <T> WriteBehindQueue<T> configuredFor(Class<?> daoClass, DirtyColumnTracker<T> rows) {
+		final Properties props;
+		try {
+			props = ConnectionPoolFactory.loadConfiguration();
+		} catch (Exception e) {
+			return null;
+		}
+		final String name = daoClass.getSimpleName();
+		if (!Boolean.parseBoolean(props.getProperty(WRITE_BEHIND_KEY + "." + name, "false").trim())) {
+			return null;
+		}
+		final WriteBehindJournal journal;
+		final Map<Integer, WriteBehindJournal.Row> notAcknowledged;
+		try {
+			journal = WriteBehindJournal.open(props, name, rows.getTable(), rows.getColumns());
+			notAcknowledged = journal != null ? journal.readNotAcknowledged() : null;
+		} catch (IOException e) {
+			logger.error("Write behind disabled for {}, its journal can not be opened: {}", name, e.getMessage());
+			return null;
+		}
+		final WriteBehindQueue<T> queue = new WriteBehindQueue<>(name, rows, journal, props);
+		if (notAcknowledged != null) {
+			queue.notReplayed = notAcknowledged;
+			queue.replay();
+		}
+		queue.thread.start();
+		logger.info("Write behind enabled for {}: flush every {} ms or {} objects, capacity {}", queue.name,
+				queue.flushIntervalMs, queue.batchSize, queue.capacity);
+		return queue;
+	}
+
+	/**
+	 * Queues the committed row image to be written, replacing the pending update of the same UID.
+	 *
+	 * @param row values of the tracked columns, as written by the transaction which has committed
+	 * @return false if the row was not queued, because the queue is stopped, stayed full for the offer
+	 *         timeout or the update could not be journaled, and has to be written by the caller
+	 * @throws IllegalStateException if the calling Thread has a session open, the update is not committed yet
+	 */
+	public synchronized boolean offer(int id, Object[] row) {
+		if (TransactionManager.isSessionOpen()) {
+			throw new IllegalStateException("Write behind " + name + ": update of " + id
+					+ " offered before its transaction committed");
+		}
+		if (stopped) {
+			return false;
+		}
+		final Entry entry = pending.get(id);
+		if (entry == null && pending.size() >= capacity) {
+			notifyAll();
+			final long deadline = System.currentTimeMillis() + offerTimeoutMs;
+			long remaining = offerTimeoutMs;
+			while (pending.size() >= capacity && remaining > 0 && !stopped) {
+				try {
+					wait(remaining);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return false;
+				}
+				remaining = deadline - System.currentTimeMillis();
+			}
+			if (pending.size() >= capacity || stopped) {
+				return false;
+			}
+		}
+		long journalPosition = -1;
+		if (journal != null) {
+			try {
+				journalPosition = journal.appendRow(id, row);
+			} catch (IOException e) {
+				logger.error("Write behind {}: update of {} not journaled: {}", name, id, e.getMessage());
+				return false;
+			}
+		}
+		if (entry != null) {
+			entry.row = row;
+			return true;
+		}
+		pending.put(id, new Entry(row, journalPosition));
+		if (pending.size() >= batchSize) {
+			notifyAll();
+		}
+		return true;
+	}
+
+	/**
+	 * Writes the row images at once in a transaction of their own, for the updates offer() did not take.
+	 * The UnitOfWork of the calling Thread is set aside meanwhile, a failed write does not restore
+	 * the objects of the transaction which has already committed.
+	 *
+	 * @return false if the rows could not be written
+	 */
+	public boolean writeNow(Map<Integer, Object[]> committedRows) {
+		final UnitOfWork unitOfWork = UnitOfWork.detachCurrent();
+		try {
+			return write(committedRows);
+		} finally {
+			UnitOfWork.attach(unitOfWork);
+		}
+	}
+
+	/**
+	 * @return row image of the committed update of the UID not written yet, null if there is none
+	 */
+	public synchronized Object[] pendingRow(int id) {
+		Entry entry = pending.get(id);
+		if (entry == null) {
+			entry = flushing.get(id);
+		}
+		return entry != null ? entry.row : null;
+	}
+
+	/**
+	 * Writes all pending objects and stops the background Thread.
+	 */
+	public void stop() {
+		synchronized (this) {
+			stopped = true;
+			notifyAll();
+		}
+		try {
+			thread.join(STOP_TIMEOUT_MS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		synchronized (this) {
+			if (!pending.isEmpty()) {
+				logger.error("Write behind {}: {} updates were not written{}", name, pending.size(),
+						journal != null ? ", they are kept in the journal" : "");
+			}
+		}
+		if (journal != null) {
+			journal.close();
+		}
+	}
+
+	@Override
+	public void run() {
+		for (;;) {
+			final Map<Integer, Entry> batch;
+			final long journalPosition;
+			final boolean stopping;
+			synchronized (this) {
+				if (!stopped && pending.size() < batchSize) {
+					try {
+						wait(flushIntervalMs);
+					} catch (InterruptedException e) {
+						stopped = true;
+					}
+				}
+				if (notReplayed != null && !stopped && !replay()) {
+					continue;
+				}
+				if (pending.isEmpty()) {
+					if (stopped) {
+						return;
+					}
+					continue;
+				}
+				batch = drain();
+				flushing = batch;
+				journalPosition = journal != null ? journal.position() : -1;
+				stopping = stopped;
+				notifyAll();
+			}
+			final Map<Integer, Object[]> batchRows = new LinkedHashMap<>();
+			for (Map.Entry<Integer, Entry> entry : batch.entrySet()) {
+				batchRows.put(entry.getKey(), entry.getValue().row);
+			}
+			if (write(batchRows)) {
+				acknowledge(batch.keySet(), journalPosition);
+			} else if (!stopping) {
+				requeue(batch);
+			} else {
+				synchronized (this) {
+					flushing = Collections.emptyMap();
+				}
+			}
+		}
+	}
+
+	private Map<Integer, Entry> drain() {
+		final Map<Integer, Entry> batch = new LinkedHashMap<>();
+		final Iterator<Map.Entry<Integer, Entry>> it = pending.entrySet().iterator();
+		while (it.hasNext() && batch.size() < batchSize) {
+			final Map.Entry<Integer, Entry> entry = it.next();
+			batch.put(entry.getKey(), entry.getValue());
+			it.remove();
+		}
+		return batch;
+	}
+
+	/**
+	 * Writes the changed columns of the row images, their images become the committed rows of the tracker.
+	 */
+	private boolean write(Map<Integer, Object[]> batch) {
+		final TransactionManager transactionManager = TransactionManager.getInstance();
+		try {
+			transactionManager.openSessionAndStartTransaction();
+		} catch (SQLException | RuntimeException e) {
+			logger.error("Write behind {}: {} updates not written: {}", name, batch.size(), e.getMessage());
+			return false;
+		}
+		try {
+			rows.updateRows(transactionManager.getConnection(), batch);
+		} catch (SQLException | RuntimeException e) {
+			transactionManager.rollbackTransactionAndCloseSession();
+			logger.error("Write behind {}: {} updates not written: {}", name, batch.size(), e.getMessage());
+			return false;
+		}
+		try {
+			transactionManager.commitTransactionAndCloseSession();
+			return true;
+		} catch (SQLException e) {
+			logger.error("Write behind {}: {} updates not written: {}", name, batch.size(), e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Writes the updates found in the journal when the queue was created, in their own transaction.
+	 *
+	 * @return false if they could not be written, the flusher tries again before the next batch
+	 */
+	private synchronized boolean replay() {
+		if (!notReplayed.isEmpty()) {
+			final TransactionManager transactionManager = TransactionManager.getInstance();
+			try {
+				transactionManager.openSessionAndStartTransaction();
+			} catch (SQLException | RuntimeException e) {
+				logger.error("Write behind {}: journal not replayed: {}", name, e.getMessage());
+				return false;
+			}
+			try {
+				WriteBehindJournal.writeRows(transactionManager.getConnection(), notReplayed);
+			} catch (SQLException | RuntimeException e) {
+				transactionManager.rollbackTransactionAndCloseSession();
+				logger.error("Write behind {}: journal not replayed: {}", name, e.getMessage());
+				return false;
+			}
+			try {
+				transactionManager.commitTransactionAndCloseSession();
+			} catch (SQLException e) {
+				logger.error("Write behind {}: journal not replayed: {}", name, e.getMessage());
+				return false;
+			}
+			logger.info("Write behind {}: {} updates replayed from the journal", name, notReplayed.size());
+			/* the replayed rows differ from the images read before, they are written with all columns next time */
+			for (Integer id : notReplayed.keySet()) {
+				rows.forget(id);
+			}
+		}
+		notReplayed = null;
+		releaseJournal();
+		return true;
+	}
+
+	/**
+	 * Records the written batch in the journal and releases the segments no longer needed.
+	 *
+	 * @param journalPosition position of the journal when the batch was drained
+	 */
+	private void acknowledge(Collection<Integer> ids, long journalPosition) {
+		synchronized (this) {
+			flushing = Collections.emptyMap();
+		}
+		if (journal == null) {
+			return;
+		}
+		try {
+			journal.acknowledge(ids, journalPosition);
+		} catch (IOException e) {
+			logger.warn("Write behind {}: written updates not acknowledged in the journal: {}", name, e.getMessage());
+			return;
+		}
+		synchronized (this) {
+			releaseJournal();
+		}
+	}
+
+	/**
+	 * Releases the journal up to the oldest pending update. Nothing is released while updates found
+	 * in the journal at start are not replayed yet.
+	 */
+	private void releaseJournal() {
+		if (journal == null || notReplayed != null) {
+			return;
+		}
+		long position = journal.position();
+		for (Entry entry : pending.values()) {
+			position = Math.min(position, entry.journalPosition);
+		}
+		journal.release(position);
+	}
+
+	/**
+	 * Puts a failed batch back in front of the pending rows, unless they were updated again meanwhile,
+	 * and waits before the next attempt.
+	 */
+	private synchronized void requeue(Map<Integer, Entry> batch) {
+		final Map<Integer, Entry> newer = new LinkedHashMap<>(pending);
+		pending.clear();
+		pending.putAll(batch);
+		flushing = Collections.emptyMap();
+		for (Map.Entry<Integer, Entry> entry : newer.entrySet()) {
+			final Entry failed = pending.get(entry.getKey());
+			if (failed != null) {
+				failed.row = entry.getValue().row;
+			} else {
+				pending.put(entry.getKey(), entry.getValue());
+			}
+		}
+		try {
+			wait(flushIntervalMs);
+		} catch (InterruptedException e) {
+			stopped = true;
+		}
+	}
+}
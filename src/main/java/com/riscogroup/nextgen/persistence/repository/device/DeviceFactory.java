@@ -0,0 +1,98 @@
+package com.riscogroup.nextgen.persistence.repository.device;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Modifier;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.riscogroup.nextgen.home.api.generic.Device;
+
+/**
+ * Creates devices by the class name stored in the device_class_name column.
+ * The class lookup and the constructor search are done once per class name, afterwards
+ * devices are created through a cached MethodHandle of the (Integer uid) constructor.
+ * Class names that can not be resolved are remembered too, so a bad row does not cause
+ * a class loader lookup every time it is read.
+ */
+public final class DeviceFactory {
+	private static final Logger logger = LoggerFactory.getLogger(DeviceFactory.class);
+
+	private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(void.class, Integer.class);
+	private static final MethodType FACTORY_TYPE = MethodType.methodType(Device.class, Integer.class);
+
+	private static final Map<String, MethodHandle> constructors = new ConcurrentHashMap<>();
+	private static final Set<String> unknownClassNames = ConcurrentHashMap.newKeySet();
+
+	private DeviceFactory() {
+	}
+
+	/**
+	 * Resolves the constructors of the given classes, called when the bundle starts.
+	 * Names of classes which are not devices are skipped.
+	 */
+	public static void warmUp(Collection<String> classNames) {
+		int count = 0;
+		for (String className : classNames) {
+			if (getConstructor(className) != null) {
+				count++;
+			}
+		}
+		logger.debug("Device factory warmed up with {} device classes", count);
+	}
+
+	/**
+	 * @return new device, null if the class name is unknown or is not a device of the given type
+	 * @throws SQLException if the constructor of the device failed
+	 */
+	static <T extends Device> T newInstance(String className, int deviceId, Class<T> type) throws SQLException {
+		final MethodHandle constructor = getConstructor(className);
+		if (constructor == null) {
+			logger.error("Device {} has unknown device class {}", deviceId, className);
+			return null;
+		}
+		final Device device;
+		try {
+			device = (Device) constructor.invokeExact(Integer.valueOf(deviceId));
+		} catch (Throwable e) {
+			throw new SQLException("Device " + deviceId + " of class " + className + " could not be created", e);
+		}
+		if (!type.isInstance(device)) {
+			logger.error("Device {} of class {} is not {}", deviceId, className, type.getName());
+			return null;
+		}
+		return type.cast(device);
+	}
+
+	private static MethodHandle getConstructor(String className) {
+		if (className == null) {
+			return null;
+		}
+		final MethodHandle constructor = constructors.get(className);
+		if (constructor != null || unknownClassNames.contains(className)) {
+			return constructor;
+		}
+		try {
+			final Class<?> type = Class.forName(className);
+			if (!Device.class.isAssignableFrom(type) || Modifier.isAbstract(type.getModifiers())) {
+				unknownClassNames.add(className);
+				return null;
+			}
+			final MethodHandle handle = MethodHandles.publicLookup().findConstructor(type, CONSTRUCTOR_TYPE)
+					.asType(FACTORY_TYPE);
+			final MethodHandle existing = constructors.putIfAbsent(className, handle);
+			return existing != null ? existing : handle;
+		} catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException | LinkageError e) {
+			unknownClassNames.add(className);
+			logger.debug("Class {} can not be used as device class: {}", className, e.toString());
+			return null;
+		}
+	}
+}
@@ -6,6 +6,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -16,28 +17,45 @@ import com.riscogroup.nextgen.home.api.generic.Device;
 import com.riscogroup.nextgen.home.api.generic.DeviceFunction;
 import com.riscogroup.nextgen.home.api.generic.DeviceProperty;
 import com.riscogroup.nextgen.persistence.core.DaoRegistry;
+import com.riscogroup.nextgen.persistence.core.ColumnList;
 import com.riscogroup.nextgen.persistence.core.DataAccessObject;
 
 public class DeviceFunctionDAO extends DataAccessObject<DeviceFunction> {
 	private static final Logger logger = LoggerFactory.getLogger(DeviceFunctionDAO.class);
 
+	private static final String INSERT_QUERY = "INSERT INTO home_automation.device_function "
+			+ "(name, device_id, device_class_name, end_point_id, command_name, is_processed) "
+			+ "VALUES (?,?,?,?,?,?)";
+
+	private static final String UPDATE_QUERY = "UPDATE home_automation.device_function "
+			+ "SET name=?, device_id=?, device_class_name=?, end_point_id=?, command_name=?, is_processed=? "
+			+ "WHERE id=?";
+
+	private static final ColumnList COLUMNS = new ColumnList("id", "name", "device_id", "device_class_name",
+			"end_point_id", "command_name", "is_processed");
+	private static final int ID = COLUMNS.index("id");
+	private static final int NAME = COLUMNS.index("name");
+	private static final int DEVICE_ID = COLUMNS.index("device_id");
+	private static final int DEVICE_CLASS_NAME = COLUMNS.index("device_class_name");
+	private static final int END_POINT_ID = COLUMNS.index("end_point_id");
+	private static final int COMMAND_NAME = COLUMNS.index("command_name");
+	private static final int IS_PROCESSED = COLUMNS.index("is_processed");
+
+	private static final String SELECT_FOR_DEVICES_QUERY = "SELECT " + COLUMNS
+			+ " FROM home_automation.device_function WHERE device_id = ANY(?)";
+	private static final String SELECT_BY_ID_QUERY = "SELECT " + COLUMNS
+			+ " FROM home_automation.device_function WHERE id=?";
+	private static final String SELECT_BY_IDS_QUERY = "SELECT " + COLUMNS
+			+ " FROM home_automation.device_function WHERE id = ANY(?)";
+	private static final String SELECT_FOR_DEVICE_QUERY = "SELECT " + COLUMNS
+			+ " FROM home_automation.device_function WHERE device_id=?";
+
 	@Override
 	public boolean persist(DeviceFunction object) throws SQLException {
 		final Connection conn = getTransactionManager().getConnection();
 
-		final StringBuilder sb = new StringBuilder();
-		sb.append("INSERT INTO home_automation.device_function ")
-		  .append("(name, device_id, device_class_name, end_point_id, command_name, is_processed) ")
-		  .append("VALUES (?,?,?,?,?,?)");
-		final String query = sb.toString();
-		
-		PreparedStatement stmnt = conn.prepareStatement(query, Statement.RETURN_GENERATED_KEYS);
-		stmnt.setString(1, object.getName() != null ? object.getName() : "");
-		stmnt.setInt(2, object.getParent() != null ? object.getParent().getUID() : -1);
-		stmnt.setString(3, object.getParent() != null ? object.getParent().getClass().getName() : "");
-		stmnt.setInt(4, object.getEndPointId() != null ? object.getEndPointId() : -1);
-		stmnt.setString(5, object.getCommandName() != null ? object.getCommandName() : "");
-		stmnt.setBoolean(6, object.isProcessed() != null ? object.isProcessed() : false);
+		PreparedStatement stmnt = conn.prepareStatement(INSERT_QUERY, Statement.RETURN_GENERATED_KEYS);
+		bindColumns(stmnt, object);
 		
 		stmnt.executeUpdate();
 
@@ -51,26 +69,68 @@ public class DeviceFunctionDAO extends DataAccessObject<DeviceFunction> {
 		return true;
 	}
 
+	@Override
+	public void persistAll(List<DeviceFunction> objects) throws SQLException {
+		if (objects.size() == 1) {
+			persist(objects.get(0));
+			return;
+		}
+		final Connection conn = getTransactionManager().getConnection();
+		try (PreparedStatement stmnt = conn.prepareStatement(INSERT_QUERY, Statement.RETURN_GENERATED_KEYS)) {
+			for (DeviceFunction object : objects) {
+				bindColumns(stmnt, object);
+				stmnt.addBatch();
+			}
+			stmnt.executeBatch();
+
+			try (ResultSet rs = stmnt.getGeneratedKeys()) {
+				for (DeviceFunction object : objects) {
+					if (!rs.next()) {
+						throw new SQLException("Missing generated key for batched device_function insert");
+					}
+					object.setUID(rs.getInt(1));
+				}
+			}
+		}
+	}
+
 	@Override
 	public boolean update(DeviceFunction object) throws SQLException {
 		final Connection conn = getTransactionManager().getConnection();
 
-		final StringBuilder sb = new StringBuilder();
-		sb.append("UPDATE home_automation.device_function ")
-		  .append("SET name=?, device_id=?, device_class_name=?, end_point_id=?, command_name=?, is_processed=? ")
-		  .append("WHERE id=?");
+		final PreparedStatement stmnt = conn.prepareStatement(UPDATE_QUERY);
+		bindColumns(stmnt, object);
+		stmnt.setInt(7, object.getUID());
 		
-		final PreparedStatement stmnt = conn.prepareStatement(sb.toString());
+		stmnt.executeUpdate();
+		stmnt.close();
+		return true;
+	}
+
+	@Override
+	public void updateAll(List<DeviceFunction> objects) throws SQLException {
+		if (objects.size() == 1) {
+			update(objects.get(0));
+			return;
+		}
+		final Connection conn = getTransactionManager().getConnection();
+		try (PreparedStatement stmnt = conn.prepareStatement(UPDATE_QUERY)) {
+			for (DeviceFunction object : objects) {
+				bindColumns(stmnt, object);
+				stmnt.setInt(7, object.getUID());
+				stmnt.addBatch();
+			}
+			stmnt.executeBatch();
+		}
+	}
+
+	private void bindColumns(PreparedStatement stmnt, DeviceFunction object) throws SQLException {
 		stmnt.setString(1, object.getName() != null ? object.getName() : "");
 		stmnt.setInt(2, object.getParent() != null ? object.getParent().getUID() : -1);
 		stmnt.setString(3, object.getParent() != null ? object.getParent().getClass().getName() : "");
 		stmnt.setInt(4, object.getEndPointId() != null ? object.getEndPointId() : -1);
 		stmnt.setString(5, object.getCommandName() != null ? object.getCommandName() : "");
 		stmnt.setBoolean(6, object.isProcessed() != null ? object.isProcessed() : false);
-		stmnt.setInt(7, object.getUID());
-		
-		stmnt.executeUpdate();
-		return true;
 	}
 
 	@Override
@@ -78,17 +138,15 @@ public class DeviceFunctionDAO extends DataAccessObject<DeviceFunction> {
 		final Connection connection = getTransactionManager().getConnection();
 		final List<DeviceFunction> functions = new ArrayList<>();
 
-		final String query = "SELECT * FROM home_automation.device_function WHERE device_id=?";
-		
-		try (PreparedStatement preparedStatement = connection.prepareStatement(query)) {
+		try (PreparedStatement preparedStatement = connection.prepareStatement(SELECT_FOR_DEVICE_QUERY)) {
 			preparedStatement.setInt(1, parentId);
 			try (ResultSet resultSet = preparedStatement.executeQuery();) {
 				while (resultSet.next()) {
-					if(getCache().contains(resultSet.getInt("id"))) {
-						functions.add(getCache().get(resultSet.getInt("id")));
+					if(getCache().contains(resultSet.getInt(ID))) {
+						functions.add(getCache().get(resultSet.getInt(ID)));
 						continue;
 					}
-					final DeviceFunction function = new DeviceFunction(resultSet.getInt("id"));
+					final DeviceFunction function = new DeviceFunction(resultSet.getInt(ID));
 					getCache().addIfAbsent(function.getUID(), function);
 					functions.add(function);
 					
@@ -104,6 +162,28 @@ public class DeviceFunctionDAO extends DataAccessObject<DeviceFunction> {
 		return functions;
 	}
 
+	/**
+	 * Loads the functions of all given devices with one query, and their properties with one more.
+	 */
+	@Override
+	public Map<Integer, List<DeviceFunction>> getAllForIDs(Collection<Integer> parentIds) throws SQLException {
+		return getAllForIDs(SELECT_FOR_DEVICES_QUERY, COLUMNS, "device_id", parentIds,
+				(functionId, resultSet) -> new DeviceFunction(functionId), this::fillColumns, this::loadProperties);
+	}
+
+	private void loadProperties(List<DeviceFunction> functions) throws SQLException {
+		final List<Integer> functionIds = new ArrayList<>(functions.size());
+		for (DeviceFunction function : functions) {
+			functionIds.add(function.getUID());
+		}
+		final DataAccessObject<DeviceProperty> dao = DaoRegistry.getInstance().getDAO(DeviceProperty.class.getName());
+		final Map<Integer, List<DeviceProperty>> properties = dao.getAllForIDs(functionIds);
+		for (DeviceFunction function : functions) {
+			final List<DeviceProperty> props = properties.get(function.getUID());
+			function.setDeviceProperties(props != null ? props : new ArrayList<>());
+		}
+	}
+
 	@Override
 	public boolean delete(Integer objectId) throws SQLException {
 		final Connection connection = getTransactionManager().getConnection();
@@ -132,26 +212,40 @@ public class DeviceFunctionDAO extends DataAccessObject<DeviceFunction> {
 	}
 	
 	private void fillWithData(DeviceFunction function, ResultSet resultSet) throws SQLException {
-		function.setName(resultSet.getString("name"));
-		final Device device = (Device) DaoRegistry.getInstance().getDAO(resultSet.getString("device_class_name")).get(resultSet.getInt("device_id"));
-		function.setParentDevice(device);
+		fillColumns(function, resultSet);
 		final DataAccessObject<DeviceProperty> dao = DaoRegistry.getInstance().getDAO(DeviceProperty.class.getName());
 		final List<DeviceProperty> props = dao.getAllForID(function.getUID());
 		function.setDeviceProperties(props);
-		function.setEndPointId( resultSet.getInt("end_point_id"));
-		function.setCommandName( resultSet.getString("command_name"));
-		function.setIsProcessed( resultSet.getBoolean("is_processed"));
+	}
+
+	private void fillColumns(DeviceFunction function, ResultSet resultSet) throws SQLException {
+		function.setName(resultSet.getString(NAME));
+		final Device device = (Device) DaoRegistry.getInstance().getDAO(resultSet.getString(DEVICE_CLASS_NAME)).get(resultSet.getInt(DEVICE_ID));
+		function.setParentDevice(device);
+		function.setEndPointId( resultSet.getInt(END_POINT_ID));
+		function.setCommandName( resultSet.getString(COMMAND_NAME));
+		function.setIsProcessed( resultSet.getBoolean(IS_PROCESSED));
 	}
 
 	@Override
 	public DeviceFunction get(int objectId) throws SQLException {
-		DeviceFunction function = getCache().get(objectId);
-		if(function != null) {
-			return function;
-		}
+		return getCache().load(objectId, () -> loadFromDatabase(objectId));
+	}
 
-		String query = "SELECT * FROM home_automation.device_function WHERE id=?";
-		try (PreparedStatement preparedStatement = getTransactionManager().getConnection().prepareStatement(query)) {
+	/**
+	 * A function not cached is referred to by a new function holding only its UID, loading it would
+	 * load all of its properties as well.
+	 */
+	@Override
+	public DeviceFunction getReference(int objectId) {
+		final DeviceFunction cached = getCache().get(objectId);
+		return cached != null ? cached : new DeviceFunction(objectId);
+	}
+
+	private DeviceFunction loadFromDatabase(int objectId) throws SQLException {
+		DeviceFunction function = null;
+
+		try (PreparedStatement preparedStatement = getTransactionManager().getConnection().prepareStatement(SELECT_BY_ID_QUERY)) {
 			preparedStatement.setInt(1, objectId);
 			try (ResultSet resultSet = preparedStatement.executeQuery()) {
 				if (resultSet.next()) {
@@ -177,6 +271,15 @@ public class DeviceFunctionDAO extends DataAccessObject<DeviceFunction> {
 		return null;
 	}
 
+	/**
+	 * Cached functions are taken from the cache, the others are loaded with one query and their properties with one more.
+	 */
+	@Override
+	public Map<Integer, DeviceFunction> getAll(int[] ids) throws SQLException {
+		return getAll(ids, SELECT_BY_IDS_QUERY, COLUMNS, (functionId, resultSet) -> new DeviceFunction(functionId),
+				this::fillColumns, this::loadProperties);
+	}
+
 	@Override
 	public void restoreObjectState(DeviceFunction function) throws SQLException {
 		if (function == null || function.getUID() == null) {
@@ -184,8 +287,7 @@ public class DeviceFunctionDAO extends DataAccessObject<DeviceFunction> {
 		}
 		final Connection connection = getTransactionManager().getConnection();
 		
-		String query = "SELECT * FROM home_automation.device_function WHERE id=?";
-		try (PreparedStatement preparedStatement = connection.prepareStatement(query)) {
+		try (PreparedStatement preparedStatement = connection.prepareStatement(SELECT_BY_ID_QUERY)) {
 			preparedStatement.setInt(1, function.getUID());
 			try (ResultSet rs = preparedStatement.executeQuery()) {
 				if (rs.next()) {
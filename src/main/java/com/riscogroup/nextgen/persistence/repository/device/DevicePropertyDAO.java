@@ -6,8 +6,13 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -15,41 +20,62 @@ import org.slf4j.LoggerFactory;
 import com.riscogroup.nextgen.home.api.generic.DeviceFunction;
 import com.riscogroup.nextgen.home.api.generic.DeviceProperty;
 import com.riscogroup.nextgen.persistence.core.DaoRegistry;
+import com.riscogroup.nextgen.persistence.core.ColumnFormatMigrator;
+import com.riscogroup.nextgen.persistence.core.ColumnList;
 import com.riscogroup.nextgen.persistence.core.DataAccessObject;
+import com.riscogroup.nextgen.persistence.core.DirtyColumnTracker;
+import com.riscogroup.nextgen.persistence.core.WriteBehindQueue;
 
 public class DevicePropertyDAO extends DataAccessObject<DeviceProperty> {
 	private static final Logger logger = LoggerFactory.getLogger(DevicePropertyDAO.class);
 
+	private static final String INSERT_QUERY = "INSERT INTO home_automation.device_property "
+			+ "(device_function_id,device_function_class_name, prop_index, properties_map, enums_list, value, value_array, end_point_id, persist_flag) "
+			+ "VALUES (?,?,?,?,?,?,?,?,?)";
+
+	private static final String[] UPDATE_COLUMNS = { "device_function_id", "device_function_class_name", "prop_index",
+			"properties_map", "enums_list", "value", "value_array", "end_point_id", "persist_flag" };
+
+	private final DirtyColumnTracker<DeviceProperty> propertyColumns = new DirtyColumnTracker<>(
+			"home_automation.device_property", UPDATE_COLUMNS, this::getColumnValues);
+
+	/**
+	 * Sensors report property values many times per second. If write behind is enabled in etc/db.conf
+	 * the committed updates are journaled, conflated per property and written in batches, otherwise they are
+	 * written right away.
+	 */
+	private final WriteBehindQueue<DeviceProperty> valueWrites = WriteBehindQueue.configuredFor(DevicePropertyDAO.class,
+			propertyColumns);
+
+	private static final ColumnList COLUMNS = new ColumnList("id", "device_function_id", "device_function_class_name",
+			"prop_index", "properties_map", "enums_list", "value", "value_array", "end_point_id", "persist_flag");
+	private static final int ID = COLUMNS.index("id");
+	private static final int DEVICE_FUNCTION_ID = COLUMNS.index("device_function_id");
+	private static final int DEVICE_FUNCTION_CLASS_NAME = COLUMNS.index("device_function_class_name");
+	private static final int PROP_INDEX = COLUMNS.index("prop_index");
+	private static final int PROPERTIES_MAP = COLUMNS.index("properties_map");
+	private static final int ENUMS_LIST = COLUMNS.index("enums_list");
+	private static final int VALUE = COLUMNS.index("value");
+	private static final int VALUE_ARRAY = COLUMNS.index("value_array");
+	private static final int END_POINT_ID = COLUMNS.index("end_point_id");
+	private static final int PERSIST_FLAG = COLUMNS.index("persist_flag");
+
+	private static final String SELECT_ALL_QUERY = "SELECT " + COLUMNS + " FROM home_automation.device_property";
+	private static final String SELECT_FOR_FUNCTIONS_QUERY = "SELECT " + COLUMNS
+			+ " FROM home_automation.device_property WHERE device_function_id = ANY(?)";
+	private static final String SELECT_BY_ID_QUERY = "SELECT " + COLUMNS
+			+ " FROM home_automation.device_property WHERE id=?";
+	private static final String SELECT_BY_IDS_QUERY = "SELECT " + COLUMNS
+			+ " FROM home_automation.device_property WHERE id = ANY(?)";
+	private static final String SELECT_FOR_FUNCTION_QUERY = "SELECT " + COLUMNS
+			+ " FROM home_automation.device_property WHERE device_function_id=?";
+
 	@Override
 	public boolean persist(DeviceProperty object) throws SQLException {
 		final Connection conn = getTransactionManager().getConnection();
 
-		final StringBuilder sb = new StringBuilder();
-		sb.append("INSERT INTO home_automation.device_property ")
-		  .append("(device_function_id,device_function_class_name, prop_index, properties_map, enums_list, value, value_array, end_point_id, persist_flag) ")
-		  .append("VALUES (?,?,?,?,?,?,?,?,?)");
-		final String query = sb.toString();
-		
-		PreparedStatement stmnt = conn.prepareStatement(query, Statement.RETURN_GENERATED_KEYS);
-		stmnt.setInt(1, object.getParent() != null ? object.getParent().getUID() : -1);
-		stmnt.setString(2, object.getParent() != null ? object.getParent().getClass().getName() : "");
-		stmnt.setInt(3, object.getIndex() != null ? object.getIndex() : -1);
-		stmnt.setString(4, object.getProperties() != null ? object.getProperties().toString() : "");
-		stmnt.setString(5, object.getEnums() != null ? object.getEnums().toString() : "");
-		if(object.getValue() != null) {
-			if(object.getValue() instanceof List) {
-				stmnt.setString(6, "");
-				stmnt.setString(7, object.getValue().toString());
-			} else {
-				stmnt.setString(6, object.getValue().toString());
-				stmnt.setString(7, "");
-			}
-		} else {
-			stmnt.setString(6, "");
-			stmnt.setString(7, "");
-		}
-		stmnt.setInt(8, object.getEndPointID() != null ? object.getEndPointID() : -1);
-		stmnt.setBoolean(9, object.isPersistFlag() != null ? object.isPersistFlag() : false);
+		PreparedStatement stmnt = conn.prepareStatement(INSERT_QUERY, Statement.RETURN_GENERATED_KEYS);
+		bindColumns(stmnt, object);
 		
 		stmnt.executeUpdate();
 
@@ -64,63 +90,154 @@ public class DevicePropertyDAO extends DataAccessObject<DeviceProperty> {
 	}
 
 	@Override
-	public boolean update(DeviceProperty object) throws SQLException {
+	public void persistAll(List<DeviceProperty> objects) throws SQLException {
+		if (objects.size() == 1) {
+			persist(objects.get(0));
+			return;
+		}
 		final Connection conn = getTransactionManager().getConnection();
+		try (PreparedStatement stmnt = conn.prepareStatement(INSERT_QUERY, Statement.RETURN_GENERATED_KEYS)) {
+			for (DeviceProperty object : objects) {
+				bindColumns(stmnt, object);
+				stmnt.addBatch();
+			}
+			stmnt.executeBatch();
 
-		final StringBuilder sb = new StringBuilder();
-		sb.append("UPDATE home_automation.device_property ")
-		  .append("SET device_function_id=?,device_function_class_name=?, prop_index=?, properties_map=?, enums_list=?, value=?, ")
-		  .append("value_array=?, end_point_id=?, persist_flag=? ")
-		  .append("WHERE id=?");
-		String query = sb.toString();
-		
-		PreparedStatement stmnt = conn.prepareStatement(query);
-		stmnt.setInt(1, object.getParent() != null ? object.getParent().getUID() : -1);
-		stmnt.setString(2, object.getParent() != null ? object.getParent().getClass().getName() : "");
-		stmnt.setInt(3, object.getIndex() != null ? object.getIndex() : -1);
-		stmnt.setString(4, object.getProperties() != null ? object.getProperties().toString() : "");
-		stmnt.setString(5, object.getEnums() != null ? object.getEnums().toString() : "");
+			try (ResultSet rs = stmnt.getGeneratedKeys()) {
+				for (DeviceProperty object : objects) {
+					if (!rs.next()) {
+						throw new SQLException("Missing generated key for batched device_property insert");
+					}
+					object.setUID(rs.getInt(1));
+				}
+			}
+		}
+	}
+
+	@Override
+	public boolean update(DeviceProperty object) throws SQLException {
+		if (valueWrites == null) {
+			propertyColumns.update(getTransactionManager().getConnection(), object.getUID(), object);
+			return true;
+		}
+		final Map<Integer, Object[]> rows = Collections.singletonMap(object.getUID(), propertyColumns.getRow(object));
+		getTransactionManager().runAfterCommit(() -> queueOrWrite(rows));
+		return true;
+	}
+
+	@Override
+	public void updateAll(List<DeviceProperty> objects) throws SQLException {
+		if (valueWrites == null) {
+			writeAll(objects);
+			return;
+		}
+		final Map<Integer, Object[]> rows = new LinkedHashMap<>();
+		for (DeviceProperty object : objects) {
+			rows.put(object.getUID(), propertyColumns.getRow(object));
+		}
+		getTransactionManager().runAfterCommit(() -> queueOrWrite(rows));
+	}
+
+	/**
+	 * Queues the updates once the transaction making them has committed, so a rolled back update is never
+	 * written. The rows are taken when the transaction flushes the updates: a later transaction changing the
+	 * same properties and rolling back does not reach the queue. The updates the queue does not take are
+	 * written right away, in a transaction of their own.
+	 */
+	private void queueOrWrite(Map<Integer, Object[]> rows) {
+		final Map<Integer, Object[]> notQueued = new LinkedHashMap<>();
+		for (Map.Entry<Integer, Object[]> row : rows.entrySet()) {
+			if (!valueWrites.offer(row.getKey(), row.getValue())) {
+				notQueued.put(row.getKey(), row.getValue());
+			}
+		}
+		if (!notQueued.isEmpty()) {
+			valueWrites.writeNow(notQueued);
+		}
+	}
+
+	private void writeAll(List<DeviceProperty> objects) throws SQLException {
+		propertyColumns.updateAll(getTransactionManager().getConnection(), objects, DeviceProperty::getUID);
+	}
+
+	@Override
+	public void shutdown() {
+		if (valueWrites != null) {
+			valueWrites.stop();
+		}
+	}
+
+	@Override
+	protected List<ColumnFormatMigrator.Column> getCollectionColumns() {
+		return Arrays.asList(
+				new ColumnFormatMigrator.Column("home_automation.device_property", "properties_map", ColumnFormatMigrator.Kind.MAP),
+				new ColumnFormatMigrator.Column("home_automation.device_property", "enums_list", ColumnFormatMigrator.Kind.LIST),
+				new ColumnFormatMigrator.Column("home_automation.device_property", "value_array", ColumnFormatMigrator.Kind.LIST));
+	}
+
+	private void bindColumns(PreparedStatement stmnt, DeviceProperty object) throws SQLException {
+		final Object[] values = getColumnValues(object);
+		for (int i = 0; i < values.length; i++) {
+			stmnt.setObject(i + 1, values[i]);
+		}
+	}
+
+	private Object[] getColumnValues(DeviceProperty object) {
+		String value = "";
+		String valueArray = "";
 		if(object.getValue() != null) {
 			if(object.getValue() instanceof List) {
-				stmnt.setString(6, "");
-				stmnt.setString(7, object.getValue().toString());
+				valueArray = getColumnFormat().serialize((List<?>) object.getValue());
 			} else {
-				stmnt.setString(6, object.getValue().toString());
-				stmnt.setString(7, "");
+				value = object.getValue().toString();
 			}
-		} else {
-			stmnt.setString(6, "");
-			stmnt.setString(7, "");
 		}
-		stmnt.setInt(8, object.getEndPointID() != null ? object.getEndPointID() : -1);
-		stmnt.setBoolean(9, object.isPersistFlag() != null ? object.isPersistFlag() : false);
-		stmnt.setInt(10, object.getUID());
-		stmnt.executeUpdate();
-		
-		return true;
+		return new Object[] {
+				object.getParent() != null ? object.getParent().getUID() : -1,
+				object.getParent() != null ? object.getParent().getClass().getName() : "",
+				object.getIndex() != null ? object.getIndex() : -1,
+				object.getProperties() != null ? getColumnFormat().serialize(object.getProperties()) : "",
+				object.getEnums() != null ? getColumnFormat().serialize(object.getEnums()) : "",
+				value,
+				valueArray,
+				object.getEndPointID() != null ? object.getEndPointID() : -1,
+				object.isPersistFlag() != null ? object.isPersistFlag() : false };
 	}
 
 	@Override
 	public Map<Integer, DeviceProperty> getAll() throws SQLException {
 		return null;
 	}
+
+	@Override
+	public Map<Integer, DeviceProperty> getAll(int[] ids) throws SQLException {
+		return getAll(ids, SELECT_BY_IDS_QUERY, COLUMNS, DeviceProperty::new, this::fillWithData);
+	}
+
+	/**
+	 * The property table is the largest one, it is read through a cursor instead of at once. The parent
+	 * functions are not loaded, which would load and cache all their properties: a property refers to its
+	 * cached function, or to a function holding only the UID.
+	 */
+	@Override
+	public void streamAll(Consumer<? super DeviceProperty> consumer) throws SQLException {
+		streamAll(SELECT_ALL_QUERY, COLUMNS, DeviceProperty::new, this::fillStreamed, consumer);
+	}
 	
 	@Override
 	public List<DeviceProperty> getAllForID(int parentId) throws SQLException {
 		final Connection connection = getTransactionManager().getConnection();
 		final List<DeviceProperty> properties = new ArrayList<>();
 
-		final String query = "SELECT * FROM home_automation.device_property WHERE device_function_id=?";
-		
-		try (PreparedStatement preparedStatement = connection.prepareStatement(query)) {
+		try (PreparedStatement preparedStatement = connection.prepareStatement(SELECT_FOR_FUNCTION_QUERY)) {
 			preparedStatement.setInt(1, parentId);
 			try (ResultSet resultSet = preparedStatement.executeQuery();) {
 				while (resultSet.next()) {
-					if(getCache().contains(resultSet.getInt("id"))) {
-						properties.add(getCache().get(resultSet.getInt("id")));
+					if(getCache().contains(resultSet.getInt(ID))) {
+						properties.add(getCache().get(resultSet.getInt(ID)));
 						continue;
 					}
-					final DeviceProperty property = new DeviceProperty(resultSet.getInt("id"));
+					final DeviceProperty property = new DeviceProperty(resultSet.getInt(ID));
 					getCache().addIfAbsent(property.getUID(), property);
 					properties.add(property);
 
@@ -136,6 +253,11 @@ public class DevicePropertyDAO extends DataAccessObject<DeviceProperty> {
 		return properties;
 	}
 
+	@Override
+	public Map<Integer, List<DeviceProperty>> getAllForIDs(Collection<Integer> parentIds) throws SQLException {
+		return getAllForIDs(SELECT_FOR_FUNCTIONS_QUERY, COLUMNS, "device_function_id", parentIds, DeviceProperty::new, this::fillWithData);
+	}
+
 	@Override
 	public boolean delete(Integer objectId) throws SQLException {
 		final Connection connection = getTransactionManager().getConnection();
@@ -154,33 +276,50 @@ public class DevicePropertyDAO extends DataAccessObject<DeviceProperty> {
 	}
 	
 	private void fillWithData(DeviceProperty property, ResultSet resultSet) throws SQLException {
-		final DataAccessObject<?> functionDAO = DaoRegistry.getInstance().getDAO(resultSet.getString("device_function_class_name"));
-		final DeviceFunction function = (DeviceFunction) functionDAO.get(resultSet.getInt("device_function_id"));
-		property.setParentDeviceFunction(function);
-		property.setIndex(resultSet.getInt("prop_index"));
-		property.setProperties( deserializeMapFromToString( resultSet.getString("properties_map")));
-		property.setEnum( deserializeListFromToString( resultSet.getString("enums_list")));
+		final DataAccessObject<?> functionDAO = DaoRegistry.getInstance().getDAO(resultSet.getString(DEVICE_FUNCTION_CLASS_NAME));
+		property.setParentDeviceFunction((DeviceFunction) functionDAO.get(resultSet.getInt(DEVICE_FUNCTION_ID)));
+		fillColumns(property, resultSet);
+		propertyColumns.remember(property.getUID(), property);
+	}
+
+	/**
+	 * Fills a streamed property, whose parent function is referred to without being loaded.
+	 */
+	private void fillStreamed(DeviceProperty property, ResultSet resultSet) throws SQLException {
+		final DataAccessObject<?> functionDAO = DaoRegistry.getInstance().getDAO(resultSet.getString(DEVICE_FUNCTION_CLASS_NAME));
+		property.setParentDeviceFunction((DeviceFunction) functionDAO.getReference(resultSet.getInt(DEVICE_FUNCTION_ID)));
+		fillColumns(property, resultSet);
+	}
+
+	/**
+	 * Sets the columns of the property row but the parent function, the row image is remembered by
+	 * fillWithData() only.
+	 */
+	private void fillColumns(DeviceProperty property, ResultSet resultSet) throws SQLException {
+		property.setIndex(resultSet.getInt(PROP_INDEX));
+		property.setProperties( deserializeMapFromToString( resultSet.getString(PROPERTIES_MAP)));
+		property.setEnum( deserializeListFromToString( resultSet.getString(ENUMS_LIST)));
 		
-		String value = resultSet.getString("value");
+		String value = resultSet.getString(VALUE);
 		if(value.length() > 0) {
 			property.setValue(value);
 		}else {
-			value = resultSet.getString("value_array");
+			value = resultSet.getString(VALUE_ARRAY);
 			property.setValue( deserializeListFromToString( value));
 		}
-		property.setEndPointID( resultSet.getInt("end_point_id"));
-		property.setPersistFlag( resultSet.getBoolean("persist_flag"));
+		property.setEndPointID( resultSet.getInt(END_POINT_ID));
+		property.setPersistFlag( resultSet.getBoolean(PERSIST_FLAG));
 	}
 
 	@Override
 	public DeviceProperty get(int objectId) throws SQLException {
-		DeviceProperty property = getCache().get(objectId);
-		if(property != null) {
-			return property;
-		}
+		return getCache().load(objectId, () -> loadFromDatabase(objectId));
+	}
+
+	private DeviceProperty loadFromDatabase(int objectId) throws SQLException {
+		DeviceProperty property = null;
 
-		String query = "SELECT * FROM home_automation.device_property WHERE id=?";
-		try (PreparedStatement preparedStatement = getTransactionManager().getConnection().prepareStatement(query)) {
+		try (PreparedStatement preparedStatement = getTransactionManager().getConnection().prepareStatement(SELECT_BY_ID_QUERY)) {
 			preparedStatement.setInt(1, objectId);
 			try (ResultSet resultSet = preparedStatement.executeQuery()) {
 				if (resultSet.next()) {
@@ -206,11 +345,20 @@ public class DevicePropertyDAO extends DataAccessObject<DeviceProperty> {
 		if(object == null || object.getUID() == null) {
 			return;
 		}
+		/* a committed update still queued is newer than both the row image and the Database row */
+		final Object[] queuedRow = valueWrites != null ? valueWrites.pendingRow(object.getUID()) : null;
+		if (queuedRow != null) {
+			fillColumns(object, propertyColumns.readRow(object.getUID(), queuedRow, COLUMNS));
+			return;
+		}
+		/* the parent function is not part of the state a transaction changes, only the columns are restored */
+		if (restoreFromRowImage(object.getUID(), object, propertyColumns, COLUMNS, this::fillColumns)) {
+			return;
+		}
 		
 		final Connection connection = getTransactionManager().getConnection();
 		
-		String query = "SELECT * FROM home_automation.device_property WHERE id=?";
-		try (PreparedStatement preparedStatement = connection.prepareStatement(query)) {
+		try (PreparedStatement preparedStatement = connection.prepareStatement(SELECT_BY_ID_QUERY)) {
 			preparedStatement.setInt(1, object.getUID());
 			try (ResultSet resultSet = preparedStatement.executeQuery()) {
 				if (resultSet.next()) {
@@ -0,0 +1,112 @@
+package com.riscogroup.nextgen.persistence.repository.device;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.riscogroup.nextgen.home.api.generic.Device;
+import com.riscogroup.nextgen.home.api.generic.DeviceFunction;
+import com.riscogroup.nextgen.persistence.core.DaoRegistry;
+import com.riscogroup.nextgen.persistence.core.DataAccessObject;
+import com.riscogroup.nextgen.persistence.core.PivotTableSync;
+
+/**
+ * Loads functions, properties and children of a set of devices with one query per table,
+ * instead of querying every device (and every function of it) separately.
+ * Children are written back through a PivotTableSync, so only added and removed children are written.
+ * Devices passed in must already be in the cache of their DAO, so functions and children
+ * referring back to them are resolved without going to the Database.
+ */
+final class DeviceRelationsLoader {
+	private static final String SELECT_CHILDREN_QUERY = "SELECT device_id, child_device_id FROM home_automation.device_to_child_device WHERE device_id = ANY(?)";
+
+	private static final PivotTableSync children = new PivotTableSync("home_automation.device_to_child_device",
+			"device_id", "child_device_id");
+
+	/**
+	 * Resolves child devices by id, normally the get() method of the device DAO.
+	 */
+	interface DeviceResolver {
+		Device get(int deviceId) throws SQLException;
+	}
+
+	private DeviceRelationsLoader() {
+	}
+
+	static void loadRelations(Connection connection, List<? extends Device> devices, DeviceResolver resolver) throws SQLException {
+		if (devices.isEmpty()) {
+			return;
+		}
+		final List<Integer> deviceIds = new ArrayList<>(devices.size());
+		for (Device device : devices) {
+			deviceIds.add(device.getUID());
+		}
+
+		final DataAccessObject<DeviceFunction> dao = DaoRegistry.getInstance().getDAO(DeviceFunction.class.getName());
+		final Map<Integer, List<DeviceFunction>> functions = dao.getAllForIDs(deviceIds);
+		final Map<Integer, List<Integer>> childIds = getChildIds(connection, deviceIds);
+
+		for (Device device : devices) {
+			device.removeFunctions();
+			device.removeChildren();
+
+			final List<DeviceFunction> deviceFunctions = functions.get(device.getUID());
+			if (deviceFunctions != null) {
+				device.addFunctions(deviceFunctions);
+			}
+			final List<Integer> deviceChildIds = childIds.getOrDefault(device.getUID(), Collections.emptyList());
+			for (Integer childId : deviceChildIds) {
+				device.setChild(resolver.get(childId));
+			}
+			children.remember(device.getUID(), deviceChildIds);
+		}
+	}
+
+	/**
+	 * Writes the changes of the device children since they were last loaded or updated.
+	 */
+	static void updateChildren(Connection connection, Device device) throws SQLException {
+		children.sync(connection, device.getUID(), getChildIds(device));
+	}
+
+	/**
+	 * Writes the children of a newly persisted device.
+	 */
+	static void insertChildren(Connection connection, Device device) throws SQLException {
+		children.insert(connection, device.getUID(), getChildIds(device));
+	}
+
+	private static List<Integer> getChildIds(Device device) {
+		final List<Integer> childIds = new ArrayList<>();
+		if (device.getChildren() != null) {
+			for (Device child : device.getChildren()) {
+				childIds.add(child.getUID());
+			}
+		}
+		return childIds;
+	}
+
+	static void forgetChildren(int deviceId) {
+		children.forget(deviceId);
+	}
+
+	private static Map<Integer, List<Integer>> getChildIds(Connection connection, List<Integer> deviceIds) throws SQLException {
+		final Map<Integer, List<Integer>> children = new HashMap<>();
+		try (PreparedStatement preparedStatement = connection.prepareStatement(SELECT_CHILDREN_QUERY)) {
+			preparedStatement.setArray(1, connection.createArrayOf("integer", deviceIds.toArray(new Integer[deviceIds.size()])));
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				while (resultSet.next()) {
+					children.computeIfAbsent(resultSet.getInt(1), k -> new ArrayList<>())
+							.add(resultSet.getInt(2));
+				}
+			}
+		}
+		return children;
+	}
+}
@@ -5,6 +5,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -12,15 +13,60 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.riscogroup.nextgen.home.api.device.type.intrusion.IntrusionDevice;
-import com.riscogroup.nextgen.home.api.generic.Device;
 import com.riscogroup.nextgen.home.api.generic.DeviceFunction;
+import com.riscogroup.nextgen.persistence.core.ColumnList;
 import com.riscogroup.nextgen.persistence.core.DaoRegistry;
 import com.riscogroup.nextgen.persistence.core.DataAccessObject;
+import com.riscogroup.nextgen.persistence.core.DirtyColumnTracker;
 import com.riscogroup.nextgen.persistence.core.IdentityMap;
 
 public class IntrusionDeviceDAO extends DataAccessObject<IntrusionDevice> {
 	private static final Logger logger = LoggerFactory.getLogger(IntrusionDeviceDAO.class);
+	protected static final ColumnList COLUMNS = new ColumnList("id", "device_class_name", "name", "version", "vendor",
+			"type", "protocol_id", "zone_configuration", "common_zone", "exit_open", "no_motion", "internal",
+			"bypass_state", "user_changed_bypass_status", "force_arm", "entry_delay", "exit_delay",
+			"key_pad_proximity_policy", "key_pad_emergency_key_policy", "key_pad_buzzer_policy");
+	protected static final int ID = COLUMNS.index("id");
+	protected static final int DEVICE_CLASS_NAME = COLUMNS.index("device_class_name");
+	protected static final int NAME = COLUMNS.index("name");
+	protected static final int VERSION = COLUMNS.index("version");
+	protected static final int VENDOR = COLUMNS.index("vendor");
+	protected static final int TYPE = COLUMNS.index("type");
+	protected static final int PROTOCOL_ID = COLUMNS.index("protocol_id");
+	protected static final int ZONE_CONFIGURATION = COLUMNS.index("zone_configuration");
+	protected static final int COMMON_ZONE = COLUMNS.index("common_zone");
+	protected static final int EXIT_OPEN = COLUMNS.index("exit_open");
+	protected static final int NO_MOTION = COLUMNS.index("no_motion");
+	protected static final int INTERNAL = COLUMNS.index("internal");
+	protected static final int BYPASS_STATE = COLUMNS.index("bypass_state");
+	protected static final int USER_CHANGED_BYPASS_STATUS = COLUMNS.index("user_changed_bypass_status");
+	protected static final int FORCE_ARM = COLUMNS.index("force_arm");
+	protected static final int ENTRY_DELAY = COLUMNS.index("entry_delay");
+	protected static final int EXIT_DELAY = COLUMNS.index("exit_delay");
+	protected static final int KEY_PAD_PROXIMITY_POLICY = COLUMNS.index("key_pad_proximity_policy");
+	protected static final int KEY_PAD_EMERGENCY_KEY_POLICY = COLUMNS.index("key_pad_emergency_key_policy");
+	protected static final int KEY_PAD_BUZZER_POLICY = COLUMNS.index("key_pad_buzzer_policy");
+	private static final String SELECT_NOT_CACHED_QUERY = "SELECT " + COLUMNS
+			+ " FROM home_automation.device WHERE is_zwave=false AND id <> ALL(?)";
+
+	private static final String INSERT_QUERY = "INSERT INTO home_automation.device "
+			+ "(name, device_class_name, is_zwave, version, vendor, type, protocol_id, zone_configuration, common_zone, "
+			+ "exit_open, no_motion, internal, bypass_state, user_changed_bypass_status, force_arm, entry_delay, "
+			+ "exit_delay) "
+			+ "VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
+	private static final String SELECT_BY_ID_QUERY = "SELECT " + COLUMNS
+			+ " FROM home_automation.device WHERE id=? AND is_zwave=false";
+	private static final String SELECT_BY_IDS_QUERY = "SELECT " + COLUMNS
+			+ " FROM home_automation.device WHERE is_zwave=false AND id = ANY(?)";
 	private static final IdentityMap<IntrusionDevice> intrusionCache = new IdentityMap<>();
+
+	private static final String[] UPDATE_COLUMNS = { "name", "device_class_name", "version", "vendor", "type",
+			"protocol_id", "zone_configuration", "common_zone", "exit_open", "no_motion", "internal", "bypass_state",
+			"user_changed_bypass_status", "force_arm", "entry_delay", "exit_delay" };
+
+	/* the cache is shared by all instances, and so are the row images of the cached devices */
+	private static final DirtyColumnTracker<IntrusionDevice> deviceColumns = new DirtyColumnTracker<>(
+			"home_automation.device", UPDATE_COLUMNS, IntrusionDeviceDAO::getColumnValues);
 	
 	@Override
 	protected IdentityMap<IntrusionDevice> getCache() {
@@ -28,57 +74,91 @@ public class IntrusionDeviceDAO extends DataAccessObject<IntrusionDevice> {
 	}
 	
 	protected void fillWithData(IntrusionDevice device, ResultSet resultSet) throws SQLException {
-		device.setName(resultSet.getString("name"));
-		device.setVersion(resultSet.getString("version"));
-		device.setVendor(resultSet.getString("vendor"));
-		device.setProtocolType(resultSet.getString("type"));
-		device.setProtocolID(resultSet.getInt("protocol_id"));
-		device.setZoneConfiguration(resultSet.getInt("zone_configuration"));
-		device.setCommonZone(resultSet.getBoolean("common_zone"));
-		device.setExitOpen(resultSet.getBoolean("exit_open"));
-		device.setNoMotion(resultSet.getBoolean("no_motion"));
-		device.setInternal(resultSet.getBoolean("internal"));
-		device.setBypassState(resultSet.getInt("bypass_state"));
-		device.setUserChangedBypassStatus(resultSet.getInt("user_changed_bypass_status"));
-		device.setForceArm(resultSet.getBoolean("force_arm"));
-		device.setEntryDelay(resultSet.getLong("entry_delay"));
-		device.setExitDelay(resultSet.getLong("exit_delay"));
-		
-		device.removeFunctions();
-		device.removeChildren();
-		
-		final DataAccessObject<DeviceFunction> dao = DaoRegistry.getInstance().getDAO(DeviceFunction.class.getName());
-		final List<DeviceFunction> functions = dao.getAllForID(device.getUID());
-		device.addFunctions(functions);
-		
-		String query = "SELECT child_device_id FROM home_automation.device_to_child_device WHERE device_id=?";
-		try (PreparedStatement preparedStatement = getTransactionManager().getConnection().prepareStatement(query)) {
-			preparedStatement.setInt(1, device.getUID());
-			try (ResultSet rs = preparedStatement.executeQuery()) {
-				while (rs.next()) {
-					device.setChild( get(rs.getInt("child_device_id")));
-				}
-			}
+		fillColumns(device, resultSet);
+		loadRelations(Collections.singletonList(device));
+	}
+
+	/**
+	 * Sets the columns of the device row only, functions and children are set by loadRelations().
+	 */
+	protected void fillColumns(IntrusionDevice device, ResultSet resultSet) throws SQLException {
+		device.setName(resultSet.getString(NAME));
+		device.setVersion(resultSet.getString(VERSION));
+		device.setVendor(resultSet.getString(VENDOR));
+		device.setProtocolType(resultSet.getString(TYPE));
+		device.setProtocolID(resultSet.getInt(PROTOCOL_ID));
+		device.setZoneConfiguration(resultSet.getInt(ZONE_CONFIGURATION));
+		device.setCommonZone(resultSet.getBoolean(COMMON_ZONE));
+		device.setExitOpen(resultSet.getBoolean(EXIT_OPEN));
+		device.setNoMotion(resultSet.getBoolean(NO_MOTION));
+		device.setInternal(resultSet.getBoolean(INTERNAL));
+		device.setBypassState(resultSet.getInt(BYPASS_STATE));
+		device.setUserChangedBypassStatus(resultSet.getInt(USER_CHANGED_BYPASS_STATUS));
+		device.setForceArm(resultSet.getBoolean(FORCE_ARM));
+		device.setEntryDelay(resultSet.getLong(ENTRY_DELAY));
+		device.setExitDelay(resultSet.getLong(EXIT_DELAY));
+
+		deviceColumns.remember(device.getUID(), device);
+	}
+
+	private static Object[] getColumnValues(IntrusionDevice object) {
+		return new Object[] {
+				object.getName() != null ? object.getName() : "",
+				object.getClass().getName(),
+				object.getVersion() != null ? object.getVersion() : "",
+				object.getVendor() != null ? object.getVendor() : "",
+				object.getProtocolType() != null ? object.getProtocolType() : "",
+				object.getProtocolID() != null ? object.getProtocolID() : -1,
+				object.getZoneConfiguration() != null ? object.getZoneConfiguration() : -1,
+				object.getCommonZone() != null ? object.getCommonZone() : true,
+				object.getExitOpen() != null ? object.getExitOpen() : false,
+				object.getNoMotion() != null ? object.getNoMotion() : false,
+				object.isInternal() != null ? object.isInternal() : false,
+				object.getBypassState() != null ? object.getBypassState().getValue() : -1,
+				object.getUserChangedBypassStatus() != null ? object.getUserChangedBypassStatus() : -1,
+				object.getForceArm() != null ? object.getForceArm() : false,
+				object.getEntryDelay() != null ? object.getEntryDelay() : -1L,
+				object.getExitDelay() != null ? object.getExitDelay() : -1L };
+	}
+
+	/**
+	 * Must be called by update methods writing the device row without going through the column tracker.
+	 */
+	protected void forgetColumns(int deviceId) {
+		deviceColumns.forget(deviceId);
+	}
+
+	/**
+	 * Loads functions and children of all given devices with one query per table.
+	 */
+	protected void loadRelations(List<? extends IntrusionDevice> devices) throws SQLException {
+		try {
+			DeviceRelationsLoader.loadRelations(getTransactionManager().getConnection(), devices, this::get);
 		} catch (Exception e) {
-			getCache().remove(device.getUID());
+			for (IntrusionDevice device : devices) {
+				getCache().remove(device.getUID());
+			}
 			logger.error(e.getMessage());
 			throw new SQLException(e);
 		}
 	}
 	
 	public IntrusionDevice get(int objectId) throws SQLException {
-		IntrusionDevice device = getCache().get(objectId);
-		if(device != null) {
-			return device;
-		}
+		return getCache().load(objectId, () -> loadFromDatabase(objectId));
+	}
+
+	private IntrusionDevice loadFromDatabase(int objectId) throws SQLException {
+		IntrusionDevice device = null;
 
-		String query = "SELECT * FROM home_automation.device WHERE id=? AND is_zwave=false";
-		try (PreparedStatement preparedStatement = getTransactionManager().getConnection().prepareStatement(query)) {
+		try (PreparedStatement preparedStatement = getTransactionManager().getConnection().prepareStatement(SELECT_BY_ID_QUERY)) {
 			preparedStatement.setInt(1, objectId);
 			try (ResultSet resultSet = preparedStatement.executeQuery()) {
 				if (resultSet.next()) {
-					device = (IntrusionDevice) Class.forName(resultSet.getString("device_class_name")).getConstructor(Integer.class).newInstance(objectId);
-					
+					device = DeviceFactory.newInstance(resultSet.getString(DEVICE_CLASS_NAME), objectId, IntrusionDevice.class);
+					if (device == null) {
+						getCache().remove(objectId);
+						return null;
+					}
 					getCache().addIfAbsent(objectId, device);
 					
 					fillWithData(device, resultSet);
@@ -96,43 +176,35 @@ public class IntrusionDeviceDAO extends DataAccessObject<IntrusionDevice> {
 	}
 	
 	public Map<Integer, IntrusionDevice> getAll() throws SQLException {
-		final StringBuilder sb = new StringBuilder();
-		sb.append("SELECT * FROM home_automation.").append("device");
-		if(!getCache().isEmpty()) {
-			sb.append(" WHERE id NOT IN(").append(getCache().getExistingIndexesString())
-			.append(") AND is_zwave=false");
-		} else {
-			sb.append(" WHERE is_zwave=false");
+		if (getCache().isFullyLoaded()) {
+			return getCache().getAll();
 		}
+		final long loadVersion = getCache().beginFullLoad();
 		final Connection connection = getTransactionManager().getConnection();
-
-		try (PreparedStatement preparedStatement = connection.prepareStatement(sb.toString());
-				ResultSet resultSet = preparedStatement.executeQuery()) {
-			while (resultSet.next()) {
-				IntrusionDevice device = (IntrusionDevice) Class.forName(resultSet.getString("device_class_name")).getConstructor(Integer.class).newInstance(resultSet.getInt("id"));
-				getCache().addIfAbsent(device.getUID(), device);
-				
-				fillWithData(device, resultSet);
-			}
-		} catch (Exception e) {
-			logger.error(e.getMessage());
-			throw new SQLException(e);
-		}
+		loadBatch(SELECT_NOT_CACHED_QUERY, createCachedIdsArray(connection), ID, this::createDevice, this::fillColumns,
+				this::loadRelations, null);
+		getCache().completeFullLoad(loadVersion);
 		return getCache().getAll();
 	}
-	
+
+	/**
+	 * Cached devices are taken from the cache, the others are loaded with one query and their relations with one query per table.
+	 */
+	@Override
+	public Map<Integer, IntrusionDevice> getAll(int[] ids) throws SQLException {
+		return getAll(ids, SELECT_BY_IDS_QUERY, COLUMNS, this::createDevice, this::fillColumns, this::loadRelations);
+	}
+
+	private IntrusionDevice createDevice(int deviceId, ResultSet resultSet) throws SQLException {
+		return DeviceFactory.newInstance(resultSet.getString(DEVICE_CLASS_NAME), deviceId, IntrusionDevice.class);
+	}
+
 	@Override
 	public boolean persist(IntrusionDevice object) throws SQLException {
 		final Connection conn = getTransactionManager().getConnection();
+		invalidateFullyLoaded();
 
-		StringBuilder sb = new StringBuilder();
-		sb.append("INSERT INTO home_automation.device ")
-		  .append("(name, device_class_name, is_zwave, version, vendor, type, protocol_id, zone_configuration, common_zone, ")
-		  .append("exit_open, no_motion, internal, bypass_state, user_changed_bypass_status, force_arm, entry_delay, ")
-		  .append("exit_delay) ")
-		  .append("VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)");
-		
-		PreparedStatement stmnt = conn.prepareStatement(sb.toString(), Statement.RETURN_GENERATED_KEYS);
+		PreparedStatement stmnt = conn.prepareStatement(INSERT_QUERY, Statement.RETURN_GENERATED_KEYS);
 		stmnt.setString(1, object.getName() != null ? object.getName() : "");
 		stmnt.setString(2, object.getClass().getName());
 		stmnt.setBoolean(3, false);
@@ -161,17 +233,7 @@ public class IntrusionDeviceDAO extends DataAccessObject<IntrusionDevice> {
 		
 		object.setUID(lastInsertedDeviceId);
 
-		if(object.getChildren() != null && object.getChildren().size() > 0) {
-			sb = new StringBuilder();
-			sb.append("INSERT INTO home_automation.device_to_child_device (device_id, child_device_id) VALUES ");
-			for (Device device : object.getChildren()) {
-				sb.append("(").append(lastInsertedDeviceId).append(",").append(device.getUID()).append("),");
-			}
-			final String query = sb.replace(sb.length() - 1, sb.length(), "").toString();
-			stmnt = conn.prepareStatement(query);
-			stmnt.executeUpdate();
-			stmnt.close();
-		}
+		DeviceRelationsLoader.insertChildren(conn, object);
 		return true;
 	}
 
@@ -179,52 +241,10 @@ public class IntrusionDeviceDAO extends DataAccessObject<IntrusionDevice> {
 	public boolean update(IntrusionDevice object) throws SQLException {
 		final Connection conn = getTransactionManager().getConnection();
 
-		StringBuilder sb = new StringBuilder();
-		sb.append("UPDATE home_automation.device ")
-		  .append("SET name=?, device_class_name=?, version=?, vendor=?, type=?, protocol_id=?, ")
-		  .append("zone_configuration=?, common_zone=?, exit_open=?, no_motion=?, internal=?, bypass_state=?, ")
-		  .append("user_changed_bypass_status=?, force_arm=?, entry_delay=?, exit_delay=? ")
-		  .append("WHERE id=?");
-		
-		PreparedStatement stmnt = conn.prepareStatement(sb.toString(), Statement.RETURN_GENERATED_KEYS);
-		stmnt.setString(1, object.getName() != null ? object.getName() : "");
-		stmnt.setString(2, object.getClass().getName());
-		stmnt.setString(3, object.getVersion() != null ? object.getVersion() : "");
-		stmnt.setString(4, object.getVendor() != null ? object.getVendor() : "");
-		stmnt.setString(5, object.getProtocolType() != null ? object.getProtocolType() : "");
-		stmnt.setInt(6, object.getProtocolID() != null ? object.getProtocolID() : -1);
-		stmnt.setInt(7, object.getZoneConfiguration() != null ? object.getZoneConfiguration() : -1);
-		stmnt.setBoolean(8, object.getCommonZone() != null ? object.getCommonZone() : true);
-		stmnt.setBoolean(9, object.getExitOpen() != null ? object.getExitOpen() : false);
-		stmnt.setBoolean(10, object.getNoMotion() != null ? object.getNoMotion() : false);
-		stmnt.setBoolean(11, object.isInternal() != null ? object.isInternal() : false);
-		stmnt.setInt(12, object.getBypassState() != null ? object.getBypassState().getValue() : -1);
-		stmnt.setInt(13, object.getUserChangedBypassStatus() != null ? object.getUserChangedBypassStatus() : -1);
-		stmnt.setBoolean(14, object.getForceArm() != null ? object.getForceArm() : false);
-		stmnt.setLong(15, object.getEntryDelay() != null ? object.getEntryDelay() : -1);
-		stmnt.setLong(16, object.getExitDelay() != null ? object.getExitDelay() : -1);
-		stmnt.setInt(17, object.getUID());
-		
-		stmnt.executeUpdate();
-		stmnt.close();
+		deviceColumns.update(conn, object.getUID(), object);
 
-		stmnt = conn.prepareStatement("DELETE FROM home_automation.device_to_child_device WHERE device_id=?");
-		stmnt.setInt(1, object.getUID());
-		stmnt.executeUpdate();
-		stmnt.close();
-		
-		if(object.getChildren() != null && object.getChildren().size() > 0) {
-			sb = new StringBuilder();
-			sb.append("INSERT INTO home_automation.device_to_child_device (device_id, child_device_id) VALUES ");
-			for (Device device : object.getChildren()) {
-				sb.append("(").append(object.getUID()).append(",").append(device.getUID()).append("),");
-			}
-			final String query = sb.replace(sb.length() - 1, sb.length(), "").toString();
-			stmnt = conn.prepareStatement(query);
-			stmnt.executeUpdate();
-			stmnt.close();
-		}
-		getCache().remove(object.getUID());
+		DeviceRelationsLoader.updateChildren(conn, object);
+		getCache().writeThrough(object.getUID(), object);
 		return true;
 	}
 
@@ -251,7 +271,7 @@ public class IntrusionDeviceDAO extends DataAccessObject<IntrusionDevice> {
 			preparedStatement.setInt(1, objectId);
 			try (ResultSet resultSet = preparedStatement.executeQuery()) {
 				while (resultSet.next()) {
-					final Integer deviceId = resultSet.getInt("child_device_id");
+					final Integer deviceId = resultSet.getInt(1);
 					delete(deviceId);
 				}
 			}
@@ -262,6 +282,7 @@ public class IntrusionDeviceDAO extends DataAccessObject<IntrusionDevice> {
 			stmnt.setInt(1, objectId);
 			stmnt.executeUpdate();
 		}
+		DeviceRelationsLoader.forgetChildren(objectId);
 		
 		if(device.getFunctions() != null) {
 			for(DeviceFunction function : device.getFunctions()) {
@@ -282,11 +303,15 @@ public class IntrusionDeviceDAO extends DataAccessObject<IntrusionDevice> {
 		if(device == null || device.getUID() == null) {
 			return;
 		}
+		/* columns come from the row image, functions and children are read back */
+		if (restoreFromRowImage(device.getUID(), device, deviceColumns, COLUMNS, this::fillColumns)) {
+			loadRelations(Collections.singletonList(device));
+			return;
+		}
 		
 		final Connection connection = getTransactionManager().getConnection();
 		
-		String query = "SELECT * FROM home_automation.device WHERE id=?";
-		try (PreparedStatement preparedStatement = connection.prepareStatement(query)) {
+		try (PreparedStatement preparedStatement = connection.prepareStatement(SELECT_BY_ID_QUERY)) {
 			preparedStatement.setInt(1, device.getUID());
 			try (ResultSet resultSet = preparedStatement.executeQuery()) {
 				if (resultSet.next()) {
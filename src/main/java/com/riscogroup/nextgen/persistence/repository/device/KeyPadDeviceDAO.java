@@ -5,73 +5,57 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.util.List;
+import java.util.Collections;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.riscogroup.nextgen.home.api.device.type.intrusion.KeyPadDevice;
-import com.riscogroup.nextgen.home.api.generic.Device;
-import com.riscogroup.nextgen.home.api.generic.DeviceFunction;
-import com.riscogroup.nextgen.persistence.core.DaoRegistry;
-import com.riscogroup.nextgen.persistence.core.DataAccessObject;
 
 public class KeyPadDeviceDAO extends IntrusionDeviceDAO {
 	private static final Logger logger = LoggerFactory.getLogger(KeyPadDeviceDAO.class);
+
+	private static final String INSERT_QUERY = "INSERT INTO home_automation.device "
+			+ "(name, device_class_name, is_zwave, version, vendor, type, protocol_id, zone_configuration, common_zone, "
+			+ "exit_open, no_motion, internal, bypass_state, user_changed_bypass_status, force_arm, entry_delay, "
+			+ "exit_delay, key_pad_proximity_policy, key_pad_emergency_key_policy, key_pad_buzzer_policy) "
+			+ "VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
+	private static final String UPDATE_QUERY = "UPDATE home_automation.device "
+			+ "SET name=?, device_class_name=?, version=?, vendor=?, type=?, protocol_id=?, "
+			+ "zone_configuration=?, common_zone=?, exit_open=?, no_motion=?, internal=?, bypass_state=?, "
+			+ "user_changed_bypass_status=?, force_arm=?, entry_delay=?, exit_delay=?, "
+			+ "key_pad_proximity_policy=?, key_pad_emergency_key_policy=?, key_pad_buzzer_policy=? "
+			+ "WHERE id=?";
 	
 	protected void fillWithData(KeyPadDevice device, ResultSet resultSet) throws SQLException {
-		device.setName(resultSet.getString("name"));
-		device.setVersion(resultSet.getString("version"));
-		device.setVendor(resultSet.getString("vendor"));
-		device.setProtocolType(resultSet.getString("type"));
-		device.setProtocolID(resultSet.getInt("protocol_id"));
-		device.setZoneConfiguration(resultSet.getInt("zone_configuration"));
-		device.setCommonZone(resultSet.getBoolean("common_zone"));
-		device.setExitOpen(resultSet.getBoolean("exit_open"));
-		device.setNoMotion(resultSet.getBoolean("no_motion"));
-		device.setInternal(resultSet.getBoolean("internal"));
-		device.setBypassState(resultSet.getInt("bypass_state"));
-		device.setUserChangedBypassStatus(resultSet.getInt("user_changed_bypass_status"));
-		device.setForceArm(resultSet.getBoolean("force_arm"));
-		device.setEntryDelay(resultSet.getLong("entry_delay"));
-		device.setExitDelay(resultSet.getLong("exit_delay"));
-		device.setKeyPadProximityPolicy(resultSet.getBoolean("key_pad_proximity_policy"));
-		device.setKeyPadEmergencyKeyPolicy(resultSet.getBoolean("key_pad_emergency_key_policy"));
-		device.setKeyPadBuzzerPolicy(resultSet.getBoolean("key_pad_buzzer_policy"));
-		
-		device.removeFunctions();
-		device.removeChildren();
+		device.setName(resultSet.getString(NAME));
+		device.setVersion(resultSet.getString(VERSION));
+		device.setVendor(resultSet.getString(VENDOR));
+		device.setProtocolType(resultSet.getString(TYPE));
+		device.setProtocolID(resultSet.getInt(PROTOCOL_ID));
+		device.setZoneConfiguration(resultSet.getInt(ZONE_CONFIGURATION));
+		device.setCommonZone(resultSet.getBoolean(COMMON_ZONE));
+		device.setExitOpen(resultSet.getBoolean(EXIT_OPEN));
+		device.setNoMotion(resultSet.getBoolean(NO_MOTION));
+		device.setInternal(resultSet.getBoolean(INTERNAL));
+		device.setBypassState(resultSet.getInt(BYPASS_STATE));
+		device.setUserChangedBypassStatus(resultSet.getInt(USER_CHANGED_BYPASS_STATUS));
+		device.setForceArm(resultSet.getBoolean(FORCE_ARM));
+		device.setEntryDelay(resultSet.getLong(ENTRY_DELAY));
+		device.setExitDelay(resultSet.getLong(EXIT_DELAY));
+		device.setKeyPadProximityPolicy(resultSet.getBoolean(KEY_PAD_PROXIMITY_POLICY));
+		device.setKeyPadEmergencyKeyPolicy(resultSet.getBoolean(KEY_PAD_EMERGENCY_KEY_POLICY));
+		device.setKeyPadBuzzerPolicy(resultSet.getBoolean(KEY_PAD_BUZZER_POLICY));
 		
-		final DataAccessObject<DeviceFunction> dao = DaoRegistry.getInstance().getDAO(DeviceFunction.class.getName());
-		final List<DeviceFunction> functions = dao.getAllForID(device.getUID());
-		device.addFunctions(functions);
-		
-		String query = "SELECT child_device_id FROM home_automation.device_to_child_device WHERE device_id=?";
-		try (PreparedStatement preparedStatement = getTransactionManager().getConnection().prepareStatement(query)) {
-			preparedStatement.setInt(1, device.getUID());
-			try (ResultSet rs = preparedStatement.executeQuery()) {
-				while (rs.next()) {
-					device.setChild( get(rs.getInt("child_device_id")));
-				}
-			}
-		} catch (Exception e) {
-			getCache().remove(device.getUID());
-			logger.error(e.getMessage());
-			throw new SQLException(e);
-		}
+		loadRelations(Collections.singletonList(device));
 	}
 
 	public boolean persist(KeyPadDevice device) throws SQLException {
 		final Connection conn = getTransactionManager().getConnection();
+		invalidateFullyLoaded();
 		
-		StringBuilder sb = new StringBuilder();
-		sb.append("INSERT INTO home_automation.device ")
-		  .append("(name, device_class_name, is_zwave, version, vendor, type, protocol_id, zone_configuration, common_zone, ")
-		  .append("exit_open, no_motion, internal, bypass_state, user_changed_bypass_status, force_arm, entry_delay, ")
-		  .append("exit_delay, key_pad_proximity_policy, key_pad_emergency_key_policy, key_pad_buzzer_policy) ")
-		  .append("VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)");
 		
-		PreparedStatement stmnt = conn.prepareStatement(sb.toString(), Statement.RETURN_GENERATED_KEYS);
+		PreparedStatement stmnt = conn.prepareStatement(INSERT_QUERY, Statement.RETURN_GENERATED_KEYS);
 		stmnt.setString(1, device.getName() != null ? device.getName() : "");
 		stmnt.setString(2, device.getClass().getName());
 		stmnt.setBoolean(3, false);
@@ -103,32 +87,14 @@ public class KeyPadDeviceDAO extends IntrusionDeviceDAO {
 		
 		device.setUID(lastInsertedDeviceId);
 
-		if(device.getChildren() != null && device.getChildren().size() > 0) {
-			sb = new StringBuilder();
-			sb.append("INSERT INTO home_automation.device_to_child_device (device_id, child_device_id) VALUES ");
-			for (Device d : device.getChildren()) {
-				sb.append("(").append(lastInsertedDeviceId).append(",").append(d.getUID()).append("),");
-			}
-			final String query = sb.replace(sb.length() - 1, sb.length(), "").toString();
-			stmnt = conn.prepareStatement(query);
-			stmnt.executeUpdate();
-			stmnt.close();
-		}
+		DeviceRelationsLoader.insertChildren(conn, device);
 		return true;
 	}
 
 	public boolean update(KeyPadDevice device) throws SQLException {
 		final Connection conn = getTransactionManager().getConnection();
 
-		StringBuilder sb = new StringBuilder();
-		sb.append("UPDATE home_automation.device ")
-		  .append("SET name=?, device_class_name=?, version=?, vendor=?, type=?, protocol_id=?, ")
-		  .append("zone_configuration=?, common_zone=?, exit_open=?, no_motion=?, internal=?, bypass_state=?, ")
-		  .append("user_changed_bypass_status=?, force_arm=?, entry_delay=?, exit_delay=?, ")
-		  .append("key_pad_proximity_policy=?, key_pad_emergency_key_policy=?, key_pad_buzzer_policy=? ")
-		  .append("WHERE id=?");
-		
-		PreparedStatement stmnt = conn.prepareStatement(sb.toString(), Statement.RETURN_GENERATED_KEYS);
+		PreparedStatement stmnt = conn.prepareStatement(UPDATE_QUERY, Statement.RETURN_GENERATED_KEYS);
 		stmnt.setString(1, device.getName() != null ? device.getName() : "");
 		stmnt.setString(2, device.getClass().getName());
 		stmnt.setString(3, device.getVersion() != null ? device.getVersion() : "");
@@ -153,23 +119,9 @@ public class KeyPadDeviceDAO extends IntrusionDeviceDAO {
 		stmnt.executeUpdate();
 		stmnt.close();
 
-		stmnt = conn.prepareStatement("DELETE FROM home_automation.device_to_child_device WHERE device_id=?");
-		stmnt.setInt(1, device.getUID());
-		stmnt.executeUpdate();
-		stmnt.close();
-		
-		if(device.getChildren() != null && device.getChildren().size() > 0) {
-			sb = new StringBuilder();
-			sb.append("INSERT INTO home_automation.device_to_child_device (device_id, child_device_id) VALUES ");
-			for (Device d : device.getChildren()) {
-				sb.append("(").append(device.getUID()).append(",").append(d.getUID()).append("),");
-			}
-			final String query = sb.replace(sb.length() - 1, sb.length(), "").toString();
-			stmnt = conn.prepareStatement(query);
-			stmnt.executeUpdate();
-			stmnt.close();
-		}
-		getCache().remove(device.getUID());
+		DeviceRelationsLoader.updateChildren(conn, device);
+		forgetColumns(device.getUID());
+		getCache().writeThrough(device.getUID(), device);
 		return true;
 	}  
 }
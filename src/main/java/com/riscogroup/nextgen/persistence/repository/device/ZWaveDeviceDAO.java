@@ -5,104 +5,227 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.riscogroup.nextgen.home.api.device.type.ZWaveDevice;
-import com.riscogroup.nextgen.home.api.generic.Device;
 import com.riscogroup.nextgen.home.api.generic.DeviceFunction;
+import com.riscogroup.nextgen.persistence.core.ColumnFormat;
+import com.riscogroup.nextgen.persistence.core.ColumnFormatMigrator;
+import com.riscogroup.nextgen.persistence.core.ColumnList;
 import com.riscogroup.nextgen.persistence.core.DaoRegistry;
 import com.riscogroup.nextgen.persistence.core.DataAccessObject;
+import com.riscogroup.nextgen.persistence.core.DirtyColumnTracker;
 import com.riscogroup.nextgen.persistence.core.IdentityMap;
 
 public class ZWaveDeviceDAO extends DataAccessObject<ZWaveDevice> {
 	private static final Logger logger = LoggerFactory.getLogger(ZWaveDeviceDAO.class);
+	protected static final ColumnList COLUMNS = new ColumnList("id", "device_class_name", "name", "version", "vendor",
+			"type", "protocol_id", "zone_configuration", "common_zone", "exit_open", "no_motion", "internal",
+			"bypass_state", "user_changed_bypass_status", "force_arm", "lifeline_groups", "command_classes",
+			"command_classes_exist", "battery_operated", "role_type", "wake_up_interval", "listening", "end_points",
+			"manufacturer_id", "product_type_id", "product_id", "ctrl_type", "description", "basic_device_class",
+			"generic_device_class", "specific_device_class", "mc_end_points_done", "simple_association", "end_point");
+	protected static final int ID = COLUMNS.index("id");
+	protected static final int DEVICE_CLASS_NAME = COLUMNS.index("device_class_name");
+	protected static final int NAME = COLUMNS.index("name");
+	protected static final int VERSION = COLUMNS.index("version");
+	protected static final int VENDOR = COLUMNS.index("vendor");
+	protected static final int TYPE = COLUMNS.index("type");
+	protected static final int PROTOCOL_ID = COLUMNS.index("protocol_id");
+	protected static final int ZONE_CONFIGURATION = COLUMNS.index("zone_configuration");
+	protected static final int COMMON_ZONE = COLUMNS.index("common_zone");
+	protected static final int EXIT_OPEN = COLUMNS.index("exit_open");
+	protected static final int NO_MOTION = COLUMNS.index("no_motion");
+	protected static final int INTERNAL = COLUMNS.index("internal");
+	protected static final int BYPASS_STATE = COLUMNS.index("bypass_state");
+	protected static final int USER_CHANGED_BYPASS_STATUS = COLUMNS.index("user_changed_bypass_status");
+	protected static final int FORCE_ARM = COLUMNS.index("force_arm");
+	protected static final int LIFELINE_GROUPS = COLUMNS.index("lifeline_groups");
+	protected static final int COMMAND_CLASSES = COLUMNS.index("command_classes");
+	protected static final int COMMAND_CLASSES_EXIST = COLUMNS.index("command_classes_exist");
+	protected static final int BATTERY_OPERATED = COLUMNS.index("battery_operated");
+	protected static final int ROLE_TYPE = COLUMNS.index("role_type");
+	protected static final int WAKE_UP_INTERVAL = COLUMNS.index("wake_up_interval");
+	protected static final int LISTENING = COLUMNS.index("listening");
+	protected static final int END_POINTS = COLUMNS.index("end_points");
+	protected static final int MANUFACTURER_ID = COLUMNS.index("manufacturer_id");
+	protected static final int PRODUCT_TYPE_ID = COLUMNS.index("product_type_id");
+	protected static final int PRODUCT_ID = COLUMNS.index("product_id");
+	protected static final int CTRL_TYPE = COLUMNS.index("ctrl_type");
+	protected static final int DESCRIPTION = COLUMNS.index("description");
+	protected static final int BASIC_DEVICE_CLASS = COLUMNS.index("basic_device_class");
+	protected static final int GENERIC_DEVICE_CLASS = COLUMNS.index("generic_device_class");
+	protected static final int SPECIFIC_DEVICE_CLASS = COLUMNS.index("specific_device_class");
+	protected static final int MC_END_POINTS_DONE = COLUMNS.index("mc_end_points_done");
+	protected static final int SIMPLE_ASSOCIATION = COLUMNS.index("simple_association");
+	protected static final int END_POINT = COLUMNS.index("end_point");
+	private static final String SELECT_NOT_CACHED_QUERY = "SELECT " + COLUMNS
+			+ " FROM home_automation.device WHERE is_zwave=true AND id <> ALL(?)";
+
+	private static final String INSERT_QUERY = "INSERT INTO home_automation.device "
+			+ "(name, device_class_name, is_zwave, version, vendor, type, protocol_id, zone_configuration, common_zone, "
+			+ "exit_open, no_motion, internal, bypass_state, user_changed_bypass_status, force_arm, "
+			+ "lifeline_groups, command_classes, command_classes_exist, battery_operated, "
+			+ "role_type, wake_up_interval, listening, end_points, manufacturer_id, product_type_id, "
+			+ "product_id, ctrl_type, description, basic_device_class, generic_device_class, "
+			+ "specific_device_class, mc_end_points_done, simple_association) "
+			+ "VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
+	private static final String SELECT_BY_ID_QUERY = "SELECT " + COLUMNS
+			+ " FROM home_automation.device WHERE id=? AND is_zwave=true";
+	private static final String SELECT_BY_IDS_QUERY = "SELECT " + COLUMNS
+			+ " FROM home_automation.device WHERE is_zwave=true AND id = ANY(?)";
 	private static final IdentityMap<ZWaveDevice> zWaveCache = new IdentityMap<>();
 
+	private static final String[] UPDATE_COLUMNS = { "name", "device_class_name", "version", "vendor", "type",
+			"protocol_id", "zone_configuration", "common_zone", "exit_open", "no_motion", "internal", "bypass_state",
+			"user_changed_bypass_status", "force_arm", "lifeline_groups", "command_classes", "command_classes_exist",
+			"battery_operated", "role_type", "wake_up_interval", "listening", "end_points", "manufacturer_id",
+			"product_type_id", "product_id", "ctrl_type", "description", "basic_device_class", "generic_device_class",
+			"specific_device_class", "mc_end_points_done", "simple_association" };
+
+	/* the cache is shared by all instances, and so are the row images of the cached devices */
+	private static final ColumnFormat COLUMN_FORMAT = ColumnFormat.configuredFor(ZWaveDeviceDAO.class);
+	private static final DirtyColumnTracker<ZWaveDevice> deviceColumns = new DirtyColumnTracker<>(
+			"home_automation.device", UPDATE_COLUMNS, ZWaveDeviceDAO::getColumnValues);
+
 	@Override
 	protected IdentityMap<ZWaveDevice> getCache() {
 		return zWaveCache;
 	}
 
 	protected void fillWithData(ZWaveDevice device, ResultSet rs) throws SQLException {
-		device.setName(rs.getString("name"));
-		device.setVersion(rs.getString("version"));
-		device.setVendor(rs.getString("vendor"));
-		device.setProtocolType(rs.getString("type"));
-		device.setProtocolID(rs.getInt("protocol_id"));
-		device.setZoneConfiguration(rs.getInt("zone_configuration"));
-		device.setCommonZone(rs.getBoolean("common_zone"));
-		device.setExitOpen(rs.getBoolean("exit_open"));
-		device.setNoMotion(rs.getBoolean("no_motion"));
-		device.setInternal(rs.getBoolean("internal"));
-		device.setBypassState(rs.getInt("bypass_state"));
-		device.setUserChangedBypassStatus(rs.getInt("user_changed_bypass_status"));
-		device.setForceArm(rs.getBoolean("force_arm"));
-
-		final List<Integer> lGroups = deserializeListFromToString(rs.getString("lifeline_groups")).stream()
-				.map(v -> Integer.parseInt(v)).collect(Collectors.toList());
+		fillColumns(device, rs);
+		loadRelations(Collections.singletonList(device));
+	}
+
+	/**
+	 * Sets the columns of the device row only, functions and children are set by loadRelations().
+	 */
+	protected void fillColumns(ZWaveDevice device, ResultSet rs) throws SQLException {
+		device.setName(rs.getString(NAME));
+		device.setVersion(rs.getString(VERSION));
+		device.setVendor(rs.getString(VENDOR));
+		device.setProtocolType(rs.getString(TYPE));
+		device.setProtocolID(rs.getInt(PROTOCOL_ID));
+		device.setZoneConfiguration(rs.getInt(ZONE_CONFIGURATION));
+		device.setCommonZone(rs.getBoolean(COMMON_ZONE));
+		device.setExitOpen(rs.getBoolean(EXIT_OPEN));
+		device.setNoMotion(rs.getBoolean(NO_MOTION));
+		device.setInternal(rs.getBoolean(INTERNAL));
+		device.setBypassState(rs.getInt(BYPASS_STATE));
+		device.setUserChangedBypassStatus(rs.getInt(USER_CHANGED_BYPASS_STATUS));
+		device.setForceArm(rs.getBoolean(FORCE_ARM));
+
+		final List<Integer> lGroups = deserializeIntegerListFromToString(rs.getString(LIFELINE_GROUPS));
 		device.setLifelineGroup(lGroups);
-		device.setCommandClasses(deserializeArrayFromString(rs.getString("command_classes")));
-		device.setCommandClassesExist(rs.getBoolean("command_classes_exist"));
-		device.setBatteryOperated(rs.getBoolean("battery_operated"));
-		device.setRoleType(rs.getString("role_type"));
-		device.setWakeUpInterval(rs.getInt("wake_up_interval"));
-		device.setListening(rs.getBoolean("listening"));
-		device.setEndPoints(rs.getInt("end_points"));
-		device.setManufacturerId(rs.getInt("manufacturer_id"));
-		device.setProductTypeId(rs.getInt("product_type_id"));
-		device.setProductId(rs.getInt("product_id"));
-		device.setControllerType(rs.getInt("ctrl_type"));
-		device.setDescription(rs.getString("description"));
-		device.setBasicDeviceClass(rs.getString("basic_device_class"));
-		device.setGenericDeviceClass(rs.getString("generic_device_class"));
-		device.setSpecificDeviceClass(rs.getString("specific_device_class"));
-		device.setMultiChannelEndPointsDone(rs.getBoolean("mc_end_points_done"));
-		device.setSimpleAssociationDone(rs.getBoolean("simple_association"));
-
-		device.removeFunctions();
-		device.removeChildren();
-
-		final DataAccessObject<DeviceFunction> dao = DaoRegistry.getInstance().getDAO(DeviceFunction.class.getName());
-		final List<DeviceFunction> functions = dao.getAllForID(device.getUID());
-		device.addFunctions(functions);
-
-		String query = "SELECT child_device_id FROM home_automation.device_to_child_device WHERE device_id=?";
-		try (PreparedStatement preparedStatement = getTransactionManager().getConnection().prepareStatement(query)) {
-			preparedStatement.setInt(1, device.getUID());
-			try (ResultSet resultSet = preparedStatement.executeQuery()) {
-				device.removeChildren();
-				while (resultSet.next()) {
-					device.setChild( get(resultSet.getInt("child_device_id")));
-				}
-			}
+		device.setCommandClasses(deserializeArrayFromString(rs.getString(COMMAND_CLASSES)));
+		device.setCommandClassesExist(rs.getBoolean(COMMAND_CLASSES_EXIST));
+		device.setBatteryOperated(rs.getBoolean(BATTERY_OPERATED));
+		device.setRoleType(rs.getString(ROLE_TYPE));
+		device.setWakeUpInterval(rs.getInt(WAKE_UP_INTERVAL));
+		device.setListening(rs.getBoolean(LISTENING));
+		device.setEndPoints(rs.getInt(END_POINTS));
+		device.setManufacturerId(rs.getInt(MANUFACTURER_ID));
+		device.setProductTypeId(rs.getInt(PRODUCT_TYPE_ID));
+		device.setProductId(rs.getInt(PRODUCT_ID));
+		device.setControllerType(rs.getInt(CTRL_TYPE));
+		device.setDescription(rs.getString(DESCRIPTION));
+		device.setBasicDeviceClass(rs.getString(BASIC_DEVICE_CLASS));
+		device.setGenericDeviceClass(rs.getString(GENERIC_DEVICE_CLASS));
+		device.setSpecificDeviceClass(rs.getString(SPECIFIC_DEVICE_CLASS));
+		device.setMultiChannelEndPointsDone(rs.getBoolean(MC_END_POINTS_DONE));
+		device.setSimpleAssociationDone(rs.getBoolean(SIMPLE_ASSOCIATION));
+
+		deviceColumns.remember(device.getUID(), device);
+	}
+
+	private static Object[] getColumnValues(ZWaveDevice object) {
+		return new Object[] {
+				object.getName() != null ? object.getName() : "",
+				object.getClass().getName(),
+				object.getVersion() != null ? object.getVersion() : "",
+				object.getVendor() != null ? object.getVendor() : "",
+				object.getProtocolType() != null ? object.getProtocolType() : "",
+				object.getProtocolID() != null ? object.getProtocolID() : -1,
+				object.getZoneConfiguration() != null ? object.getZoneConfiguration() : -1,
+				object.getCommonZone() != null ? object.getCommonZone() : true,
+				object.getExitOpen() != null ? object.getExitOpen() : false,
+				object.getNoMotion() != null ? object.getNoMotion() : false,
+				object.isInternal() != null ? object.isInternal() : false,
+				object.getBypassState() != null ? object.getBypassState().getValue() : -1,
+				object.getUserChangedBypassStatus() != null ? object.getUserChangedBypassStatus() : -1,
+				object.getForceArm() != null ? object.getForceArm() : false,
+				object.getLifelineGroup() != null ? COLUMN_FORMAT.serialize(object.getLifelineGroup()) : "",
+				object.getCommandClasses() != null ? COLUMN_FORMAT.serialize(object.getCommandClasses()) : "",
+				object.getCommandClassesExist(),
+				object.isBatteryOperated(),
+				object.getRoleType() != null ? object.getRoleType() : "",
+				object.getWakeUpInterval() != null ? object.getWakeUpInterval() : -1,
+				object.isListening(),
+				object.getEndPoints(),
+				object.getManufacturerId() != null ? object.getManufacturerId() : -1,
+				object.getProductTypeId() != null ? object.getProductTypeId() : -1,
+				object.getProductId() != null ? object.getProductId() : -1,
+				object.getControllerType() != null ? object.getControllerType().getValue() : -1,
+				object.getDescription() != null ? object.getDescription() : "",
+				object.getBasicDeviceClass() != null ? object.getBasicDeviceClass() : "",
+				object.getGenericDeviceClass() != null ? object.getGenericDeviceClass() : "",
+				object.getSpecificDeviceClass() != null ? object.getSpecificDeviceClass() : "",
+				object.isMultiChannelEndPointsDone(),
+				object.isSimpleChannelAssociationDone() };
+	}
+
+	@Override
+	protected List<ColumnFormatMigrator.Column> getCollectionColumns() {
+		return Arrays.asList(
+				new ColumnFormatMigrator.Column("home_automation.device", "lifeline_groups", ColumnFormatMigrator.Kind.LIST),
+				new ColumnFormatMigrator.Column("home_automation.device", "command_classes", ColumnFormatMigrator.Kind.ARRAY));
+	}
+
+	/**
+	 * Must be called by update methods writing the device row without going through the column tracker.
+	 */
+	protected void forgetColumns(int deviceId) {
+		deviceColumns.forget(deviceId);
+	}
+
+	/**
+	 * Loads functions and children of all given devices with one query per table.
+	 */
+	protected void loadRelations(List<? extends ZWaveDevice> devices) throws SQLException {
+		try {
+			DeviceRelationsLoader.loadRelations(getTransactionManager().getConnection(), devices, this::get);
 		} catch (Exception e) {
-			getCache().remove(device.getUID());
+			for (ZWaveDevice device : devices) {
+				getCache().remove(device.getUID());
+			}
 			logger.error(e.getMessage());
 			throw new SQLException(e);
 		}
 	}
 	
 	public ZWaveDevice get(int objectId) throws SQLException {
-		ZWaveDevice device = getCache().get(objectId);
-		if(device != null) {
-			return device;
-		}
+		return getCache().load(objectId, () -> loadFromDatabase(objectId));
+	}
+
+	private ZWaveDevice loadFromDatabase(int objectId) throws SQLException {
+		ZWaveDevice device = null;
 
-		String query = "SELECT * FROM home_automation.device WHERE id=? AND is_zwave=true";
-		try (PreparedStatement preparedStatement = getTransactionManager().getConnection().prepareStatement(query)) {
+		try (PreparedStatement preparedStatement = getTransactionManager().getConnection().prepareStatement(SELECT_BY_ID_QUERY)) {
 			preparedStatement.setInt(1, objectId);
 			try (ResultSet resultSet = preparedStatement.executeQuery()) {
 				if (resultSet.next()) {
-					device = (ZWaveDevice) Class.forName(resultSet.getString("device_class_name")).getConstructor(Integer.class).newInstance(objectId);
-					
+					device = DeviceFactory.newInstance(resultSet.getString(DEVICE_CLASS_NAME), objectId, ZWaveDevice.class);
+					if (device == null) {
+						getCache().remove(objectId);
+						return null;
+					}
 					getCache().addIfAbsent(objectId, device);
 					
 					fillWithData(device, resultSet);
@@ -120,46 +243,35 @@ public class ZWaveDeviceDAO extends DataAccessObject<ZWaveDevice> {
 	}
 
 	public Map<Integer, ZWaveDevice> getAll() throws SQLException {
-		final StringBuilder sb = new StringBuilder();
-		sb.append("SELECT * FROM home_automation.").append("device");
-		if (!getCache().isEmpty()) {
-			sb.append(" WHERE id NOT IN(").append(getCache().getExistingIndexesString()).append(") AND is_zwave=true");
-		} else {
-			sb.append(" WHERE is_zwave=true");
+		if (getCache().isFullyLoaded()) {
+			return getCache().getAll();
 		}
+		final long loadVersion = getCache().beginFullLoad();
 		final Connection connection = getTransactionManager().getConnection();
-
-		try (PreparedStatement preparedStatement = connection.prepareStatement(sb.toString());
-				ResultSet resultSet = preparedStatement.executeQuery()) {
-			while (resultSet.next()) {
-				ZWaveDevice device = (ZWaveDevice) Class.forName(resultSet.getString("device_class_name")).getConstructor(Integer.class).newInstance(resultSet.getInt("id"));
-				getCache().addIfAbsent(device.getUID(), device);
-				
-				fillWithData(device, resultSet);
-			}
-		} catch (Exception e) {
-			logger.error(e.getMessage());
-			throw new SQLException(e);
-		}
+		loadBatch(SELECT_NOT_CACHED_QUERY, createCachedIdsArray(connection), ID, this::createDevice, this::fillColumns,
+				this::loadRelations, null);
+		getCache().completeFullLoad(loadVersion);
 		return getCache().getAll();
 	}
 
+	/**
+	 * Cached devices are taken from the cache, the others are loaded with one query and their relations with one query per table.
+	 */
 	@Override
-	public boolean persist(ZWaveDevice object) throws SQLException {
-		final Connection conn = getTransactionManager().getConnection();
+	public Map<Integer, ZWaveDevice> getAll(int[] ids) throws SQLException {
+		return getAll(ids, SELECT_BY_IDS_QUERY, COLUMNS, this::createDevice, this::fillColumns, this::loadRelations);
+	}
 
-		StringBuilder sb = new StringBuilder();
-		sb.append("INSERT INTO home_automation.device ").append(
-				"(name, device_class_name, is_zwave, version, vendor, type, protocol_id, zone_configuration, common_zone, ")
-				.append("exit_open, no_motion, internal, bypass_state, user_changed_bypass_status, force_arm, ")
+	private ZWaveDevice createDevice(int deviceId, ResultSet resultSet) throws SQLException {
+		return DeviceFactory.newInstance(resultSet.getString(DEVICE_CLASS_NAME), deviceId, ZWaveDevice.class);
+	}
 
-				.append("lifeline_groups, command_classes, command_classes_exist, battery_operated, ")
-				.append("role_type, wake_up_interval, listening, end_points, manufacturer_id, product_type_id, ")
-				.append("product_id, ctrl_type, description, basic_device_class, generic_device_class, ")
-				.append("specific_device_class, mc_end_points_done, simple_association) ")
-				.append("VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)");
+	@Override
+	public boolean persist(ZWaveDevice object) throws SQLException {
+		final Connection conn = getTransactionManager().getConnection();
+		invalidateFullyLoaded();
 
-		PreparedStatement stmnt = conn.prepareStatement(sb.toString(), Statement.RETURN_GENERATED_KEYS);
+		PreparedStatement stmnt = conn.prepareStatement(INSERT_QUERY, Statement.RETURN_GENERATED_KEYS);
 		stmnt.setString(1, object.getName() != null ? object.getName() : "");
 		stmnt.setString(2, object.getClass().getName());
 		stmnt.setBoolean(3, true);
@@ -176,9 +288,9 @@ public class ZWaveDeviceDAO extends DataAccessObject<ZWaveDevice> {
 		stmnt.setInt(14, object.getUserChangedBypassStatus() != null ? object.getUserChangedBypassStatus() : -1);
 		stmnt.setBoolean(15, object.getForceArm() != null ? object.getForceArm() : false);
 
-		stmnt.setString(16, object.getLifelineGroup() != null ? object.getLifelineGroup().toString() : "");
+		stmnt.setString(16, object.getLifelineGroup() != null ? getColumnFormat().serialize(object.getLifelineGroup()) : "");
 		stmnt.setString(17,
-				object.getCommandClasses() != null ? Arrays.asList(object.getCommandClasses()).toString() : "");
+				object.getCommandClasses() != null ? getColumnFormat().serialize(object.getCommandClasses()) : "");
 		stmnt.setBoolean(18, object.getCommandClassesExist());
 		stmnt.setBoolean(19, object.isBatteryOperated());
 		stmnt.setString(20, object.getRoleType() != null ? object.getRoleType() : "");
@@ -206,17 +318,7 @@ public class ZWaveDeviceDAO extends DataAccessObject<ZWaveDevice> {
 
 		object.setUID(lastInsertedDeviceId);
 
-		if (object.getChildren() != null && object.getChildren().size() > 0) {
-			sb = new StringBuilder();
-			sb.append("INSERT INTO home_automation.device_to_child_device (device_id, child_device_id) VALUES ");
-			for (Device device : object.getChildren()) {
-				sb.append("(").append(lastInsertedDeviceId).append(",").append(device.getUID()).append("),");
-			}
-			final String query = sb.replace(sb.length() - 1, sb.length(), "").toString();
-			stmnt = conn.prepareStatement(query);
-			stmnt.executeUpdate();
-			stmnt.close();
-		}
+		DeviceRelationsLoader.insertChildren(conn, object);
 		return true;
 	}
 
@@ -224,74 +326,10 @@ public class ZWaveDeviceDAO extends DataAccessObject<ZWaveDevice> {
 	public boolean update(ZWaveDevice object) throws SQLException {
 		final Connection conn = getTransactionManager().getConnection();
 
-		StringBuilder sb = new StringBuilder();
-		sb.append("UPDATE home_automation.device ")
-				.append("SET name=?, device_class_name=?, version=?, vendor=?, type=?, protocol_id=?, ")
-				.append("zone_configuration=?, common_zone=?, exit_open=?, no_motion=?, internal=?, bypass_state=?, ")
-				.append("user_changed_bypass_status=?, force_arm=?, ")
-
-				.append("lifeline_groups=?, command_classes=?, command_classes_exist=?, battery_operated=?, ")
-				.append("role_type=?, wake_up_interval=?, listening=?, end_points=?, manufacturer_id=?, product_type_id=?, ")
-				.append("product_id=?, ctrl_type=?, description=?, basic_device_class=?, generic_device_class=?, ")
-				.append("specific_device_class=?, mc_end_points_done=?, simple_association=? ").append("WHERE id=?");
-
-		PreparedStatement stmnt = conn.prepareStatement(sb.toString(), Statement.RETURN_GENERATED_KEYS);
-		stmnt.setString(1, object.getName() != null ? object.getName() : "");
-		stmnt.setString(2, object.getClass().getName());
-		stmnt.setString(3, object.getVersion() != null ? object.getVersion() : "");
-		stmnt.setString(4, object.getVendor() != null ? object.getVendor() : "");
-		stmnt.setString(5, object.getProtocolType() != null ? object.getProtocolType() : "");
-		stmnt.setInt(6, object.getProtocolID() != null ? object.getProtocolID() : -1);
-		stmnt.setInt(7, object.getZoneConfiguration() != null ? object.getZoneConfiguration() : -1);
-		stmnt.setBoolean(8, object.getCommonZone() != null ? object.getCommonZone() : true);
-		stmnt.setBoolean(9, object.getExitOpen() != null ? object.getExitOpen() : false);
-		stmnt.setBoolean(10, object.getNoMotion() != null ? object.getNoMotion() : false);
-		stmnt.setBoolean(11, object.isInternal() != null ? object.isInternal() : false);
-		stmnt.setInt(12, object.getBypassState() != null ? object.getBypassState().getValue() : -1);
-		stmnt.setInt(13, object.getUserChangedBypassStatus() != null ? object.getUserChangedBypassStatus() : -1);
-		stmnt.setBoolean(14, object.getForceArm() != null ? object.getForceArm() : false);
-
-		stmnt.setString(15, object.getLifelineGroup() != null ? object.getLifelineGroup().toString() : "");
-		stmnt.setString(16,
-				object.getCommandClasses() != null ? Arrays.asList(object.getCommandClasses()).toString() : "");
-		stmnt.setBoolean(17, object.getCommandClassesExist());
-		stmnt.setBoolean(18, object.isBatteryOperated());
-		stmnt.setString(19, object.getRoleType() != null ? object.getRoleType() : "");
-		stmnt.setInt(20, object.getWakeUpInterval() != null ? object.getWakeUpInterval() : -1);
-		stmnt.setBoolean(21, object.isListening());
-		stmnt.setInt(22, object.getEndPoints());
-		stmnt.setInt(23, object.getManufacturerId() != null ? object.getManufacturerId() : -1);
-		stmnt.setInt(24, object.getProductTypeId() != null ? object.getProductTypeId() : -1);
-		stmnt.setInt(25, object.getProductId() != null ? object.getProductId() : -1);
-		stmnt.setInt(26, object.getControllerType() != null ? object.getControllerType().getValue() : -1);
-		stmnt.setString(27, object.getDescription() != null ? object.getDescription() : "");
-		stmnt.setString(28, object.getBasicDeviceClass() != null ? object.getBasicDeviceClass() : "");
-		stmnt.setString(29, object.getGenericDeviceClass() != null ? object.getGenericDeviceClass() : "");
-		stmnt.setString(30, object.getSpecificDeviceClass() != null ? object.getSpecificDeviceClass() : "");
-		stmnt.setBoolean(31, object.isMultiChannelEndPointsDone());
-		stmnt.setBoolean(32, object.isSimpleChannelAssociationDone());
-		stmnt.setInt(33, object.getUID());
-
-		stmnt.executeUpdate();
-		stmnt.close();
-
-		stmnt = conn.prepareStatement("DELETE FROM home_automation.device_to_child_device WHERE device_id=?");
-		stmnt.setInt(1, object.getUID());
-		stmnt.executeUpdate();
-		stmnt.close();
+		deviceColumns.update(conn, object.getUID(), object);
 
-		if (object.getChildren() != null && object.getChildren().size() > 0) {
-			sb = new StringBuilder();
-			sb.append("INSERT INTO home_automation.device_to_child_device (device_id, child_device_id) VALUES ");
-			for (Device device : object.getChildren()) {
-				sb.append("(").append(object.getUID()).append(",").append(device.getUID()).append("),");
-			}
-			final String query = sb.replace(sb.length() - 1, sb.length(), "").toString();
-			stmnt = conn.prepareStatement(query);
-			stmnt.executeUpdate();
-			stmnt.close();
-		}
-		getCache().remove(object.getUID());
+		DeviceRelationsLoader.updateChildren(conn, object);
+		getCache().writeThrough(object.getUID(), object);
 		return true;
 	}
 
@@ -318,7 +356,7 @@ public class ZWaveDeviceDAO extends DataAccessObject<ZWaveDevice> {
 			preparedStatement.setInt(1, objectId);
 			try (ResultSet resultSet = preparedStatement.executeQuery()) {
 				while (resultSet.next()) {
-					final Integer deviceId = resultSet.getInt("child_device_id");
+					final Integer deviceId = resultSet.getInt(1);
 					delete(deviceId);
 				}
 			}
@@ -329,6 +367,7 @@ public class ZWaveDeviceDAO extends DataAccessObject<ZWaveDevice> {
 			stmnt.setInt(1, objectId);
 			stmnt.executeUpdate();
 		}
+		DeviceRelationsLoader.forgetChildren(objectId);
 		
 		if (device.getFunctions() != null) {
 			for (DeviceFunction function : device.getFunctions()) {
@@ -344,46 +383,20 @@ public class ZWaveDeviceDAO extends DataAccessObject<ZWaveDevice> {
 		return delete(obj.getUID());
 	}
 
-	protected Byte[] deserializeByteArrayFromToString(final String listString) {
-		final List<Byte> newList = new ArrayList<>();
-		if (listString != null && listString.length() > 2) {
-			final String[] listArr = listString.replaceAll("[\\[\\]]", "").split(",");
-			for (String line : listArr) {
-				if (line.length() > 1 && !line.contains("null")) {
-					newList.add(Byte.valueOf(line.trim()));
-				}
-			}
-		}
-		final Byte[] res = new Byte[newList.size()];
-		for (int i = 0; i < newList.size(); i++) {
-			res[i] = newList.get(i);
-		}
-		return res;
-	}
-
-	protected Map<String, Integer> deserializeMap(final String mapString) {
-		final Map<String, Integer> newMap = new HashMap<>();
-		if (mapString != null && mapString.length() > 2) {
-			final String[] mapArr = mapString.replaceAll("[\\{\\}]", "").split(",");
-			for (String line : mapArr) {
-				final String[] lineArr = line.split("=");
-				final String value = lineArr.length > 1 ? lineArr[1].trim() : "";
-				newMap.put(lineArr[0].trim(), Integer.valueOf(value));
-			}
-		}
-		return newMap;
-	}
-
 	@Override
 	public void restoreObjectState(ZWaveDevice device) throws SQLException {
 		if (device == null || device.getUID() == null) {
 			return;
 		}
+		/* columns come from the row image, functions and children are read back */
+		if (restoreFromRowImage(device.getUID(), device, deviceColumns, COLUMNS, this::fillColumns)) {
+			loadRelations(Collections.singletonList(device));
+			return;
+		}
 		
 		final Connection connection = getTransactionManager().getConnection();
 		
-		String query = "SELECT * FROM home_automation.device WHERE id=?";
-		try (PreparedStatement preparedStatement = connection.prepareStatement(query)) {
+		try (PreparedStatement preparedStatement = connection.prepareStatement(SELECT_BY_ID_QUERY)) {
 			preparedStatement.setInt(1, device.getUID());
 			try (ResultSet rs = preparedStatement.executeQuery()) {
 				if (rs.next()) {
@@ -16,35 +16,48 @@ import com.riscogroup.nextgen.home.api.device.type.ZWaveDevice;
 import com.riscogroup.nextgen.home.api.function.type.ZWaveDeviceFunction;
 import com.riscogroup.nextgen.home.api.generic.DeviceProperty;
 import com.riscogroup.nextgen.persistence.core.DaoRegistry;
+import com.riscogroup.nextgen.persistence.core.ColumnList;
 import com.riscogroup.nextgen.persistence.core.DataAccessObject;
 
 public class ZWaveDeviceFunctionDAO extends DataAccessObject<ZWaveDeviceFunction> {
 	private static final Logger logger = LoggerFactory.getLogger(ZWaveDeviceFunctionDAO.class);
 
+	private static final String INSERT_QUERY = "INSERT INTO home_automation.device_function "
+			+ "(name, device_id, device_class_name, end_point_id, command_name, is_processed, "
+			+ "ack_received, embedded_function, command_id, command_class_id, reason) "
+			+ "VALUES (?,?,?,?,?,?,?,?,?,?,?)";
+
+	private static final String UPDATE_QUERY = "UPDATE home_automation.device_function "
+			+ "SET name=?, device_id=?, device_class_name=?, end_point_id=?, command_name=?, is_processed=?, "
+			+ "ack_received=?, embedded_function=?, command_id=?, command_class_id=?, reason=? "
+			+ "WHERE id=?";
+
+	private static final ColumnList COLUMNS = new ColumnList("id", "name", "device_id", "end_point_id", "command_name",
+			"is_processed", "ack_received", "embedded_function", "command_id", "command_class_id", "reason");
+	private static final int ID = COLUMNS.index("id");
+	private static final int NAME = COLUMNS.index("name");
+	private static final int DEVICE_ID = COLUMNS.index("device_id");
+	private static final int END_POINT_ID = COLUMNS.index("end_point_id");
+	private static final int COMMAND_NAME = COLUMNS.index("command_name");
+	private static final int IS_PROCESSED = COLUMNS.index("is_processed");
+	private static final int ACK_RECEIVED = COLUMNS.index("ack_received");
+	private static final int EMBEDDED_FUNCTION = COLUMNS.index("embedded_function");
+	private static final int COMMAND_ID = COLUMNS.index("command_id");
+	private static final int COMMAND_CLASS_ID = COLUMNS.index("command_class_id");
+	private static final int REASON = COLUMNS.index("reason");
+	private static final String SELECT_BY_ID_QUERY = "SELECT " + COLUMNS
+			+ " FROM home_automation.device_function WHERE id=?";
+	private static final String SELECT_BY_IDS_QUERY = "SELECT " + COLUMNS
+			+ " FROM home_automation.device_function WHERE id = ANY(?)";
+	private static final String SELECT_FOR_DEVICE_QUERY = "SELECT " + COLUMNS
+			+ " FROM home_automation.device_function WHERE device_id=?";
+
 	@Override
 	public boolean persist(ZWaveDeviceFunction object) throws SQLException {
 		final Connection conn = getTransactionManager().getConnection();
 
-		final StringBuilder sb = new StringBuilder();
-		sb.append("INSERT INTO home_automation.device_function ")
-				.append("(name, device_id, device_class_name, end_point_id, command_name, is_processed, ")
-				.append("ack_received, embedded_function, command_id, command_class_id, reason) ")
-				.append("VALUES (?,?,?,?,?,?,?,?,?,?,?)");
-		final String query = sb.toString();
-
-		PreparedStatement stmnt = conn.prepareStatement(query, Statement.RETURN_GENERATED_KEYS);
-		stmnt.setString(1, object.getName() != null ? object.getName() : "");
-		stmnt.setInt(2, object.getParent() != null ? object.getParent().getUID() : -1);
-		stmnt.setString(3, object.getParent() != null ? object.getParent().getClass().getName() : "");
-		stmnt.setInt(4, object.getEndPointId() != null ? object.getEndPointId() : -1);
-		stmnt.setString(5, object.getCommandName() != null ? object.getCommandName() : "");
-		stmnt.setBoolean(6, object.isProcessed() != null ? object.isProcessed() : false);
-
-		stmnt.setBoolean(7, object.getAckReceived());
-		stmnt.setBoolean(8, object.isEmbeddedFunction());
-		stmnt.setInt(9, object.getCommandId() != null ? object.getCommandId() : -1);
-		stmnt.setString(10, object.getCommandClassId() != null ? object.getCommandClassId() : "");
-		stmnt.setString(11, object.getReasonToFailed() != null ? object.getReasonToFailed() : "");
+		PreparedStatement stmnt = conn.prepareStatement(INSERT_QUERY, Statement.RETURN_GENERATED_KEYS);
+		bindColumns(stmnt, object);
 
 		stmnt.executeUpdate();
 
@@ -58,16 +71,62 @@ public class ZWaveDeviceFunctionDAO extends DataAccessObject<ZWaveDeviceFunction
 		return true;
 	}
 
+	@Override
+	public void persistAll(List<ZWaveDeviceFunction> objects) throws SQLException {
+		if (objects.size() == 1) {
+			persist(objects.get(0));
+			return;
+		}
+		final Connection conn = getTransactionManager().getConnection();
+		try (PreparedStatement stmnt = conn.prepareStatement(INSERT_QUERY, Statement.RETURN_GENERATED_KEYS)) {
+			for (ZWaveDeviceFunction object : objects) {
+				bindColumns(stmnt, object);
+				stmnt.addBatch();
+			}
+			stmnt.executeBatch();
+
+			try (ResultSet rs = stmnt.getGeneratedKeys()) {
+				for (ZWaveDeviceFunction object : objects) {
+					if (!rs.next()) {
+						throw new SQLException("Missing generated key for batched device_function insert");
+					}
+					object.setUID(rs.getInt(1));
+				}
+			}
+		}
+	}
+
 	@Override
 	public boolean update(ZWaveDeviceFunction object) throws SQLException {
 		final Connection conn = getTransactionManager().getConnection();
 
-		final StringBuilder sb = new StringBuilder();
-		sb.append("UPDATE home_automation.device_function ").append(
-				"SET name=?, device_id=?, device_class_name=?, end_point_id=?, command_name=?, is_processed=?, ")
-				.append("ack_received=?, embedded_function=?, command_id=?, command_class_id=?, reason=? ").append("WHERE id=?");
+		final PreparedStatement stmnt = conn.prepareStatement(UPDATE_QUERY);
+		bindColumns(stmnt, object);
+		stmnt.setInt(12, object.getUID());
 
-		final PreparedStatement stmnt = conn.prepareStatement(sb.toString());
+		stmnt.executeUpdate();
+		stmnt.close();
+		return true;
+	}
+
+	@Override
+	public void updateAll(List<ZWaveDeviceFunction> objects) throws SQLException {
+		if (objects.size() == 1) {
+			update(objects.get(0));
+			return;
+		}
+		final Connection conn = getTransactionManager().getConnection();
+		try (PreparedStatement stmnt = conn.prepareStatement(UPDATE_QUERY)) {
+			for (ZWaveDeviceFunction object : objects) {
+				bindColumns(stmnt, object);
+				stmnt.setInt(12, object.getUID());
+				stmnt.addBatch();
+			}
+			stmnt.executeBatch();
+		}
+	}
+
+	private void bindColumns(PreparedStatement stmnt, ZWaveDeviceFunction object) throws SQLException {
 		stmnt.setString(1, object.getName() != null ? object.getName() : "");
 		stmnt.setInt(2, object.getParent() != null ? object.getParent().getUID() : -1);
 		stmnt.setString(3, object.getParent() != null ? object.getParent().getClass().getName() : "");
@@ -80,10 +139,6 @@ public class ZWaveDeviceFunctionDAO extends DataAccessObject<ZWaveDeviceFunction
 		stmnt.setInt(9, object.getCommandId() != null ? object.getCommandId() : -1);
 		stmnt.setString(10, object.getCommandClassId() != null ? object.getCommandClassId() : "");
 		stmnt.setString(11, object.getReasonToFailed() != null ? object.getReasonToFailed() : "");
-		stmnt.setInt(12, object.getUID());
-
-		stmnt.executeUpdate();
-		return true;
 	}
 
 	@Override
@@ -91,21 +146,24 @@ public class ZWaveDeviceFunctionDAO extends DataAccessObject<ZWaveDeviceFunction
 		return null;
 	}
 
+	@Override
+	public Map<Integer, ZWaveDeviceFunction> getAll(int[] ids) throws SQLException {
+		return getAll(ids, SELECT_BY_IDS_QUERY, COLUMNS, ZWaveDeviceFunction::new, this::fillWithData);
+	}
+
 	@Override
 	public List<ZWaveDeviceFunction> getAllForID(int parentId) throws SQLException {
 		final List<ZWaveDeviceFunction> functions = new ArrayList<>();
 
-		final String query = "SELECT * FROM home_automation.device_function WHERE device_id=?";
-
-		try (PreparedStatement preparedStatement = getTransactionManager().getConnection().prepareStatement(query)) {
+		try (PreparedStatement preparedStatement = getTransactionManager().getConnection().prepareStatement(SELECT_FOR_DEVICE_QUERY)) {
 			preparedStatement.setInt(1, parentId);
 			try (ResultSet resultSet = preparedStatement.executeQuery();) {
 				while (resultSet.next()) {
-					if (getCache().contains(resultSet.getInt("id"))) {
-						functions.add(getCache().get(resultSet.getInt("id")));
+					if (getCache().contains(resultSet.getInt(ID))) {
+						functions.add(getCache().get(resultSet.getInt(ID)));
 						continue;
 					}
-					final ZWaveDeviceFunction function = new ZWaveDeviceFunction(resultSet.getInt("id"));
+					final ZWaveDeviceFunction function = new ZWaveDeviceFunction(resultSet.getInt(ID));
 					getCache().addIfAbsent(function.getUID(), function);
 					functions.add(function);
 
@@ -154,8 +212,7 @@ public class ZWaveDeviceFunctionDAO extends DataAccessObject<ZWaveDeviceFunction
 		}
 		final Connection connection = getTransactionManager().getConnection();
 		
-		String query = "SELECT * FROM home_automation.device_function WHERE id=?";
-		try (PreparedStatement preparedStatement = connection.prepareStatement(query)) {
+		try (PreparedStatement preparedStatement = connection.prepareStatement(SELECT_BY_ID_QUERY)) {
 			preparedStatement.setInt(1, function.getUID());
 			try (ResultSet rs = preparedStatement.executeQuery()) {
 				if (rs.next()) {
@@ -174,13 +231,23 @@ public class ZWaveDeviceFunctionDAO extends DataAccessObject<ZWaveDeviceFunction
 	}
 
 	public ZWaveDeviceFunction get(int objectId) throws SQLException {
-		ZWaveDeviceFunction function = getCache().get(objectId);
-		if (function != null) {
-			return function;
-		}
+		return getCache().load(objectId, () -> loadFromDatabase(objectId));
+	}
 
-		String query = "SELECT * FROM home_automation.device_function WHERE id=?";
-		try (PreparedStatement preparedStatement = getTransactionManager().getConnection().prepareStatement(query)) {
+	/**
+	 * A function not cached is referred to by a new function holding only its UID, loading it would
+	 * load all of its properties as well.
+	 */
+	@Override
+	public ZWaveDeviceFunction getReference(int objectId) {
+		final ZWaveDeviceFunction cached = getCache().get(objectId);
+		return cached != null ? cached : new ZWaveDeviceFunction(objectId);
+	}
+
+	private ZWaveDeviceFunction loadFromDatabase(int objectId) throws SQLException {
+		ZWaveDeviceFunction function = null;
+
+		try (PreparedStatement preparedStatement = getTransactionManager().getConnection().prepareStatement(SELECT_BY_ID_QUERY)) {
 			preparedStatement.setInt(1, objectId);
 			try (ResultSet resultSet = preparedStatement.executeQuery()) {
 				if (resultSet.next()) {
@@ -202,21 +269,21 @@ public class ZWaveDeviceFunctionDAO extends DataAccessObject<ZWaveDeviceFunction
 	}
 	
 	private void fillWithData(ZWaveDeviceFunction function, ResultSet resultSet) throws SQLException {
-		function.setName(resultSet.getString("name"));
+		function.setName(resultSet.getString(NAME));
 		final ZWaveDevice device = (ZWaveDevice) DaoRegistry.getInstance().getDAO(ZWaveDevice.class.getName())
-				.get(resultSet.getInt("device_id"));
+				.get(resultSet.getInt(DEVICE_ID));
 		function.setParentDevice(device);
 		final DataAccessObject<DeviceProperty> dao = DaoRegistry.getInstance().getDAO(DeviceProperty.class.getName());
 		final List<DeviceProperty> props = dao.getAllForID(function.getUID());
 		function.setDeviceProperties(props);
-		function.setEndPointId(resultSet.getInt("end_point_id"));
-		function.setCommandName(resultSet.getString("command_name"));
-		function.setIsProcessed(resultSet.getBoolean("is_processed"));
-
-		function.setAckReceived(resultSet.getBoolean("ack_received"));
-		function.setEmbeddedFunction(resultSet.getBoolean("embedded_function"));
-		function.setCommandId(resultSet.getInt("command_id"));
-		function.setCommandClassId(resultSet.getString("command_class_id"));
-		function.setReasonToFailed(resultSet.getString("reason"));
+		function.setEndPointId(resultSet.getInt(END_POINT_ID));
+		function.setCommandName(resultSet.getString(COMMAND_NAME));
+		function.setIsProcessed(resultSet.getBoolean(IS_PROCESSED));
+
+		function.setAckReceived(resultSet.getBoolean(ACK_RECEIVED));
+		function.setEmbeddedFunction(resultSet.getBoolean(EMBEDDED_FUNCTION));
+		function.setCommandId(resultSet.getInt(COMMAND_ID));
+		function.setCommandClassId(resultSet.getString(COMMAND_CLASS_ID));
+		function.setReasonToFailed(resultSet.getString(REASON));
 	}
 }
@@ -5,37 +5,40 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.riscogroup.nextgen.home.api.device.type.ZwaveMultiChannelDevice;
-import com.riscogroup.nextgen.home.api.generic.Device;
-import com.riscogroup.nextgen.home.api.generic.DeviceFunction;
-import com.riscogroup.nextgen.persistence.core.DaoRegistry;
-import com.riscogroup.nextgen.persistence.core.DataAccessObject;
 
 public class ZwaveMultiChannelDeviceDAO extends ZWaveDeviceDAO {
 	private static final Logger logger = LoggerFactory.getLogger(ZwaveMultiChannelDevice.class);
 
+	private static final String INSERT_QUERY = "INSERT INTO home_automation.device "
+			+ "(name, device_class_name, is_zwave, version, vendor, type, protocol_id, zone_configuration, common_zone, "
+			+ "exit_open, no_motion, internal, bypass_state, user_changed_bypass_status, force_arm, "
+			+ "lifeline_groups, command_classes, command_classes_exist, battery_operated, "
+			+ "role_type, wake_up_interval, listening, end_points, manufacturer_id, product_type_id, "
+			+ "product_id, ctrl_type, description, basic_device_class, generic_device_class, "
+			+ "specific_device_class, mc_end_points_done, simple_association, end_point) "
+			+ "VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
+	private static final String UPDATE_QUERY = "UPDATE home_automation.device "
+			+ "SET name=?, device_class_name=?, version=?, vendor=?, type=?, protocol_id=?, "
+			+ "zone_configuration=?, common_zone=?, exit_open=?, no_motion=?, internal=?, bypass_state=?, "
+			+ "user_changed_bypass_status=?, force_arm=?, "
+			+ "lifeline_groups=?, command_classes=?, command_classes_exist=?, battery_operated=?, "
+			+ "role_type=?, wake_up_interval=?, listening=?, end_points=?, manufacturer_id=?, product_type_id=?, "
+			+ "product_id=?, ctrl_type=?, description=?, basic_device_class=?, generic_device_class=?, "
+			+ "specific_device_class=?, mc_end_points_done=?, simple_association=?, end_point=? "
+			+ "WHERE id=?";
+
 	public boolean persist(ZwaveMultiChannelDevice object) throws SQLException {
 		final Connection conn = getTransactionManager().getConnection();
+		invalidateFullyLoaded();
 
-		StringBuilder sb = new StringBuilder();
-		sb.append("INSERT INTO home_automation.device ")
-		  .append("(name, device_class_name, is_zwave, version, vendor, type, protocol_id, zone_configuration, common_zone, ")
-		  .append("exit_open, no_motion, internal, bypass_state, user_changed_bypass_status, force_arm, ")
-		  
-		  .append("lifeline_groups, command_classes, command_classes_exist, battery_operated, ")
-		  .append("role_type, wake_up_interval, listening, end_points, manufacturer_id, product_type_id, ")
-		  .append("product_id, ctrl_type, description, basic_device_class, generic_device_class, ")
-		  .append("specific_device_class, mc_end_points_done, simple_association, end_point) ")
-		  .append("VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)");
-		  
-		PreparedStatement stmnt = conn.prepareStatement(sb.toString(), Statement.RETURN_GENERATED_KEYS);
+		PreparedStatement stmnt = conn.prepareStatement(INSERT_QUERY, Statement.RETURN_GENERATED_KEYS);
 		stmnt.setString(1, object.getName() != null ? object.getName() : "");
 		stmnt.setString(2, object.getClass().getName());
 		stmnt.setBoolean(3, true);
@@ -52,8 +55,8 @@ public class ZwaveMultiChannelDeviceDAO extends ZWaveDeviceDAO {
 		stmnt.setInt(14, object.getUserChangedBypassStatus() != null ? object.getUserChangedBypassStatus() : -1);
 		stmnt.setBoolean(15, object.getForceArm() != null ? object.getForceArm() : false);
 		
-		stmnt.setString(16, object.getLifelineGroup() != null ? object.getLifelineGroup().toString() : "");
-		stmnt.setString(17, object.getCommandClasses() != null ? Arrays.asList(object.getCommandClasses()).toString() : "");
+		stmnt.setString(16, object.getLifelineGroup() != null ? getColumnFormat().serialize(object.getLifelineGroup()) : "");
+		stmnt.setString(17, object.getCommandClasses() != null ? getColumnFormat().serialize(object.getCommandClasses()) : "");
 		stmnt.setBoolean(18, object.getCommandClassesExist());
 		stmnt.setBoolean(19, object.isBatteryOperated());
 		stmnt.setString(20, object.getRoleType() != null ? object.getRoleType() : "");
@@ -82,36 +85,14 @@ public class ZwaveMultiChannelDeviceDAO extends ZWaveDeviceDAO {
 		
 		object.setUID(lastInsertedDeviceId);
 
-		if(object.getChildren() != null && object.getChildren().size() > 0) {
-			sb = new StringBuilder();
-			sb.append("INSERT INTO home_automation.device_to_child_device (device_id, child_device_id) VALUES ");
-			for (Device device : object.getChildren()) {
-				sb.append("(").append(lastInsertedDeviceId).append(",").append(device.getUID()).append("),");
-			}
-			final String query = sb.replace(sb.length() - 1, sb.length(), "").toString();
-			stmnt = conn.prepareStatement(query);
-			stmnt.executeUpdate();
-			stmnt.close();
-		}
+		DeviceRelationsLoader.insertChildren(conn, object);
 		return true;
 	}
 	
 	public boolean update(ZwaveMultiChannelDevice object) throws SQLException {
 		final Connection conn = getTransactionManager().getConnection();
 
-		StringBuilder sb = new StringBuilder();
-		sb.append("UPDATE home_automation.device ")
-		  .append("SET name=?, device_class_name=?, version=?, vendor=?, type=?, protocol_id=?, ")
-		  .append("zone_configuration=?, common_zone=?, exit_open=?, no_motion=?, internal=?, bypass_state=?, ")
-		  .append("user_changed_bypass_status=?, force_arm=?, ")
-		  
-		  .append("lifeline_groups=?, command_classes=?, command_classes_exist=?, battery_operated=?, ")
-		  .append("role_type=?, wake_up_interval=?, listening=?, end_points=?, manufacturer_id=?, product_type_id=?, ")
-		  .append("product_id=?, ctrl_type=?, description=?, basic_device_class=?, generic_device_class=?, ")
-		  .append("specific_device_class=?, mc_end_points_done=?, simple_association=?, end_point=? ")
-		  .append("WHERE id=?");
-		
-		PreparedStatement stmnt = conn.prepareStatement(sb.toString(), Statement.RETURN_GENERATED_KEYS);
+		PreparedStatement stmnt = conn.prepareStatement(UPDATE_QUERY, Statement.RETURN_GENERATED_KEYS);
 		stmnt.setString(1, object.getName() != null ? object.getName() : "");
 		stmnt.setString(2, object.getClass().getName());
 		stmnt.setString(3, object.getVersion() != null ? object.getVersion() : "");
@@ -127,8 +108,8 @@ public class ZwaveMultiChannelDeviceDAO extends ZWaveDeviceDAO {
 		stmnt.setInt(13, object.getUserChangedBypassStatus() != null ? object.getUserChangedBypassStatus() : -1);
 		stmnt.setBoolean(14, object.getForceArm() != null ? object.getForceArm() : false);
 		
-		stmnt.setString(15, object.getLifelineGroup() != null ? object.getLifelineGroup().toString() : "");
-		stmnt.setString(16, object.getCommandClasses() != null ? Arrays.asList(object.getCommandClasses()).toString() : "");
+		stmnt.setString(15, object.getLifelineGroup() != null ? getColumnFormat().serialize(object.getLifelineGroup()) : "");
+		stmnt.setString(16, object.getCommandClasses() != null ? getColumnFormat().serialize(object.getCommandClasses()) : "");
 		stmnt.setBoolean(17, object.getCommandClassesExist());
 		stmnt.setBoolean(18, object.isBatteryOperated());
 		stmnt.setString(19, object.getRoleType() != null ? object.getRoleType() : "");
@@ -151,83 +132,48 @@ public class ZwaveMultiChannelDeviceDAO extends ZWaveDeviceDAO {
 		stmnt.executeUpdate();
 		stmnt.close();
 
-		stmnt = conn.prepareStatement("DELETE FROM home_automation.device_to_child_device WHERE device_id=?");
-		stmnt.setInt(1, object.getUID());
-		stmnt.executeUpdate();
-		stmnt.close();
-		
-		if(object.getChildren() != null && object.getChildren().size() > 0) {
-			sb = new StringBuilder();
-			sb.append("INSERT INTO home_automation.device_to_child_device (device_id, child_device_id) VALUES ");
-			for (Device device : object.getChildren()) {
-				sb.append("(").append(object.getUID()).append(",").append(device.getUID()).append("),");
-			}
-			final String query = sb.replace(sb.length() - 1, sb.length(), "").toString();
-			stmnt = conn.prepareStatement(query);
-			stmnt.executeUpdate();
-			stmnt.close();
-		}
-		getCache().remove(object.getUID());
+		DeviceRelationsLoader.updateChildren(conn, object);
+		forgetColumns(object.getUID());
+		getCache().writeThrough(object.getUID(), object);
 		return true;
 	}
 	
 	protected void fillWithData(ZwaveMultiChannelDevice device, ResultSet rs) throws SQLException {
-		device.setName(rs.getString("name"));
-		device.setVersion(rs.getString("version"));
-		device.setVendor(rs.getString("vendor"));
-		device.setProtocolType(rs.getString("type"));
-		device.setProtocolID(rs.getInt("protocol_id"));
-		device.setZoneConfiguration(rs.getInt("zone_configuration"));
-		device.setCommonZone(rs.getBoolean("common_zone"));
-		device.setExitOpen(rs.getBoolean("exit_open"));
-		device.setNoMotion(rs.getBoolean("no_motion"));
-		device.setInternal(rs.getBoolean("internal"));
-		device.setBypassState(rs.getInt("bypass_state"));
-		device.setUserChangedBypassStatus(rs.getInt("user_changed_bypass_status"));
-		device.setForceArm(rs.getBoolean("force_arm"));
+		device.setName(rs.getString(NAME));
+		device.setVersion(rs.getString(VERSION));
+		device.setVendor(rs.getString(VENDOR));
+		device.setProtocolType(rs.getString(TYPE));
+		device.setProtocolID(rs.getInt(PROTOCOL_ID));
+		device.setZoneConfiguration(rs.getInt(ZONE_CONFIGURATION));
+		device.setCommonZone(rs.getBoolean(COMMON_ZONE));
+		device.setExitOpen(rs.getBoolean(EXIT_OPEN));
+		device.setNoMotion(rs.getBoolean(NO_MOTION));
+		device.setInternal(rs.getBoolean(INTERNAL));
+		device.setBypassState(rs.getInt(BYPASS_STATE));
+		device.setUserChangedBypassStatus(rs.getInt(USER_CHANGED_BYPASS_STATUS));
+		device.setForceArm(rs.getBoolean(FORCE_ARM));
 
-		final List<Integer> lGroups = deserializeListFromToString(rs.getString("lifeline_groups")).stream()
-				.map(v -> Integer.parseInt(v)).collect(Collectors.toList());
+		final List<Integer> lGroups = deserializeIntegerListFromToString(rs.getString(LIFELINE_GROUPS));
 		device.setLifelineGroup(lGroups);
-		device.setCommandClasses(deserializeArrayFromString(rs.getString("command_classes")));
-		device.setCommandClassesExist(rs.getBoolean("command_classes_exist"));
-		device.setBatteryOperated(rs.getBoolean("battery_operated"));
-		device.setRoleType(rs.getString("role_type"));
-		device.setWakeUpInterval(rs.getInt("wake_up_interval"));
-		device.setListening(rs.getBoolean("listening"));
-		device.setEndPoints(rs.getInt("end_points"));
-		device.setManufacturerId(rs.getInt("manufacturer_id"));
-		device.setProductTypeId(rs.getInt("product_type_id"));
-		device.setProductId(rs.getInt("product_id"));
-		device.setControllerType(rs.getInt("ctrl_type"));
-		device.setDescription(rs.getString("description"));
-		device.setBasicDeviceClass(rs.getString("basic_device_class"));
-		device.setGenericDeviceClass(rs.getString("generic_device_class"));
-		device.setSpecificDeviceClass(rs.getString("specific_device_class"));
-		device.setMultiChannelEndPointsDone(rs.getBoolean("mc_end_points_done"));
-		device.setSimpleAssociationDone(rs.getBoolean("simple_association"));
-		device.setEndPoint(rs.getInt("end_point"));
-
-		device.removeFunctions();
-		device.removeChildren();
-
-		final DataAccessObject<DeviceFunction> dao = DaoRegistry.getInstance().getDAO(DeviceFunction.class.getName());
-		final List<DeviceFunction> functions = dao.getAllForID(device.getUID());
-		device.addFunctions(functions);
+		device.setCommandClasses(deserializeArrayFromString(rs.getString(COMMAND_CLASSES)));
+		device.setCommandClassesExist(rs.getBoolean(COMMAND_CLASSES_EXIST));
+		device.setBatteryOperated(rs.getBoolean(BATTERY_OPERATED));
+		device.setRoleType(rs.getString(ROLE_TYPE));
+		device.setWakeUpInterval(rs.getInt(WAKE_UP_INTERVAL));
+		device.setListening(rs.getBoolean(LISTENING));
+		device.setEndPoints(rs.getInt(END_POINTS));
+		device.setManufacturerId(rs.getInt(MANUFACTURER_ID));
+		device.setProductTypeId(rs.getInt(PRODUCT_TYPE_ID));
+		device.setProductId(rs.getInt(PRODUCT_ID));
+		device.setControllerType(rs.getInt(CTRL_TYPE));
+		device.setDescription(rs.getString(DESCRIPTION));
+		device.setBasicDeviceClass(rs.getString(BASIC_DEVICE_CLASS));
+		device.setGenericDeviceClass(rs.getString(GENERIC_DEVICE_CLASS));
+		device.setSpecificDeviceClass(rs.getString(SPECIFIC_DEVICE_CLASS));
+		device.setMultiChannelEndPointsDone(rs.getBoolean(MC_END_POINTS_DONE));
+		device.setSimpleAssociationDone(rs.getBoolean(SIMPLE_ASSOCIATION));
+		device.setEndPoint(rs.getInt(END_POINT));
 
-		String query = "SELECT child_device_id FROM home_automation.device_to_child_device WHERE device_id=?";
-		try (PreparedStatement preparedStatement = getTransactionManager().getConnection().prepareStatement(query)) {
-			preparedStatement.setInt(1, device.getUID());
-			try (ResultSet resultSet = preparedStatement.executeQuery()) {
-				device.removeChildren();
-				while (resultSet.next()) {
-					device.setChild( get(resultSet.getInt("child_device_id")));
-				}
-			}
-		} catch (Exception e) {
-			getCache().remove(device.getUID());
-			logger.error(e.getMessage());
-			throw new SQLException(e);
-		}
+		loadRelations(Collections.singletonList(device));
 	}
 }
@@ -6,36 +6,62 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.riscogroup.nextgen.home.api.generic.DeviceTroublesReportRecord;
+import com.riscogroup.nextgen.persistence.core.ColumnFormatMigrator;
+import com.riscogroup.nextgen.persistence.core.ColumnList;
 import com.riscogroup.nextgen.persistence.core.DataAccessObject;
 
 public class DeviceTroubleReportDAO extends DataAccessObject<DeviceTroublesReportRecord> {
 	private static final Logger logger = LoggerFactory.getLogger(DeviceTroubleReportDAO.class);
+	private static final String TABLE = "home_automation.device_trouble_report_record";
+	private static final ColumnList COLUMNS = new ColumnList("id", "device_id", "restored_during_delay",
+			"troubleReportedMap", "restoreTroubleTypeToBeConfirmedMap", "restoreAlarmTypeToBeConfirmedMap");
+	private static final int ID = COLUMNS.index("id");
+	private static final int DEVICE_ID = COLUMNS.index("device_id");
+	private static final int RESTORED_DURING_DELAY = COLUMNS.index("restored_during_delay");
+	private static final int TROUBLE_REPORTED_MAP = COLUMNS.index("troubleReportedMap");
+	private static final int RESTORE_TROUBLE_TYPE_TO_BE_CONFIRMED_MAP = COLUMNS.index("restoreTroubleTypeToBeConfirmedMap");
+	private static final int RESTORE_ALARM_TYPE_TO_BE_CONFIRMED_MAP = COLUMNS.index("restoreAlarmTypeToBeConfirmedMap");
+	private static final String SELECT_BY_ID_QUERY = "SELECT " + COLUMNS
+			+ " FROM home_automation.device_trouble_report_record WHERE id=?";
+	private static final String SELECT_BY_IDS_QUERY = "SELECT " + COLUMNS
+			+ " FROM home_automation.device_trouble_report_record WHERE id = ANY(?)";
+	private static final String SELECT_FOR_GROUP_QUERY = "SELECT " + COLUMNS.qualified("dtrr")
+			+ " FROM home_automation.device_trouble_report_record AS dtrr "
+			+ "INNER JOIN home_automation.group_to_device_trouble_report_record AS gdtrr "
+			+ "ON dtrr.id=gdtrr.device_trouble_report_record_id "
+			+ "WHERE gdtrr.group_id=?";
+
+	private static final String INSERT_QUERY = "INSERT INTO home_automation.device_trouble_report_record "
+			+ "(device_id, restored_during_delay, troubleReportedMap,"
+			+ " restoreTroubleTypeToBeConfirmedMap, restoreAlarmTypeToBeConfirmedMap) "
+			+ "VALUES (?,?,?,?,?)";
+	private static final String UPDATE_QUERY = "UPDATE home_automation.device_trouble_report_record SET "
+			+ "device_id=?, restored_during_delay=?, troubleReportedMap=?,"
+			+ " restoreTroubleTypeToBeConfirmedMap=?, restoreAlarmTypeToBeConfirmedMap=? "
+			+ "WHERE id=?";
 	
 	@Override
 	public boolean persist(DeviceTroublesReportRecord object) throws SQLException {
 		final Connection conn = getTransactionManager().getConnection();
 
-		final StringBuilder sb = new StringBuilder();
-		sb.append("INSERT INTO home_automation.device_trouble_report_record ")
-		  .append("(device_id, restored_during_delay, troubleReportedMap,")
-		  .append(" restoreTroubleTypeToBeConfirmedMap, restoreAlarmTypeToBeConfirmedMap) ")
-		  .append("VALUES (?,?,?,?,?)");
-		final String query = sb.toString();
-		
-		PreparedStatement stmnt = conn.prepareStatement(query, Statement.RETURN_GENERATED_KEYS);
+		PreparedStatement stmnt = conn.prepareStatement(INSERT_QUERY, Statement.RETURN_GENERATED_KEYS);
 		stmnt.setInt(1, object.getDeviceID() != null ? object.getDeviceID() : -1);
 		stmnt.setBoolean(2, object.getRestoredDuringDelay() != null ? object.getRestoredDuringDelay() : true);
-		stmnt.setString(3, object.getTroubleReportedMap().toString() );
-		stmnt.setString(4, object.getRestoreTroubleTypeToBeConfirmedMap().toString() );
-		stmnt.setString(5, object.getRestoreAlarmTypeToBeConfirmedMap().toString() );
+		stmnt.setString(3, getColumnFormat().serialize(object.getTroubleReportedMap()));
+		stmnt.setString(4, getColumnFormat().serialize(object.getRestoreTroubleTypeToBeConfirmedMap()));
+		stmnt.setString(5, getColumnFormat().serialize(object.getRestoreAlarmTypeToBeConfirmedMap()));
 		
 		stmnt.executeUpdate();
 
@@ -54,18 +80,12 @@ public class DeviceTroubleReportDAO extends DataAccessObject<DeviceTroublesRepor
 	public boolean update(DeviceTroublesReportRecord object) throws SQLException {
 		final Connection conn = getTransactionManager().getConnection();
 
-		StringBuilder sb = new StringBuilder();
-		sb.append("UPDATE home_automation.device_trouble_report_record SET ")
-				.append("device_id=?, restored_during_delay=?, troubleReportedMap=?,")
-				.append(" restoreTroubleTypeToBeConfirmedMap=?, restoreAlarmTypeToBeConfirmedMap=? ")
-				.append("WHERE id=?");
-
-		PreparedStatement stmnt = conn.prepareStatement(sb.toString());
+		PreparedStatement stmnt = conn.prepareStatement(UPDATE_QUERY);
 		stmnt.setInt(1, object.getDeviceID() != null ? object.getDeviceID() : -1);
 		stmnt.setBoolean(2, object.getRestoredDuringDelay() != null ? object.getRestoredDuringDelay() : true);
-		stmnt.setString(3, object.getTroubleReportedMap().toString() );
-		stmnt.setString(4, object.getRestoreTroubleTypeToBeConfirmedMap().toString() );
-		stmnt.setString(5, object.getRestoreAlarmTypeToBeConfirmedMap().toString() );
+		stmnt.setString(3, getColumnFormat().serialize(object.getTroubleReportedMap()));
+		stmnt.setString(4, getColumnFormat().serialize(object.getRestoreTroubleTypeToBeConfirmedMap()));
+		stmnt.setString(5, getColumnFormat().serialize(object.getRestoreAlarmTypeToBeConfirmedMap()));
 		stmnt.setInt(6, object.getUID());
 		stmnt.executeUpdate();
 		stmnt.close();
@@ -73,6 +93,14 @@ public class DeviceTroubleReportDAO extends DataAccessObject<DeviceTroublesRepor
 		return true;
 	}
 
+	@Override
+	protected List<ColumnFormatMigrator.Column> getCollectionColumns() {
+		return Arrays.asList(
+				new ColumnFormatMigrator.Column(TABLE, "troubleReportedMap", ColumnFormatMigrator.Kind.MAP),
+				new ColumnFormatMigrator.Column(TABLE, "restoreTroubleTypeToBeConfirmedMap", ColumnFormatMigrator.Kind.MAP),
+				new ColumnFormatMigrator.Column(TABLE, "restoreAlarmTypeToBeConfirmedMap", ColumnFormatMigrator.Kind.MAP));
+	}
+
 	@Override
 	public DeviceTroublesReportRecord get(int objectId) throws SQLException {
 		final DeviceTroublesReportRecord record = new DeviceTroublesReportRecord(objectId);
@@ -85,8 +113,7 @@ public class DeviceTroubleReportDAO extends DataAccessObject<DeviceTroublesRepor
 	private void initializeObjectWithDatabaseData(DeviceTroublesReportRecord record) throws SQLException {
 		final Connection connection = getTransactionManager().getConnection();
 
-		String query = "SELECT * FROM home_automation.device_trouble_report_record WHERE id=?";
-		try (PreparedStatement preparedStatement = connection.prepareStatement(query)) {
+		try (PreparedStatement preparedStatement = connection.prepareStatement(SELECT_BY_ID_QUERY)) {
 			preparedStatement.setInt(1, record.getUID());
 			try (ResultSet resultSet = preparedStatement.executeQuery();) {
 				if (resultSet.next()) {
@@ -105,11 +132,11 @@ public class DeviceTroubleReportDAO extends DataAccessObject<DeviceTroublesRepor
 	}
 
 	private void setDataFromResultSet(ResultSet resultSet, DeviceTroublesReportRecord record) throws SQLException {
-		record.setDeviceID(resultSet.getInt("device_id"));
-		record.setRestoredDuringDelay(resultSet.getBoolean("restored_during_delay"));
-		final Map<String, String> trm = deserializeMapFromToString(resultSet.getString("troubleReportedMap"));
-		final Map<String, String> trc = deserializeMapFromToString(resultSet.getString("restoreTroubleTypeToBeConfirmedMap"));
-		final Map<String, String> rat = deserializeMapFromToString(resultSet.getString("restoreAlarmTypeToBeConfirmedMap"));
+		record.setDeviceID(resultSet.getInt(DEVICE_ID));
+		record.setRestoredDuringDelay(resultSet.getBoolean(RESTORED_DURING_DELAY));
+		final Map<String, String> trm = deserializeMapFromToString(resultSet.getString(TROUBLE_REPORTED_MAP));
+		final Map<String, String> trc = deserializeMapFromToString(resultSet.getString(RESTORE_TROUBLE_TYPE_TO_BE_CONFIRMED_MAP));
+		final Map<String, String> rat = deserializeMapFromToString(resultSet.getString(RESTORE_ALARM_TYPE_TO_BE_CONFIRMED_MAP));
 		record.setTroubleReportedMap( (Map<String, Boolean>)trm.entrySet().stream()
                 .collect(Collectors.toMap(Map.Entry::getKey, v->Boolean.parseBoolean(v.getValue()))));
 		record.setRestoreTroubleTypeToBeConfirmedMap( (Map<String, Boolean>)trc.entrySet().stream()
@@ -123,22 +150,43 @@ public class DeviceTroubleReportDAO extends DataAccessObject<DeviceTroublesRepor
 		return null;
 	}
 
+	/**
+	 * Records are not cached, get() reads them from the Database every time, and so does this with one query.
+	 */
+	@Override
+	public Map<Integer, DeviceTroublesReportRecord> getAll(int[] ids) throws SQLException {
+		final Connection connection = getTransactionManager().getConnection();
+		final Map<Integer, DeviceTroublesReportRecord> records = new LinkedHashMap<>();
+		final Set<Integer> recordIds = new LinkedHashSet<>();
+		for (int id : ids) {
+			recordIds.add(id);
+		}
+		if (recordIds.isEmpty()) {
+			return records;
+		}
+		try (PreparedStatement preparedStatement = connection.prepareStatement(SELECT_BY_IDS_QUERY)) {
+			preparedStatement.setArray(1, createIdsArray(connection, recordIds));
+			try (ResultSet resultSet = preparedStatement.executeQuery();) {
+				while (resultSet.next()) {
+					final DeviceTroublesReportRecord record = new DeviceTroublesReportRecord(resultSet.getInt(ID));
+					setDataFromResultSet(resultSet, record);
+					records.put(record.getUID(), record);
+				}
+			}
+		}
+		return records;
+	}
+
 	@Override
 	public List<DeviceTroublesReportRecord> getAllForID(int parentId) throws SQLException {
 		final Connection connection = getTransactionManager().getConnection();
 		final List<DeviceTroublesReportRecord> records = new ArrayList<>();
 
-		StringBuilder sb = new StringBuilder();
-		sb.append("SELECT * FROM home_automation.device_trouble_report_record AS dtrr ")
-		  .append("INNER JOIN home_automation.group_to_device_trouble_report_record AS gdtrr ")
-		  .append("ON dtrr.id=gdtrr.device_trouble_report_record_id ")
-		  .append("WHERE gdtrr.group_id=?");
-		
-		try (PreparedStatement preparedStatement = connection.prepareStatement(sb.toString())) {
+		try (PreparedStatement preparedStatement = connection.prepareStatement(SELECT_FOR_GROUP_QUERY)) {
 			preparedStatement.setInt(1, parentId);
 			try (ResultSet resultSet = preparedStatement.executeQuery();) {
 				while (resultSet.next()) {
-					final DeviceTroublesReportRecord record = new DeviceTroublesReportRecord(resultSet.getInt("id"));
+					final DeviceTroublesReportRecord record = new DeviceTroublesReportRecord(resultSet.getInt(ID));
 					setDataFromResultSet(resultSet, record);
 					records.add(record);
 				}
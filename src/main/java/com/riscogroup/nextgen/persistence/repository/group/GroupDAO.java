@@ -18,22 +18,44 @@ import org.slf4j.LoggerFactory;
 import com.riscogroup.nextgen.home.api.generic.ArmState;
 import com.riscogroup.nextgen.home.api.generic.DeviceTroublesReportRecord;
 import com.riscogroup.nextgen.home.api.generic.Group;
+import com.riscogroup.nextgen.persistence.core.ColumnList;
 import com.riscogroup.nextgen.persistence.core.DaoRegistry;
 import com.riscogroup.nextgen.persistence.core.DataAccessObject;
+import com.riscogroup.nextgen.persistence.core.DirtyColumnTracker;
+import com.riscogroup.nextgen.persistence.core.PivotTableSync;
 
 public class GroupDAO extends DataAccessObject<Group>{
 	private static final Logger logger = LoggerFactory.getLogger(GroupDAO.class);
+	private static final ColumnList COLUMNS = new ColumnList("id", "name", "arm_state", "group_locked_out");
+	private static final int ID = COLUMNS.index("id");
+	private static final int NAME = COLUMNS.index("name");
+	private static final int ARM_STATE = COLUMNS.index("arm_state");
+	private static final int GROUP_LOCKED_OUT = COLUMNS.index("group_locked_out");
+	private static final String SELECT_NOT_CACHED_QUERY = "SELECT " + COLUMNS
+			+ " FROM home_automation._group WHERE id <> ALL(?)";
+
+	private static final String INSERT_QUERY = "INSERT INTO home_automation._group "
+			+ "(name, arm_state, group_locked_out) "
+			+ "VALUES (?,?,?)";
+	private static final String SELECT_BY_ID_QUERY = "SELECT " + COLUMNS
+			+ " FROM home_automation._group WHERE id=?";
+	private static final String SELECT_BY_IDS_QUERY = "SELECT " + COLUMNS
+			+ " FROM home_automation._group WHERE id = ANY(?)";
+	private static final String[] UPDATE_COLUMNS = { "name", "arm_state", "group_locked_out" };
+
+	private final DirtyColumnTracker<Group> groupColumns = new DirtyColumnTracker<>("home_automation._group",
+			UPDATE_COLUMNS, GroupDAO::getColumnValues);
+	private final PivotTableSync deviceMembers = new PivotTableSync("home_automation.group_to_device", "group_id",
+			"device_id");
+	private final PivotTableSync troubleReportRecordMembers = new PivotTableSync(
+			"home_automation.group_to_device_trouble_report_record", "group_id", "device_trouble_report_record_id");
 	
 	@Override
 	public boolean persist(Group group) throws SQLException {
 		final Connection conn = getTransactionManager().getConnection();
+		invalidateFullyLoaded();
 
-		StringBuilder sb = new StringBuilder();
-		sb.append("INSERT INTO home_automation._group ")
-				.append("(name, arm_state, group_locked_out) ")
-				.append("VALUES (?,?,?)");
-
-		PreparedStatement stmnt = conn.prepareStatement(sb.toString(), Statement.RETURN_GENERATED_KEYS);
+		PreparedStatement stmnt = conn.prepareStatement(INSERT_QUERY, Statement.RETURN_GENERATED_KEYS);
 		stmnt.setString(1, group.getName() != null ? group.getName() : "");
 		stmnt.setInt(2, group.getGroupState().getArmState().getValue());
 		stmnt.setBoolean(3, group.getGroupLockedOut() != null ? group.getGroupLockedOut() : false);
@@ -47,119 +69,61 @@ public class GroupDAO extends DataAccessObject<Group>{
 		
 		group.setUID(lastInsertedGroupId);
 		
-		if(group.getDevices() != null && group.getDevices().size() > 0) {
-			sb = new StringBuilder();
-			sb.append("INSERT INTO home_automation.group_to_device (group_id, device_id) VALUES ");
-			for (Integer deviceId : group.getDevices()) {
-				sb.append("(").append(lastInsertedGroupId).append(",").append(deviceId).append("),");
-			}
-			final String query = sb.replace(sb.length() - 1, sb.length(), "").toString();
-			stmnt = conn.prepareStatement(query);
-			stmnt.executeUpdate();
-			stmnt.close();
-		}
+		deviceMembers.insert(conn, lastInsertedGroupId, group.getDevices());
 
 		if (group.getDevicesTroublesReportRecordList() != null && group.getDevicesTroublesReportRecordList().size() > 0) {
 			for(DeviceTroublesReportRecord t : group.getDevicesTroublesReportRecordList()) {
 				DaoRegistry.getInstance().getDAO(DeviceTroublesReportRecord.class.getName()).persist(t);
 			}
-			final String query = getInsertIntoPivotTableStatement("group_to_device_trouble_report_record", "device_trouble_report_record_id", group.getUID(),
+			troubleReportRecordMembers.insert(conn, lastInsertedGroupId,
 					group.getDevicesTroublesReportRecordList().stream().map(v->v.getUID()).collect(Collectors.toList()));
-			stmnt = conn.prepareStatement(query);
-			stmnt.executeUpdate();
-			stmnt.close();
 		}
 		return true;
 	}
-	
-	private String getInsertIntoPivotTableStatement(String pivotTableName, String columnName, Integer userId, List<Integer> intemIds) {
-		final StringBuilder sb = new StringBuilder();
-		sb.append("INSERT INTO home_automation." + pivotTableName + " (group_id, " + columnName + ") VALUES ");
-		for (Integer itemId : intemIds) {
-			sb.append("(").append(userId).append(",").append(itemId).append("),");
-		}
-		return sb.replace(sb.length() - 1, sb.length(), "").toString();
-	}
 
 	@Override
 	public boolean update(Group object) throws SQLException {
 		final Connection conn = getTransactionManager().getConnection();
 		
-		StringBuilder sb = new StringBuilder();
-		sb.append("UPDATE home_automation._group SET ")
-		  .append("name=?, arm_state=?, group_locked_out=? ")
-		  .append("WHERE id=?");
+		groupColumns.update(conn, object.getUID(), object);
 
-		try (PreparedStatement stmnt = conn.prepareStatement(sb.toString())){
-			stmnt.setString(1, object.getName() != null ? object.getName() : "");
-			stmnt.setInt(2, object.getGroupState().getArmState().getValue());
-			stmnt.setBoolean(3, object.getGroupLockedOut() != null ? object.getGroupLockedOut() : false);
-			stmnt.setInt(4, object.getUID());
-			stmnt.executeUpdate();
-		}
+		deviceMembers.sync(conn, object.getUID(), object.getDevices());
 
-		String query = "DELETE FROM home_automation.group_to_device WHERE group_id=?";
-		try (PreparedStatement stmnt = conn.prepareStatement(query)) {
-			stmnt.setInt(1, object.getUID());
-			stmnt.executeUpdate();
-		}
-		
-		if(object.getDevices() != null && object.getDevices().size() > 0) {
-			sb = new StringBuilder();
-			sb.append("INSERT INTO home_automation.group_to_device (group_id, device_id) VALUES ");
-			for (Integer deviceId : object.getDevices()) {
-				sb.append("(").append(object.getUID()).append(",").append(deviceId).append("),");
-			}
-			query = sb.replace(sb.length() - 1, sb.length(), "").toString();
-			
-			try (PreparedStatement stmnt = conn.prepareStatement(query)) {
-				stmnt.executeUpdate();
-			}
-		} 
-		
-		query = "DELETE FROM home_automation.group_to_device_trouble_report_record WHERE group_id=?";
-		try (PreparedStatement stmnt = conn.prepareStatement(query)) {
-			stmnt.setInt(1, object.getUID());
-			stmnt.executeUpdate();
-		}
-		
-		if(object.getDevicesTroublesReportRecordList() != null && object.getDevicesTroublesReportRecordList().size() > 0) {
-			sb = new StringBuilder();
-			sb.append("INSERT INTO home_automation.group_to_device_trouble_report_record (group_id, device_trouble_report_record_id) VALUES ");
+		final List<Integer> recordIds = new ArrayList<>();
+		if (object.getDevicesTroublesReportRecordList() != null) {
 			for (DeviceTroublesReportRecord record : object.getDevicesTroublesReportRecordList()) {
-				sb.append("(").append(object.getUID()).append(",").append(record.getUID()).append("),");
-			}
-			query = sb.replace(sb.length() - 1, sb.length(), "").toString();
-			
-			try (PreparedStatement stmnt = conn.prepareStatement(query)) {
-				stmnt.executeUpdate();
+				recordIds.add(record.getUID());
 			}
-		} 
+		}
+		troubleReportRecordMembers.sync(conn, object.getUID(), recordIds);
 		return true;
 	}
 
 	@Override
 	public Group get(int objectId) throws SQLException {
-		Group group = getCache().addIfAbsent(objectId, new Group(objectId));
-		if(group != null) {
+		return getCache().load(objectId, () -> {
+			final Group group = new Group(objectId);
+			getCache().addIfAbsent(objectId, group);
+			initializeGroupWithDatabaseData(group);
 			return group;
-		}
-		group = getCache().get(objectId);
-		initializeGroupWithDatabaseData(group);
-		
-		return group;
+		});
 	}
 
 	@Override
 	public void restoreObjectState(Group object) throws SQLException {
+		/* columns come from the row image, devices and trouble records are read back */
+		if (restoreFromRowImage(object.getUID(), object, groupColumns, COLUMNS, (group, rs) -> setGroupDataFromResultSet(rs, group))) {
+			setGroupDeviceAggregations(object);
+			setGroupDeviceTroublesReportRecords(object);
+			return;
+		}
 		initializeGroupWithDatabaseData(object);
 	}
 	
 	private void initializeGroupWithDatabaseData(Group group) throws SQLException {
 		final Connection conn = getTransactionManager().getConnection();
 
-		final String query = "SELECT * FROM home_automation._group WHERE id=?";
-		try (PreparedStatement preparedStatement = conn.prepareStatement(query)) {
+		try (PreparedStatement preparedStatement = conn.prepareStatement(SELECT_BY_ID_QUERY)) {
 			preparedStatement.setInt(1, group.getUID());
 			try (ResultSet resultSet = preparedStatement.executeQuery();) {
 				if (resultSet.next()) {
@@ -179,21 +143,22 @@ public class GroupDAO extends DataAccessObject<Group>{
 
 	@Override
 	public Map<Integer, Group> getAll() throws SQLException {
+		if (getCache().isFullyLoaded()) {
+			return getCache().getAll();
+		}
+		final long loadVersion = getCache().beginFullLoad();
 		final Connection connection = getTransactionManager().getConnection();
 		
-		final StringBuilder sb = new StringBuilder();
-		sb.append("SELECT * FROM home_automation._group");
-		if(!getCache().isEmpty()) {
-			sb.append(" WHERE id NOT IN(").append(getCache().getExistingIndexesString()).append(")");
-		}
 		final List<Group> groups = new ArrayList<>();
 
-		try (PreparedStatement preparedStatement = connection.prepareStatement(sb.toString());
-				ResultSet resultSet = preparedStatement.executeQuery()) {
-			while (resultSet.next()) {
-				final Group group = new Group();
-				setGroupDataFromResultSet(resultSet, group);
-				groups.add(group);
+		try (PreparedStatement preparedStatement = connection.prepareStatement(SELECT_NOT_CACHED_QUERY)) {
+			preparedStatement.setArray(1, createCachedIdsArray(connection));
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				while (resultSet.next()) {
+					final Group group = new Group();
+					setGroupDataFromResultSet(resultSet, group);
+					groups.add(group);
+				}
 			}
 		} 
 		for (Group group : groups) {
@@ -202,37 +167,61 @@ public class GroupDAO extends DataAccessObject<Group>{
 			
 			getCache().addIfAbsent(group.getUID(), group);
 		}
+		getCache().completeFullLoad(loadVersion);
 		return getCache().getAll();
 	}
+
+	@Override
+	public Map<Integer, Group> getAll(int[] ids) throws SQLException {
+		return getAll(ids, SELECT_BY_IDS_QUERY, COLUMNS, Group::new, this::fillWithData);
+	}
 	
 	private void setGroupDeviceTroublesReportRecords(Group group) throws SQLException {
 		final List<DeviceTroublesReportRecord> troubles = new ArrayList<>();
+		final List<Integer> recordIds = new ArrayList<>();
 		for(Object troubleObject : DaoRegistry.getInstance().getDAO(DeviceTroublesReportRecord.class.getName()).getAllForID(group.getUID())) {
 			troubles.add((DeviceTroublesReportRecord) troubleObject);
+			recordIds.add(((DeviceTroublesReportRecord) troubleObject).getUID());
 		}
 		group.setDevicesTroublesReportRecords(troubles);
+		troubleReportRecordMembers.remember(group.getUID(), recordIds);
 	}
 	
 	private void setGroupDeviceAggregations(Group group) throws SQLException {
 		final Connection connection = getTransactionManager().getConnection();
-		final String query = "SELECT * FROM home_automation.group_to_device WHERE group_id=?";
+		final String query = "SELECT device_id FROM home_automation.group_to_device WHERE group_id=?";
 		final Set<Integer> items = new HashSet<>();
 		try (PreparedStatement preparedStatement = connection.prepareStatement(query)) {
 			preparedStatement.setInt(1, group.getUID());
 			try (ResultSet resultSet = preparedStatement.executeQuery();) {
 				while (resultSet.next()) {
-					items.add(resultSet.getInt("device_id"));
+					items.add(resultSet.getInt(1));
 				}
 			}
 		}
 		group.setDevices(items);
+		deviceMembers.remember(group.getUID(), items);
+	}
+
+	private void fillWithData(Group group, ResultSet resultSet) throws SQLException {
+		setGroupDataFromResultSet(resultSet, group);
+		setGroupDeviceAggregations(group);
+		setGroupDeviceTroublesReportRecords(group);
 	}
 
 	private void setGroupDataFromResultSet(ResultSet resultSet, Group group) throws SQLException {
-		group.setUID(resultSet.getInt("id"));
-		group.setName(resultSet.getString("name"));
-		group.setArmState(ArmState.valueOf(resultSet.getInt("arm_state")));
-		group.setGroupLockedOut(resultSet.getBoolean("group_locked_out"));
+		group.setUID(resultSet.getInt(ID));
+		group.setName(resultSet.getString(NAME));
+		group.setArmState(ArmState.valueOf(resultSet.getInt(ARM_STATE)));
+		group.setGroupLockedOut(resultSet.getBoolean(GROUP_LOCKED_OUT));
+		groupColumns.remember(group.getUID(), group);
+	}
+
+	private static Object[] getColumnValues(Group group) {
+		return new Object[] {
+				group.getName() != null ? group.getName() : "",
+				group.getGroupState().getArmState().getValue(),
+				group.getGroupLockedOut() != null ? group.getGroupLockedOut() : false };
 	}
 
 	@Override
@@ -260,6 +249,8 @@ public class GroupDAO extends DataAccessObject<Group>{
 				DaoRegistry.getInstance().getDAO(DeviceTroublesReportRecord.class.getName()).delete(record.getUID());
 			}
 		}
+		deviceMembers.forget(groupId);
+		troubleReportRecordMembers.forget(groupId);
 		getCache().remove(groupId);
 		return true;
 	}
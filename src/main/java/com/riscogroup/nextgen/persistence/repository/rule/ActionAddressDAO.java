@@ -6,6 +6,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -16,22 +17,42 @@ import com.riscogroup.nextgen.home.api.rule.data.ActionAddress;
 import com.riscogroup.nextgen.home.api.rule.data.Rule;
 import com.riscogroup.nextgen.home.api.rule.data.RuleTrigger;
 import com.riscogroup.nextgen.persistence.core.DaoRegistry;
+import com.riscogroup.nextgen.persistence.core.ColumnList;
 import com.riscogroup.nextgen.persistence.core.DataAccessObject;
 
 public class ActionAddressDAO extends DataAccessObject<ActionAddress> {
 	private static final Logger logger = LoggerFactory.getLogger(ActionAddressDAO.class);
+	private static final ColumnList COLUMNS = new ColumnList("id", "device_id", "parent_class", "parent_id",
+			"device_function", "property_index", "value", "end_value");
+	private static final int ID = COLUMNS.index("id");
+	private static final int DEVICE_ID = COLUMNS.index("device_id");
+	private static final int PARENT_CLASS = COLUMNS.index("parent_class");
+	private static final int PARENT_ID = COLUMNS.index("parent_id");
+	private static final int DEVICE_FUNCTION = COLUMNS.index("device_function");
+	private static final int PROPERTY_INDEX = COLUMNS.index("property_index");
+	private static final int VALUE = COLUMNS.index("value");
+	private static final int END_VALUE = COLUMNS.index("end_value");
+	private static final String SELECT_FOR_PARENTS_QUERY = "SELECT " + COLUMNS
+			+ " FROM home_automation.action_address WHERE parent_id = ANY(?)";
+	private static final String SELECT_BY_ID_QUERY = "SELECT " + COLUMNS
+			+ " FROM home_automation.action_address WHERE id=?";
+	private static final String SELECT_BY_IDS_QUERY = "SELECT " + COLUMNS
+			+ " FROM home_automation.action_address WHERE id = ANY(?)";
+	private static final String SELECT_FOR_PARENT_QUERY = "SELECT " + COLUMNS
+			+ " FROM home_automation.action_address WHERE parent_id=?";
+
+	private static final String INSERT_QUERY = "INSERT INTO home_automation.action_address "
+			+ "(device_id, parent_id, parent_class, device_function, property_index, value, end_value ) "
+			+ "VALUES (?,?,?,?,?,?,?)";
+	private static final String UPDATE_QUERY = "UPDATE home_automation.action_address "
+			+ "SET device_id=?, parent_id=?, parent_class=?, device_function=?, property_index=?, value=?, end_value=? "
+			+ "WHERE id=?";
 
 	@Override
 	public boolean persist(ActionAddress object) throws SQLException {
 		final Connection conn = getTransactionManager().getConnection();
 
-		final StringBuilder sb = new StringBuilder();
-		sb.append("INSERT INTO home_automation.action_address ")
-		  .append("(device_id, parent_id, parent_class, device_function, property_index, value, end_value ) ")
-		  .append("VALUES (?,?,?,?,?,?,?)");
-		final String query = sb.toString();
-		
-		PreparedStatement stmnt = conn.prepareStatement(query, Statement.RETURN_GENERATED_KEYS);
+		PreparedStatement stmnt = conn.prepareStatement(INSERT_QUERY, Statement.RETURN_GENERATED_KEYS);
 		stmnt.setInt(1, object.getDeviceUID() != null ? object.getDeviceUID() : -1);
 		stmnt.setInt(2, object.getParent() != null ? getParentID(object.getParent()) : -1);
 		stmnt.setString(3, object.getParent() != null ? object.getParent().getClass().getName() : "");
@@ -54,12 +75,7 @@ public class ActionAddressDAO extends DataAccessObject<ActionAddress> {
 	
 	@Override
 	public boolean update(ActionAddress object) throws SQLException {
-		final StringBuilder sb = new StringBuilder();
-		sb.append("UPDATE home_automation.action_address ")
-		  .append("SET device_id=?, parent_id=?, parent_class=?, device_function=?, property_index=?, value=?, end_value=? ")
-		  .append("WHERE id=?");
-		
-		final PreparedStatement stmnt = getTransactionManager().getConnection().prepareStatement(sb.toString());
+		final PreparedStatement stmnt = getTransactionManager().getConnection().prepareStatement(UPDATE_QUERY);
 		stmnt.setInt(1, object.getDeviceUID() != null ? object.getDeviceUID() : -1);
 		stmnt.setInt(2, object.getParent() != null ? getParentID(object.getParent()) : -1);
 		stmnt.setString(3, object.getParent() != null ? object.getParent().getClass().getName() : "");
@@ -71,6 +87,7 @@ public class ActionAddressDAO extends DataAccessObject<ActionAddress> {
 		stmnt.setInt(8, object.getUID());
 		
 		stmnt.executeUpdate();
+		stmnt.close();
 		return true;
 	}
 
@@ -78,17 +95,15 @@ public class ActionAddressDAO extends DataAccessObject<ActionAddress> {
 	public List<ActionAddress> getAllForID(int parentId) throws SQLException {
 		final List<ActionAddress> addresses = new ArrayList<>();
 
-		final String query = "SELECT * FROM home_automation.action_address WHERE parent_id=?";
-		
-		try (PreparedStatement preparedStatement = getTransactionManager().getConnection().prepareStatement(query)) {
+		try (PreparedStatement preparedStatement = getTransactionManager().getConnection().prepareStatement(SELECT_FOR_PARENT_QUERY)) {
 			preparedStatement.setInt(1, parentId);
 			try (ResultSet resultSet = preparedStatement.executeQuery();) {
 				while (resultSet.next()) {
-					if(getCache().contains(resultSet.getInt("id"))) {
-						addresses.add(getCache().get(resultSet.getInt("id")));
+					if(getCache().contains(resultSet.getInt(ID))) {
+						addresses.add(getCache().get(resultSet.getInt(ID)));
 						continue;
 					}
-					final ActionAddress address = new ActionAddress(resultSet.getInt("id"));
+					final ActionAddress address = new ActionAddress(resultSet.getInt(ID));
 					getCache().addIfAbsent(address.getUID(), address);
 					addresses.add(address);
 					
@@ -104,6 +119,11 @@ public class ActionAddressDAO extends DataAccessObject<ActionAddress> {
 		return addresses;
 	}
 
+	@Override
+	public Map<Integer, List<ActionAddress>> getAllForIDs(Collection<Integer> parentIds) throws SQLException {
+		return getAllForIDs(SELECT_FOR_PARENTS_QUERY, COLUMNS, "parent_id", parentIds, ActionAddress::new, this::fillWithData);
+	}
+
 	@Override
 	public boolean delete(Integer objectId) throws SQLException {
 		final String query = "DELETE FROM home_automation.action_address WHERE id=?";
@@ -126,13 +146,13 @@ public class ActionAddressDAO extends DataAccessObject<ActionAddress> {
 
 	@Override
 	public ActionAddress get(int objectId) throws SQLException {
-		ActionAddress actionAddress = getCache().get(objectId);
-		if(actionAddress != null) {
-			return actionAddress;
-		}
+		return getCache().load(objectId, () -> loadFromDatabase(objectId));
+	}
+
+	private ActionAddress loadFromDatabase(int objectId) throws SQLException {
+		ActionAddress actionAddress = null;
 
-		String query = "SELECT * FROM home_automation.action_address WHERE id=?";
-		try (PreparedStatement preparedStatement = getTransactionManager().getConnection().prepareStatement(query)) {
+		try (PreparedStatement preparedStatement = getTransactionManager().getConnection().prepareStatement(SELECT_BY_ID_QUERY)) {
 			preparedStatement.setInt(1, objectId);
 			try (ResultSet resultSet = preparedStatement.executeQuery()) {
 				if (resultSet.next()) {
@@ -154,13 +174,13 @@ public class ActionAddressDAO extends DataAccessObject<ActionAddress> {
 	}
 
 	private void fillWithData(ActionAddress address, ResultSet resultSet) throws SQLException {
-		address.setDeviceUID(resultSet.getInt("device_id"));
-		final Object parent = DaoRegistry.getInstance().getDAO(resultSet.getString("parent_class")).get(resultSet.getInt("parent_id"));
+		address.setDeviceUID(resultSet.getInt(DEVICE_ID));
+		final Object parent = DaoRegistry.getInstance().getDAO(resultSet.getString(PARENT_CLASS)).get(resultSet.getInt(PARENT_ID));
 		address.setParent(parent);
-		address.setDeviceFunction( resultSet.getString("device_function"));
-		address.setPropertyIndex(resultSet.getInt("property_index"));
-		address.setValue(resultSet.getInt("value"));
-		address.setEndValue(resultSet.getInt("end_value"));
+		address.setDeviceFunction( resultSet.getString(DEVICE_FUNCTION));
+		address.setPropertyIndex(resultSet.getInt(PROPERTY_INDEX));
+		address.setValue(resultSet.getInt(VALUE));
+		address.setEndValue(resultSet.getInt(END_VALUE));
 	}
 
 	@Override
@@ -168,13 +188,17 @@ public class ActionAddressDAO extends DataAccessObject<ActionAddress> {
 		return null;
 	}
 
+	@Override
+	public Map<Integer, ActionAddress> getAll(int[] ids) throws SQLException {
+		return getAll(ids, SELECT_BY_IDS_QUERY, COLUMNS, ActionAddress::new, this::fillWithData);
+	}
+
 	@Override
 	public void restoreObjectState(ActionAddress address) throws SQLException {
 		if (address == null || address.getUID() == null) {
 			return;
 		}
-		final String query = "SELECT * FROM home_automation.action_address WHERE id=?";
-		try (PreparedStatement preparedStatement = getTransactionManager().getConnection().prepareStatement(query)) {
+		try (PreparedStatement preparedStatement = getTransactionManager().getConnection().prepareStatement(SELECT_BY_ID_QUERY)) {
 			preparedStatement.setInt(1, address.getUID());
 			try (ResultSet rs = preparedStatement.executeQuery()) {
 				if (rs.next()) {
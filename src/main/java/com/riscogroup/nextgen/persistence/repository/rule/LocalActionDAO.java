@@ -6,6 +6,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -15,22 +16,39 @@ import org.slf4j.LoggerFactory;
 
 import com.riscogroup.nextgen.home.api.rule.data.LocalAction;
 import com.riscogroup.nextgen.home.api.rule.data.Rule;
+import com.riscogroup.nextgen.persistence.core.ColumnList;
 import com.riscogroup.nextgen.persistence.core.DataAccessObject;
 
 public class LocalActionDAO extends DataAccessObject<LocalAction> {
 	private static final Logger logger = LoggerFactory.getLogger(LocalActionDAO.class);
+	private static final ColumnList COLUMNS = new ColumnList("id", "properties_map", "parent_id", "parent_class",
+			"local_function_id");
+	private static final int ID = COLUMNS.index("id");
+	private static final int PROPERTIES_MAP = COLUMNS.index("properties_map");
+	private static final int PARENT_ID = COLUMNS.index("parent_id");
+	private static final int PARENT_CLASS = COLUMNS.index("parent_class");
+	private static final int LOCAL_FUNCTION_ID = COLUMNS.index("local_function_id");
+	private static final String SELECT_FOR_RULES_QUERY = "SELECT " + COLUMNS
+			+ " FROM home_automation.local_action WHERE parent_id = ANY(?)";
+	private static final String SELECT_BY_ID_QUERY = "SELECT " + COLUMNS
+			+ " FROM home_automation.local_action WHERE id=?";
+	private static final String SELECT_BY_IDS_QUERY = "SELECT " + COLUMNS
+			+ " FROM home_automation.local_action WHERE id = ANY(?)";
+	private static final String SELECT_FOR_RULE_QUERY = "SELECT " + COLUMNS
+			+ " FROM home_automation.local_action WHERE parent_id=?";
+
+	private static final String INSERT_QUERY = "INSERT INTO home_automation.local_action "
+			+ "(properties_map, parent_id, local_function_id ) "
+			+ "VALUES (?,?,?)";
+	private static final String UPDATE_QUERY = "UPDATE home_automation.local_action "
+			+ "SET properties_map=?, parent_id=?, local_function_id=? "
+			+ "WHERE id=?";
 
 	@Override
 	public boolean persist(LocalAction object) throws SQLException {
 		final Connection conn = getTransactionManager().getConnection();
 
-		final StringBuilder sb = new StringBuilder();
-		sb.append("INSERT INTO home_automation.local_action ")
-		  .append("(properties_map, parent_id, local_function_id ) ")
-		  .append("VALUES (?,?,?)");
-		final String query = sb.toString();
-		
-		PreparedStatement stmnt = conn.prepareStatement(query, Statement.RETURN_GENERATED_KEYS);
+		PreparedStatement stmnt = conn.prepareStatement(INSERT_QUERY, Statement.RETURN_GENERATED_KEYS);
 		stmnt.setString(1, object.getProperties() != null ? object.getProperties().toString() : "");
 		stmnt.setInt(2, object.getParentRule() != null ? object.getParentRule().getUID() : -1);
 		stmnt.setInt(3, object.getFunctionID() != null ? object.getFunctionID() : -1);
@@ -49,12 +67,7 @@ public class LocalActionDAO extends DataAccessObject<LocalAction> {
 
 	@Override
 	public boolean update(LocalAction object) throws SQLException {
-		final StringBuilder sb = new StringBuilder();
-		sb.append("UPDATE home_automation.local_action ")
-		  .append("SET properties_map=?, parent_id=?, local_function_id=? ")
-		  .append("WHERE id=?");
-		
-		final PreparedStatement stmnt = getTransactionManager().getConnection().prepareStatement(sb.toString());
+		final PreparedStatement stmnt = getTransactionManager().getConnection().prepareStatement(UPDATE_QUERY);
 		stmnt.setString(1, object.getProperties() != null ? object.getProperties().toString() : "");
 		stmnt.setInt(2, object.getParentRule() != null ? object.getParentRule().getUID() : -1);
 		stmnt.setInt(3, object.getFunctionID() != null ? object.getFunctionID() : -1);
@@ -62,6 +75,7 @@ public class LocalActionDAO extends DataAccessObject<LocalAction> {
 		stmnt.setInt(4, object.getUID());
 		
 		stmnt.executeUpdate();
+		stmnt.close();
 		return true;
 	}
 
@@ -69,17 +83,15 @@ public class LocalActionDAO extends DataAccessObject<LocalAction> {
 	public List<LocalAction> getAllForID(int parentId) throws SQLException {
 		final List<LocalAction> addresses = new ArrayList<>();
 
-		final String query = "SELECT * FROM home_automation.local_action WHERE parent_id=?";
-		
-		try (PreparedStatement preparedStatement = getTransactionManager().getConnection().prepareStatement(query)) {
+		try (PreparedStatement preparedStatement = getTransactionManager().getConnection().prepareStatement(SELECT_FOR_RULE_QUERY)) {
 			preparedStatement.setInt(1, parentId);
 			try (ResultSet resultSet = preparedStatement.executeQuery();) {
 				while (resultSet.next()) {
-					if(getCache().contains(resultSet.getInt("id"))) {
-						addresses.add(getCache().get(resultSet.getInt("id")));
+					if(getCache().contains(resultSet.getInt(ID))) {
+						addresses.add(getCache().get(resultSet.getInt(ID)));
 						continue;
 					}
-					final LocalAction address = new LocalAction(resultSet.getInt("id"));
+					final LocalAction address = new LocalAction(resultSet.getInt(ID));
 					getCache().addIfAbsent(address.getUID(), address);
 					addresses.add(address);
 					
@@ -95,6 +107,11 @@ public class LocalActionDAO extends DataAccessObject<LocalAction> {
 		return addresses;
 	}
 
+	@Override
+	public Map<Integer, List<LocalAction>> getAllForIDs(Collection<Integer> parentIds) throws SQLException {
+		return getAllForIDs(SELECT_FOR_RULES_QUERY, COLUMNS, "parent_id", parentIds, LocalAction::new, this::fillWithData);
+	}
+
 	@Override
 	public boolean delete(Integer objectId) throws SQLException {
 		final String query = "DELETE FROM home_automation.local_action WHERE id=?";
@@ -117,13 +134,13 @@ public class LocalActionDAO extends DataAccessObject<LocalAction> {
 
 	@Override
 	public LocalAction get(int objectId) throws SQLException {
-		LocalAction action = getCache().get(objectId);
-		if(action != null) {
-			return action;
-		}
+		return getCache().load(objectId, () -> loadFromDatabase(objectId));
+	}
+
+	private LocalAction loadFromDatabase(int objectId) throws SQLException {
+		LocalAction action = null;
 
-		String query = "SELECT * FROM home_automation.local_action WHERE id=?";
-		try (PreparedStatement preparedStatement = getTransactionManager().getConnection().prepareStatement(query)) {
+		try (PreparedStatement preparedStatement = getTransactionManager().getConnection().prepareStatement(SELECT_BY_ID_QUERY)) {
 			preparedStatement.setInt(1, objectId);
 			try (ResultSet resultSet = preparedStatement.executeQuery()) {
 				if (resultSet.next()) {
@@ -149,13 +166,17 @@ public class LocalActionDAO extends DataAccessObject<LocalAction> {
 		return null;
 	}
 
+	@Override
+	public Map<Integer, LocalAction> getAll(int[] ids) throws SQLException {
+		return getAll(ids, SELECT_BY_IDS_QUERY, COLUMNS, LocalAction::new, this::fillWithData);
+	}
+
 	@Override
 	public void restoreObjectState(LocalAction action) throws SQLException {
 		if (action == null || action.getUID() == null) {
 			return;
 		}
-		final String query = "SELECT * FROM home_automation.local_action WHERE id=?";
-		try (PreparedStatement preparedStatement = getTransactionManager().getConnection().prepareStatement(query)) {
+		try (PreparedStatement preparedStatement = getTransactionManager().getConnection().prepareStatement(SELECT_BY_ID_QUERY)) {
 			preparedStatement.setInt(1, action.getUID());
 			try (ResultSet rs = preparedStatement.executeQuery()) {
 				if (rs.next()) {
@@ -174,11 +195,11 @@ public class LocalActionDAO extends DataAccessObject<LocalAction> {
 	}
 
 	private void fillWithData(LocalAction action, ResultSet resultSet) throws SQLException {
-		Map<Integer,String> props = deserializeMapFromToString(resultSet.getString("properties_map")).entrySet().stream()
+		Map<Integer,String> props = deserializeMapFromToString(resultSet.getString(PROPERTIES_MAP)).entrySet().stream()
                 .collect(Collectors.toMap(e->Integer.parseInt(e.getKey()), Map.Entry::getValue ));
 		action.setProperties(props);
-		final Rule parent = new Rule(resultSet.getInt("parent_id")); //DaoRegistry.getInstance().getDAO(resultSet.getString("parent_class")).get(resultSet.getInt("parent_id"));
+		final Rule parent = new Rule(resultSet.getInt(PARENT_ID)); //DaoRegistry.getInstance().getDAO(resultSet.getString(PARENT_CLASS)).get(resultSet.getInt(PARENT_ID));
 		action.setParentRule(parent);
-		action.setFunctionID(resultSet.getInt("local_function_id"));
+		action.setFunctionID(resultSet.getInt(LOCAL_FUNCTION_ID));
 	}
 }
@@ -5,6 +5,8 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -18,22 +20,40 @@ import com.riscogroup.nextgen.home.api.rule.data.Rule;
 import com.riscogroup.nextgen.home.api.rule.data.RuleTrigger;
 import com.riscogroup.nextgen.home.api.rule.data.Schedule;
 import com.riscogroup.nextgen.persistence.core.DaoRegistry;
+import com.riscogroup.nextgen.persistence.core.ColumnList;
 import com.riscogroup.nextgen.persistence.core.DataAccessObject;
 
 public class RuleDAO extends DataAccessObject<Rule> {
 	private static final Logger logger = LoggerFactory.getLogger(RuleDAO.class);
+	private static final ColumnList COLUMNS = new ColumnList("id", "name", "duration", "execution_interval",
+			"is_enabled", "manually_executable", "enabled_on_vacation");
+	private static final int ID = COLUMNS.index("id");
+	private static final int NAME = COLUMNS.index("name");
+	private static final int DURATION = COLUMNS.index("duration");
+	private static final int EXECUTION_INTERVAL = COLUMNS.index("execution_interval");
+	private static final int IS_ENABLED = COLUMNS.index("is_enabled");
+	private static final int MANUALLY_EXECUTABLE = COLUMNS.index("manually_executable");
+	private static final int ENABLED_ON_VACATION = COLUMNS.index("enabled_on_vacation");
+	private static final String SELECT_NOT_CACHED_QUERY = "SELECT " + COLUMNS
+			+ " FROM home_automation.rule WHERE id <> ALL(?)";
+
+	private static final String INSERT_QUERY = "INSERT INTO home_automation.rule "
+			+ "(name, duration, execution_interval, is_enabled, manually_executable, enabled_on_vacation ) "
+			+ "VALUES (?,?,?,?,?,?)";
+	private static final String UPDATE_QUERY = "UPDATE home_automation.rule "
+			+ "SET name=?, duration=?, execution_interval=?, is_enabled=?, manually_executable=?, enabled_on_vacation=? "
+			+ "WHERE id=?";
+	private static final String SELECT_BY_ID_QUERY = "SELECT " + COLUMNS
+			+ " FROM home_automation.rule WHERE id=?";
+	private static final String SELECT_BY_IDS_QUERY = "SELECT " + COLUMNS
+			+ " FROM home_automation.rule WHERE id = ANY(?)";
 
 	@Override
 	public boolean persist(Rule object) throws SQLException {
 		final Connection conn = getTransactionManager().getConnection();
+		invalidateFullyLoaded();
 
-		final StringBuilder sb = new StringBuilder();
-		sb.append("INSERT INTO home_automation.rule ")
-		  .append("(name, duration, execution_interval, is_enabled, manually_executable, enabled_on_vacation ) ")
-		  .append("VALUES (?,?,?,?,?,?)");
-		final String query = sb.toString();
-		
-		PreparedStatement stmnt = conn.prepareStatement(query, Statement.RETURN_GENERATED_KEYS);
+		PreparedStatement stmnt = conn.prepareStatement(INSERT_QUERY, Statement.RETURN_GENERATED_KEYS);
 		stmnt.setString(1, object.getName() != null ? object.getName() : "");
 		stmnt.setLong(2, object.getDuration() != null ? object.getDuration() : -1L);
 		stmnt.setLong(3, object.getExecutionInterval() != null ? object.getExecutionInterval() : -1L);
@@ -55,12 +75,7 @@ public class RuleDAO extends DataAccessObject<Rule> {
 
 	@Override
 	public boolean update(Rule object) throws SQLException {
-		final StringBuilder sb = new StringBuilder();
-		sb.append("UPDATE home_automation.rule ")
-		  .append("SET name=?, duration=?, execution_interval=?, is_enabled=?, manually_executable=?, enabled_on_vacation=? ")
-		  .append("WHERE id=?");
-		
-		final PreparedStatement stmnt = getTransactionManager().getConnection().prepareStatement(sb.toString());
+		final PreparedStatement stmnt = getTransactionManager().getConnection().prepareStatement(UPDATE_QUERY);
 		stmnt.setString(1, object.getName() != null ? object.getName() : "");
 		stmnt.setLong(2, object.getDuration() != null ? object.getDuration() : -1L);
 		stmnt.setLong(3, object.getExecutionInterval() != null ? object.getExecutionInterval() : -1L);
@@ -71,6 +86,7 @@ public class RuleDAO extends DataAccessObject<Rule> {
 		stmnt.setInt(7, object.getUID());
 		
 		stmnt.executeUpdate();
+		stmnt.close();
 		return true;
 	}
 
@@ -116,13 +132,13 @@ public class RuleDAO extends DataAccessObject<Rule> {
 
 	@Override
 	public Rule get(int objectId) throws SQLException {
-		Rule actionAddress = getCache().get(objectId);
-		if(actionAddress != null) {
-			return actionAddress;
-		}
+		return getCache().load(objectId, () -> loadFromDatabase(objectId));
+	}
+
+	private Rule loadFromDatabase(int objectId) throws SQLException {
+		Rule actionAddress = null;
 
-		String query = "SELECT * FROM home_automation.rule WHERE id=?";
-		try (PreparedStatement preparedStatement = getTransactionManager().getConnection().prepareStatement(query)) {
+		try (PreparedStatement preparedStatement = getTransactionManager().getConnection().prepareStatement(SELECT_BY_ID_QUERY)) {
 			preparedStatement.setInt(1, objectId);
 			try (ResultSet resultSet = preparedStatement.executeQuery()) {
 				if (resultSet.next()) {
@@ -145,35 +161,50 @@ public class RuleDAO extends DataAccessObject<Rule> {
 
 	@Override
 	public Map<Integer, Rule> getAll() throws SQLException {
-		final StringBuilder sb = new StringBuilder();
-		sb.append("SELECT * FROM home_automation.rule");
-		if(!getCache().isEmpty()) {
-			sb.append(" WHERE id NOT IN(").append(getCache().getExistingIndexesString())
-			.append(") ");
+		if (getCache().isFullyLoaded()) {
+			return getCache().getAll();
 		}
+		final long loadVersion = getCache().beginFullLoad();
 		final Connection connection = getTransactionManager().getConnection();
+		final List<Rule> rules = new ArrayList<>();
 
-		try (PreparedStatement preparedStatement = connection.prepareStatement(sb.toString());
-				ResultSet resultSet = preparedStatement.executeQuery()) {
-			while (resultSet.next()) {
-				final Rule user = new Rule( resultSet.getInt("id"));
-				getCache().addIfAbsent(user.getUID(), user);
-				fillWithData(user, resultSet);
+		try (PreparedStatement preparedStatement = connection.prepareStatement(SELECT_NOT_CACHED_QUERY)) {
+			preparedStatement.setArray(1, createCachedIdsArray(connection));
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				while (resultSet.next()) {
+					final Rule rule = new Rule( resultSet.getInt(ID));
+					getCache().addIfAbsent(rule.getUID(), rule);
+					rules.add(rule);
+					fillColumns(rule, resultSet);
+				}
 			}
+			loadRuleGraph(rules);
 		} catch (Exception e) {
+			for (Rule rule : rules) {
+				getCache().remove(rule.getUID());
+			}
 			logger.error(e.getMessage());
 			throw new SQLException(e);
 		}
+		getCache().completeFullLoad(loadVersion);
 		return getCache().getAll();
 	}
 
+	/**
+	 * Cached rules are taken from the cache, the others are loaded with one query and their children with one query per table.
+	 */
+	@Override
+	public Map<Integer, Rule> getAll(int[] ids) throws SQLException {
+		return getAll(ids, SELECT_BY_IDS_QUERY, COLUMNS, (ruleId, resultSet) -> new Rule(ruleId), this::fillColumns,
+				this::loadRuleGraph);
+	}
+
 	@Override
 	public void restoreObjectState(Rule rule) throws SQLException {
 		if (rule == null || rule.getUID() == null) {
 			return;
 		}
-		final String query = "SELECT * FROM home_automation.rule WHERE id=?";
-		try (PreparedStatement preparedStatement = getTransactionManager().getConnection().prepareStatement(query)) {
+		try (PreparedStatement preparedStatement = getTransactionManager().getConnection().prepareStatement(SELECT_BY_ID_QUERY)) {
 			preparedStatement.setInt(1, rule.getUID());
 			try (ResultSet rs = preparedStatement.executeQuery()) {
 				if (rs.next()) {
@@ -192,39 +223,58 @@ public class RuleDAO extends DataAccessObject<Rule> {
 	}
 
 	private void fillWithData(Rule rule, ResultSet resultSet) throws SQLException {
-		rule.setName(resultSet.getString("name"));
-		rule.setDuration(resultSet.getLong("duration"));
-		rule.setExecutionInterval(resultSet.getLong("execution_interval"));
-		rule.setEnabled(resultSet.getBoolean("is_enabled"));
-		rule.setManually(resultSet.getBoolean("manually_executable"));
-		rule.setEnabledOnVacation(resultSet.getBoolean("enabled_on_vacation"));
-		
+		fillColumns(rule, resultSet);
+		loadRuleGraph(Collections.singletonList(rule));
+	}
 
-		Map<Integer, LocalAction> localActions = new HashMap<>();
-		Map<Integer, ActionAddress> actionAddresses = new HashMap<>();
-		Map<Integer, RuleTrigger> ruleTriggers = new HashMap<>();
-		Map<Integer, Schedule> schedules = new HashMap<>();
-		
-		List<Object> objects = DaoRegistry.getInstance().getDAO(LocalAction.class.getName()).getAllForID(rule.getUID());
-		if(objects != null) {
-			objects.forEach(o->localActions.put(((LocalAction)o).getUID(), (LocalAction) o) );
-		}
-		objects = DaoRegistry.getInstance().getDAO(ActionAddress.class.getName()).getAllForID(rule.getUID());
-		if(objects != null) {
-			objects.forEach(o->actionAddresses.put(((ActionAddress)o).getUID(), (ActionAddress) o) );
+	private void fillColumns(Rule rule, ResultSet resultSet) throws SQLException {
+		rule.setName(resultSet.getString(NAME));
+		rule.setDuration(resultSet.getLong(DURATION));
+		rule.setExecutionInterval(resultSet.getLong(EXECUTION_INTERVAL));
+		rule.setEnabled(resultSet.getBoolean(IS_ENABLED));
+		rule.setManually(resultSet.getBoolean(MANUALLY_EXECUTABLE));
+		rule.setEnabledOnVacation(resultSet.getBoolean(ENABLED_ON_VACATION));
+	}
+
+	/**
+	 * Loads local actions, action addresses, triggers and schedules of all given rules
+	 * with one query per child table. The rules must already be in the cache, so children
+	 * referring back to their rule are resolved without going to the Database.
+	 */
+	private void loadRuleGraph(List<Rule> rules) throws SQLException {
+		if (rules.isEmpty()) {
+			return;
 		}
-		objects = DaoRegistry.getInstance().getDAO(RuleTrigger.class.getName()).getAllForID(rule.getUID());
-		if(objects != null) {
-			objects.forEach(o->ruleTriggers.put(((RuleTrigger)o).getUID(), (RuleTrigger) o) );
+		final List<Integer> ruleIds = new ArrayList<>(rules.size());
+		for (Rule rule : rules) {
+			ruleIds.add(rule.getUID());
 		}
-		objects = DaoRegistry.getInstance().getDAO(Schedule.class.getName()).getAllForID(rule.getUID());
-		if(objects != null) {
-			objects.forEach(o->schedules.put(((Schedule)o).getUID(), (Schedule) o) );
+
+		final DataAccessObject<LocalAction> localActionDAO = DaoRegistry.getInstance().getDAO(LocalAction.class.getName());
+		final DataAccessObject<ActionAddress> actionAddressDAO = DaoRegistry.getInstance().getDAO(ActionAddress.class.getName());
+		final DataAccessObject<RuleTrigger> ruleTriggerDAO = DaoRegistry.getInstance().getDAO(RuleTrigger.class.getName());
+		final DataAccessObject<Schedule> scheduleDAO = DaoRegistry.getInstance().getDAO(Schedule.class.getName());
+
+		final Map<Integer, List<LocalAction>> localActions = localActionDAO.getAllForIDs(ruleIds);
+		final Map<Integer, List<ActionAddress>> actionAddresses = actionAddressDAO.getAllForIDs(ruleIds);
+		final Map<Integer, List<RuleTrigger>> ruleTriggers = ruleTriggerDAO.getAllForIDs(ruleIds);
+		final Map<Integer, List<Schedule>> schedules = scheduleDAO.getAllForIDs(ruleIds);
+
+		for (Rule rule : rules) {
+			final Map<Integer, LocalAction> ruleLocalActions = new HashMap<>();
+			final Map<Integer, ActionAddress> ruleActionAddresses = new HashMap<>();
+			final Map<Integer, RuleTrigger> ruleRuleTriggers = new HashMap<>();
+			final Map<Integer, Schedule> ruleSchedules = new HashMap<>();
+
+			localActions.getOrDefault(rule.getUID(), Collections.emptyList()).forEach(o -> ruleLocalActions.put(o.getUID(), o));
+			actionAddresses.getOrDefault(rule.getUID(), Collections.emptyList()).forEach(o -> ruleActionAddresses.put(o.getUID(), o));
+			ruleTriggers.getOrDefault(rule.getUID(), Collections.emptyList()).forEach(o -> ruleRuleTriggers.put(o.getUID(), o));
+			schedules.getOrDefault(rule.getUID(), Collections.emptyList()).forEach(o -> ruleSchedules.put(o.getUID(), o));
+
+			rule.setLocalActions(ruleLocalActions);
+			rule.setActionAdresses(ruleActionAddresses);
+			rule.setRuleTriggers(ruleRuleTriggers);
+			rule.setSchedules(ruleSchedules);
 		}
-		
-		rule.setLocalActions(localActions);
-		rule.setActionAdresses(actionAddresses);
-		rule.setRuleTriggers(ruleTriggers);
-		rule.setSchedules(schedules);
 	}
 }
@@ -5,9 +5,9 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -16,20 +16,39 @@ import com.riscogroup.nextgen.home.api.rule.data.ActionAddress;
 import com.riscogroup.nextgen.home.api.rule.data.Rule;
 import com.riscogroup.nextgen.home.api.rule.data.RuleTrigger;
 import com.riscogroup.nextgen.persistence.core.DaoRegistry;
+import com.riscogroup.nextgen.persistence.core.ColumnList;
 import com.riscogroup.nextgen.persistence.core.DataAccessObject;
 
 public class RuleTriggerDAO extends DataAccessObject<RuleTrigger> {
 	private static final Logger logger = LoggerFactory.getLogger(RuleTriggerDAO.class);
+	private static final ColumnList COLUMNS = new ColumnList("id", "event_type", "group_ids_list", "event_status",
+			"action_address_id", "parent_rule_id");
+	private static final int ID = COLUMNS.index("id");
+	private static final int EVENT_TYPE = COLUMNS.index("event_type");
+	private static final int GROUP_IDS_LIST = COLUMNS.index("group_ids_list");
+	private static final int EVENT_STATUS = COLUMNS.index("event_status");
+	private static final int ACTION_ADDRESS_ID = COLUMNS.index("action_address_id");
+	private static final int PARENT_RULE_ID = COLUMNS.index("parent_rule_id");
+	private static final String SELECT_FOR_RULES_QUERY = "SELECT " + COLUMNS
+			+ " FROM home_automation.rule_trigger WHERE parent_rule_id = ANY(?)";
+	private static final String SELECT_BY_ID_QUERY = "SELECT " + COLUMNS
+			+ " FROM home_automation.rule_trigger WHERE id=?";
+	private static final String SELECT_BY_IDS_QUERY = "SELECT " + COLUMNS
+			+ " FROM home_automation.rule_trigger WHERE id = ANY(?)";
+	private static final String SELECT_FOR_RULE_QUERY = "SELECT " + COLUMNS
+			+ " FROM home_automation.rule_trigger WHERE parent_rule_id=?";
+
+	private static final String INSERT_QUERY = "INSERT INTO home_automation.rule_trigger "
+			+ "(event_type, action_address_id, group_ids_list, event_status, parent_rule_id) "
+			+ "VALUES (?,?,?,?,?)";
+	private static final String UPDATE_QUERY = "UPDATE home_automation.rule_trigger "
+			+ "SET event_type=?, action_address_id=?, group_ids_list=?,"
+			+ "event_status=?, parent_rule_id=? "
+			+ "WHERE id=?";
 
 	@Override
 	public boolean persist(RuleTrigger object) throws SQLException {
-		final StringBuilder sb = new StringBuilder();
-		sb.append("INSERT INTO home_automation.rule_trigger ")
-		  .append("(event_type, action_address_id, group_ids_list, event_status, parent_rule_id) ")
-		  .append("VALUES (?,?,?,?,?)");
-		final String query = sb.toString();
-		
-		PreparedStatement stmnt = getTransactionManager().getConnection().prepareStatement(query, Statement.RETURN_GENERATED_KEYS);
+		PreparedStatement stmnt = getTransactionManager().getConnection().prepareStatement(INSERT_QUERY, Statement.RETURN_GENERATED_KEYS);
 		stmnt.setInt(1, object.getEventType() != null ? object.getEventType() : -1);
 		stmnt.setInt(2, object.getActionAddress() != null ? object.getActionAddress().getUID() : -1);
 		stmnt.setString(3, object.getGroupUIDs() != null ? object.getGroupUIDs().toString(): "");
@@ -50,13 +69,7 @@ public class RuleTriggerDAO extends DataAccessObject<RuleTrigger> {
 
 	@Override
 	public boolean update(RuleTrigger object) throws SQLException {
-		final StringBuilder sb = new StringBuilder();
-		sb.append("UPDATE home_automation.rule_trigger ")
-		  .append("SET event_type=?, action_address_id=?, group_ids_list=?,")
-		  .append("event_status=?, parent_rule_id=? ")
-		  .append("WHERE id=?");
-		
-		final PreparedStatement stmnt = getTransactionManager().getConnection().prepareStatement(sb.toString());
+		final PreparedStatement stmnt = getTransactionManager().getConnection().prepareStatement(UPDATE_QUERY);
 		stmnt.setInt(1, object.getEventType() != null ? object.getEventType() : -1);
 		stmnt.setInt(2, object.getActionAddress() != null ? object.getActionAddress().getUID() : -1);
 		stmnt.setString(3, object.getGroupUIDs() != null ? object.getGroupUIDs().toString(): "");
@@ -66,6 +79,7 @@ public class RuleTriggerDAO extends DataAccessObject<RuleTrigger> {
 		stmnt.setInt(6, object.getUID());
 		
 		stmnt.executeUpdate();
+		stmnt.close();
 		return true;
 	}
 
@@ -73,17 +87,15 @@ public class RuleTriggerDAO extends DataAccessObject<RuleTrigger> {
 	public List<RuleTrigger> getAllForID(int parentId) throws SQLException {
 		final List<RuleTrigger> ruleTriggers = new ArrayList<>();
 
-		final String query = "SELECT * FROM home_automation.rule_trigger WHERE parent_rule_id=?";
-		
-		try (PreparedStatement preparedStatement = getTransactionManager().getConnection().prepareStatement(query)) {
+		try (PreparedStatement preparedStatement = getTransactionManager().getConnection().prepareStatement(SELECT_FOR_RULE_QUERY)) {
 			preparedStatement.setInt(1, parentId);
 			try (ResultSet resultSet = preparedStatement.executeQuery();) {
 				while (resultSet.next()) {
-					if(getCache().contains(resultSet.getInt("id"))) {
-						ruleTriggers.add(getCache().get(resultSet.getInt("id")));
+					if(getCache().contains(resultSet.getInt(ID))) {
+						ruleTriggers.add(getCache().get(resultSet.getInt(ID)));
 						continue;
 					}
-					final RuleTrigger ruleTrigger = new RuleTrigger(resultSet.getInt("id"));
+					final RuleTrigger ruleTrigger = new RuleTrigger(resultSet.getInt(ID));
 					getCache().addIfAbsent(ruleTrigger.getUID(), ruleTrigger);
 					ruleTriggers.add(ruleTrigger);
 					
@@ -99,6 +111,11 @@ public class RuleTriggerDAO extends DataAccessObject<RuleTrigger> {
 		return ruleTriggers;
 	}
 
+	@Override
+	public Map<Integer, List<RuleTrigger>> getAllForIDs(Collection<Integer> parentIds) throws SQLException {
+		return getAllForIDs(SELECT_FOR_RULES_QUERY, COLUMNS, "parent_rule_id", parentIds, RuleTrigger::new, this::fillWithData);
+	}
+
 	@Override
 	public boolean delete(Integer objectId) throws SQLException {
 		final String query = "DELETE FROM home_automation.rule_trigger WHERE id=?";
@@ -125,13 +142,13 @@ public class RuleTriggerDAO extends DataAccessObject<RuleTrigger> {
 
 	@Override
 	public RuleTrigger get(int objectId) throws SQLException {
-		RuleTrigger ruleTrigger = getCache().get(objectId);
-		if(ruleTrigger != null) {
-			return ruleTrigger;
-		}
+		return getCache().load(objectId, () -> loadFromDatabase(objectId));
+	}
+
+	private RuleTrigger loadFromDatabase(int objectId) throws SQLException {
+		RuleTrigger ruleTrigger = null;
 
-		final String query = "SELECT * FROM home_automation.rule_trigger WHERE id=?";
-		try (PreparedStatement preparedStatement = getTransactionManager().getConnection().prepareStatement(query)) {
+		try (PreparedStatement preparedStatement = getTransactionManager().getConnection().prepareStatement(SELECT_BY_ID_QUERY)) {
 			preparedStatement.setInt(1, objectId);
 			try (ResultSet resultSet = preparedStatement.executeQuery()) {
 				if (resultSet.next()) {
@@ -157,13 +174,17 @@ public class RuleTriggerDAO extends DataAccessObject<RuleTrigger> {
 		return null;
 	}
 
+	@Override
+	public Map<Integer, RuleTrigger> getAll(int[] ids) throws SQLException {
+		return getAll(ids, SELECT_BY_IDS_QUERY, COLUMNS, RuleTrigger::new, this::fillWithData);
+	}
+
 	@Override
 	public void restoreObjectState(RuleTrigger ruleTrigger) throws SQLException {
 		if (ruleTrigger == null || ruleTrigger.getUID() == null) {
 			return;
 		}
-		final String query = "SELECT * FROM home_automation.rule_trigger WHERE id=?";
-		try (PreparedStatement preparedStatement = getTransactionManager().getConnection().prepareStatement(query)) {
+		try (PreparedStatement preparedStatement = getTransactionManager().getConnection().prepareStatement(SELECT_BY_ID_QUERY)) {
 			preparedStatement.setInt(1, ruleTrigger.getUID());
 			try (ResultSet rs = preparedStatement.executeQuery()) {
 				if (rs.next()) {
@@ -182,17 +203,16 @@ public class RuleTriggerDAO extends DataAccessObject<RuleTrigger> {
 	}
 	
 	private void fillWithData(RuleTrigger ruleTrigger, ResultSet resultSet) throws SQLException {
-		ruleTrigger.setEventType( resultSet.getInt("event_type"));
+		ruleTrigger.setEventType( resultSet.getInt(EVENT_TYPE));
 		
-		final List<Integer> listInts = deserializeListFromToString(resultSet.getString("group_ids_list")).stream()
-				.map(v -> Integer.parseInt(v)).collect(Collectors.toList());
+		final List<Integer> listInts = deserializeIntegerListFromToString(resultSet.getString(GROUP_IDS_LIST));
 		ruleTrigger.setGroupUIDs(listInts);
-		ruleTrigger.setEventStatus( resultSet.getInt("event_status"));
+		ruleTrigger.setEventStatus( resultSet.getInt(EVENT_STATUS));
 		
-		final ActionAddress actionAddress = (ActionAddress) DaoRegistry.getInstance().getDAO(ActionAddress.class.getName()).get(resultSet.getInt("action_address_id"));
+		final ActionAddress actionAddress = (ActionAddress) DaoRegistry.getInstance().getDAO(ActionAddress.class.getName()).get(resultSet.getInt(ACTION_ADDRESS_ID));
 		ruleTrigger.setActionAddress(actionAddress);
 		
-		final Rule rule = (Rule) DaoRegistry.getInstance().getDAO(Rule.class.getName()).get(resultSet.getInt("parent_rule_id"));
+		final Rule rule = (Rule) DaoRegistry.getInstance().getDAO(Rule.class.getName()).get(resultSet.getInt(PARENT_RULE_ID));
 		ruleTrigger.setParentRule(rule);
 	}
 }
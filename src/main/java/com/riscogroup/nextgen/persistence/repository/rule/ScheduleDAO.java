@@ -6,9 +6,9 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -16,22 +16,43 @@ import org.slf4j.LoggerFactory;
 import com.riscogroup.nextgen.home.api.rule.data.ScheduleTime;
 import com.riscogroup.nextgen.home.api.rule.data.Rule;
 import com.riscogroup.nextgen.home.api.rule.data.Schedule;
+import com.riscogroup.nextgen.persistence.core.ColumnList;
 import com.riscogroup.nextgen.persistence.core.DataAccessObject;
 
 public class ScheduleDAO extends DataAccessObject<Schedule> {
 	private static final Logger logger = LoggerFactory.getLogger(ScheduleDAO.class);
+	private static final ColumnList COLUMNS = new ColumnList("id", "start_time", "end_time", "type",
+			"day_of_week_list", "day_of_month_list", "months_of_year_list", "parent_rule_id");
+	private static final int ID = COLUMNS.index("id");
+	private static final int START_TIME = COLUMNS.index("start_time");
+	private static final int END_TIME = COLUMNS.index("end_time");
+	private static final int TYPE = COLUMNS.index("type");
+	private static final int DAY_OF_WEEK_LIST = COLUMNS.index("day_of_week_list");
+	private static final int DAY_OF_MONTH_LIST = COLUMNS.index("day_of_month_list");
+	private static final int MONTHS_OF_YEAR_LIST = COLUMNS.index("months_of_year_list");
+	private static final int PARENT_RULE_ID = COLUMNS.index("parent_rule_id");
+	private static final String SELECT_FOR_RULES_QUERY = "SELECT " + COLUMNS
+			+ " FROM home_automation.schedule WHERE parent_rule_id = ANY(?)";
+	private static final String SELECT_BY_ID_QUERY = "SELECT " + COLUMNS
+			+ " FROM home_automation.schedule WHERE id=?";
+	private static final String SELECT_BY_IDS_QUERY = "SELECT " + COLUMNS
+			+ " FROM home_automation.schedule WHERE id = ANY(?)";
+	private static final String SELECT_FOR_RULE_QUERY = "SELECT " + COLUMNS
+			+ " FROM home_automation.schedule WHERE parent_rule_id=?";
+
+	private static final String INSERT_QUERY = "INSERT INTO home_automation.schedule "
+			+ "(start_time, end_time, type, day_of_week_list, day_of_month_list, months_of_year_list, parent_rule_id) "
+			+ "VALUES (?,?,?,?,?,?,?)";
+	private static final String UPDATE_QUERY = "UPDATE home_automation.schedule "
+			+ "SET start_time=?, end_time=?, type=?, day_of_week_list=?, day_of_month_list=?, "
+			+ "months_of_year_list=?, parent_rule_id=? "
+			+ "WHERE id=?";
 
 	@Override
 	public boolean persist(Schedule object) throws SQLException {
 		final Connection conn = getTransactionManager().getConnection();
 
-		final StringBuilder sb = new StringBuilder();
-		sb.append("INSERT INTO home_automation.schedule ")
-		  .append("(start_time, end_time, type, day_of_week_list, day_of_month_list, months_of_year_list, parent_rule_id) ")
-		  .append("VALUES (?,?,?,?,?,?,?)");
-		final String query = sb.toString();
-		
-		PreparedStatement stmnt = conn.prepareStatement(query, Statement.RETURN_GENERATED_KEYS);
+		PreparedStatement stmnt = conn.prepareStatement(INSERT_QUERY, Statement.RETURN_GENERATED_KEYS);
 		stmnt.setString(1, object.getStartTime() != null ? object.getStartTime().serializeObject() : "");
 		stmnt.setString(2, object.getEndTime() != null ? object.getEndTime().serializeObject() : "");
 		stmnt.setInt(3, object.getType() != null ? object.getType() : -1);
@@ -54,13 +75,7 @@ public class ScheduleDAO extends DataAccessObject<Schedule> {
 
 	@Override
 	public boolean update(Schedule object) throws SQLException {
-		final StringBuilder sb = new StringBuilder();
-		sb.append("UPDATE home_automation.schedule ")
-		  .append("SET start_time=?, end_time=?, type=?, day_of_week_list=?, day_of_month_list=?, ")
-		  .append("months_of_year_list=?, parent_rule_id=? ")
-		  .append("WHERE id=?");
-		
-		final PreparedStatement stmnt = getTransactionManager().getConnection().prepareStatement(sb.toString());
+		final PreparedStatement stmnt = getTransactionManager().getConnection().prepareStatement(UPDATE_QUERY);
 		stmnt.setString(1, object.getStartTime() != null ? object.getStartTime().serializeObject() : "");
 		stmnt.setString(2, object.getEndTime() != null ? object.getEndTime().serializeObject() : "");
 		stmnt.setInt(3, object.getType() != null ? object.getType() : -1);
@@ -72,6 +87,7 @@ public class ScheduleDAO extends DataAccessObject<Schedule> {
 		stmnt.setInt(8, object.getUID());
 		
 		stmnt.executeUpdate();
+		stmnt.close();
 		return true;
 	}
 
@@ -79,17 +95,15 @@ public class ScheduleDAO extends DataAccessObject<Schedule> {
 	public List<Schedule> getAllForID(int parentId) throws SQLException {
 		final List<Schedule> schedules = new ArrayList<>();
 
-		final String query = "SELECT * FROM home_automation.schedule WHERE parent_rule_id=?";
-		
-		try (PreparedStatement preparedStatement = getTransactionManager().getConnection().prepareStatement(query)) {
+		try (PreparedStatement preparedStatement = getTransactionManager().getConnection().prepareStatement(SELECT_FOR_RULE_QUERY)) {
 			preparedStatement.setInt(1, parentId);
 			try (ResultSet resultSet = preparedStatement.executeQuery();) {
 				while (resultSet.next()) {
-					if(getCache().contains(resultSet.getInt("id"))) {
-						schedules.add(getCache().get(resultSet.getInt("id")));
+					if(getCache().contains(resultSet.getInt(ID))) {
+						schedules.add(getCache().get(resultSet.getInt(ID)));
 						continue;
 					}
-					final Schedule schedule = new Schedule(resultSet.getInt("id"));
+					final Schedule schedule = new Schedule(resultSet.getInt(ID));
 					getCache().addIfAbsent(schedule.getUID(), schedule);
 					schedules.add(schedule);
 					
@@ -105,6 +119,11 @@ public class ScheduleDAO extends DataAccessObject<Schedule> {
 		return schedules;
 	}
 
+	@Override
+	public Map<Integer, List<Schedule>> getAllForIDs(Collection<Integer> parentIds) throws SQLException {
+		return getAllForIDs(SELECT_FOR_RULES_QUERY, COLUMNS, "parent_rule_id", parentIds, Schedule::new, this::fillWithData);
+	}
+
 	@Override
 	public boolean delete(Integer objectId) throws SQLException {
 		final String query = "DELETE FROM home_automation.schedule WHERE id=?";
@@ -127,13 +146,13 @@ public class ScheduleDAO extends DataAccessObject<Schedule> {
 
 	@Override
 	public Schedule get(int objectId) throws SQLException {
-		Schedule schedule = getCache().get(objectId);
-		if(schedule != null) {
-			return schedule;
-		}
+		return getCache().load(objectId, () -> loadFromDatabase(objectId));
+	}
+
+	private Schedule loadFromDatabase(int objectId) throws SQLException {
+		Schedule schedule = null;
 
-		String query = "SELECT * FROM home_automation.schedule WHERE id=?";
-		try (PreparedStatement preparedStatement = getTransactionManager().getConnection().prepareStatement(query)) {
+		try (PreparedStatement preparedStatement = getTransactionManager().getConnection().prepareStatement(SELECT_BY_ID_QUERY)) {
 			preparedStatement.setInt(1, objectId);
 			try (ResultSet resultSet = preparedStatement.executeQuery()) {
 				if (resultSet.next()) {
@@ -159,13 +178,17 @@ public class ScheduleDAO extends DataAccessObject<Schedule> {
 		return null;
 	}
 
+	@Override
+	public Map<Integer, Schedule> getAll(int[] ids) throws SQLException {
+		return getAll(ids, SELECT_BY_IDS_QUERY, COLUMNS, Schedule::new, this::fillWithData);
+	}
+
 	@Override
 	public void restoreObjectState(Schedule schedule) throws SQLException {
 		if (schedule == null || schedule.getUID() == null) {
 			return;
 		}
-		final String query = "SELECT * FROM home_automation.schedule WHERE id=?";
-		try (PreparedStatement preparedStatement = getTransactionManager().getConnection().prepareStatement(query)) {
+		try (PreparedStatement preparedStatement = getTransactionManager().getConnection().prepareStatement(SELECT_BY_ID_QUERY)) {
 			preparedStatement.setInt(1, schedule.getUID());
 			try (ResultSet rs = preparedStatement.executeQuery()) {
 				if (rs.next()) {
@@ -184,21 +207,18 @@ public class ScheduleDAO extends DataAccessObject<Schedule> {
 	}
 	
 	private void fillWithData(Schedule schedule, ResultSet resultSet) throws SQLException {
-		schedule.setStartTime(new ScheduleTime().deserializeObject( resultSet.getString("start_time")));
-		schedule.setEndTime(new ScheduleTime().deserializeObject( resultSet.getString("end_time")));
-		schedule.setType(resultSet.getInt("type"));
+		schedule.setStartTime(new ScheduleTime().deserializeObject( resultSet.getString(START_TIME)));
+		schedule.setEndTime(new ScheduleTime().deserializeObject( resultSet.getString(END_TIME)));
+		schedule.setType(resultSet.getInt(TYPE));
 		
-		List<Integer> listInts = deserializeListFromToString(resultSet.getString("day_of_week_list")).stream()
-				.map(v -> Integer.parseInt(v)).collect(Collectors.toList());
+		List<Integer> listInts = deserializeIntegerListFromToString(resultSet.getString(DAY_OF_WEEK_LIST));
 		schedule.setDayOfWeek(listInts);
-		listInts = deserializeListFromToString(resultSet.getString("day_of_month_list")).stream()
-				.map(v -> Integer.parseInt(v)).collect(Collectors.toList());
+		listInts = deserializeIntegerListFromToString(resultSet.getString(DAY_OF_MONTH_LIST));
 		schedule.setDayOfMonth(listInts);
-		listInts = deserializeListFromToString(resultSet.getString("months_of_year_list")).stream()
-				.map(v -> Integer.parseInt(v)).collect(Collectors.toList());
+		listInts = deserializeIntegerListFromToString(resultSet.getString(MONTHS_OF_YEAR_LIST));
 		schedule.setMonthsOfYear(listInts);
 		
-		final Rule rule = new Rule(99); //(_Rule) DaoRegistry.getInstance().getDAO(RuleDAO.class).get(resultSet.getInt("parent_rule_id"));
+		final Rule rule = new Rule(99); //(_Rule) DaoRegistry.getInstance().getDAO(RuleDAO.class).get(resultSet.getInt(PARENT_RULE_ID));
 		schedule.setParentRule(rule);
 	}
 }
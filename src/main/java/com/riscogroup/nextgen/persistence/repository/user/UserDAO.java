@@ -14,22 +14,60 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.riscogroup.nextgen.home.api.generic.User;
+import com.riscogroup.nextgen.persistence.core.ColumnList;
 import com.riscogroup.nextgen.persistence.core.DataAccessObject;
+import com.riscogroup.nextgen.persistence.core.DirtyColumnTracker;
+import com.riscogroup.nextgen.persistence.core.PivotTableSync;
 
 public class UserDAO extends DataAccessObject<User> {
 	private static final Logger logger = LoggerFactory.getLogger(UserDAO.class);
+	private static final ColumnList COLUMNS = new ColumnList("id", "name", "label", "password_hash",
+			"authentication_hash", "duress_authentication_hash", "role", "is_active", "user_expiration_time",
+			"user_audio_description", "user_language", "is_duress_alaram", "duress_password_hash");
+	private static final int ID = COLUMNS.index("id");
+	private static final int NAME = COLUMNS.index("name");
+	private static final int LABEL = COLUMNS.index("label");
+	private static final int PASSWORD_HASH = COLUMNS.index("password_hash");
+	private static final int AUTHENTICATION_HASH = COLUMNS.index("authentication_hash");
+	private static final int DURESS_AUTHENTICATION_HASH = COLUMNS.index("duress_authentication_hash");
+	private static final int ROLE = COLUMNS.index("role");
+	private static final int IS_ACTIVE = COLUMNS.index("is_active");
+	private static final int USER_EXPIRATION_TIME = COLUMNS.index("user_expiration_time");
+	private static final int USER_AUDIO_DESCRIPTION = COLUMNS.index("user_audio_description");
+	private static final int USER_LANGUAGE = COLUMNS.index("user_language");
+	private static final int IS_DURESS_ALARAM = COLUMNS.index("is_duress_alaram");
+	private static final int DURESS_PASSWORD_HASH = COLUMNS.index("duress_password_hash");
+	private static final String SELECT_NOT_CACHED_QUERY = "SELECT " + COLUMNS
+			+ " FROM home_automation._user WHERE id <> ALL(?)";
+
+	private static final String INSERT_QUERY = "INSERT INTO home_automation._user "
+			+ "(name, label, password_hash, authentication_hash, duress_authentication_hash, role,"
+			+ "user_expiration_time, user_audio_description, user_language, is_active, is_duress_alaram,"
+			+ "duress_password_hash) "
+			+ "VALUES (?,?,?,?,?,?,?,?,?,?,?,?)";
+	private static final String INSERT_NEXT_OPERATION_DEACTIVATION_QUERY = "INSERT INTO "
+			+ "home_automation.user_to_next_operation_deactivation (user_id, group_id, next_operation_deactivation) "
+			+ "VALUES (?,?,?)";
+	private static final String SELECT_BY_ID_QUERY = "SELECT " + COLUMNS
+			+ " FROM home_automation._user WHERE id=?";
+	private static final String SELECT_BY_IDS_QUERY = "SELECT " + COLUMNS
+			+ " FROM home_automation._user WHERE id = ANY(?)";
+
+	private static final String[] UPDATE_COLUMNS = { "name", "label", "password_hash", "authentication_hash",
+			"duress_authentication_hash", "role", "user_expiration_time", "user_audio_description", "user_language",
+			"is_active", "is_duress_alaram", "duress_password_hash" };
+
+	private final DirtyColumnTracker<User> userColumns = new DirtyColumnTracker<>("home_automation._user",
+			UPDATE_COLUMNS, UserDAO::getColumnValues);
+	private final PivotTableSync groupMembers = new PivotTableSync("home_automation.user_to_group", "user_id",
+			"group_id");
 
 	@Override
 	public boolean persist(User user) throws SQLException {
 		final Connection conn = getTransactionManager().getConnection();
+		invalidateFullyLoaded();
 
-		final StringBuilder query = new StringBuilder();
-		query.append("INSERT INTO home_automation._user ")
-				.append("(name, label, password_hash, authentication_hash, duress_authentication_hash, role,")
-				.append("user_expiration_time, user_audio_description, user_language, is_active, is_duress_alaram,")
-				.append("duress_password_hash) ").append("VALUES (?,?,?,?,?,?,?,?,?,?,?,?)");
-
-		PreparedStatement stmnt = conn.prepareStatement(query.toString(), Statement.RETURN_GENERATED_KEYS);
+		PreparedStatement stmnt = conn.prepareStatement(INSERT_QUERY, Statement.RETURN_GENERATED_KEYS);
 		stmnt.setString(1, user.getUsername() != null ? user.getUsername() : "");
 		stmnt.setString(2, user.getUserLabel() != null ? user.getUserLabel() : "");
 		stmnt.setString(3, user.getPasswordHash() != null ? user.getPasswordHash() : "");
@@ -52,13 +90,7 @@ public class UserDAO extends DataAccessObject<User> {
 		stmnt.close();
 		user.setUserId(lastInsertedUserId);
 
-		if (user.getUserGroups() != null && user.getUserGroups().size() > 0) {
-			final String insert = getInsertIntoPivotTableStatement("user_to_group", "group_id", user.getUID(),
-					user.getUserGroups());
-			stmnt = conn.prepareStatement(insert);
-			stmnt.executeUpdate();
-			stmnt.close();
-		}
+		groupMembers.insert(conn, lastInsertedUserId, user.getUserGroups());
 
 		persistNextOperationDeactivationMap(user.getUID(), user.getNextOperationDeactivationMap());
 
@@ -66,7 +98,7 @@ public class UserDAO extends DataAccessObject<User> {
 	}
 
 	@Override
-	public boolean update(User user) throws SQLException { // can be optimized to update only changed fields
+	public boolean update(User user) throws SQLException {
 		final Connection conn = getTransactionManager().getConnection();
 
 		if (user.getUID() == null) {// Object was created and filled with data before being persisted
@@ -74,40 +106,11 @@ public class UserDAO extends DataAccessObject<User> {
 			return true;
 		}
 
-		final StringBuilder query = new StringBuilder();
-		query.append("UPDATE home_automation._user SET ").append(
-				"name=?, label=?, password_hash=?, authentication_hash=?, duress_authentication_hash=?, role=?,")
-				.append("user_expiration_time=?, user_audio_description=?, user_language=?, is_active=?, is_duress_alaram=?,")
-				.append("duress_password_hash=? ").append("WHERE id=?");
+		userColumns.update(conn, user.getUID(), user);
 
-		PreparedStatement stmnt = conn.prepareStatement(query.toString(), Statement.RETURN_GENERATED_KEYS);
-		stmnt.setString(1, user.getUsername() != null ? user.getUsername() : "");
-		stmnt.setString(2, user.getUserLabel() != null ? user.getUserLabel() : "");
-		stmnt.setString(3, user.getPasswordHash() != null ? user.getPasswordHash() : "");
-		stmnt.setString(4, user.getAuthenticationHash() != null ? user.getAuthenticationHash() : "");
-		stmnt.setString(5, user.getDuressAuthenticationHash() != null ? user.getDuressAuthenticationHash() : "");
-		stmnt.setInt(6, user.getRole() != null ? user.getRole() : 0);
-		stmnt.setLong(7, user.getUserExpirationTime() != null ? user.getUserExpirationTime() : 0L);
-		stmnt.setString(8, user.getUserAudioDescription() != null ? user.getUserAudioDescription() : "");
-		stmnt.setString(9, user.getUserLanguage() != null ? user.getUserLanguage() : "");
-		stmnt.setBoolean(10, user.getActive());
-		stmnt.setBoolean(11, user.getDuressAlarm());
-		stmnt.setString(12, user.getDuressPasswordHash() != null ? user.getDuressPasswordHash() : "");
-		stmnt.setInt(13, user.getUID());
-		stmnt.executeUpdate();
-		stmnt.close();
-
-		deleteUserPivotTableAssosiations(user.getUID());
+		groupMembers.sync(conn, user.getUID(), user.getUserGroups());
 		deleteNextOperationDeactivationMap(user.getUID());
 
-		if (user.getUserGroups() != null && user.getUserGroups().size() > 0) {
-			final String insert = getInsertIntoPivotTableStatement("user_to_group", "group_id", user.getUID(),
-					user.getUserGroups());
-			stmnt = conn.prepareStatement(insert);
-			stmnt.executeUpdate();
-			stmnt.close();
-		}
-
 		persistNextOperationDeactivationMap(user.getUID(), user.getNextOperationDeactivationMap());
 
 		return true;
@@ -115,14 +118,14 @@ public class UserDAO extends DataAccessObject<User> {
 
 	private List<Integer> getUserAggregationsFromPivotTable(String tableName, String columnName, int userId)
 			throws SQLException {
-		final String query = "SELECT * FROM home_automation." + tableName + " WHERE user_id=?";
+		final String query = "SELECT " + columnName + " FROM home_automation." + tableName + " WHERE user_id=?";
 		final Connection connection = getTransactionManager().getConnection();
 		final List<Integer> items = new ArrayList<>();
 		try (PreparedStatement preparedStatement = connection.prepareStatement(query)) {
 			preparedStatement.setInt(1, userId);
 			try (ResultSet resultSet = preparedStatement.executeQuery();) {
 				while (resultSet.next()) {
-					items.add(resultSet.getInt(columnName));
+					items.add(resultSet.getInt(1));
 				}
 			}
 		}
@@ -132,31 +135,33 @@ public class UserDAO extends DataAccessObject<User> {
 	protected void initializeObjectWithDatabaseData(User user) throws SQLException {
 		final Connection connection = getTransactionManager().getConnection();
 
-		final String query = "SELECT * FROM home_automation._user WHERE id=?";
-		try (PreparedStatement preparedStatement = connection.prepareStatement(query)) {
+		try (PreparedStatement preparedStatement = connection.prepareStatement(SELECT_BY_ID_QUERY)) {
 			preparedStatement.setInt(1, user.getUID());
 			try (ResultSet resultSet = preparedStatement.executeQuery();) {
 				if (resultSet.next()) {
-					user.setUserId(resultSet.getInt("id"));
-					user.setUsername(resultSet.getString("name"));
-					user.setUserLabel(resultSet.getString("label"));
-					user.setPasswordHash(resultSet.getString("password_hash"));
-					user.setAuthenticationHash(resultSet.getString("authentication_hash"));
-					user.setDuressAuthenticationHash(resultSet.getString("duress_authentication_hash"));
-					user.setRole(resultSet.getInt("role"));
-					user.setActive(resultSet.getBoolean("is_active"));
-					user.setUserExpirationTime(resultSet.getLong("user_expiration_time"));
-					user.setUserAudioDescription(resultSet.getString("user_audio_description"));
-					user.setUserLanguage(resultSet.getString("user_language"));
-					user.setDuressAlarm(resultSet.getBoolean("is_duress_alaram"));
-					user.setDuressPasswordHash(resultSet.getString("duress_password_hash"));
+					user.setUserId(resultSet.getInt(ID));
+					user.setUsername(resultSet.getString(NAME));
+					user.setUserLabel(resultSet.getString(LABEL));
+					user.setPasswordHash(resultSet.getString(PASSWORD_HASH));
+					user.setAuthenticationHash(resultSet.getString(AUTHENTICATION_HASH));
+					user.setDuressAuthenticationHash(resultSet.getString(DURESS_AUTHENTICATION_HASH));
+					user.setRole(resultSet.getInt(ROLE));
+					user.setActive(resultSet.getBoolean(IS_ACTIVE));
+					user.setUserExpirationTime(resultSet.getLong(USER_EXPIRATION_TIME));
+					user.setUserAudioDescription(resultSet.getString(USER_AUDIO_DESCRIPTION));
+					user.setUserLanguage(resultSet.getString(USER_LANGUAGE));
+					user.setDuressAlarm(resultSet.getBoolean(IS_DURESS_ALARAM));
+					user.setDuressPasswordHash(resultSet.getString(DURESS_PASSWORD_HASH));
+					userColumns.remember(user.getUID(), user);
 				} else {
 					logger.error("User {} does not exist", user.getUID());
 					throw new SQLException();
 				}
 			}
 		}
-		user.setGroups(getUserAggregationsFromPivotTable("user_to_group", "group_id", user.getUID()));
+		final List<Integer> groupIds = getUserAggregationsFromPivotTable("user_to_group", "group_id", user.getUID());
+		user.setGroups(groupIds);
+		groupMembers.remember(user.getUID(), groupIds);
 
 		final Map<Integer, Boolean> nextOperationDeactivationMap = getNextOperationDeactivationMap(user.getUID());
 		for(Integer groupUID : nextOperationDeactivationMap.keySet()) {
@@ -174,6 +179,7 @@ public class UserDAO extends DataAccessObject<User> {
 			stmnt.executeUpdate();
 		}
 		deleteUserPivotTableAssosiations(userId);
+		groupMembers.forget(userId);
 		return true;
 	}
 
@@ -188,23 +194,16 @@ public class UserDAO extends DataAccessObject<User> {
 		}
 
 		final Connection connection = getTransactionManager().getConnection();
-		for (Integer groupUID : items.keySet()) {
-			final StringBuilder query = new StringBuilder();
-			query.append(
-					"INSERT INTO home_automation.user_to_next_operation_deactivation (user_id, group_id, next_operation_deactivation) VALUES ");
-			query.append("(");
-			query.append(userId);
-			query.append(",");
-			query.append(groupUID);
-			query.append(",");
-			query.append(items.get(groupUID).booleanValue());
-			query.append(")");
-
-			try (PreparedStatement stmnt = connection.prepareStatement(query.toString())) {
-				stmnt.executeUpdate();
-			} catch (Exception e) {
-				throw new RuntimeException(e.getCause());
+		try (PreparedStatement stmnt = connection.prepareStatement(INSERT_NEXT_OPERATION_DEACTIVATION_QUERY)) {
+			for (Map.Entry<Integer, Boolean> item : items.entrySet()) {
+				stmnt.setInt(1, userId);
+				stmnt.setInt(2, item.getKey());
+				stmnt.setBoolean(3, item.getValue().booleanValue());
+				stmnt.addBatch();
 			}
+			stmnt.executeBatch();
+		} catch (Exception e) {
+			throw new RuntimeException(e.getCause());
 		}
 	}
 
@@ -221,15 +220,16 @@ public class UserDAO extends DataAccessObject<User> {
 	}
 
 	private Map<Integer, Boolean> getNextOperationDeactivationMap(int userId) throws SQLException {
-		final String query = "SELECT * FROM home_automation.user_to_next_operation_deactivation WHERE user_id=?";
+		final String query = "SELECT group_id, next_operation_deactivation "
+				+ "FROM home_automation.user_to_next_operation_deactivation WHERE user_id=?";
 		final Connection connection = getTransactionManager().getConnection();
 		final Map<Integer, Boolean> items = new HashMap<Integer, Boolean>();
 		try (PreparedStatement preparedStatement = connection.prepareStatement(query)) {
 			preparedStatement.setInt(1, userId);
 			try (ResultSet resultSet = preparedStatement.executeQuery();) {
 				while (resultSet.next()) {
-					final Integer groupUID = resultSet.getInt("group_id");
-					final boolean next_operation_deactivation = resultSet.getBoolean("next_operation_deactivation");
+					final Integer groupUID = resultSet.getInt(1);
+					final boolean next_operation_deactivation = resultSet.getBoolean(2);
 					items.put(groupUID, new Boolean(next_operation_deactivation));
 				}
 			}
@@ -250,16 +250,6 @@ public class UserDAO extends DataAccessObject<User> {
 		}
 	}
 
-	private String getInsertIntoPivotTableStatement(String pivotTableName, String columnName, Integer userId,
-			List<Integer> intemIds) {
-		final StringBuilder sb = new StringBuilder();
-		sb.append("INSERT INTO home_automation." + pivotTableName + " (user_id, " + columnName + ") VALUES ");
-		for (Integer itemId : intemIds) {
-			sb.append("(").append(userId).append(",").append(itemId).append("),");
-		}
-		return sb.replace(sb.length() - 1, sb.length(), "").toString();
-	}
-
 	@Override
 	public List<User> getAllForID(int parentId) throws SQLException {
 		return null;
@@ -267,13 +257,13 @@ public class UserDAO extends DataAccessObject<User> {
 
 	@Override
 	public User get(int objectId) throws SQLException {
-		User user = getCache().get(objectId);
-		if (user != null) {
-			return user;
-		}
+		return getCache().load(objectId, () -> loadFromDatabase(objectId));
+	}
 
-		String query = "SELECT * FROM home_automation._user WHERE id=?";
-		try (PreparedStatement preparedStatement = getTransactionManager().getConnection().prepareStatement(query)) {
+	private User loadFromDatabase(int objectId) throws SQLException {
+		User user = null;
+
+		try (PreparedStatement preparedStatement = getTransactionManager().getConnection().prepareStatement(SELECT_BY_ID_QUERY)) {
 			preparedStatement.setInt(1, objectId);
 			try (ResultSet resultSet = preparedStatement.executeQuery()) {
 				if (resultSet.next()) {
@@ -296,38 +286,48 @@ public class UserDAO extends DataAccessObject<User> {
 
 	@Override
 	public Map<Integer, User> getAll() throws SQLException {
-		final StringBuilder sb = new StringBuilder();
-		sb.append("SELECT * FROM home_automation._user");
-		if(!getCache().isEmpty()) {
-			sb.append(" WHERE id NOT IN(").append(getCache().getExistingIndexesString())
-			.append(") ");
+		if (getCache().isFullyLoaded()) {
+			return getCache().getAll();
 		}
+		final long loadVersion = getCache().beginFullLoad();
 		final Connection connection = getTransactionManager().getConnection();
 
-		try (PreparedStatement preparedStatement = connection.prepareStatement(sb.toString());
-				ResultSet resultSet = preparedStatement.executeQuery()) {
-			while (resultSet.next()) {
-				final User user = new User( resultSet.getInt("id"));
-				getCache().addIfAbsent(user.getUID(), user);
-				fillWithData(user, resultSet);
+		try (PreparedStatement preparedStatement = connection.prepareStatement(SELECT_NOT_CACHED_QUERY)) {
+			preparedStatement.setArray(1, createCachedIdsArray(connection));
+			try (ResultSet resultSet = preparedStatement.executeQuery()) {
+				while (resultSet.next()) {
+					final User user = new User( resultSet.getInt(ID));
+					getCache().addIfAbsent(user.getUID(), user);
+					fillWithData(user, resultSet);
+				}
 			}
 		} catch (Exception e) {
 			logger.error(e.getMessage());
 			throw new SQLException(e);
 		}
+		getCache().completeFullLoad(loadVersion);
 		return getCache().getAll();
 	}
 
+	@Override
+	public Map<Integer, User> getAll(int[] ids) throws SQLException {
+		return getAll(ids, SELECT_BY_IDS_QUERY, COLUMNS, User::new, this::fillWithData);
+	}
+
 	@Override
 	public void restoreObjectState(User user) throws SQLException {
 		if (user == null || user.getUID() == null) {
 			return;
 		}
+		/* columns come from the row image, groups are read back */
+		if (restoreFromRowImage(user.getUID(), user, userColumns, COLUMNS, this::fillColumns)) {
+			loadRelations(user);
+			return;
+		}
 		
 		final Connection connection = getTransactionManager().getConnection();
 		
-		String query = "SELECT * FROM home_automation._user WHERE id=?";
-		try (PreparedStatement preparedStatement = connection.prepareStatement(query)) {
+		try (PreparedStatement preparedStatement = connection.prepareStatement(SELECT_BY_ID_QUERY)) {
 			preparedStatement.setInt(1, user.getUID());
 			try (ResultSet rs = preparedStatement.executeQuery()) {
 				if (rs.next()) {
@@ -347,25 +347,54 @@ public class UserDAO extends DataAccessObject<User> {
 	}
 
 	private void fillWithData(User user, ResultSet resultSet) throws SQLException {
-		user.setUserId(resultSet.getInt("id"));
-		user.setUsername(resultSet.getString("name"));
-		user.setUserLabel(resultSet.getString("label"));
-		user.setPasswordHash(resultSet.getString("password_hash"));
-		user.setAuthenticationHash(resultSet.getString("authentication_hash"));
-		user.setDuressAuthenticationHash(resultSet.getString("duress_authentication_hash"));
-		user.setRole(resultSet.getInt("role"));
-		user.setActive(resultSet.getBoolean("is_active"));
-		user.setUserExpirationTime(resultSet.getLong("user_expiration_time"));
-		user.setUserAudioDescription(resultSet.getString("user_audio_description"));
-		user.setUserLanguage(resultSet.getString("user_language"));
-		user.setDuressAlarm(resultSet.getBoolean("is_duress_alaram"));
-		user.setDuressPasswordHash(resultSet.getString("duress_password_hash"));
-
-		user.setGroups(getUserAggregationsFromPivotTable("user_to_group", "group_id", user.getUID()));
+		fillColumns(user, resultSet);
+		loadRelations(user);
+	}
+
+	/**
+	 * Sets the columns of the user row only, groups and next operation deactivations are set by loadRelations().
+	 */
+	private void fillColumns(User user, ResultSet resultSet) throws SQLException {
+		user.setUserId(resultSet.getInt(ID));
+		user.setUsername(resultSet.getString(NAME));
+		user.setUserLabel(resultSet.getString(LABEL));
+		user.setPasswordHash(resultSet.getString(PASSWORD_HASH));
+		user.setAuthenticationHash(resultSet.getString(AUTHENTICATION_HASH));
+		user.setDuressAuthenticationHash(resultSet.getString(DURESS_AUTHENTICATION_HASH));
+		user.setRole(resultSet.getInt(ROLE));
+		user.setActive(resultSet.getBoolean(IS_ACTIVE));
+		user.setUserExpirationTime(resultSet.getLong(USER_EXPIRATION_TIME));
+		user.setUserAudioDescription(resultSet.getString(USER_AUDIO_DESCRIPTION));
+		user.setUserLanguage(resultSet.getString(USER_LANGUAGE));
+		user.setDuressAlarm(resultSet.getBoolean(IS_DURESS_ALARAM));
+		user.setDuressPasswordHash(resultSet.getString(DURESS_PASSWORD_HASH));
+		userColumns.remember(user.getUID(), user);
+	}
+
+	private void loadRelations(User user) throws SQLException {
+		final List<Integer> groupIds = getUserAggregationsFromPivotTable("user_to_group", "group_id", user.getUID());
+		user.setGroups(groupIds);
+		groupMembers.remember(user.getUID(), groupIds);
 
 		final Map<Integer, Boolean> nextOperationDeactivationMap = getNextOperationDeactivationMap(user.getUID());
 		for (Integer groupUID : nextOperationDeactivationMap.keySet()) {
 			user.setNextOperationDeactivation(groupUID, nextOperationDeactivationMap.get(groupUID));
 		}
 	}
-}
\ No newline at end of file
+
+	private static Object[] getColumnValues(User user) {
+		return new Object[] {
+				user.getUsername() != null ? user.getUsername() : "",
+				user.getUserLabel() != null ? user.getUserLabel() : "",
+				user.getPasswordHash() != null ? user.getPasswordHash() : "",
+				user.getAuthenticationHash() != null ? user.getAuthenticationHash() : "",
+				user.getDuressAuthenticationHash() != null ? user.getDuressAuthenticationHash() : "",
+				user.getRole() != null ? user.getRole() : 0,
+				user.getUserExpirationTime() != null ? user.getUserExpirationTime() : 0L,
+				user.getUserAudioDescription() != null ? user.getUserAudioDescription() : "",
+				user.getUserLanguage() != null ? user.getUserLanguage() : "",
+				user.getActive(),
+				user.getDuressAlarm(),
+				user.getDuressPasswordHash() != null ? user.getDuressPasswordHash() : "" };
+	}
+}
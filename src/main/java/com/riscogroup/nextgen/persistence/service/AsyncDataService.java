@@ -0,0 +1,37 @@
+package com.riscogroup.nextgen.home.api.services;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Non-blocking variant of DataService. Results are the same as the ones of the DataService methods.
+ * A read not finished within its timeout completes exceptionally with a TimeoutException. A commit,
+ * persist or update not started within its timeout completes exceptionally with a TimeoutException and
+ * is never run, once started it completes with its real outcome.
+ */
+public interface AsyncDataService {
+
+	/**
+	 * Commits the work registered in DataService by the calling Thread.
+	 */
+	CompletableFuture<Boolean> commitTransactionRegisteredWork();
+
+	CompletableFuture<Boolean> commitTransactionRegisteredWork(long timeout, TimeUnit unit);
+
+	CompletableFuture<Boolean> persistObject(Object object);
+
+	CompletableFuture<Boolean> persistObject(Object object, long timeout, TimeUnit unit);
+
+	CompletableFuture<Boolean> updateObject(Object object);
+
+	CompletableFuture<Boolean> updateObject(Object object, long timeout, TimeUnit unit);
+
+	<T> CompletableFuture<T> getObjectById(Class<?> objectClass, int objectId);
+
+	<T> CompletableFuture<T> getObjectById(Class<?> objectClass, int objectId, long timeout, TimeUnit unit);
+
+	<T> CompletableFuture<Map<Integer, T>> getAllObjects(Class<?> objectClass);
+
+	<T> CompletableFuture<Map<Integer, T>> getAllObjects(Class<?> objectClass, long timeout, TimeUnit unit);
+}
@@ -0,0 +1,90 @@
+package com.riscogroup.nextgen.persistence.service;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.riscogroup.nextgen.home.api.services.AsyncDataService;
+import com.riscogroup.nextgen.home.api.services.DataService;
+import com.riscogroup.nextgen.persistence.core.DatabaseExecutor;
+import com.riscogroup.nextgen.persistence.core.UnitOfWork;
+
+/**
+ * Runs the DataService calls on the DatabaseExecutor, each call in its own session on a pool Thread.
+ * Commits, persists and updates are submitted as writes, a write which has started reports its real
+ * outcome instead of a TimeoutException.
+ */
+public class AsyncPersistenceServiceImpl implements AsyncDataService {
+	private final DataService dataService;
+	private final DatabaseExecutor executor;
+
+	public AsyncPersistenceServiceImpl(DataService dataService, DatabaseExecutor executor) {
+		this.dataService = dataService;
+		this.executor = executor;
+	}
+
+	@Override
+	public CompletableFuture<Boolean> commitTransactionRegisteredWork() {
+		return executor.submitWrite(commitRegisteredWork(UnitOfWork.detachCurrent()));
+	}
+
+	@Override
+	public CompletableFuture<Boolean> commitTransactionRegisteredWork(long timeout, TimeUnit unit) {
+		return executor.submitWrite(commitRegisteredWork(UnitOfWork.detachCurrent()), timeout, unit);
+	}
+
+	/**
+	 * The UnitOfWork is bound to the Thread which registered the work, the pool Thread commits it in its place.
+	 */
+	private Callable<Boolean> commitRegisteredWork(UnitOfWork unitOfWork) {
+		return () -> {
+			UnitOfWork.attach(unitOfWork);
+			try {
+				return dataService.commitTransactionRegisteredWork();
+			} finally {
+				UnitOfWork.attach(null);
+			}
+		};
+	}
+
+	@Override
+	public CompletableFuture<Boolean> persistObject(Object object) {
+		return executor.submitWrite(() -> dataService.persistObject(object));
+	}
+
+	@Override
+	public CompletableFuture<Boolean> persistObject(Object object, long timeout, TimeUnit unit) {
+		return executor.submitWrite(() -> dataService.persistObject(object), timeout, unit);
+	}
+
+	@Override
+	public CompletableFuture<Boolean> updateObject(Object object) {
+		return executor.submitWrite(() -> dataService.updateObject(object));
+	}
+
+	@Override
+	public CompletableFuture<Boolean> updateObject(Object object, long timeout, TimeUnit unit) {
+		return executor.submitWrite(() -> dataService.updateObject(object), timeout, unit);
+	}
+
+	@Override
+	public <T> CompletableFuture<T> getObjectById(Class<?> objectClass, int objectId) {
+		return executor.submit(() -> dataService.<T>getObjectById(objectClass, objectId));
+	}
+
+	@Override
+	public <T> CompletableFuture<T> getObjectById(Class<?> objectClass, int objectId, long timeout, TimeUnit unit) {
+		return executor.submit(() -> dataService.<T>getObjectById(objectClass, objectId), timeout, unit);
+	}
+
+	@Override
+	public <T> CompletableFuture<Map<Integer, T>> getAllObjects(Class<?> objectClass) {
+		return executor.submit(() -> dataService.<T>getAllObjects(objectClass));
+	}
+
+	@Override
+	public <T> CompletableFuture<Map<Integer, T>> getAllObjects(Class<?> objectClass, long timeout, TimeUnit unit) {
+		return executor.submit(() -> dataService.<T>getAllObjects(objectClass), timeout, unit);
+	}
+}
@@ -1,7 +1,9 @@
 package com.riscogroup.nextgen.home.api.services;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 public interface DataService {
 
@@ -23,5 +25,15 @@ public interface DataService {
 
 	<T> Map<Integer, T> getAllObjects(Class<?> objectClass);
 
+	<T> Map<Integer, T> getObjectsByIds(Class<?> objectClass, Collection<Integer> objectIds);
+
+	/**
+	 * Hands all objects of the class to the consumer one by one, without loading them all at once.
+	 * The consumer runs while the query is open and must not call the DataService.
+	 *
+	 * @return false if not all objects could be read
+	 */
+	<T> boolean streamAll(Class<?> objectClass, Consumer<? super T> consumer);
+
 	<T> List<T> getAllObjectsForID(Class<?> objectClass, int parentId);
 }
\ No newline at end of file
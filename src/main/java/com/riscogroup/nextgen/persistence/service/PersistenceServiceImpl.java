@@ -1,7 +1,9 @@
 package com.riscogroup.nextgen.persistence.service;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -9,17 +11,24 @@ import org.slf4j.LoggerFactory;
 import com.riscogroup.nextgen.home.api.monitor.ServiceStatusResponse;
 import com.riscogroup.nextgen.home.api.monitor.StatusObservable;
 import com.riscogroup.nextgen.home.api.services.DataService;
+import com.riscogroup.nextgen.persistence.core.CacheWarmUp;
 import com.riscogroup.nextgen.persistence.core.DaoRegistry;
+import com.riscogroup.nextgen.persistence.core.HydrationScope;
 import com.riscogroup.nextgen.persistence.core.TransactionManager;
 import com.riscogroup.nextgen.persistence.core.UnitOfWork;
 
 public class PersistenceServiceImpl implements DataService, StatusObservable {
 	private static final Logger logger = LoggerFactory.getLogger(DataService.class);
 	private final TransactionManager transactionManager;
+	private volatile CacheWarmUp cacheWarmUp;
 	
 	public PersistenceServiceImpl() {
 		this.transactionManager = TransactionManager.getInstance();
 	}
+
+	public void setCacheWarmUp(CacheWarmUp cacheWarmUp) {
+		this.cacheWarmUp = cacheWarmUp;
+	}
 	
 	@Override
 	public void registerForInsert(Object object) {
@@ -54,7 +63,12 @@ public class PersistenceServiceImpl implements DataService, StatusObservable {
 	public boolean persistObject(Object object) {
 		try {
 			transactionManager.openSessionAndStartTransaction();
-			DaoRegistry.getInstance().getDAO(object.getClass().getName()).persist(object);
+			HydrationScope.enter();
+			try {
+				DaoRegistry.getInstance().getDAO(object.getClass().getName()).persist(object);
+			} finally {
+				HydrationScope.exit();
+			}
 			transactionManager.commitTransactionAndCloseSession();
 			return true;
 		}catch(Exception e) {
@@ -68,7 +82,12 @@ public class PersistenceServiceImpl implements DataService, StatusObservable {
 	public boolean updateObject(Object object) {
 		try {
 			transactionManager.openSessionAndStartTransaction();
-			DaoRegistry.getInstance().getDAO(object.getClass().getName()).update(object);
+			HydrationScope.enter();
+			try {
+				DaoRegistry.getInstance().getDAO(object.getClass().getName()).update(object);
+			} finally {
+				HydrationScope.exit();
+			}
 			transactionManager.commitTransactionAndCloseSession();
 			return true;
 		}catch(Exception e) {
@@ -82,7 +101,12 @@ public class PersistenceServiceImpl implements DataService, StatusObservable {
 	public boolean deleteObjectById(Class<?> objectClass, Integer objectId) {
 		try {
 			transactionManager.openSessionAndStartTransaction();
-			DaoRegistry.getInstance().getDAO(objectClass.getName()).delete(objectId);
+			HydrationScope.enter();
+			try {
+				DaoRegistry.getInstance().getDAO(objectClass.getName()).delete(objectId);
+			} finally {
+				HydrationScope.exit();
+			}
 			transactionManager.commitTransactionAndCloseSession();
 			return true;
 		}catch(Exception e) {
@@ -96,8 +120,14 @@ public class PersistenceServiceImpl implements DataService, StatusObservable {
 	@SuppressWarnings("unchecked")
 	public <T> T getObjectById(Class<?> objectClass, int objectId) {
 		try {
-			transactionManager.openSessionAndStartTransaction();
-			final T object = (T) DaoRegistry.getInstance().getDAO(objectClass.getName()).get(objectId);
+			transactionManager.openLazySession();
+			final T object;
+			HydrationScope.enter();
+			try {
+				object = (T) DaoRegistry.getInstance().getDAO(objectClass.getName()).get(objectId);
+			} finally {
+				HydrationScope.exit();
+			}
 			transactionManager.commitTransactionAndCloseSession();
 			return object;
 		}catch(Exception e) {
@@ -112,8 +142,13 @@ public class PersistenceServiceImpl implements DataService, StatusObservable {
 	public <T> Map<Integer, T> getAllObjects(Class<?> objectClass) {
 		Map<Integer, T> objects = null;
 		try {
-			transactionManager.openSessionAndStartTransaction();
-			objects = (Map<Integer, T>) DaoRegistry.getInstance().getDAO(objectClass.getName()).getAll();
+			transactionManager.openLazySession();
+			HydrationScope.enter();
+			try {
+				objects = (Map<Integer, T>) DaoRegistry.getInstance().getDAO(objectClass.getName()).getAll();
+			} finally {
+				HydrationScope.exit();
+			}
 			transactionManager.commitTransactionAndCloseSession();
 		}catch(Exception e) {
 			logger.error(e.getMessage());
@@ -122,13 +157,57 @@ public class PersistenceServiceImpl implements DataService, StatusObservable {
 		return objects;
 	}
 
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> Map<Integer, T> getObjectsByIds(Class<?> objectClass, Collection<Integer> objectIds) {
+		final int[] ids = new int[objectIds.size()];
+		int i = 0;
+		for (Integer objectId : objectIds) {
+			ids[i++] = objectId;
+		}
+		Map<Integer, T> objects = null;
+		try {
+			transactionManager.openLazySession();
+			HydrationScope.enter();
+			try {
+				objects = (Map<Integer, T>) DaoRegistry.getInstance().getDAO(objectClass.getName()).getAll(ids);
+			} finally {
+				HydrationScope.exit();
+			}
+			transactionManager.commitTransactionAndCloseSession();
+		}catch(Exception e) {
+			logger.error(e.getMessage());
+			transactionManager.rollbackTransactionAndCloseSession();
+		}
+		return objects;
+	}
+
+	@Override
+	public <T> boolean streamAll(Class<?> objectClass, Consumer<? super T> consumer) {
+		try {
+			transactionManager.openLazySession();
+			DaoRegistry.getInstance().<T>getDAO(objectClass.getName()).streamAll(consumer);
+			transactionManager.commitTransactionAndCloseSession();
+			return true;
+		}catch(Exception e) {
+			logger.error(e.getMessage());
+			transactionManager.rollbackTransactionAndCloseSession();
+			return false;
+		}
+	}
+
 	@Override
 	@SuppressWarnings("unchecked")
 	public <T> List<T> getAllObjectsForID(Class<?> objectClass, int parentId) {
 		List<T> objects = null;
 		try {
-			transactionManager.openSessionAndStartTransaction();
-			objects = (List<T>) DaoRegistry.getInstance().getDAO(objectClass.getName()).getAllForID(parentId);
+			transactionManager.openLazySession();
+			HydrationScope.enter();
+			try {
+				objects = (List<T>) DaoRegistry.getInstance().getDAO(objectClass.getName()).getAllForID(parentId);
+			} finally {
+				HydrationScope.exit();
+			}
 			transactionManager.commitTransactionAndCloseSession();
 		}catch(Exception e) {
 			logger.error(e.getMessage());
@@ -140,7 +219,9 @@ public class PersistenceServiceImpl implements DataService, StatusObservable {
 	@Override
 	public ServiceStatusResponse getServiceStatus() {
 		final ServiceStatusResponse response = new ServiceStatusResponse();
-		response.setMessage(this.getClass().getCanonicalName());
+		final CacheWarmUp warmUp = cacheWarmUp;
+		response.setMessage(warmUp != null ? this.getClass().getCanonicalName() + ": " + warmUp.getStatus()
+				: this.getClass().getCanonicalName());
 		response.setServiceStatus(true);
 		return response;
 	}
@@ -0,0 +1,107 @@
+package com.riscogroup.nextgen.persistence.core;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Cache lookups and mixed read/write load of ConcurrentIntObjectMap against the ConcurrentHashMap
+ * the IdentityMap used before, at the cache sizes of a home with few and with many devices.
+ *
+ * Run with: java -cp target/test-classes:target/classes:&lt;jmh jars&gt; org.openjdk.jmh.Main ConcurrentIntObjectMapBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+@Threads(4)
+public class ConcurrentIntObjectMapBenchmark {
+
+	@Param({ "1000", "50000" })
+	private int size;
+
+	private ConcurrentIntObjectMap<Object> intMap;
+	private Map<Integer, Object> hashMap;
+	private int[] keys;
+
+	@Setup
+	public void fill() {
+		intMap = new ConcurrentIntObjectMap<>(size);
+		hashMap = new ConcurrentHashMap<>(size);
+		final Random random = new Random(42);
+		keys = new int[4096];
+		for (int i = 0; i < size; i++) {
+			final Object value = new Object();
+			intMap.put(i, value);
+			hashMap.put(i, value);
+		}
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = random.nextInt(size);
+		}
+	}
+
+	/**
+	 * Lookup position per benchmark Thread.
+	 */
+	@State(Scope.Thread)
+	public static class Cursor {
+		private int next;
+
+		int nextIndex(int length) {
+			next = (next + 1) & (length - 1);
+			return next;
+		}
+	}
+
+	@Benchmark
+	public Object intMapGet(Cursor cursor) {
+		return intMap.get(keys[cursor.nextIndex(keys.length)]);
+	}
+
+	@Benchmark
+	public Object hashMapGet(Cursor cursor) {
+		return hashMap.get(keys[cursor.nextIndex(keys.length)]);
+	}
+
+	/**
+	 * One write in sixteen operations, about the update rate of the device property cache.
+	 */
+	@Benchmark
+	public void intMapMixed(Cursor cursor, Blackhole blackhole) {
+		final int index = cursor.nextIndex(keys.length);
+		final int key = keys[index];
+		if ((index & 15) == 0) {
+			blackhole.consume(intMap.put(key, cursor));
+		} else {
+			blackhole.consume(intMap.get(key));
+		}
+	}
+
+	@Benchmark
+	public void hashMapMixed(Cursor cursor, Blackhole blackhole) {
+		final int index = cursor.nextIndex(keys.length);
+		final int key = keys[index];
+		if ((index & 15) == 0) {
+			blackhole.consume(hashMap.put(key, cursor));
+		} else {
+			blackhole.consume(hashMap.get(key));
+		}
+	}
+}
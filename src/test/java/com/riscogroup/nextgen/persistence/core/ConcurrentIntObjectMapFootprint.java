@@ -0,0 +1,41 @@
+package com.riscogroup.nextgen.persistence.core;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.openjdk.jol.info.GraphLayout;
+import org.openjdk.jol.vm.VM;
+
+/**
+ * Retained heap of ConcurrentIntObjectMap against the ConcurrentHashMap the IdentityMap used before, at 10k
+ * entries (Device.MAX_NUMBER devices) and 50k entries (their functions and properties). Both maps are filled
+ * one put at a time from their default capacity, as a cache is, and share a single value, so the sizes are
+ * those of the maps alone: table, nodes and boxed keys.
+ *
+ * Run with: java -cp target/test-classes:target/classes:&lt;jol-core jar&gt; com.riscogroup.nextgen.persistence.core.ConcurrentIntObjectMapFootprint
+ */
+public final class ConcurrentIntObjectMapFootprint {
+	private static final int[] SIZES = { 10000, 50000 };
+
+	private ConcurrentIntObjectMapFootprint() {
+	}
+
+	public static void main(String[] args) {
+		System.out.println(VM.current().details());
+		System.out.printf("%8s %24s %24s%n", "entries", "ConcurrentIntObjectMap", "ConcurrentHashMap");
+		final Object value = new Object();
+		final long valueSize = GraphLayout.parseInstance(value).totalSize();
+		for (int size : SIZES) {
+			final ConcurrentIntObjectMap<Object> intMap = new ConcurrentIntObjectMap<>();
+			final Map<Integer, Object> hashMap = new ConcurrentHashMap<>();
+			for (int i = 1; i <= size; i++) {
+				intMap.put(i, value);
+				hashMap.put(i, value);
+			}
+			final long intMapSize = GraphLayout.parseInstance(intMap).totalSize() - valueSize;
+			final long hashMapSize = GraphLayout.parseInstance(hashMap).totalSize() - valueSize;
+			System.out.printf("%8d %15d (%4.1f B/e) %15d (%4.1f B/e)%n", size,
+					intMapSize, (double) intMapSize / size, hashMapSize, (double) hashMapSize / size);
+		}
+	}
+}
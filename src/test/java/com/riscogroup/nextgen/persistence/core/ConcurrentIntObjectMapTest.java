@@ -0,0 +1,217 @@
+package com.riscogroup.nextgen.persistence.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Single Thread behaviour against HashMap, and stress tests of the guarantees readers rely on while
+ * writers resize and remove concurrently.
+ */
+public class ConcurrentIntObjectMapTest {
+	private static final int THREADS = Math.max(4, Runtime.getRuntime().availableProcessors());
+	private static final long STRESS_MILLIS = 2000;
+
+	private final ExecutorService executor = Executors.newFixedThreadPool(THREADS + 1);
+
+	/**
+	 * Value knowing the key it was stored with, so a reader can tell it got the value of another key.
+	 */
+	private static final class Value {
+		private final int key;
+
+		private Value(int key) {
+			this.key = key;
+		}
+	}
+
+	@After
+	public void stopThreads() throws InterruptedException {
+		executor.shutdownNow();
+		executor.awaitTermination(10, TimeUnit.SECONDS);
+	}
+
+	@Test
+	public void behavesLikeHashMap() {
+		final ConcurrentIntObjectMap<String> map = new ConcurrentIntObjectMap<>();
+		final Map<Integer, String> expected = new HashMap<>();
+		final Random random = new Random(42);
+		for (int i = 0; i < 200000; i++) {
+			final int key = random.nextInt(5000) - 2500;
+			final String value = String.valueOf(i);
+			switch (random.nextInt(4)) {
+			case 0:
+				assertEquals(expected.put(key, value), map.put(key, value));
+				break;
+			case 1:
+				assertEquals(expected.putIfAbsent(key, value), map.putIfAbsent(key, value));
+				break;
+			case 2:
+				assertEquals(expected.remove(key), map.remove(key));
+				break;
+			default:
+				assertEquals(expected.get(key), map.get(key));
+			}
+		}
+		assertEquals(expected.size(), map.size());
+		assertEquals(expected, new HashMap<>(map));
+
+		final Set<Integer> keys = new HashSet<>();
+		map.forEachKey(keys::add);
+		assertEquals(expected.keySet(), keys);
+
+		map.clear();
+		assertTrue(map.isEmpty());
+		assertNull(map.get(expected.keySet().iterator().next()));
+	}
+
+	@Test
+	public void keyReusesItsTombstone() {
+		final ConcurrentIntObjectMap<String> map = new ConcurrentIntObjectMap<>(16);
+		for (int round = 0; round < 1000; round++) {
+			final String value = String.valueOf(round);
+			for (int key = 0; key < 64; key++) {
+				map.put(key, value);
+			}
+			for (int key = 0; key < 64; key++) {
+				assertEquals(value, map.remove(key));
+			}
+		}
+		assertTrue(map.isEmpty());
+	}
+
+	/**
+	 * Writers keep inserting and removing keys of their own range, which resizes the segments and fills
+	 * them with tombstones, while readers check that a value is never returned for another key and that
+	 * keys never removed are never missed.
+	 */
+	@Test
+	public void readersNeverSeeForeignOrMissingValues() throws Exception {
+		final ConcurrentIntObjectMap<Value> map = new ConcurrentIntObjectMap<>();
+		final int stableKeys = 10000;
+		for (int key = 0; key < stableKeys; key++) {
+			map.put(key, new Value(key));
+		}
+		final AtomicBoolean stop = new AtomicBoolean();
+		final ConcurrentLinkedQueue<String> errors = new ConcurrentLinkedQueue<>();
+		final List<Future<?>> workers = new ArrayList<>();
+		final int writers = THREADS / 2;
+		for (int w = 0; w < writers; w++) {
+			final int first = stableKeys + w * 100000;
+			workers.add(executor.submit(() -> {
+				final Random random = new Random(first);
+				while (!stop.get()) {
+					final int key = first + random.nextInt(100000);
+					if (random.nextBoolean()) {
+						map.put(key, new Value(key));
+					} else {
+						map.remove(key);
+					}
+				}
+			}));
+		}
+		for (int r = writers; r < THREADS; r++) {
+			final int seed = r;
+			workers.add(executor.submit(() -> {
+				final Random random = new Random(seed);
+				while (!stop.get()) {
+					final int key = random.nextInt(stableKeys + writers * 100000);
+					final Value value = map.get(key);
+					if (value != null && value.key != key) {
+						errors.add("key " + key + " returned the value of key " + value.key);
+					} else if (value == null && key < stableKeys) {
+						errors.add("key " + key + " missed");
+					}
+				}
+			}));
+		}
+		Thread.sleep(STRESS_MILLIS);
+		stop.set(true);
+		for (Future<?> worker : workers) {
+			worker.get(10, TimeUnit.SECONDS);
+		}
+		assertTrue(errors.isEmpty() ? "" : errors.peek(), errors.isEmpty());
+		for (int key = 0; key < stableKeys; key++) {
+			assertEquals(key, map.get(key).key);
+		}
+	}
+
+	/**
+	 * Exactly one of the Threads racing on putIfAbsent for the same key wins, and all of them see its value.
+	 */
+	@Test
+	public void putIfAbsentHasSingleWinner() throws Exception {
+		final ConcurrentIntObjectMap<Value> map = new ConcurrentIntObjectMap<>();
+		final int keys = 20000;
+		final CyclicBarrier start = new CyclicBarrier(THREADS);
+		final List<Future<Value[]>> racers = new ArrayList<>();
+		for (int t = 0; t < THREADS; t++) {
+			racers.add(executor.submit(() -> {
+				final Value[] seen = new Value[keys];
+				start.await();
+				for (int key = 0; key < keys; key++) {
+					final Value mine = new Value(key);
+					final Value previous = map.putIfAbsent(key, mine);
+					seen[key] = previous != null ? previous : mine;
+				}
+				return seen;
+			}));
+		}
+		final List<Value[]> results = new ArrayList<>();
+		for (Future<Value[]> racer : racers) {
+			results.add(racer.get(30, TimeUnit.SECONDS));
+		}
+		assertEquals(keys, map.size());
+		for (int key = 0; key < keys; key++) {
+			final Value winner = map.get(key);
+			for (Value[] seen : results) {
+				assertSame("key " + key, winner, seen[key]);
+			}
+		}
+	}
+
+	/**
+	 * Iterating while the map resizes must neither fail nor return an entry with a value of another key.
+	 */
+	@Test
+	public void iterationDuringResize() throws Exception {
+		final ConcurrentIntObjectMap<Value> map = new ConcurrentIntObjectMap<>(16);
+		final CountDownLatch filled = new CountDownLatch(1);
+		final Future<?> writer = executor.submit(() -> {
+			for (int key = 0; key < 500000; key++) {
+				map.put(key, new Value(key));
+			}
+			filled.countDown();
+		});
+		int iterations = 0;
+		do {
+			for (Map.Entry<Integer, Value> entry : map.entrySet()) {
+				assertEquals(entry.getKey().intValue(), entry.getValue().key);
+			}
+			iterations++;
+		} while (filled.getCount() > 0);
+		writer.get(30, TimeUnit.SECONDS);
+		assertTrue(iterations > 0);
+		assertEquals(500000, map.size());
+	}
+}
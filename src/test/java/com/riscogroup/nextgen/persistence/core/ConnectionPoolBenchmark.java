@@ -0,0 +1,80 @@
+package com.riscogroup.nextgen.persistence.core;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Borrowing and returning a Connection from 64 Threads, with the ConcurrentBagConnectionPool, with the dbcp
+ * ConnectionPoolImpl and with the dbcp pool behind the synchronized getConnection() it had before. Both pools
+ * hold 8 connections, the default maximum of dbcp, so most Threads wait for a returning one. The connections
+ * come from the FakeDriver and do nothing, work is the CPU time a Thread spends holding one.
+ *
+ * Run with: java -cp target/test-classes:target/classes:&lt;jmh jars&gt; org.openjdk.jmh.Main ConnectionPoolBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@Threads(64)
+public class ConnectionPoolBenchmark {
+	private static final String POOL_SIZE = "8";
+
+	@Param({ "bag", "dbcp", "dbcp-synchronized" })
+	private String pool;
+
+	@Param({ "0", "200" })
+	private long work;
+
+	private ConnectionPool connectionPool;
+
+	@Setup
+	public void createPool() throws Exception {
+		final Properties props = FakeDriver.configuration();
+		props.setProperty("DB_MAX_POOL_SIZE", POOL_SIZE);
+		props.setProperty("DB_MIN_IDLE_CONNECTIONS", POOL_SIZE);
+		props.setProperty("DB_MAX_IDLE_CONNECTIONS", POOL_SIZE);
+		switch (pool) {
+		case "bag":
+			connectionPool = new ConcurrentBagConnectionPool(props);
+			break;
+		case "dbcp":
+			connectionPool = new ConnectionPoolImpl(props);
+			break;
+		default:
+			final ConnectionPool dbcp = new ConnectionPoolImpl(props);
+			connectionPool = new ConnectionPool() {
+				@Override
+				public synchronized Connection getConnection() throws SQLException {
+					return dbcp.getConnection();
+				}
+			};
+			break;
+		}
+	}
+
+	@Benchmark
+	public void borrowAndReturn(Blackhole blackhole) throws SQLException {
+		try (Connection connection = connectionPool.getConnection()) {
+			blackhole.consume(connection);
+			Blackhole.consumeCPU(work);
+		}
+	}
+}
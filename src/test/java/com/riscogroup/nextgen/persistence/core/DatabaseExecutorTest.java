@@ -0,0 +1,108 @@
+package com.riscogroup.nextgen.persistence.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Calls on a DatabaseExecutor of one Thread, kept busy by a blocking call where the test needs the queue.
+ */
+public class DatabaseExecutorTest {
+	private static final long WAIT_SECONDS = 5;
+
+	private final DatabaseExecutor executor = new DatabaseExecutor(1, 1, 30000);
+	private final CountDownLatch blocked = new CountDownLatch(1);
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	@After
+	public void stopExecutor() {
+		release.countDown();
+		executor.stop();
+	}
+
+	private CompletableFuture<Void> blockThePoolThread() throws InterruptedException {
+		final CompletableFuture<Void> blocking = executor.submit(() -> {
+			blocked.countDown();
+			release.await();
+			return null;
+		});
+		assertTrue(blocked.await(WAIT_SECONDS, TimeUnit.SECONDS));
+		return blocking;
+	}
+
+	@Test(timeout = 10000)
+	public void rejectsCallsWhileTheQueueIsFull() throws Exception {
+		blockThePoolThread();
+		final CompletableFuture<String> queued = executor.submit(() -> "queued");
+		final CompletableFuture<String> rejected = executor.submit(() -> "rejected");
+
+		assertCause(RejectedExecutionException.class, rejected);
+		release.countDown();
+		assertEquals("queued", queued.get(WAIT_SECONDS, TimeUnit.SECONDS));
+	}
+
+	@Test(timeout = 10000)
+	public void doesNotStartAWriteTimedOutInTheQueue() throws Exception {
+		final CompletableFuture<Void> blocking = blockThePoolThread();
+		final AtomicBoolean written = new AtomicBoolean();
+		final CompletableFuture<Boolean> write = executor.submitWrite(() -> written.getAndSet(true), 50,
+				TimeUnit.MILLISECONDS);
+
+		assertCause(TimeoutException.class, write);
+		release.countDown();
+		blocking.get(WAIT_SECONDS, TimeUnit.SECONDS);
+		executor.stop();
+		assertFalse("the write was started after its timeout", written.get());
+	}
+
+	@Test(timeout = 10000)
+	public void completesAWriteStillRunningAtItsTimeout() throws Exception {
+		final CompletableFuture<String> write = executor.submitWrite(() -> {
+			Thread.sleep(300);
+			return "written";
+		}, 50, TimeUnit.MILLISECONDS);
+
+		assertEquals("written", write.get(WAIT_SECONDS, TimeUnit.SECONDS));
+	}
+
+	@Test(timeout = 10000)
+	public void timesOutAReadStillRunning() throws Exception {
+		final CompletableFuture<String> read = executor.submit(() -> {
+			Thread.sleep(300);
+			return "read";
+		}, 50, TimeUnit.MILLISECONDS);
+
+		assertCause(TimeoutException.class, read);
+	}
+
+	@Test(timeout = 10000)
+	public void completesACallThrowingAnError() throws Exception {
+		final CompletableFuture<Object> write = executor.submitWrite(() -> {
+			throw new AssertionError("failed write");
+		});
+
+		assertCause(AssertionError.class, write);
+	}
+
+	private static void assertCause(Class<? extends Throwable> expected, CompletableFuture<?> future)
+			throws InterruptedException, TimeoutException {
+		try {
+			future.get(WAIT_SECONDS, TimeUnit.SECONDS);
+			fail("expected " + expected.getSimpleName());
+		} catch (ExecutionException e) {
+			assertEquals(expected, e.getCause().getClass());
+		}
+	}
+}
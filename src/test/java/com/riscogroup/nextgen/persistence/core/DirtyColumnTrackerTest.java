@@ -0,0 +1,91 @@
+package com.riscogroup.nextgen.persistence.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.junit.Test;
+
+/**
+ * Row images read back through getCommittedRow(), the way a DAO restores a rolled back object.
+ */
+public class DirtyColumnTrackerTest {
+	private static final ColumnList COLUMNS = new ColumnList("id", "name", "level", "enabled", "created");
+
+	static final class Row {
+		String name;
+		Integer level;
+		boolean enabled;
+	}
+
+	private final DirtyColumnTracker<Row> tracker = new DirtyColumnTracker<>("test.row",
+			new String[] { "name", "enabled", "level" }, row -> new Object[] { row.name, row.enabled, row.level });
+
+	private static Row row(String name, Integer level, boolean enabled) {
+		final Row row = new Row();
+		row.name = name;
+		row.level = level;
+		row.enabled = enabled;
+		return row;
+	}
+
+	@Test
+	public void readsTheImageByTheOrdinalsOfTheSelect() throws SQLException {
+		tracker.remember(7, row("hall", 3, true));
+
+		final ResultSet image = tracker.getCommittedRow(7, COLUMNS);
+		assertEquals(7, image.getInt(COLUMNS.index("id")));
+		assertEquals("hall", image.getString(COLUMNS.index("name")));
+		assertEquals(3, image.getInt(COLUMNS.index("level")));
+		assertEquals(3L, image.getLong(COLUMNS.index("level")));
+		assertTrue(image.getBoolean(COLUMNS.index("enabled")));
+		assertFalse(image.wasNull());
+	}
+
+	@Test
+	public void keepsTheCommittedValuesWhileTheObjectChanges() throws SQLException {
+		final Row row = row("hall", 3, true);
+		tracker.remember(7, row);
+		row.name = "kitchen";
+		row.level = 4;
+
+		final ResultSet image = tracker.getCommittedRow(7, COLUMNS);
+		assertEquals("hall", image.getString(COLUMNS.index("name")));
+		assertEquals(3, image.getInt(COLUMNS.index("level")));
+	}
+
+	@Test
+	public void reportsNullValues() throws SQLException {
+		tracker.remember(7, row(null, null, false));
+
+		final ResultSet image = tracker.getCommittedRow(7, COLUMNS);
+		assertNull(image.getString(COLUMNS.index("name")));
+		assertTrue(image.wasNull());
+		assertEquals(0, image.getInt(COLUMNS.index("level")));
+		assertTrue(image.wasNull());
+	}
+
+	@Test
+	public void hasNoImageOfRowsNotRememberedOrForgotten() {
+		assertNull(tracker.getCommittedRow(7, COLUMNS));
+		tracker.remember(7, row("hall", 3, true));
+		tracker.forget(7);
+		assertNull(tracker.getCommittedRow(7, COLUMNS));
+	}
+
+	@Test
+	public void failsOnColumnsNotTracked() {
+		tracker.remember(7, row("hall", 3, true));
+		try {
+			tracker.getCommittedRow(7, COLUMNS).getString(COLUMNS.index("created"));
+			fail("created is not in the row image");
+		} catch (SQLException e) {
+			/* the DAO reads the row back instead */
+		}
+	}
+}
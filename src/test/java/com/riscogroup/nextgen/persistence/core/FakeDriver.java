@@ -0,0 +1,213 @@
+package com.riscogroup.nextgen.persistence.core;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+/**
+ * JDBC driver of the tests and benchmarks, no Database is needed. Its connections do nothing and answer
+ * every query with the ResultSet of the installed query handler, no rows by default. Every query is recorded,
+ * and so is every update with the parameters bound to it.
+ *
+ * The tests select it in src/test/resources/etc/db.conf, benchmarks creating their own pool use configuration().
+ */
+public final class FakeDriver implements Driver {
+	public static final String URL = "jdbc:fake:test";
+
+	private static final List<String> queries = Collections.synchronizedList(new ArrayList<>());
+	private static final List<Update> updates = Collections.synchronizedList(new ArrayList<>());
+	private static volatile Function<String, ResultSet> queryHandler = sql -> rows(0, (row, method, args) -> null);
+
+	static {
+		try {
+			DriverManager.registerDriver(new FakeDriver());
+		} catch (SQLException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	/**
+	 * Reads a column of the current row, row numbers start at 1.
+	 */
+	public interface ColumnReader {
+		Object read(int row, String method, Object[] args);
+	}
+
+	/**
+	 * Update executed or added to a batch, with its parameters in the order of their index.
+	 */
+	public static final class Update {
+		public final String sql;
+		public final List<Object> parameters;
+
+		private Update(String sql, List<Object> parameters) {
+			this.sql = sql;
+			this.parameters = parameters;
+		}
+
+		@Override
+		public String toString() {
+			return sql + " " + parameters;
+		}
+	}
+
+	/**
+	 * @return pool configuration connecting to this driver
+	 */
+	public static Properties configuration() {
+		final Properties props = new Properties();
+		props.setProperty("DB_DRIVER_CLASS", FakeDriver.class.getName());
+		props.setProperty("DB_URL", URL);
+		props.setProperty("DB_USER", "test");
+		props.setProperty("DB_PASS", "");
+		return props;
+	}
+
+	/**
+	 * Answers the queries executed from now on with the ResultSet the handler returns for their SQL.
+	 */
+	public static void serve(Function<String, ResultSet> handler) {
+		queryHandler = handler;
+		queries.clear();
+		updates.clear();
+	}
+
+	/**
+	 * @return SQL of the queries executed since the last call to serve()
+	 */
+	public static List<String> queries() {
+		synchronized (queries) {
+			return new ArrayList<>(queries);
+		}
+	}
+
+	/**
+	 * @return updates executed since the last call to serve()
+	 */
+	public static List<Update> updates() {
+		synchronized (updates) {
+			return new ArrayList<>(updates);
+		}
+	}
+
+	/**
+	 * @return ResultSet of count rows, the getters of which are answered by the reader
+	 */
+	public static ResultSet rows(int count, ColumnReader reader) {
+		final int[] row = new int[1];
+		return proxy(ResultSet.class, (proxy, method, args) -> {
+			if ("next".equals(method.getName())) {
+				return ++row[0] <= count;
+			}
+			if (method.getName().startsWith("get") && args != null && args.length == 1) {
+				final Object value = reader.read(row[0], method.getName(), args);
+				if (value != null) {
+					return value;
+				}
+			}
+			return defaultValue(proxy, method.getName(), method.getReturnType(), args);
+		});
+	}
+
+	@Override
+	public Connection connect(String url, Properties info) {
+		return acceptsURL(url) ? proxy(Connection.class, (proxy, method, args) -> {
+			switch (method.getName()) {
+			case "prepareStatement":
+				return statement((String) args[0]);
+			case "isValid":
+				return true;
+			case "getTransactionIsolation":
+				return Connection.TRANSACTION_READ_COMMITTED;
+			default:
+				return defaultValue(proxy, method.getName(), method.getReturnType(), args);
+			}
+		}) : null;
+	}
+
+	private static PreparedStatement statement(String sql) {
+		final Map<Integer, Object> parameters = new TreeMap<>();
+		return proxy(PreparedStatement.class, (proxy, method, args) -> {
+			final String name = method.getName();
+			if ("executeQuery".equals(name)) {
+				queries.add(sql);
+				return queryHandler.apply(sql);
+			}
+			if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+				parameters.put((Integer) args[0], args[1]);
+			} else if ("clearParameters".equals(name)) {
+				parameters.clear();
+			} else if (("executeUpdate".equals(name) || "addBatch".equals(name)) && args == null) {
+				updates.add(new Update(sql, new ArrayList<>(parameters.values())));
+			}
+			return defaultValue(proxy, name, method.getReturnType(), args);
+		});
+	}
+
+	@Override
+	public boolean acceptsURL(String url) {
+		return url != null && url.startsWith("jdbc:fake:");
+	}
+
+	@Override
+	public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+		return new DriverPropertyInfo[0];
+	}
+
+	@Override
+	public int getMajorVersion() {
+		return 1;
+	}
+
+	@Override
+	public int getMinorVersion() {
+		return 0;
+	}
+
+	@Override
+	public boolean jdbcCompliant() {
+		return false;
+	}
+
+	@Override
+	public Logger getParentLogger() {
+		return Logger.getGlobal();
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+		return (T) Proxy.newProxyInstance(FakeDriver.class.getClassLoader(), new Class<?>[] { type }, handler);
+	}
+
+	private static Object defaultValue(Object proxy, String name, Class<?> type, Object[] args) {
+		switch (name) {
+		case "equals":
+			return proxy == args[0];
+		case "hashCode":
+			return System.identityHashCode(proxy);
+		case "toString":
+			return "FakeDriver proxy";
+		default:
+			break;
+		}
+		if (type.isPrimitive() && type != void.class) {
+			return Array.get(Array.newInstance(type, 1), 0);
+		}
+		return null;
+	}
+}
@@ -0,0 +1,119 @@
+package com.riscogroup.nextgen.persistence.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.sql.SQLException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Loads through IdentityMap.load() whose Threads wait for each other.
+ */
+public class IdentityMapTest {
+	private final IdentityMap<Node> map = new IdentityMap<>();
+	private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+	static final class Node {
+		final int id;
+		Node reference;
+
+		Node(int id) {
+			this.id = id;
+		}
+	}
+
+	@After
+	public void stopThreads() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Thread A loads node 1, which refers to node 2, before creating node 1. Thread B loads node 2, which
+	 * refers back to node 1. B can not wait for A, which waits for B, so B loads node 1 itself.
+	 */
+	@Test(timeout = 10000)
+	public void keepsAnObjectLoadedInlineAsideUntilItIsFilled() throws Exception {
+		final CountDownLatch aLoading = new CountDownLatch(1);
+		final CountDownLatch bLoading = new CountDownLatch(1);
+		final Thread[] a = new Thread[1];
+		final boolean[] publishedWhileFilled = new boolean[1];
+		final Node[] seenByB = new Node[1];
+
+		final Future<Node> loadedByA = executor.submit(() -> {
+			a[0] = Thread.currentThread();
+			return map.load(1, () -> {
+				aLoading.countDown();
+				await(bLoading);
+				final Node two = map.load(2, () -> new Node(2));
+				final Node one = new Node(1);
+				map.addIfAbsent(1, one);
+				one.reference = two;
+				return one;
+			});
+		});
+		final Future<Node> loadedByB = executor.submit(() -> map.load(2, () -> {
+			final Node two = new Node(2);
+			map.addIfAbsent(2, two);
+			bLoading.countDown();
+			await(aLoading);
+			awaitWaitingForLoad(a[0]);
+			two.reference = map.load(1, () -> {
+				final Node one = new Node(1);
+				map.addIfAbsent(1, one);
+				publishedWhileFilled[0] = map.getAll().containsKey(1);
+				seenByB[0] = map.get(1);
+				one.reference = map.get(2);
+				return one;
+			});
+			return two;
+		}));
+
+		final Node two = loadedByB.get();
+		final Node one = loadedByA.get();
+		assertFalse("node 1 was put into the map before it was filled", publishedWhileFilled[0]);
+		assertSame(one, seenByB[0]);
+		assertSame(one, two.reference);
+		assertSame(two, one.reference);
+		assertSame(one, map.get(1));
+		assertSame(two, map.get(2));
+	}
+
+	@Test
+	public void objectsAddedOutsideOfLoadsArePutIntoTheMap() {
+		final Node one = new Node(1);
+		assertNull(map.addIfAbsent(1, one));
+		assertSame(one, map.addIfAbsent(1, new Node(1)));
+		assertEquals(1, map.getAll().size());
+	}
+
+	private static void await(CountDownLatch latch) throws SQLException {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			throw new SQLException(e);
+		}
+	}
+
+	private static void awaitWaitingForLoad(Thread thread) throws SQLException {
+		for (;;) {
+			for (StackTraceElement frame : thread.getStackTrace()) {
+				if (frame.getClassName().equals(InFlightLoad.class.getName()) && frame.getMethodName().equals("await")) {
+					return;
+				}
+			}
+			try {
+				Thread.sleep(1);
+			} catch (InterruptedException e) {
+				throw new SQLException(e);
+			}
+		}
+	}
+}
@@ -0,0 +1,87 @@
+package com.riscogroup.nextgen.persistence.core;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Latency of a read served from the IdentityMap, the way PersistenceServiceImpl.getObjectById() runs it,
+ * with the eager session it used before and with the lazy session. The eager session borrows a Connection,
+ * turns autocommit off and commits, the lazy one never touches the pool.
+ *
+ * The pool connects to the FakeDriver configured in etc/db.conf, whose connections do nothing, so the eager
+ * numbers are a lower bound: against PostgreSQL the commit and the validation on borrow add their round trips.
+ *
+ * Run from target/test-classes, where etc/db.conf is:
+ * java -cp .:../classes:&lt;jmh jars&gt; org.openjdk.jmh.Main LazySessionBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@Threads(4)
+public class LazySessionBenchmark {
+	private static final int OBJECTS = 1024;
+
+	private TransactionManager transactionManager;
+	private IdentityMap<Object> cache;
+
+	@Setup
+	public void fill() {
+		transactionManager = TransactionManager.getInstance();
+		cache = new IdentityMap<>();
+		for (int i = 0; i < OBJECTS; i++) {
+			cache.addIfAbsent(i, new Object());
+		}
+	}
+
+	/**
+	 * Object to read per benchmark Thread.
+	 */
+	@State(Scope.Thread)
+	public static class Cursor {
+		private int next;
+
+		int nextId() {
+			next = (next + 1) & (OBJECTS - 1);
+			return next;
+		}
+	}
+
+	@Benchmark
+	public Object eagerSession(Cursor cursor) throws SQLException {
+		transactionManager.openSessionAndStartTransaction();
+		return readAndCommit(cursor.nextId());
+	}
+
+	@Benchmark
+	public Object lazySession(Cursor cursor) throws SQLException {
+		transactionManager.openLazySession();
+		return readAndCommit(cursor.nextId());
+	}
+
+	private Object readAndCommit(int objectId) throws SQLException {
+		final Object object;
+		HydrationScope.enter();
+		try {
+			object = cache.get(objectId);
+		} finally {
+			HydrationScope.exit();
+		}
+		transactionManager.commitTransactionAndCloseSession();
+		return object;
+	}
+}
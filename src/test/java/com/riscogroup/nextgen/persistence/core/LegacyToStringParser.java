@@ -0,0 +1,89 @@
+package com.riscogroup.nextgen.persistence.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * The regular expression based deserializers ToStringParser replaced, kept as reference for the
+ * parity test and the benchmark.
+ */
+final class LegacyToStringParser {
+
+	private LegacyToStringParser() {
+	}
+
+	static Map<String, String> parseMap(final String mapString) {
+		final Map<String, String> newMap = new HashMap<>();
+		if(mapString != null && mapString.length() > 2) {
+			final String[] mapArr = mapString.replaceAll("[\\{\\}]", "").split(",");
+			for(String line : mapArr) {
+				final String[] lineArr = line.split("=");
+				final String value = lineArr.length > 1 ? lineArr[1].trim() : "";
+				newMap.put(lineArr[0].trim(), value);
+			}
+		}
+		return newMap;
+	}
+
+	static Map<String, Integer> parseIntValueMap(final String mapString) {
+		final Map<String, Integer> newMap = new HashMap<>();
+		if (mapString != null && mapString.length() > 2) {
+			final String[] mapArr = mapString.replaceAll("[\\{\\}]", "").split(",");
+			for (String line : mapArr) {
+				final String[] lineArr = line.split("=");
+				final String value = lineArr.length > 1 ? lineArr[1].trim() : "";
+				newMap.put(lineArr[0].trim(), Integer.valueOf(value));
+			}
+		}
+		return newMap;
+	}
+
+	static List<String> parseList(final String listString) {
+		final List<String> newList = new ArrayList<>();
+		if(listString != null && listString.length() > 2) {
+			final String[] listArr = listString.replaceAll("[\\[\\]]", "").split(",");
+			for(String line : listArr) {
+				String tmp = line.trim(); 
+				if(tmp.length() > 0) {
+					newList.add(tmp);
+				}
+			}
+		}
+		return newList;
+	}
+
+	static String[] parseArray(final String listString) {
+		String[] listArr = null;
+		if(listString != null && listString.length() > 2) {
+			listArr = listString.replaceAll("[\\[\\]]", "").split(",");
+			for(int i = 0; i < listArr.length; i++) {
+				listArr[i] = listArr[i].trim();
+			}
+		}
+		return listArr;
+	}
+
+	static List<Integer> parseIntList(final String listString) {
+		return parseList(listString).stream().map(v -> Integer.parseInt(v)).collect(Collectors.toList());
+	}
+
+	static Byte[] parseByteArray(final String listString) {
+		final List<Byte> newList = new ArrayList<>();
+		if (listString != null && listString.length() > 2) {
+			final String[] listArr = listString.replaceAll("[\\[\\]]", "").split(",");
+			for (String line : listArr) {
+				if (line.length() > 1 && !line.contains("null")) {
+					newList.add(Byte.valueOf(line.trim()));
+				}
+			}
+		}
+		final Byte[] res = new Byte[newList.size()];
+		for (int i = 0; i < newList.size(); i++) {
+			res[i] = newList.get(i);
+		}
+		return res;
+	}
+}
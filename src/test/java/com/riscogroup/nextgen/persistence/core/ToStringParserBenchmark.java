@@ -0,0 +1,100 @@
+package com.riscogroup.nextgen.persistence.core;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ToStringParser against the regular expression based deserializers it replaced, on column values
+ * of the size the DAOs read: properties_map, value_array, command_classes and lifeline_groups.
+ *
+ * Run with: java -cp target/test-classes:target/classes:&lt;jmh jars&gt; org.openjdk.jmh.Main ToStringParserBenchmark -prof gc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ToStringParserBenchmark {
+
+	private String propertiesMap;
+	private String valueArray;
+	private String commandClasses;
+	private String lifelineGroups;
+
+	@Setup
+	public void createColumns() {
+		final Map<String, String> properties = new LinkedHashMap<>();
+		for (int i = 0; i < 8; i++) {
+			properties.put("property" + i, "value " + i);
+		}
+		propertiesMap = properties.toString();
+		valueArray = Arrays.asList("12", "", "off", "3.5", "on", "255").toString();
+		commandClasses = Arrays.asList((byte) 32, (byte) 37, (byte) 38, (byte) 39, (byte) 48, (byte) 49, (byte) 96,
+				(byte) 112, (byte) 114, (byte) -122, null, (byte) -113).toString();
+		lifelineGroups = Arrays.asList(1, 2, 3, 4, 5, 255).toString();
+	}
+
+	@Benchmark
+	public Object mapRegex() {
+		return LegacyToStringParser.parseMap(propertiesMap);
+	}
+
+	@Benchmark
+	public Object mapParser() {
+		return ToStringParser.parseMap(propertiesMap);
+	}
+
+	@Benchmark
+	public Object arrayRegex() {
+		return LegacyToStringParser.parseArray(valueArray);
+	}
+
+	@Benchmark
+	public Object arrayParser() {
+		return ToStringParser.parseArray(valueArray);
+	}
+
+	@Benchmark
+	public Object byteArrayRegex() {
+		return LegacyToStringParser.parseByteArray(commandClasses);
+	}
+
+	@Benchmark
+	public Object byteArrayParser() {
+		return ToStringParser.parseByteArray(commandClasses);
+	}
+
+	@Benchmark
+	public Object bytesParser() {
+		return ToStringParser.parseBytes(commandClasses);
+	}
+
+	@Benchmark
+	public Object intListRegex() {
+		return LegacyToStringParser.parseIntList(lifelineGroups);
+	}
+
+	@Benchmark
+	public Object intListParser() {
+		return ToStringParser.parseIntList(lifelineGroups);
+	}
+
+	@Benchmark
+	public Object intArrayParser() {
+		return ToStringParser.parseIntArray(lifelineGroups);
+	}
+}
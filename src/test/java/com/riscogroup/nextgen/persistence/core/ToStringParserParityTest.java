@@ -0,0 +1,177 @@
+package com.riscogroup.nextgen.persistence.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+import org.junit.Test;
+
+/**
+ * Compares ToStringParser with the regular expression based deserializers it replaced, on 340k inputs:
+ * random strings made of the characters the parsers treat specially, and toString() of the collections
+ * the DAOs write. Every input goes through every parser, results must be equal, and so must the type of
+ * the exception when the old deserializer throws one.
+ *
+ * The one intended difference: entries made of a lone '=' made the old map deserializers throw an
+ * ArrayIndexOutOfBoundsException. For those inputs ToStringParser may only throw the NumberFormatException
+ * of a missing integer value.
+ */
+public class ToStringParserParityTest {
+	private static final int RANDOM_INPUTS = 200000;
+	private static final int GENERATED_INPUTS = 140000;
+	private static final String ALPHABET = "[]{},= =,-+0123456789nulabc\t";
+
+	private final Random random = new Random(20170417L);
+	private int compared;
+
+	@Test
+	public void sameResultsAsRegularExpressions() throws Exception {
+		for (int i = 0; i < RANDOM_INPUTS; i++) {
+			compareAll(randomString());
+		}
+		for (int i = 0; i < GENERATED_INPUTS; i++) {
+			compareAll(generatedString(i));
+		}
+		compareAll(null);
+		compareAll("");
+		compareAll("[]");
+		compareAll("{}");
+		assertEquals(8L * (RANDOM_INPUTS + GENERATED_INPUTS + 4), compared);
+	}
+
+	private void compareAll(String input) throws Exception {
+		compare("parseMap", input, () -> LegacyToStringParser.parseMap(input), () -> ToStringParser.parseMap(input));
+		compare("parseIntValueMap", input, () -> LegacyToStringParser.parseIntValueMap(input),
+				() -> ToStringParser.parseIntValueMap(input));
+		compare("parseList", input, () -> LegacyToStringParser.parseList(input), () -> ToStringParser.parseList(input));
+		compare("parseArray", input, () -> LegacyToStringParser.parseArray(input),
+				() -> ToStringParser.parseArray(input));
+		compare("parseIntList", input, () -> LegacyToStringParser.parseIntList(input),
+				() -> ToStringParser.parseIntList(input));
+		compare("parseByteArray", input, () -> LegacyToStringParser.parseByteArray(input),
+				() -> ToStringParser.parseByteArray(input));
+		compare("parseIntArray", input, () -> LegacyToStringParser.parseIntList(input),
+				() -> boxed(ToStringParser.parseIntArray(input)));
+		compare("parseBytes", input, () -> LegacyToStringParser.parseByteArray(input),
+				() -> boxed(ToStringParser.parseBytes(input)));
+	}
+
+	private static List<Integer> boxed(int[] values) {
+		final List<Integer> list = new ArrayList<>(values.length);
+		for (int value : values) {
+			list.add(value);
+		}
+		return list;
+	}
+
+	private static Byte[] boxed(byte[] values) {
+		final Byte[] array = new Byte[values.length];
+		for (int i = 0; i < values.length; i++) {
+			array[i] = values[i];
+		}
+		return array;
+	}
+
+	private void compare(String method, String input, Callable<Object> legacy, Callable<Object> parser)
+			throws Exception {
+		compared++;
+		Object expected;
+		try {
+			expected = legacy.call();
+		} catch (ArrayIndexOutOfBoundsException e) {
+			try {
+				parser.call();
+			} catch (NumberFormatException expectedForIntegers) {
+				/* same outcome as any other entry without a value */
+			}
+			return;
+		} catch (RuntimeException e) {
+			expected = e.getClass();
+		}
+		Object actual;
+		try {
+			actual = parser.call();
+		} catch (RuntimeException e) {
+			actual = e.getClass();
+		}
+		final String message = method + "(\"" + input + "\")";
+		if (expected instanceof Object[]) {
+			assertTrue(message + " returned " + actual, actual instanceof Object[]);
+			assertEquals(message, Arrays.asList((Object[]) expected), Arrays.asList((Object[]) actual));
+		} else {
+			assertEquals(message, expected, actual);
+		}
+	}
+
+	private String randomString() {
+		final int length = random.nextInt(24);
+		final StringBuilder sb = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			sb.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * toString() of the column values written by the DAOs: Lists of Strings and Integers, arrays of
+	 * command classes, property Maps and Maps of Integers.
+	 */
+	private String generatedString(int i) {
+		final int size = random.nextInt(12);
+		switch (i % 5) {
+		case 0: {
+			final List<Integer> list = new ArrayList<>();
+			for (int j = 0; j < size; j++) {
+				list.add(random.nextInt() >> random.nextInt(32));
+			}
+			return list.toString();
+		}
+		case 1: {
+			final List<String> list = new ArrayList<>();
+			for (int j = 0; j < size; j++) {
+				list.add(word());
+			}
+			return list.toString();
+		}
+		case 2: {
+			final Byte[] array = new Byte[size];
+			for (int j = 0; j < size; j++) {
+				array[j] = random.nextInt(10) == 0 ? null : Byte.valueOf((byte) random.nextInt(256));
+			}
+			return Arrays.asList(array).toString();
+		}
+		case 3: {
+			final Map<String, String> map = new LinkedHashMap<>();
+			for (int j = 0; j < size; j++) {
+				map.put(word(), word());
+			}
+			return map.toString();
+		}
+		default: {
+			final Map<String, Integer> map = new HashMap<>();
+			for (int j = 0; j < size; j++) {
+				map.put(word(), random.nextInt(2000) - 1000);
+			}
+			return map.toString();
+		}
+		}
+	}
+
+	private String word() {
+		final int length = random.nextInt(8);
+		final StringBuilder sb = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			final int c = random.nextInt(40);
+			sb.append(c < 26 ? (char) ('a' + c) : c < 36 ? (char) ('0' + c - 26) : ' ');
+		}
+		return sb.toString();
+	}
+}
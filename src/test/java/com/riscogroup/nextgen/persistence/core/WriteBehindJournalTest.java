@@ -0,0 +1,166 @@
+package com.riscogroup.nextgen.persistence.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Row images journaled, closed as if the power was lost, and read back by a journal opened on the same directory.
+ */
+public class WriteBehindJournalTest {
+	private static final String NAME = "TestDAO";
+	private static final String TABLE = "test.row";
+	private static final String[] COLUMNS = { "name", "level" };
+	/* frame header: length and CRC32 */
+	private static final int FRAME_HEADER_SIZE = 8;
+
+	private File directory;
+	private final List<WriteBehindJournal> journals = new ArrayList<>();
+
+	@Before
+	public void createDirectory() throws IOException {
+		directory = Files.createTempDirectory("journal").toFile();
+	}
+
+	@After
+	public void deleteDirectory() {
+		for (WriteBehindJournal journal : journals) {
+			journal.close();
+		}
+		final File[] files = new File(directory, NAME).listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		new File(directory, NAME).delete();
+		directory.delete();
+	}
+
+	private WriteBehindJournal open() throws IOException {
+		final Properties props = new Properties();
+		props.setProperty(WriteBehindJournal.DIRECTORY_KEY, directory.getPath());
+		props.setProperty(WriteBehindJournal.FSYNC_KEY, "none");
+		props.setProperty(WriteBehindJournal.SEGMENT_SIZE_KEY, "4096");
+		final WriteBehindJournal journal = WriteBehindJournal.open(props, NAME, TABLE, COLUMNS);
+		journals.add(journal);
+		return journal;
+	}
+
+	private static Object[] row(String name, int level) {
+		return new Object[] { name, level };
+	}
+
+	@Test
+	public void replaysTheLatestImageOfEveryUid() throws IOException {
+		final WriteBehindJournal journal = open();
+		journal.appendRow(1, row("hall", 1));
+		journal.appendRow(2, row("kitchen", 2));
+		journal.appendRow(1, row("hall", 3));
+		journal.close();
+
+		final Map<Integer, WriteBehindJournal.Row> rows = open().readNotAcknowledged();
+		assertEquals(Arrays.asList(2, 1), new ArrayList<>(rows.keySet()));
+		assertEquals(TABLE, rows.get(1).table);
+		assertArrayEquals(COLUMNS, rows.get(1).columns);
+		assertArrayEquals(row("hall", 3), rows.get(1).values);
+		assertArrayEquals(row("kitchen", 2), rows.get(2).values);
+	}
+
+	@Test
+	public void doesNotReplayImagesAcknowledgedAfterThem() throws IOException {
+		final WriteBehindJournal journal = open();
+		journal.appendRow(1, row("hall", 1));
+		journal.appendRow(2, row("kitchen", 2));
+		final long written = journal.position();
+		journal.appendRow(3, row("garage", 3));
+		journal.acknowledge(Arrays.asList(1, 2, 3), written);
+		journal.appendRow(2, row("kitchen", 4));
+		journal.close();
+
+		final Map<Integer, WriteBehindJournal.Row> rows = open().readNotAcknowledged();
+		/* 3 was appended after the acknowledged position, its image is not known to be written */
+		assertEquals(Arrays.asList(3, 2), new ArrayList<>(rows.keySet()));
+		assertArrayEquals(row("kitchen", 4), rows.get(2).values);
+	}
+
+	@Test
+	public void damagedRecordEndsTheReplay() throws IOException {
+		final WriteBehindJournal journal = open();
+		journal.appendRow(1, row("hall", 1));
+		final long damaged = journal.appendRow(2, row("kitchen", 2));
+		journal.appendRow(3, row("garage", 3));
+		journal.close();
+
+		try (RandomAccessFile file = new RandomAccessFile(segmentFile(damaged), "rw")) {
+			final long payload = (int) damaged + FRAME_HEADER_SIZE;
+			file.seek(payload + 1);
+			final int b = file.read();
+			file.seek(payload + 1);
+			file.write(b ^ 0xff);
+		}
+
+		assertEquals(Collections.singleton(1), open().readNotAcknowledged().keySet());
+	}
+
+	@Test
+	public void tornRecordEndsTheReplay() throws IOException {
+		final WriteBehindJournal journal = open();
+		journal.appendRow(1, row("hall", 1));
+		final long torn = journal.appendRow(2, row("kitchen", 2));
+		journal.close();
+
+		/* the power was lost while the frame was written: its length is there, its payload is not */
+		try (RandomAccessFile file = new RandomAccessFile(segmentFile(torn), "rw")) {
+			file.setLength((int) torn + FRAME_HEADER_SIZE + 4);
+		}
+
+		assertEquals(Collections.singleton(1), open().readNotAcknowledged().keySet());
+	}
+
+	@Test
+	public void releasesTheSegmentsBeforeThePosition() throws IOException {
+		final WriteBehindJournal journal = open();
+		final char[] filler = new char[1000];
+		Arrays.fill(filler, 'x');
+		final List<Long> positions = new ArrayList<>();
+		for (int id = 1; id <= 12; id++) {
+			positions.add(journal.appendRow(id, row(new String(filler), id)));
+		}
+		final long firstSegment = positions.get(0) >>> 32;
+		final long lastSegment = positions.get(positions.size() - 1) >>> 32;
+		assertEquals(lastSegment - firstSegment + 1, segmentFiles().length);
+
+		final long kept = positions.get(8);
+		journal.release(kept);
+		assertEquals(lastSegment - (kept >>> 32) + 1, segmentFiles().length);
+
+		/* nothing appended since the position released, the current segment is replaced by an empty one */
+		journal.release(journal.position());
+		assertEquals(1, segmentFiles().length);
+		journal.close();
+		assertEquals(Collections.emptyMap(), open().readNotAcknowledged());
+	}
+
+	private File[] segmentFiles() {
+		return new File(directory, NAME).listFiles((dir, name) -> name.endsWith(".journal"));
+	}
+
+	private File segmentFile(long position) {
+		return new File(new File(directory, NAME), String.format("%016d.journal", position >>> 32));
+	}
+}
@@ -0,0 +1,105 @@
+package com.riscogroup.nextgen.persistence.repository.device;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.sql.ResultSet;
+
+import org.junit.Test;
+
+import com.riscogroup.nextgen.home.api.function.type.ZWaveDeviceFunction;
+import com.riscogroup.nextgen.home.api.generic.DeviceFunction;
+import com.riscogroup.nextgen.home.api.generic.DeviceProperty;
+import com.riscogroup.nextgen.persistence.core.DaoRegistry;
+import com.riscogroup.nextgen.persistence.core.DataAccessObject;
+import com.riscogroup.nextgen.persistence.core.FakeDriver;
+import com.riscogroup.nextgen.persistence.core.TransactionManager;
+
+/**
+ * Streams 100k property rows of a fake JDBC driver through DevicePropertyDAO.streamAll(). The rows are
+ * larger than the heap the test runs with (-Xmx32m, see the small-heap-test execution in pom.xml), so
+ * the stream only passes if neither the properties nor their parent functions are loaded and cached.
+ *
+ * The rows are served by the FakeDriver configured in src/test/resources/etc/db.conf, for the query selecting
+ * the whole device_property table, any other query gets no rows.
+ */
+public class DevicePropertyStreamTest {
+	private static final int ROWS = 100000;
+	private static final int PROPERTIES_PER_FUNCTION = 8;
+
+	/**
+	 * Rows in the column order of DevicePropertyDAO: id, device_function_id, device_function_class_name,
+	 * prop_index, properties_map, enums_list, value, value_array, end_point_id, persist_flag.
+	 */
+	private static ResultSet rows(int count) {
+		return FakeDriver.rows(count, (row, method, args) -> {
+			final int column = (Integer) args[0];
+			if ("getInt".equals(method)) {
+				switch (column) {
+				case 1:
+					return row;
+				case 2:
+					return functionId(row);
+				case 4:
+					return row % PROPERTIES_PER_FUNCTION;
+				default:
+					return null;
+				}
+			}
+			if (!"getString".equals(method)) {
+				return null;
+			}
+			switch (column) {
+			case 3:
+				return functionClass(functionId(row)).getName();
+			case 5:
+				return "{name=property " + row + ", unit=C, type=numeric, access=W, description="
+						+ String.format("%0200d", row) + "}";
+			case 6:
+				return "[low, medium, high, property " + row + "]";
+			case 7:
+				return String.format("%0300d", row);
+			default:
+				return "";
+			}
+		});
+	}
+
+	static int functionId(int propertyId) {
+		return (propertyId - 1) / PROPERTIES_PER_FUNCTION + 1;
+	}
+
+	static Class<? extends DeviceFunction> functionClass(int functionId) {
+		return functionId % 2 == 0 ? ZWaveDeviceFunction.class : DeviceFunction.class;
+	}
+
+	@Test
+	public void streamsWithoutCachingTheTable() throws Exception {
+		final DataAccessObject<DeviceProperty> dao = DaoRegistry.getInstance().getDAO(DeviceProperty.class.getName());
+		final TransactionManager transactionManager = TransactionManager.getInstance();
+		final int[] streamed = new int[1];
+		FakeDriver.serve(sql -> rows(sql.contains("FROM home_automation.device_property") && !sql.contains("WHERE") ? ROWS : 0));
+
+		transactionManager.openLazySession();
+		try {
+			dao.streamAll(property -> {
+				streamed[0]++;
+				final int functionId = functionId(property.getUID());
+				assertEquals(functionId, property.getParent().getUID().intValue());
+				assertEquals(functionClass(functionId), property.getParent().getClass());
+				assertEquals(property.getUID() % PROPERTIES_PER_FUNCTION, property.getIndex().intValue());
+			});
+			transactionManager.commitTransactionAndCloseSession();
+		} catch (Exception | AssertionError e) {
+			transactionManager.rollbackTransactionAndCloseSession();
+			throw e;
+		}
+
+		assertEquals(ROWS, streamed[0]);
+		/* parent functions were not loaded, and with them all their properties */
+		assertEquals(FakeDriver.queries().toString(), 1, FakeDriver.queries().size());
+		for (int id = 1; id <= ROWS; id += ROWS / 100) {
+			assertNull("property " + id + " is cached", dao.getReference(id));
+		}
+	}
+}
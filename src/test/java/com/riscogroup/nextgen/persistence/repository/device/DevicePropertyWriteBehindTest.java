@@ -0,0 +1,57 @@
+package com.riscogroup.nextgen.persistence.repository.device;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Field;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.riscogroup.nextgen.home.api.generic.DeviceProperty;
+import com.riscogroup.nextgen.persistence.core.DaoRegistry;
+import com.riscogroup.nextgen.persistence.core.DataAccessObject;
+import com.riscogroup.nextgen.persistence.core.FakeDriver;
+import com.riscogroup.nextgen.persistence.core.TransactionManager;
+import com.riscogroup.nextgen.persistence.core.UnitOfWork;
+import com.riscogroup.nextgen.persistence.service.PersistenceServiceImpl;
+
+/**
+ * Property updates written behind, enabled for DevicePropertyDAO in src/test/resources/etc/db.conf with a flush
+ * interval long enough for the committed update to still be queued when the next transaction rolls back.
+ */
+public class DevicePropertyWriteBehindTest {
+	private static final int PROPERTY_ID = 7;
+	/* value column of the UPDATE writing all columns, the id is the last parameter */
+	private static final int VALUE_PARAMETER = 5;
+
+	@Test
+	public void keepsTheQueuedUpdateOfAPropertyRolledBackLater() throws Exception {
+		final DataAccessObject<DeviceProperty> dao = DaoRegistry.getInstance().getDAO(DeviceProperty.class.getName());
+		final TransactionManager transactionManager = TransactionManager.getInstance();
+		final PersistenceServiceImpl service = new PersistenceServiceImpl();
+		FakeDriver.serve(sql -> FakeDriver.rows(0, (row, method, args) -> null));
+
+		final DeviceProperty property = new DeviceProperty(PROPERTY_ID);
+		final Field dataService = DeviceProperty.class.getDeclaredField("dataService");
+		dataService.setAccessible(true);
+		dataService.set(property, service);
+		property.setPersistFlag(true);
+
+		property.setValue("1");
+		assertTrue(service.commitTransactionRegisteredWork());
+
+		property.setValue("2");
+		transactionManager.openSessionAndStartTransaction();
+		UnitOfWork.getCurrent().commitSession();
+		transactionManager.rollbackTransactionAndCloseSession();
+
+		assertEquals("1", property.getValue());
+
+		dao.shutdown();
+		final List<FakeDriver.Update> updates = FakeDriver.updates();
+		assertEquals(updates.toString(), 1, updates.size());
+		assertEquals("1", updates.get(0).parameters.get(VALUE_PARAMETER));
+		assertEquals(PROPERTY_ID, updates.get(0).parameters.get(updates.get(0).parameters.size() - 1));
+	}
+}
@@ -0,0 +1,104 @@
+package com.riscogroup.nextgen.persistence.repository.device;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.riscogroup.nextgen.home.api.device.type.ZWaveDevice;
+import com.riscogroup.nextgen.persistence.core.FakeDriver;
+import com.riscogroup.nextgen.persistence.core.HydrationScope;
+
+/**
+ * Time to fill 10k ZWave devices from their rows with ZWaveDeviceDAO.fillColumns(), the part of getAll()
+ * that reads the row, functions and children aside. byIndex reads the columns by ordinal as the DAO does.
+ * byName reads the same rows through a ResultSet resolving every column access by its label first, the way
+ * pgjdbc serves getX(String): lower case the label and look it up in the column name map of the ResultSet.
+ * Both ResultSets are FakeDriver proxies, so the difference between the two is the cost of the label lookups.
+ *
+ * The DAO reads etc/db.conf, so run from target/test-classes:
+ * java -cp .:../classes:&lt;jmh jars&gt; org.openjdk.jmh.Main ZWaveDeviceFillBenchmark -prof gc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ZWaveDeviceFillBenchmark {
+	private static final int DEVICES = 10000;
+	private static final String[] LABELS = ("-, " + ZWaveDeviceDAO.COLUMNS).split(", ");
+
+	private ZWaveDeviceDAO dao;
+	private final Map<String, Integer> columnNameMap = new HashMap<>();
+
+	@Setup
+	public void createDAO() {
+		dao = new ZWaveDeviceDAO();
+		for (int ordinal = 1; ordinal < LABELS.length; ordinal++) {
+			columnNameMap.put(LABELS[ordinal], ordinal);
+		}
+	}
+
+	@Benchmark
+	public ZWaveDevice byIndex() throws SQLException {
+		return fillAll(rows(false));
+	}
+
+	@Benchmark
+	public ZWaveDevice byName() throws SQLException {
+		return fillAll(rows(true));
+	}
+
+	private ZWaveDevice fillAll(ResultSet rs) throws SQLException {
+		ZWaveDevice device = null;
+		HydrationScope.enter();
+		try {
+			for (int id = 1; rs.next(); id++) {
+				device = new ZWaveDevice(id);
+				dao.fillColumns(device, rs);
+			}
+		} finally {
+			HydrationScope.exit();
+		}
+		return device;
+	}
+
+	/**
+	 * Rows with a value for every String column, the other getters return 0 or false.
+	 */
+	private ResultSet rows(boolean byName) {
+		return FakeDriver.rows(DEVICES, (row, method, args) -> {
+			int column = (Integer) args[0];
+			if (byName) {
+				column = columnNameMap.get(LABELS[column].toLowerCase(Locale.US));
+			}
+			if (!"getString".equals(method)) {
+				return null;
+			}
+			switch (LABELS[column]) {
+			case "device_class_name":
+				return ZWaveDevice.class.getName();
+			case "lifeline_groups":
+				return "[1, 2]";
+			case "command_classes":
+				return "[0x20, 0x25, 0x26, 0x27, 0x59, 0x5A, 0x5E, 0x72, 0x73, 0x85, 0x86, 0x8E]";
+			default:
+				return LABELS[column] + " " + row;
+			}
+		});
+	}
+}
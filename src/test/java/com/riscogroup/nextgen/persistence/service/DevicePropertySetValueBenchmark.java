@@ -0,0 +1,74 @@
+package com.riscogroup.nextgen.persistence.service;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.riscogroup.nextgen.home.api.generic.DeviceProperty;
+import com.riscogroup.nextgen.persistence.core.HydrationScope;
+
+/**
+ * Throughput of DeviceProperty.setValue(), registered in the UnitOfWork as an application setter and skipped
+ * as a setter called by a DAO filling the property. stackTraceCheck is the check every setter made before the
+ * HydrationScope, walking the stack four times, for comparison.
+ *
+ * The property gets this PersistenceServiceImpl as its DataService, which the Activator of the API bundle
+ * looks up in the OSGi service registry. The TransactionManager it creates reads etc/db.conf, so
+ * run from target/test-classes: java -cp .:../classes:&lt;jmh jars&gt; org.openjdk.jmh.Main DevicePropertySetValueBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class DevicePropertySetValueBenchmark {
+	private static final String PERSISTENCE_PACKAGE = "com.riscogroup.nextgen.persistence.";
+
+	private DeviceProperty property;
+	private int value;
+
+	@Setup
+	public void createProperty() throws ReflectiveOperationException {
+		property = new DeviceProperty(1);
+		final Field dataService = DeviceProperty.class.getDeclaredField("dataService");
+		dataService.setAccessible(true);
+		dataService.set(property, new PersistenceServiceImpl());
+		property.setPersistFlag(true);
+	}
+
+	@Benchmark
+	public DeviceProperty setValue() {
+		property.setValue(++value & 0xff);
+		return property;
+	}
+
+	@Benchmark
+	public DeviceProperty setValueHydrating() {
+		HydrationScope.enter();
+		try {
+			property.setValue(++value & 0xff);
+		} finally {
+			HydrationScope.exit();
+		}
+		return property;
+	}
+
+	@Benchmark
+	public boolean stackTraceCheck() {
+		return Thread.currentThread().getStackTrace()[7].toString().contains(PERSISTENCE_PACKAGE)
+				|| Thread.currentThread().getStackTrace()[8].toString().contains(PERSISTENCE_PACKAGE)
+				|| Thread.currentThread().getStackTrace()[9].toString().contains(PERSISTENCE_PACKAGE)
+				|| Thread.currentThread().getStackTrace()[9].toString().contains(".newInstance");
+	}
+}